@@ -0,0 +1,26 @@
+package com.docloader.config;
+
+import org.springframework.context.annotation.Conditional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers the bean only when docloader.storage.type names the given storage type,
+ * ignoring case like the rest of the storage selection. An unset or blank type means
+ * filesystem.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Documented
+@Conditional(OnStorageTypeCondition.class)
+public @interface ConditionalOnStorageType {
+
+    /**
+     * @return the storage type, such as filesystem or s3
+     */
+    String value();
+}
@@ -0,0 +1,31 @@
+package com.docloader.config;
+
+import com.docloader.service.GraphImportExporter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Export mode: with docloader.graph.export.directory set, the graph is exported for
+ * neo4j-admin database import at startup. Meant for the first build of a large graph,
+ * with docloader.neo4j.enabled off as the database is offline during the import.
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "docloader.graph.export.directory")
+public class GraphExportConfig {
+
+    @Bean
+    public CommandLineRunner exportGraph(GraphImportExporter graphImportExporter,
+                                         @Value("${docloader.graph.export.directory}") String directory) {
+        return args -> {
+            log.info("Exporting the graph for neo4j-admin import to {}", directory);
+            graphImportExporter.export(Path.of(directory));
+        };
+    }
+}
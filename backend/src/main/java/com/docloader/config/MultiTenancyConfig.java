@@ -7,6 +7,7 @@ import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.cfg.Environment;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -34,6 +35,9 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class MultiTenancyConfig {
 
+    @Value("${docloader.persistence.jdbc-batch-size:100}")
+    private int jdbcBatchSize;
+
     @Bean
     @ConfigurationProperties("spring.datasource.primary")
     public DataSourceProperties dataSourceProperties() {
@@ -76,6 +80,12 @@ public class MultiTenancyConfig {
         properties.put(Environment.HBM2DDL_AUTO, "validate");
         properties.put(Environment.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
         
+        // Group inserts and updates into JDBC batches; ids are UUIDs generated in the application
+        properties.put(Environment.STATEMENT_BATCH_SIZE, jdbcBatchSize);
+        properties.put(Environment.ORDER_INSERTS, true);
+        properties.put(Environment.ORDER_UPDATES, true);
+        properties.put(Environment.BATCH_VERSIONED_DATA, true);
+        
         em.setJpaPropertyMap(properties);
 
         return em;
@@ -0,0 +1,68 @@
+package com.docloader.config;
+
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Neo4j driver of the graph of document relationships. The Spring Boot auto-configuration
+ * stays excluded so the application starts without Neo4j; the driver is only created when
+ * the graph is enabled. It pools its Bolt connections, and sessions borrow one per
+ * transaction, so sessions are cheap and opened per unit of work.
+ */
+@Configuration
+@ConditionalOnProperty(name = "docloader.neo4j.enabled", havingValue = "true", matchIfMissing = false)
+public class Neo4jConfig {
+
+    @Value("${spring.neo4j.uri:bolt://localhost:7687}")
+    private String uri;
+
+    @Value("${spring.neo4j.authentication.username:neo4j}")
+    private String username;
+
+    @Value("${spring.neo4j.authentication.password:}")
+    private String password;
+
+    @Value("${docloader.neo4j.pool.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${docloader.neo4j.pool.acquisition-timeout:60000}")
+    private long acquisitionTimeoutMillis;
+
+    // Managed transactions are retried on transient errors, such as deadlocks and leader switches, for this long
+    @Value("${docloader.neo4j.max-retry-time:30000}")
+    private long maxRetryTimeMillis;
+
+    @Bean(destroyMethod = "close")
+    public Driver neo4jDriver() {
+        Config config = Config.builder()
+                .withMaxConnectionPoolSize(maxConnections)
+                .withConnectionAcquisitionTimeout(acquisitionTimeoutMillis, TimeUnit.MILLISECONDS)
+                .withMaxTransactionRetryTime(maxRetryTimeMillis, TimeUnit.MILLISECONDS)
+                .build();
+        return GraphDatabase.driver(uri, AuthTokens.basic(username, password), config);
+    }
+
+    /**
+     * Hands processed documents to the graph write buffer. Adding to the buffer blocks while it
+     * is full or a batch is retried, which must not hold up the vector write-behind thread.
+     */
+    @Bean(name = "graphWriteExecutor")
+    public ThreadPoolTaskExecutor graphWriteExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("graph-write-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
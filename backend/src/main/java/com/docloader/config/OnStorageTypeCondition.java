@@ -0,0 +1,28 @@
+package com.docloader.config;
+
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+
+/**
+ * Matches docloader.storage.type against {@link ConditionalOnStorageType} with equalsIgnoreCase
+ */
+class OnStorageTypeCondition implements Condition {
+
+    static final String PROPERTY = "docloader.storage.type";
+    static final String DEFAULT_TYPE = "filesystem";
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnStorageType.class.getName());
+        if (attributes == null) {
+            return false;
+        }
+        String configured = context.getEnvironment().getProperty(PROPERTY);
+        String type = StringUtils.hasText(configured) ? configured.trim() : DEFAULT_TYPE;
+        return type.equalsIgnoreCase((String) attributes.get("value"));
+    }
+}
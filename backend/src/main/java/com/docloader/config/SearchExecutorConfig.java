@@ -0,0 +1,34 @@
+package com.docloader.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded executor running the retrievals of searches and the embedding of their queries
+ */
+@Configuration
+public class SearchExecutorConfig {
+
+    @Value("${docloader.search.parallelism:4}")
+    private int parallelism;
+
+    @Value("${docloader.search.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Bean(name = "searchExecutor")
+    public ThreadPoolTaskExecutor searchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("search-");
+        // Under overload the submitting thread runs the task itself
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
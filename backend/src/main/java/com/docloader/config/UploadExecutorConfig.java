@@ -0,0 +1,35 @@
+package com.docloader.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded executor used to store the files of a batch upload concurrently
+ */
+@Configuration
+public class UploadExecutorConfig {
+
+    @Value("${docloader.uploads.parallelism:4}")
+    private int parallelism;
+
+    @Value("${docloader.uploads.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Bean(name = "documentUploadExecutor")
+    public ThreadPoolTaskExecutor documentUploadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("doc-upload-");
+        // When the queue is full the request thread stores the file itself, which throttles callers
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,73 @@
+package com.docloader.controller;
+
+import com.docloader.dto.DirectUploadRequest;
+import com.docloader.dto.DirectUploadResponse;
+import com.docloader.dto.DocumentResponse;
+import com.docloader.model.Document;
+import com.docloader.service.AuthService;
+import com.docloader.service.DirectUploadService;
+import com.docloader.service.DocumentService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Direct-to-bucket upload protocol: request pre-signed URLs, PUT the file (or each part)
+ * to the bucket, then complete the upload to register the Document.
+ */
+@RestController
+@RequestMapping("/api/uploads/direct")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Direct Uploads", description = "API endpoints for pre-signed uploads straight to the tenant's bucket")
+public class DirectUploadController {
+
+    private final DirectUploadService directUploadService;
+    private final DocumentService documentService;
+    private final AuthService authService;
+
+    @PostMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Create a direct upload and get its pre-signed URLs",
+               description = "Files above the multipart threshold get one URL per part, smaller files a single PUT URL")
+    public ResponseEntity<DirectUploadResponse> createUpload(@Valid @RequestBody DirectUploadRequest request) {
+        UUID currentUserId = authService.getCurrentUserId();
+        UUID tenantId = authService.getCurrentTenantId();
+        log.info("Creating direct upload for {} ({} bytes)", request.getFilename(), request.getFileSize());
+
+        DirectUploadResponse response = directUploadService.createUpload(request, currentUserId, tenantId);
+        return ResponseEntity.created(URI.create("/api/uploads/direct/" + response.getId())).body(response);
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Get a direct upload with freshly signed URLs")
+    public ResponseEntity<DirectUploadResponse> getUpload(@PathVariable UUID id) {
+        return ResponseEntity.ok(directUploadService.getUpload(id, authService.getCurrentUserId()));
+    }
+
+    @PostMapping("/{id}/complete")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Confirm the uploaded object and register the document")
+    public ResponseEntity<DocumentResponse> completeUpload(@PathVariable UUID id) {
+        Document document = directUploadService.completeUpload(id, authService.getCurrentUserId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(documentService.toDocumentResponse(document));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Abort the upload and remove anything sent to the bucket")
+    public ResponseEntity<Void> abortUpload(@PathVariable UUID id) {
+        directUploadService.abortUpload(id, authService.getCurrentUserId());
+        return ResponseEntity.noContent().build();
+    }
+}
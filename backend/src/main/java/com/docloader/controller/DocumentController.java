@@ -1,13 +1,18 @@
 package com.docloader.controller;
 
 import com.docloader.dto.DocumentResponse;
+import com.docloader.dto.DocumentUploadResult;
 import com.docloader.model.Document;
 import com.docloader.service.AuthService;
 import com.docloader.service.DocumentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,8 +21,14 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -28,14 +39,20 @@ import java.util.stream.Collectors;
 @Tag(name = "Documents", description = "API endpoints for managing documents")
 public class DocumentController {
 
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     private final DocumentService documentService;
     private final AuthService authService;
 
     @PostMapping("/upload")
     @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
-    @Operation(summary = "Upload documents")
+    @Operation(summary = "Upload documents", 
+               description = "Returns 201 when every file was stored, or 207 with per-file results when some failed")
     @ResponseStatus(HttpStatus.CREATED)
-    public ResponseEntity<Map<String, List<UUID>>> uploadDocuments(@RequestParam("files") List<MultipartFile> files) {
+    public ResponseEntity<Map<String, Object>> uploadDocuments(@RequestParam("files") List<MultipartFile> files) {
         try {
             log.info("Uploading {} documents", files.size());
             
@@ -46,17 +63,21 @@ public class DocumentController {
             UUID currentUserId = authService.getCurrentUserId();
             UUID tenantId = authService.getCurrentUser().getTenantId();
             
-            List<Document> documents = documentService.uploadDocuments(files, currentUserId, tenantId);
+            List<DocumentUploadResult> results = documentService.uploadDocuments(files, currentUserId, tenantId);
             
-            List<UUID> documentIds = documents.stream()
-                    .map(Document::getId)
+            List<UUID> documentIds = results.stream()
+                    .map(DocumentUploadResult::getDocumentId)
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toList());
             
-            log.info("Successfully uploaded {} documents", documentIds.size());
+            log.info("Successfully uploaded {} of {} documents", documentIds.size(), files.size());
             
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(Map.of("documentIds", documentIds));
+            HttpStatus status = documentIds.size() == files.size() ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+            return ResponseEntity.status(status)
+                    .body(Map.of("documentIds", documentIds, "results", results));
             
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error uploading documents: {}", e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error uploading documents");
@@ -111,6 +132,53 @@ public class DocumentController {
         }
     }
     
+    @GetMapping("/{id}/content")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Download document content",
+               description = "Local files are handed to the container's sendfile support when available")
+    public void downloadDocumentContent(@PathVariable UUID id, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            log.info("Downloading content of document: {}", id);
+            
+            Document document = documentService.getDocumentById(id)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Document not found"));
+            
+            // Check access permissions
+            UUID currentUserId = authService.getCurrentUserId();
+            if (!currentUserId.equals(document.getUploadedBy()) && 
+                authService.getCurrentUser().getAuthorities().stream()
+                    .noneMatch(a -> a.getAuthority().equals("ROLE_ADMIN") || a.getAuthority().equals("ROLE_SYSTEM_ADMIN"))) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this document");
+            }
+            
+            response.setContentType(document.getContentType() != null 
+                    ? document.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(document.getFilename(), StandardCharsets.UTF_8).build().toString());
+            
+            Optional<Path> localPath = documentService.getLocalContentPath(document);
+            if (localPath.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+                // Let Tomcat send the file from the page cache once the request returns
+                long size = Files.size(localPath.get());
+                response.setContentLengthLong(size);
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, localPath.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+                request.setAttribute(SENDFILE_END_ATTRIBUTE, size);
+                return;
+            }
+            
+            if (document.getFileSize() != null) {
+                response.setContentLengthLong(document.getFileSize());
+            }
+            documentService.transferContent(document, Channels.newChannel(response.getOutputStream()));
+        } catch (ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error downloading content of document {}: {}", id, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error downloading document");
+        }
+    }
+    
     @GetMapping("/job/{jobId}")
     @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
     @Operation(summary = "Get documents for a job")
@@ -0,0 +1,271 @@
+package com.docloader.controller;
+
+import com.docloader.dto.RetrievalHits;
+import com.docloader.dto.SearchHit;
+import com.docloader.dto.SearchSummary;
+import com.docloader.security.UserDetailsImpl;
+import com.docloader.service.AuthService;
+import com.docloader.service.HybridSearchService;
+import com.docloader.service.SearchMode;
+import com.docloader.service.SearchResults;
+import com.docloader.vector.VectorSearchFilter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Search over the documents of the current user's tenant. Clients accepting
+ * application/x-ndjson or text/event-stream get the ranked chunk hits streamed one record
+ * per hit, followed by a summary; others get a JSON array of hits. Streamed hybrid
+ * searches first send the hits of each retrieval as it finishes, so the faster one shows
+ * up before the other is done, then the fused hits.
+ */
+@RestController
+@RequestMapping("/api/search")
+@Slf4j
+@Tag(name = "Search", description = "API endpoints for searching documents")
+public class SearchController {
+
+    private static final int MAX_LIMIT = 100;
+
+    // Header telling JSON clients that some retrieval missed the deadline or failed
+    private static final String PARTIAL_HEADER = "X-Search-Partial";
+
+    // Extra time an emitter stays open after the search deadline to write the hits
+    private static final long EMITTER_GRACE_MILLIS = 5000;
+
+    private final HybridSearchService hybridSearchService;
+    private final AuthService authService;
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    public SearchController(
+            HybridSearchService hybridSearchService,
+            AuthService authService,
+            @Value("${docloader.search.timeout:2000}") long defaultTimeoutMillis,
+            @Value("${docloader.search.max-timeout:30000}") long maxTimeoutMillis) {
+        this.hybridSearchService = hybridSearchService;
+        this.authService = authService;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Search documents",
+               description = "Keyword (BM25), vector or hybrid search; users other than admins only see their own documents")
+    public CompletableFuture<ResponseEntity<List<SearchHit>>> search(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "HYBRID") SearchMode mode,
+            @RequestParam(required = false) UUID jobId,
+            @RequestParam(required = false) String contentType,
+            @RequestParam(defaultValue = "false") boolean chunks,
+            @RequestParam(required = false) Long timeout) {
+        return start(query, limit, mode, jobId, contentType, chunks, timeout)
+                .handle((results, e) -> {
+                    if (e != null) {
+                        throw toStatus(e);
+                    }
+                    return ResponseEntity.ok()
+                            .header(PARTIAL_HEADER, String.valueOf(results.isPartial()))
+                            .body(results.getHits());
+                });
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Stream search hits as NDJSON",
+               description = "One JSON hit per line, best first, then a line with the number of hits, whether they are partial and the time taken. "
+                    + "Hybrid searches first send a line per retrieval as it finishes, with its name and hits")
+    public ResponseEntity<ResponseBodyEmitter> streamNdjson(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "HYBRID") SearchMode mode,
+            @RequestParam(required = false) UUID jobId,
+            @RequestParam(required = false) String contentType,
+            @RequestParam(defaultValue = "true") boolean chunks,
+            @RequestParam(required = false) Long timeout) {
+        long started = System.nanoTime();
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutOf(timeout) + EMITTER_GRACE_MILLIS);
+        AtomicBoolean ranked = new AtomicBoolean();
+        CompletableFuture<SearchResults> results = start(query, limit, mode, jobId, contentType, chunks, timeout,
+                retrievalListener(mode, emitter, ranked, started, retrieval -> {
+                    emitter.send(retrieval, MediaType.APPLICATION_JSON);
+                    emitter.send("\n", MediaType.TEXT_PLAIN);
+                }));
+        results.whenComplete((found, e) -> {
+            synchronized (emitter) {
+                ranked.set(true);
+                if (e != null) {
+                    emitter.completeWithError(toStatus(e));
+                    return;
+                }
+                try {
+                    for (SearchHit hit : found.getHits()) {
+                        emitter.send(hit, MediaType.APPLICATION_JSON);
+                        emitter.send("\n", MediaType.TEXT_PLAIN);
+                    }
+                    emitter.send(summaryOf(found, started), MediaType.APPLICATION_JSON);
+                    emitter.send("\n", MediaType.TEXT_PLAIN);
+                    emitter.complete();
+                } catch (IOException ioe) {
+                    log.debug("Client went away while streaming search hits: {}", ioe.getMessage());
+                    emitter.completeWithError(ioe);
+                }
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Stream search hits as server-sent events",
+               description = "A \"hit\" event per hit, best first, then a \"done\" event with the number of hits, whether they are partial and the time taken. "
+                    + "Hybrid searches first send a \"retrieval\" event per retrieval as it finishes, with its name and hits")
+    public SseEmitter streamEvents(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "HYBRID") SearchMode mode,
+            @RequestParam(required = false) UUID jobId,
+            @RequestParam(required = false) String contentType,
+            @RequestParam(defaultValue = "true") boolean chunks,
+            @RequestParam(required = false) Long timeout) {
+        long started = System.nanoTime();
+        SseEmitter emitter = new SseEmitter(timeoutOf(timeout) + EMITTER_GRACE_MILLIS);
+        AtomicBoolean ranked = new AtomicBoolean();
+        CompletableFuture<SearchResults> results = start(query, limit, mode, jobId, contentType, chunks, timeout,
+                retrievalListener(mode, emitter, ranked, started,
+                        retrieval -> emitter.send(SseEmitter.event().name("retrieval").data(retrieval, MediaType.APPLICATION_JSON))));
+        results.whenComplete((found, e) -> {
+            synchronized (emitter) {
+                ranked.set(true);
+                try {
+                    if (e != null) {
+                        // The status line is already sent, so the error travels as an event
+                        emitter.send(SseEmitter.event().name("error").data(toStatus(e).getReason(), MediaType.TEXT_PLAIN));
+                    } else {
+                        for (SearchHit hit : found.getHits()) {
+                            emitter.send(SseEmitter.event().name("hit").data(hit, MediaType.APPLICATION_JSON));
+                        }
+                        emitter.send(SseEmitter.event().name("done").data(summaryOf(found, started), MediaType.APPLICATION_JSON));
+                    }
+                    emitter.complete();
+                } catch (IOException ioe) {
+                    log.debug("Client went away while streaming search hits: {}", ioe.getMessage());
+                    emitter.completeWithError(ioe);
+                }
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * In hybrid mode, a listener streaming the hits of each retrieval as it finishes, until
+     * the fused hits are sent; null in the other modes, whose only retrieval is the result
+     * @param lock held while sending, shared with the sending of the fused hits
+     * @param ranked set once the fused hits are being sent, after which retrievals are dropped
+     */
+    private static BiConsumer<String, List<SearchHit>> retrievalListener(SearchMode mode, Object lock, AtomicBoolean ranked,
+                                                                        long started, RetrievalSender sender) {
+        if (mode != SearchMode.HYBRID) {
+            return null;
+        }
+        return (retrieval, hits) -> {
+            synchronized (lock) {
+                if (ranked.get()) {
+                    return;
+                }
+                try {
+                    sender.send(new RetrievalHits(retrieval, hits, (System.nanoTime() - started) / 1_000_000));
+                } catch (IOException e) {
+                    // Sending the fused hits fails the same way and completes the emitter
+                    log.debug("Client went away while streaming {} hits: {}", retrieval, e.getMessage());
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface RetrievalSender {
+        void send(RetrievalHits retrieval) throws IOException;
+    }
+
+    /**
+     * Validate the request and start the search as the current user
+     */
+    private CompletableFuture<SearchResults> start(String query, int limit, SearchMode mode, UUID jobId,
+                                                   String contentType, boolean chunks, Long timeout) {
+        return start(query, limit, mode, jobId, contentType, chunks, timeout, null);
+    }
+
+    private CompletableFuture<SearchResults> start(String query, int limit, SearchMode mode, UUID jobId,
+                                                   String contentType, boolean chunks, Long timeout,
+                                                   BiConsumer<String, List<SearchHit>> onRetrieval) {
+        if (query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query must not be empty");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_LIMIT);
+        }
+        long timeoutMillis = timeoutOf(timeout);
+
+        try {
+            UserDetailsImpl user = authService.getCurrentUser();
+            boolean admin = user.getAuthorities().stream()
+                    .anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN") || a.getAuthority().equals("ROLE_SYSTEM_ADMIN"));
+            VectorSearchFilter filter = new VectorSearchFilter(jobId, admin ? null : user.getId(), contentType);
+
+            log.debug("Search for user {} in {} mode with a {} ms deadline", user.getId(), mode, timeoutMillis);
+            return hybridSearchService.search(user.getTenantId(), query, limit, mode, filter, chunks, timeoutMillis, onRetrieval);
+        } catch (ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error searching documents: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error searching documents");
+        }
+    }
+
+    private long timeoutOf(Long timeout) {
+        if (timeout == null) {
+            return defaultTimeoutMillis;
+        }
+        if (timeout < 1 || timeout > maxTimeoutMillis) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Timeout must be between 1 and " + maxTimeoutMillis + " ms");
+        }
+        return timeout;
+    }
+
+    private static SearchSummary summaryOf(SearchResults results, long started) {
+        return new SearchSummary(results.getHits().size(), results.isPartial(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static ResponseStatusException toStatus(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ResponseStatusException status) {
+            return status;
+        }
+        log.error("Error searching documents: {}", cause.getMessage(), cause);
+        return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error searching documents");
+    }
+}
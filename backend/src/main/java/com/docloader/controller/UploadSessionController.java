@@ -0,0 +1,104 @@
+package com.docloader.controller;
+
+import com.docloader.dto.DocumentResponse;
+import com.docloader.dto.UploadSessionRequest;
+import com.docloader.dto.UploadSessionResponse;
+import com.docloader.model.Document;
+import com.docloader.service.AuthService;
+import com.docloader.service.DocumentService;
+import com.docloader.service.ResumableUploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable upload protocol: create a session, PATCH chunks with an Upload-Offset
+ * header in any order, then complete the session to register the Document.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Resumable Uploads", description = "API endpoints for resumable chunked uploads")
+public class UploadSessionController {
+
+    public static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+
+    private final ResumableUploadService resumableUploadService;
+    private final DocumentService documentService;
+    private final AuthService authService;
+
+    @PostMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Create a resumable upload session")
+    public ResponseEntity<UploadSessionResponse> createSession(@Valid @RequestBody UploadSessionRequest request) {
+        UUID currentUserId = authService.getCurrentUserId();
+        UUID tenantId = authService.getCurrentTenantId();
+        log.info("Creating upload session for {} ({} bytes)", request.getFilename(), request.getFileSize());
+
+        UploadSessionResponse response = resumableUploadService.createSession(request, currentUserId, tenantId);
+        return ResponseEntity.created(URI.create("/api/uploads/" + response.getId())).body(response);
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "List the current user's active upload sessions so they can be resumed")
+    public ResponseEntity<List<UploadSessionResponse>> getActiveSessions() {
+        return ResponseEntity.ok(resumableUploadService.getActiveSessions(authService.getCurrentUserId()));
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Get upload session status including the chunks still missing")
+    public ResponseEntity<UploadSessionResponse> getSession(@PathVariable UUID id) {
+        return ResponseEntity.ok(resumableUploadService.getSession(id, authService.getCurrentUserId()));
+    }
+
+    @PatchMapping(value = "/{id}", consumes = {"application/offset+octet-stream", "application/octet-stream"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Upload one chunk at the given offset")
+    public ResponseEntity<Void> uploadChunk(@PathVariable UUID id,
+                                            @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+                                            HttpServletRequest request) {
+        try {
+            long endOffset = resumableUploadService.writeChunk(id, authService.getCurrentUserId(), offset,
+                    request.getContentLengthLong(), request.getInputStream());
+
+            return ResponseEntity.noContent()
+                    .header(UPLOAD_OFFSET_HEADER, Long.toString(endOffset))
+                    .build();
+        } catch (IOException e) {
+            log.error("Error reading chunk for upload session {}: {}", id, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading chunk");
+        }
+    }
+
+    @PostMapping("/{id}/complete")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Complete the upload and register the document")
+    public ResponseEntity<DocumentResponse> completeSession(@PathVariable UUID id) {
+        Document document = resumableUploadService.completeSession(id, authService.getCurrentUserId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(documentService.toDocumentResponse(document));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER', 'SYSTEM_ADMIN')")
+    @Operation(summary = "Abort the upload and discard received chunks")
+    public ResponseEntity<Void> abortSession(@PathVariable UUID id) {
+        resumableUploadService.abortSession(id, authService.getCurrentUserId());
+        return ResponseEntity.noContent().build();
+    }
+}
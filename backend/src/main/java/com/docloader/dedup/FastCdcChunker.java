@@ -0,0 +1,135 @@
+package com.docloader.dedup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking of extracted text with FastCDC. Boundaries depend only on
+ * the surrounding characters, so an edit changes the chunks around it while the rest
+ * of the document keeps the same chunks and fingerprints.
+ * <p>
+ * Uses a gear rolling hash with normalized chunking: a stricter mask before the
+ * average size and a looser one after it keep chunk sizes close to the average.
+ * Cut points are moved forward to the next whitespace so chunks do not split words.
+ */
+public class FastCdcChunker {
+
+    private static final long[] GEAR = new long[256];
+    // Longest distance a cut point is moved to reach whitespace
+    private static final int WHITESPACE_WINDOW = 64;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eedL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+
+    public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.maskSmall = mask(bits + 1);
+        this.maskLarge = mask(bits - 1);
+    }
+
+    public List<TextChunk> chunk(String text) {
+        List<TextChunk> chunks = new ArrayList<>();
+        MessageDigest sha256 = newSha256();
+        int start = 0;
+        while (start < text.length()) {
+            int end = nextCut(text, start);
+            String chunkText = text.substring(start, end);
+            String fingerprint = HexFormat.of().formatHex(sha256.digest(chunkText.getBytes(StandardCharsets.UTF_8)));
+            chunks.add(new TextChunk(chunks.size(), start, chunkText, fingerprint));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private int nextCut(String text, int start) {
+        int remaining = text.length() - start;
+        if (remaining <= minSize) {
+            return text.length();
+        }
+
+        int limit = start + Math.min(remaining, maxSize);
+        int normal = start + Math.min(remaining, avgSize);
+        long hash = 0;
+        int i = start + minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[gearIndex(text.charAt(i))];
+            if ((hash & maskSmall) == 0) {
+                return snapToWhitespace(text, i + 1, limit);
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[gearIndex(text.charAt(i))];
+            if ((hash & maskLarge) == 0) {
+                return snapToWhitespace(text, i + 1, limit);
+            }
+        }
+        return limit;
+    }
+
+    private static int snapToWhitespace(String text, int cut, int limit) {
+        int end = Math.min(cut + WHITESPACE_WINDOW, limit);
+        for (int i = cut; i < end; i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return cut;
+    }
+
+    private static int gearIndex(char c) {
+        return (c ^ (c >>> 8)) & 0xff;
+    }
+
+    private static long mask(int bits) {
+        // Spread the bits over the upper half of the hash, which mixes the most characters
+        long mask = 0;
+        for (int i = 0; i < bits; i++) {
+            mask |= 1L << (63 - 2 * i);
+        }
+        return mask;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A chunk of text with the SHA-256 fingerprint of its content
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TextChunk {
+        private final int index;
+        private final int startOffset;
+        private final String text;
+        private final String fingerprint;
+    }
+}
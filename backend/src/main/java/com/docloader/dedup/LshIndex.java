@@ -0,0 +1,110 @@
+package com.docloader.dedup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Locality-sensitive hashing index over MinHash signatures. Signatures are split into
+ * bands; two documents become candidates when any band is identical, and candidates
+ * are then verified against the full signature. With b bands of r rows, pairs above a
+ * similarity of roughly (1/b)^(1/r) are found with high probability.
+ */
+public class LshIndex {
+
+    private final int bands;
+    private final int rows;
+    private final List<Map<Long, List<UUID>>> buckets;
+    private final Map<UUID, long[]> signatures = new HashMap<>();
+
+    public LshIndex(int numHashes, int bands) {
+        if (bands <= 0 || numHashes % bands != 0) {
+            throw new IllegalArgumentException("Number of hashes must be a multiple of the number of bands");
+        }
+        this.bands = bands;
+        this.rows = numHashes / bands;
+        this.buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public synchronized void add(UUID id, long[] signature) {
+        if (signatures.put(id, signature) != null) {
+            removeFromBuckets(id, signature);
+        }
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(bandHash(signature, band), key -> new ArrayList<>(1)).add(id);
+        }
+    }
+
+    public synchronized void remove(UUID id) {
+        long[] signature = signatures.remove(id);
+        if (signature != null) {
+            removeFromBuckets(id, signature);
+        }
+    }
+
+    public synchronized int size() {
+        return signatures.size();
+    }
+
+    /**
+     * @return the indexed document most similar to the signature, if any reaches the threshold
+     */
+    public synchronized Optional<Match> findMostSimilar(long[] signature, double threshold) {
+        Set<UUID> candidates = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            List<UUID> bucket = buckets.get(band).get(bandHash(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+
+        Match best = null;
+        for (UUID candidate : candidates) {
+            double similarity = MinHasher.similarity(signature, signatures.get(candidate));
+            if (similarity >= threshold && (best == null || similarity > best.getSimilarity())) {
+                best = new Match(candidate, similarity);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private void removeFromBuckets(UUID id, long[] signature) {
+        for (int band = 0; band < bands; band++) {
+            Map<Long, List<UUID>> bandBuckets = buckets.get(band);
+            long key = bandHash(signature, band);
+            List<UUID> bucket = bandBuckets.get(key);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    bandBuckets.remove(key);
+                }
+            }
+        }
+    }
+
+    private long bandHash(long[] signature, int band) {
+        long hash = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            hash = hash * 0x9e3779b97f4a7c15L + signature[i];
+        }
+        return hash;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+        private final UUID documentId;
+        private final double similarity;
+    }
+}
@@ -0,0 +1,114 @@
+package com.docloader.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Computes MinHash signatures over word shingles of a text. The fraction of equal
+ * positions in two signatures estimates the Jaccard similarity of their shingle sets,
+ * so re-exports and copies with small edits get near-identical signatures.
+ */
+public class MinHasher {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int shingleSize;
+    private final long[] seeds;
+
+    public MinHasher(int numHashes, int shingleSize, long seed) {
+        if (numHashes <= 0 || shingleSize <= 0) {
+            throw new IllegalArgumentException("numHashes and shingleSize must be positive");
+        }
+        this.shingleSize = shingleSize;
+        this.seeds = new long[numHashes];
+        long state = seed;
+        for (int i = 0; i < numHashes; i++) {
+            state += 0x9e3779b97f4a7c15L;
+            seeds[i] = mix(state);
+        }
+    }
+
+    public int getNumHashes() {
+        return seeds.length;
+    }
+
+    /**
+     * @return the signature, or null if the text contains no words
+     */
+    public long[] signature(String text) {
+        long[] tokens = tokenHashes(text);
+        if (tokens.length == 0) {
+            return null;
+        }
+
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        // Texts shorter than one shingle are treated as a single shingle
+        int shingles = Math.max(1, tokens.length - shingleSize + 1);
+        int width = Math.min(shingleSize, tokens.length);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = FNV_OFFSET;
+            for (int j = start; j < start + width; j++) {
+                shingle = (shingle ^ tokens[j]) * FNV_PRIME;
+            }
+            for (int i = 0; i < seeds.length; i++) {
+                long h = mix(shingle ^ seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity of the texts behind two signatures
+     */
+    public static double similarity(long[] a, long[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Signatures have different lengths");
+        }
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    // Lower-cased words of letters and digits, so whitespace, punctuation and layout changes do not matter
+    private static long[] tokenHashes(String text) {
+        long[] hashes = new long[64];
+        int count = 0;
+        long hash = FNV_OFFSET;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inToken = true;
+            } else if (inToken) {
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = hash;
+                hash = FNV_OFFSET;
+                inToken = false;
+            }
+        }
+        if (inToken) {
+            hashes = Arrays.copyOf(hashes, count + 1);
+            hashes[count++] = hash;
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,36 @@
+package com.docloader.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DirectUploadRequest {
+    
+    @NotBlank
+    @Size(max = 255)
+    private String filename;
+    
+    private String contentType;
+    
+    @NotNull
+    @Positive
+    private Long fileSize;
+    
+    // Hex MD5 of the whole file, computed by the client
+    @NotBlank
+    @Pattern(regexp = "[0-9a-fA-F]{32}")
+    private String md5Hash;
+    
+    // Optional; the tenant's default bucket is used when absent
+    private UUID bucketConfigId;
+}
@@ -0,0 +1,39 @@
+package com.docloader.dto;
+
+import com.docloader.model.UploadSession;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DirectUploadResponse {
+    
+    private UUID id;
+    
+    private String filename;
+    
+    private Long fileSize;
+    
+    private UploadSession.UploadStatus status;
+    
+    // Single PUT: the URL to send the whole file to, with the headers listed in requiredHeaders
+    private String uploadUrl;
+    
+    private Map<String, String> requiredHeaders;
+    
+    // Multipart: one URL per part, in part order, each covering partSize bytes
+    private Long partSize;
+    
+    private List<String> partUrls;
+    
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,37 @@
+package com.docloader.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DocumentUploadResult {
+    
+    private String filename;
+    
+    private UploadStatus status;
+    
+    private UUID documentId;
+    
+    private Long fileSize;
+    
+    private String error;
+    
+    public static DocumentUploadResult success(String filename, UUID documentId, Long fileSize) {
+        return new DocumentUploadResult(filename, UploadStatus.STORED, documentId, fileSize, null);
+    }
+    
+    public static DocumentUploadResult failure(String filename, String error) {
+        return new DocumentUploadResult(filename, UploadStatus.FAILED, null, null, error);
+    }
+    
+    public enum UploadStatus {
+        STORED, FAILED
+    }
+}
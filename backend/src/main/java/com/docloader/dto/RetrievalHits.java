@@ -0,0 +1,24 @@
+package com.docloader.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Record of a streamed hybrid search sent as one of its retrievals finishes, ahead of the
+ * fused hits: the hits of that retrieval alone, best first, carrying only its ranks
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetrievalHits {
+
+    // "lexical" or "vector"
+    private String retrieval;
+
+    private List<SearchHit> hits;
+
+    private long tookMs;
+}
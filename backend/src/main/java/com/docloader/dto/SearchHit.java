@@ -0,0 +1,28 @@
+package com.docloader.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchHit {
+
+    private UUID documentId;
+
+    // Reciprocal Rank Fusion score over the retrievals that ran
+    private double score;
+
+    // 1-based ranks in each retrieval, null where the document was not retrieved
+    private Integer lexicalRank;
+
+    private Integer vectorRank;
+
+    // The chunk hit by chunk searches; for document searches the best chunk of the lexical retrieval
+    private Integer chunkIndex;
+}
@@ -0,0 +1,21 @@
+package com.docloader.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last record of a streamed search, sent after its hits
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchSummary {
+
+    private int hits;
+
+    // Whether a retrieval missed the deadline or failed and the hits come from the others only
+    private boolean partial;
+
+    private long tookMs;
+}
@@ -0,0 +1,28 @@
+package com.docloader.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionRequest {
+    
+    @NotBlank
+    @Size(max = 255)
+    private String filename;
+    
+    private String contentType;
+    
+    @NotNull
+    @Positive
+    private Long fileSize;
+    
+    // Optional; the server default is used when absent
+    private Long chunkSize;
+}
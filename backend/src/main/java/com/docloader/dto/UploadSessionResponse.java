@@ -0,0 +1,43 @@
+package com.docloader.dto;
+
+import com.docloader.model.UploadSession;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UploadSessionResponse {
+    
+    private UUID id;
+    
+    private String filename;
+    
+    private String contentType;
+    
+    private Long fileSize;
+    
+    private Long chunkSize;
+    
+    private Integer chunkCount;
+    
+    private UploadSession.UploadStatus status;
+    
+    // Offsets of chunks that still have to be sent
+    private List<Long> missingOffsets;
+    
+    private Long bytesReceived;
+    
+    private UUID documentId;
+    
+    private String md5Hash;
+    
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,215 @@
+package com.docloader.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory adjacency of one relationship type: a {@link CsrAdjacency} snapshot per
+ * tenant, loaded from the graph database, plus a log of the changes made since. Lookups
+ * read the snapshot of the document's tenant and apply the changes on the fly, so they
+ * see writes at once, before they reach the database. Each change carries a sequence
+ * number; a snapshot loaded after the changes up to a number were written replaces the
+ * old one and drops the log entries of documents changed no later than that.
+ * <p>
+ * Relationships are followed in both directions and each neighbour is ranked by the best
+ * score of the relationships with it.
+ */
+public class AdjacencyCache {
+
+    // Snapshots by tenant id, "" for documents without a tenant
+    private Map<String, CsrAdjacency> snapshots = Map.of();
+    private final Map<UUID, Changes> changes = new HashMap<>();
+    private long sequence;
+    private long loadedAt;
+    private boolean loaded;
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return the number of documents with changes not in the snapshots
+     */
+    public synchronized int getPendingChanges() {
+        return changes.size();
+    }
+
+    /**
+     * @return the sequence number of the latest change
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Replace the snapshots with ones loaded after the changes up to a sequence number
+     * were written, dropping the changes they contain
+     */
+    public synchronized void publish(Map<String, CsrAdjacency> loadedSnapshots, long upToSequence, long time) {
+        snapshots = loadedSnapshots;
+        changes.values().removeIf(entry -> entry.sequence <= upToSequence);
+        loadedAt = time;
+        loaded = true;
+    }
+
+    public synchronized void added(UUID source, UUID target, float score) {
+        sequence++;
+        Changes from = changes(source);
+        from.outgoing.put(target, score);
+        // The relationship's score in the snapshots, if it is there, no longer holds
+        if (!from.cleared) {
+            from.removedOutgoing.add(target);
+        }
+        changes(target).incoming.put(source, score);
+    }
+
+    /**
+     * The relationship from one document to another was deleted
+     */
+    public synchronized void removedRelationship(UUID source, UUID target) {
+        sequence++;
+        Changes from = changes(source);
+        from.outgoing.remove(target);
+        if (!from.cleared) {
+            from.removedOutgoing.add(target);
+        }
+        changes(target).incoming.remove(source);
+    }
+
+    /**
+     * The relationships going out of the document were deleted
+     */
+    public synchronized void clearedOutgoing(UUID source) {
+        sequence++;
+        Changes from = changes(source);
+        from.cleared = true;
+        from.removedOutgoing.clear();
+        for (UUID target : from.outgoing.keySet()) {
+            changes(target).incoming.remove(source);
+        }
+        from.outgoing.clear();
+    }
+
+    /**
+     * The document and all its relationships were deleted
+     */
+    public synchronized void removed(UUID id) {
+        sequence++;
+        Changes entry = changes(id);
+        entry.detached = true;
+        for (UUID target : entry.outgoing.keySet()) {
+            changes(target).incoming.remove(id);
+        }
+        for (UUID source : entry.incoming.keySet()) {
+            changes(source).outgoing.remove(id);
+        }
+        entry.outgoing.clear();
+        entry.incoming.clear();
+    }
+
+    /**
+     * @return the related documents, best score first
+     */
+    public synchronized List<UUID> neighbours(UUID id, int limit) {
+        Map<UUID, Float> related = related(id);
+        return best(related, limit);
+    }
+
+    /**
+     * Breadth-first expansion from a set of documents. Documents are returned by the hop at
+     * which they are first reached, and within a hop by the best score linking them to the
+     * previous one; the starting documents are not returned.
+     */
+    public synchronized List<UUID> expand(Collection<UUID> ids, int hops, int limit) {
+        Set<UUID> visited = new HashSet<>(ids);
+        List<UUID> frontier = new ArrayList<>(ids);
+        List<UUID> reached = new ArrayList<>();
+        for (int hop = 0; hop < hops && !frontier.isEmpty() && reached.size() < limit; hop++) {
+            Map<UUID, Float> next = new HashMap<>();
+            for (UUID id : frontier) {
+                related(id).forEach((other, score) -> {
+                    if (!visited.contains(other)) {
+                        next.merge(other, score, Math::max);
+                    }
+                });
+            }
+            frontier = best(next, limit - reached.size());
+            visited.addAll(next.keySet());
+            reached.addAll(frontier);
+        }
+        return reached;
+    }
+
+    private Map<UUID, Float> related(UUID id) {
+        Changes own = changes.get(id);
+        Map<UUID, Float> related = new HashMap<>();
+        for (CsrAdjacency snapshot : own != null && own.detached ? List.<CsrAdjacency>of() : snapshots.values()) {
+            int v = snapshot.ordinal(id);
+            if (v < 0) {
+                continue;
+            }
+            for (int entry = snapshot.start(v); entry < snapshot.end(v); entry++) {
+                UUID other = snapshot.id(snapshot.target(entry));
+                Changes otherChanges = changes.get(other);
+                boolean outgoing = snapshot.outgoing(entry);
+                Changes source = outgoing ? own : otherChanges;
+                // Stale once deleted itself, with its source's outgoing relationships, or with either document
+                if ((source != null && (source.cleared || source.removedOutgoing.contains(outgoing ? other : id)))
+                        || (otherChanges != null && otherChanges.detached)) {
+                    continue;
+                }
+                related.merge(other, snapshot.score(entry), Math::max);
+            }
+            // Relationships stay within a tenant
+            break;
+        }
+        if (own != null) {
+            own.outgoing.forEach((other, score) -> related.merge(other, score, Math::max));
+            own.incoming.forEach((other, score) -> related.merge(other, score, Math::max));
+        }
+        return related;
+    }
+
+    private Changes changes(UUID id) {
+        Changes entry = changes.computeIfAbsent(id, key -> new Changes());
+        entry.sequence = sequence;
+        return entry;
+    }
+
+    private static List<UUID> best(Map<UUID, Float> scores, int limit) {
+        List<Map.Entry<UUID, Float>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<UUID, Float>comparingByValue().reversed());
+        int count = Math.max(0, Math.min(limit, entries.size()));
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(entries.get(i).getKey());
+        }
+        return ids;
+    }
+
+    /**
+     * Changes to the relationships of a document since the snapshots were loaded
+     */
+    private static final class Changes {
+        // The document's outgoing relationships in the snapshots no longer hold
+        private boolean cleared;
+        // None of the document's relationships in the snapshots hold, as it was removed
+        private boolean detached;
+        // Outgoing relationships in the snapshots deleted or replaced one by one, by target
+        private final Set<UUID> removedOutgoing = new HashSet<>();
+        // Relationships added since, by the other document
+        private final Map<UUID, Float> outgoing = new HashMap<>();
+        private final Map<UUID, Float> incoming = new HashMap<>();
+        private long sequence;
+    }
+}
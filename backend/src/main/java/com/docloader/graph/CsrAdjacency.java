@@ -0,0 +1,186 @@
+package com.docloader.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable adjacency of the documents linked by one relationship type, in compressed
+ * sparse row form: the neighbours of the document with ordinal v are the entries from
+ * offsets[v] to offsets[v + 1] of the target and score arrays, best score first. Both
+ * directions of every relationship are stored, an incoming one as the complement of the
+ * source ordinal, so a lookup needs no hashing beyond the one of the document id.
+ * Memory is about 16 bytes per relationship plus the id dictionary.
+ */
+public class CsrAdjacency {
+
+    private final UUID[] ids;
+    private final Map<UUID, Integer> ordinals;
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] scores;
+
+    private CsrAdjacency(UUID[] ids, Map<UUID, Integer> ordinals, int[] offsets, int[] targets, float[] scores) {
+        this.ids = ids;
+        this.ordinals = ordinals;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.scores = scores;
+    }
+
+    /**
+     * @return the ordinal of the document, or -1 if it has no relationship of this type
+     */
+    public int ordinal(UUID id) {
+        Integer ordinal = ordinals.get(id);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public UUID id(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public int start(int ordinal) {
+        return offsets[ordinal];
+    }
+
+    public int end(int ordinal) {
+        return offsets[ordinal + 1];
+    }
+
+    /**
+     * @return the ordinal of the other document of the entry
+     */
+    public int target(int entry) {
+        int target = targets[entry];
+        return target >= 0 ? target : ~target;
+    }
+
+    /**
+     * @return whether the relationship of the entry goes out of the row's document
+     */
+    public boolean outgoing(int entry) {
+        return targets[entry] >= 0;
+    }
+
+    public float score(int entry) {
+        return scores[entry];
+    }
+
+    public int documents() {
+        return ids.length;
+    }
+
+    public int relationships() {
+        return targets.length / 2;
+    }
+
+    /**
+     * Collects relationships, then lays them out as an adjacency
+     */
+    public static class Edges {
+        private final Map<UUID, Integer> ordinals = new HashMap<>();
+        private UUID[] ids = new UUID[1024];
+        private int[] sources = new int[1024];
+        private int[] destinations = new int[1024];
+        private float[] scores = new float[1024];
+        private int size;
+
+        public void add(UUID source, UUID target, float score) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                destinations = Arrays.copyOf(destinations, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            sources[size] = ordinal(source);
+            destinations[size] = ordinal(target);
+            scores[size] = score;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CsrAdjacency toAdjacency() {
+            int n = ordinals.size();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[sources[i] + 1]++;
+                offsets[destinations[i] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] targets = new int[size * 2];
+            float[] entryScores = new float[size * 2];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < size; i++) {
+                int out = next[sources[i]]++;
+                targets[out] = destinations[i];
+                entryScores[out] = scores[i];
+                int in = next[destinations[i]]++;
+                targets[in] = ~sources[i];
+                entryScores[in] = scores[i];
+            }
+            for (int v = 0; v < n; v++) {
+                sortRow(targets, entryScores, offsets[v], offsets[v + 1]);
+            }
+            return new CsrAdjacency(Arrays.copyOf(ids, n), ordinals, offsets, targets, entryScores);
+        }
+
+        private int ordinal(UUID id) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal != null) {
+                return ordinal;
+            }
+            int next = ordinals.size();
+            if (next == ids.length) {
+                ids = Arrays.copyOf(ids, next * 2);
+            }
+            ids[next] = id;
+            ordinals.put(id, next);
+            return next;
+        }
+
+        /**
+         * Sort a row by descending score: insertion sort for the usual short rows, a sort of
+         * score and position keys for hubs such as the canonical of many near-duplicates
+         */
+        private static void sortRow(int[] targets, float[] scores, int from, int to) {
+            if (to - from > 32) {
+                long[] keys = new long[to - from];
+                for (int i = from; i < to; i++) {
+                    // Float bits made to order as signed ints, inverted for descending order
+                    int bits = Float.floatToIntBits(scores[i]);
+                    bits ^= (bits >> 31) & 0x7fffffff;
+                    keys[i - from] = ((long) ~bits << 32) | (i - from);
+                }
+                Arrays.sort(keys);
+                int[] sortedTargets = new int[keys.length];
+                float[] sortedScores = new float[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    int position = from + (int) keys[i];
+                    sortedTargets[i] = targets[position];
+                    sortedScores[i] = scores[position];
+                }
+                System.arraycopy(sortedTargets, 0, targets, from, keys.length);
+                System.arraycopy(sortedScores, 0, scores, from, keys.length);
+                return;
+            }
+            for (int i = from + 1; i < to; i++) {
+                int target = targets[i];
+                float score = scores[i];
+                int j = i - 1;
+                while (j >= from && scores[j] < score) {
+                    targets[j + 1] = targets[j];
+                    scores[j + 1] = scores[j];
+                    j--;
+                }
+                targets[j + 1] = target;
+                scores[j + 1] = score;
+            }
+        }
+    }
+}
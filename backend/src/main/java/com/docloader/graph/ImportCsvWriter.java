@@ -0,0 +1,116 @@
+package com.docloader.graph;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the rows of one group of nodes or relationships as CSV for neo4j-admin database
+ * import: the header of the group in its own file, name.header.csv, and the rows in
+ * gzip-compressed parts, name-partition-part.csv.gz, each holding up to rowsPerFile rows.
+ * Several writers of the same group with different partitions write in parallel; the
+ * importer reads the parts by the pattern returned from {@link #filePattern}.
+ * <p>
+ * Fields use the importer's defaults: comma delimiter and double quotes, doubled to
+ * escape. Null values are written as empty unquoted fields, which the importer leaves
+ * out, while strings are always quoted. Line breaks in values are replaced by spaces so
+ * no field spans lines.
+ */
+public class ImportCsvWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final String name;
+    private final int partition;
+    private final long rowsPerFile;
+    private Writer writer;
+    private int part;
+    private long rowsInFile;
+    private long rows;
+
+    public ImportCsvWriter(Path directory, String name, int partition, long rowsPerFile) {
+        this.directory = directory;
+        this.name = name;
+        this.partition = partition;
+        this.rowsPerFile = rowsPerFile;
+    }
+
+    /**
+     * Write the header file of a group, such as "id:ID(Document)", ":LABEL", "fileSize:long"
+     */
+    public static void writeHeader(Path directory, String name, String... columns) throws IOException {
+        Files.writeString(directory.resolve(name + ".header.csv"), String.join(",", columns) + "\n", StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the argument value naming the header and parts of a group, for --nodes or --relationships
+     */
+    public static String filePattern(Path directory, String name) {
+        return directory.resolve(name + ".header.csv") + "," + directory.resolve(name + "-[0-9]+-[0-9]+\\.csv\\.gz");
+    }
+
+    public void row(Object... values) throws IOException {
+        if (writer == null || rowsInFile >= rowsPerFile) {
+            nextFile();
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            write(values[i]);
+        }
+        writer.write('\n');
+        rowsInFile++;
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void nextFile() throws IOException {
+        close();
+        Path file = directory.resolve(String.format("%s-%03d-%05d.csv.gz", name, partition, part++));
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        rowsInFile = 0;
+    }
+
+    private void write(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            writer.write(value.toString());
+            return;
+        }
+        String text = value.toString();
+        writer.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                writer.write("\"\"");
+            } else if (c == '\n' || c == '\r') {
+                writer.write(' ');
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,493 @@
+package com.docloader.lexical;
+
+import com.docloader.vector.VectorMetadata;
+import com.docloader.vector.VectorSearchFilter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Inverted index over the chunk texts of one tenant, scored with BM25. Each chunk gets
+ * the next ordinal when its document is indexed, so postings lists only append; a
+ * replaced or removed document leaves its old postings behind, skipped by searches.
+ * Documents are scored by their best matching chunk.
+ * <p>
+ * The analyzed chunks of each indexed document are appended to a log in the index
+ * directory, together with removals, so the index can be rebuilt on open. Records are
+ * length-prefixed and checksummed; a torn record at the end of the log is cut off. The
+ * log is rewritten without superseded records when they outnumber the live ones.
+ */
+@Slf4j
+public class InvertedIndex implements Closeable {
+
+    private static final String LOG_FILE = "postings.log";
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int FLAG_JOB = 1;
+    private static final int FLAG_UPLOADER = 2;
+    private static final int FLAG_CONTENT_TYPE = 4;
+
+    private final Path directory;
+    private final float k1;
+    private final float b;
+    private FileChannel channel;
+
+    private final Map<String, PostingsList> postings = new ConcurrentHashMap<>();
+    private final Map<UUID, IndexedDocument> documents = new ConcurrentHashMap<>();
+    private volatile Chunk[] chunks = new Chunk[64];
+    private volatile int chunkCount;
+    // Totals over the chunks of live documents, for the BM25 length normalization
+    private volatile int liveChunks;
+    private volatile long liveLength;
+
+    private InvertedIndex(Path directory, float k1, float b) {
+        this.directory = directory;
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * Open the index in a directory, creating it if needed
+     * @param k1 the BM25 term frequency saturation
+     * @param b the BM25 length normalization, from 0 for none to 1 for full
+     */
+    public static InvertedIndex open(Path directory, float k1, float b) throws IOException {
+        Files.createDirectories(directory);
+        InvertedIndex index = new InvertedIndex(directory, k1, b);
+        index.restore();
+        return index;
+    }
+
+    /**
+     * Index the chunks of a document, replacing those indexed for it before
+     * @param chunkTexts the text of each chunk, in chunk index order
+     * @param metadata the attributes searches can filter on, or null
+     */
+    public synchronized void replace(UUID documentId, List<String> chunkTexts, VectorMetadata metadata) throws IOException {
+        List<Map<String, Integer>> frequencies = new ArrayList<>(chunkTexts.size());
+        int[] lengths = new int[chunkTexts.size()];
+        for (int i = 0; i < chunkTexts.size(); i++) {
+            List<String> terms = TextAnalyzer.terms(chunkTexts.get(i));
+            Map<String, Integer> counts = new HashMap<>();
+            for (String term : terms) {
+                counts.merge(term, 1, Integer::sum);
+            }
+            frequencies.add(counts);
+            lengths[i] = terms.size();
+        }
+
+        append(putRecord(documentId, metadata, lengths, frequencies));
+        apply(documentId, metadata, lengths, frequencies);
+    }
+
+    /**
+     * @return whether the document was indexed
+     */
+    public synchronized boolean remove(UUID documentId) throws IOException {
+        if (!documents.containsKey(documentId)) {
+            return false;
+        }
+        append(removeRecord(documentId));
+        unlink(documentId);
+        return true;
+    }
+
+    public boolean contains(UUID documentId) {
+        return documents.containsKey(documentId);
+    }
+
+    public Set<UUID> documentIds() {
+        return documents.keySet();
+    }
+
+    /**
+     * @return the documents of the best BM25 scores for the query terms, best first
+     * @param filter the attributes documents must have, or null
+     */
+    public List<LexicalHit> search(String query, int limit, VectorSearchFilter filter) {
+        List<String> terms = TextAnalyzer.terms(query).stream().distinct().toList();
+        int count = chunkCount;
+        Chunk[] snapshot = chunks;
+        int live = liveChunks;
+        if (terms.isEmpty() || live == 0 || limit <= 0) {
+            return List.of();
+        }
+        float averageLength = Math.max(1f, (float) liveLength / live);
+
+        // Term at a time into per-chunk accumulators, then the best chunk per document
+        ScoreAccumulator scores = new ScoreAccumulator();
+        for (String term : terms) {
+            PostingsList list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            // Postings of replaced and removed chunks still count until the index is reopened
+            int documentFrequency = Math.min(list.size(), live);
+            float idf = (float) Math.log(1 + (live - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            PostingsList.Cursor cursor = list.cursor();
+            while (cursor.next()) {
+                int ordinal = cursor.ordinal();
+                if (ordinal >= count) {
+                    break;
+                }
+                Chunk chunk = snapshot[ordinal];
+                if (chunk.document.removed || !matches(chunk.document.metadata, filter)) {
+                    continue;
+                }
+                float frequency = cursor.frequency();
+                float norm = k1 * (1 - b + b * chunk.length / averageLength);
+                float score = idf * frequency * (k1 + 1) / (frequency + norm);
+                scores.add(ordinal, score);
+            }
+        }
+
+        Map<IndexedDocument, LexicalHit> best = new HashMap<>();
+        scores.forEach((ordinal, score) -> {
+            Chunk chunk = snapshot[ordinal];
+            LexicalHit current = best.get(chunk.document);
+            if (current == null || score > current.getScore()) {
+                best.put(chunk.document, new LexicalHit(chunk.document.id, chunk.chunkIndex, score));
+            }
+        });
+
+        PriorityQueue<LexicalHit> top = new PriorityQueue<>(limit + 1, (x, y) -> Float.compare(x.getScore(), y.getScore()));
+        for (LexicalHit hit : best.values()) {
+            top.add(hit);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<LexicalHit> hits = new ArrayList<>(top);
+        hits.sort((x, y) -> Float.compare(y.getScore(), x.getScore()));
+        return hits;
+    }
+
+    /**
+     * @return the encoded size of all postings lists in bytes
+     */
+    public long postingsSizeInBytes() {
+        long size = 0;
+        for (PostingsList list : postings.values()) {
+            size += list.sizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static boolean matches(VectorMetadata metadata, VectorSearchFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return true;
+        }
+        if (metadata == null) {
+            return false;
+        }
+        return (filter.getJobId() == null || filter.getJobId().equals(metadata.getJobId()))
+                && (filter.getUploadedBy() == null || filter.getUploadedBy().equals(metadata.getUploadedBy()))
+                && (filter.getContentType() == null || filter.getContentType().equals(metadata.getContentType()));
+    }
+
+    // Caller holds the lock
+    private void apply(UUID documentId, VectorMetadata metadata, int[] lengths, List<Map<String, Integer>> frequencies) {
+        unlink(documentId);
+        IndexedDocument document = new IndexedDocument(documentId, metadata);
+
+        int first = chunkCount;
+        Chunk[] current = chunks;
+        if (first + lengths.length > current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, first + lengths.length));
+        }
+        long length = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            current[first + i] = new Chunk(document, i, lengths[i]);
+            length += lengths[i];
+        }
+        // Chunks are published before the postings that refer to them
+        chunks = current;
+        chunkCount = first + lengths.length;
+
+        for (int i = 0; i < frequencies.size(); i++) {
+            for (Map.Entry<String, Integer> entry : frequencies.get(i).entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), key -> new PostingsList()).add(first + i, entry.getValue());
+            }
+        }
+        document.chunks = lengths.length;
+        document.length = length;
+        documents.put(documentId, document);
+        liveChunks += lengths.length;
+        liveLength += length;
+    }
+
+    // Caller holds the lock
+    private void unlink(UUID documentId) {
+        IndexedDocument previous = documents.remove(documentId);
+        if (previous != null) {
+            previous.removed = true;
+            liveChunks -= previous.chunks;
+            liveLength -= previous.length;
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        write(channel, payload);
+        channel.force(false);
+    }
+
+    private static void write(FileChannel channel, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private static byte[] putRecord(UUID documentId, VectorMetadata metadata, int[] lengths,
+                                    List<Map<String, Integer>> frequencies) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(RECORD_PUT);
+            out.writeLong(documentId.getMostSignificantBits());
+            out.writeLong(documentId.getLeastSignificantBits());
+            writeMetadata(out, metadata);
+            out.writeInt(lengths.length);
+            for (int i = 0; i < lengths.length; i++) {
+                out.writeInt(lengths[i]);
+                out.writeInt(frequencies.get(i).size());
+                for (Map.Entry<String, Integer> entry : frequencies.get(i).entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] removeRecord(UUID documentId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(RECORD_REMOVE);
+            out.writeLong(documentId.getMostSignificantBits());
+            out.writeLong(documentId.getLeastSignificantBits());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMetadata(DataOutputStream out, VectorMetadata metadata) throws IOException {
+        int flags = metadata == null ? 0
+                : (metadata.getJobId() != null ? FLAG_JOB : 0)
+                | (metadata.getUploadedBy() != null ? FLAG_UPLOADER : 0)
+                | (metadata.getContentType() != null ? FLAG_CONTENT_TYPE : 0);
+        out.writeByte(flags);
+        if ((flags & FLAG_JOB) != 0) {
+            out.writeLong(metadata.getJobId().getMostSignificantBits());
+            out.writeLong(metadata.getJobId().getLeastSignificantBits());
+        }
+        if ((flags & FLAG_UPLOADER) != 0) {
+            out.writeLong(metadata.getUploadedBy().getMostSignificantBits());
+            out.writeLong(metadata.getUploadedBy().getLeastSignificantBits());
+        }
+        if ((flags & FLAG_CONTENT_TYPE) != 0) {
+            out.writeUTF(metadata.getContentType());
+        }
+    }
+
+    private static VectorMetadata readMetadata(DataInputStream in) throws IOException {
+        int flags = in.readByte();
+        if (flags == 0) {
+            return null;
+        }
+        UUID jobId = (flags & FLAG_JOB) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+        UUID uploadedBy = (flags & FLAG_UPLOADER) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+        String contentType = (flags & FLAG_CONTENT_TYPE) != 0 ? in.readUTF() : null;
+        return new VectorMetadata(jobId, uploadedBy, contentType);
+    }
+
+    // Replays the log, keeping the last put of each document that was not removed after it
+    private void restore() throws IOException {
+        Path file = directory.resolve(LOG_FILE);
+        Map<UUID, byte[]> live = new LinkedHashMap<>();
+        int records = 0;
+        long valid;
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer contents = ByteBuffer.allocate((int) reader.size());
+            while (contents.hasRemaining() && reader.read(contents, contents.position()) > 0) {
+                // Reads until the buffer is full
+            }
+            contents.flip();
+
+            valid = 0;
+            while (contents.remaining() >= 4) {
+                int length = contents.getInt();
+                if (length < 17 || contents.remaining() < length + 4) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                contents.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (contents.getInt() != (int) crc.getValue()) {
+                    break;
+                }
+                ByteBuffer header = ByteBuffer.wrap(payload);
+                byte type = header.get();
+                UUID documentId = new UUID(header.getLong(), header.getLong());
+                // Re-inserted so the order follows the latest put
+                live.remove(documentId);
+                if (type == RECORD_PUT) {
+                    live.put(documentId, payload);
+                }
+                records++;
+                valid = contents.position();
+            }
+            if (valid < reader.size()) {
+                log.warn("Truncating {} bytes of incomplete postings at the end of {}", reader.size() - valid, file);
+                reader.truncate(valid);
+            }
+        }
+
+        for (byte[] payload : live.values()) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            in.readByte();
+            UUID documentId = new UUID(in.readLong(), in.readLong());
+            VectorMetadata metadata = readMetadata(in);
+            int[] lengths = new int[in.readInt()];
+            List<Map<String, Integer>> frequencies = new ArrayList<>(lengths.length);
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = in.readInt();
+                int terms = in.readInt();
+                Map<String, Integer> counts = new HashMap<>(terms * 2);
+                for (int t = 0; t < terms; t++) {
+                    counts.put(in.readUTF(), in.readInt());
+                }
+                frequencies.add(counts);
+            }
+            apply(documentId, metadata, lengths, frequencies);
+        }
+
+        if (records > 2 * live.size() + 16) {
+            // Superseded records outnumber the live ones
+            Path compacted = directory.resolve(LOG_FILE + ".tmp");
+            try (FileChannel writer = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (byte[] payload : live.values()) {
+                    write(writer, payload);
+                }
+                writer.force(false);
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Compacted postings log {} from {} to {} records", file, records, live.size());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.debug("Opened inverted index {} with {} documents and {} terms", directory, documents.size(), postings.size());
+    }
+
+    // Open addressing from chunk ordinal to summed score, without boxing
+    private static final class ScoreAccumulator {
+        private int[] keys = new int[256];
+        private float[] values = new float[256];
+        private int size;
+
+        void add(int ordinal, float score) {
+            // Keys are stored plus one so zero marks a free slot
+            int key = ordinal + 1;
+            int mask = keys.length - 1;
+            int slot = (key * 0x9e3779b9) >>> 1 & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    values[slot] = score;
+                    grow();
+                    return;
+                }
+            }
+            values[slot] += score;
+        }
+
+        void forEach(ScoreConsumer consumer) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    consumer.accept(keys[slot] - 1, values[slot]);
+                }
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new float[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = (oldKeys[i] * 0x9e3779b9) >>> 1 & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ScoreConsumer {
+        void accept(int ordinal, float score);
+    }
+
+    private static final class IndexedDocument {
+        private final UUID id;
+        private final VectorMetadata metadata;
+        private volatile boolean removed;
+        private int chunks;
+        private long length;
+
+        private IndexedDocument(UUID id, VectorMetadata metadata) {
+            this.id = id;
+            this.metadata = metadata;
+        }
+    }
+
+    private static final class Chunk {
+        private final IndexedDocument document;
+        private final int chunkIndex;
+        private final int length;
+
+        private Chunk(IndexedDocument document, int chunkIndex, int length) {
+            this.document = document;
+            this.chunkIndex = chunkIndex;
+            this.length = length;
+        }
+    }
+}
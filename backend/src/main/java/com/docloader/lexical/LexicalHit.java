@@ -0,0 +1,17 @@
+package com.docloader.lexical;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * A document matching a lexical query, scored by its best matching chunk
+ */
+@Getter
+@AllArgsConstructor
+public class LexicalHit {
+    private final UUID documentId;
+    private final int chunkIndex;
+    private final float score;
+}
@@ -0,0 +1,117 @@
+package com.docloader.lexical;
+
+import java.util.Arrays;
+
+/**
+ * The chunks containing one term, as pairs of chunk ordinal and term frequency in
+ * increasing ordinal order. Ordinals are stored as the varint-encoded difference to the
+ * previous ordinal and frequencies as varints, so most postings take two bytes.
+ * <p>
+ * Chunks get increasing ordinals as they are indexed, so postings only ever append. A
+ * single writer at a time may add; readers need no locking and see every posting whose
+ * addition happened before their cursor was created.
+ */
+public class PostingsList {
+
+    private volatile byte[] bytes = new byte[8];
+    // Written after the bytes, so readers that see a length see the bytes below it
+    private volatile int length;
+    private volatile int size;
+    private int lastOrdinal = -1;
+
+    /**
+     * Add a posting for an ordinal greater than all ordinals added before
+     */
+    public void add(int ordinal, int frequency) {
+        if (ordinal <= lastOrdinal) {
+            throw new IllegalArgumentException("Ordinal " + ordinal + " added after " + lastOrdinal);
+        }
+        byte[] current = bytes;
+        int position = length;
+        if (position + 10 > current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, position + 10));
+        }
+        position = writeVarint(current, position, ordinal - lastOrdinal);
+        position = writeVarint(current, position, frequency);
+        lastOrdinal = ordinal;
+        bytes = current;
+        size++;
+        length = position;
+    }
+
+    /**
+     * @return the number of postings, including those of chunks deleted since
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the encoded size in bytes
+     */
+    public int sizeInBytes() {
+        return length;
+    }
+
+    public Cursor cursor() {
+        int end = length;
+        return new Cursor(bytes, end);
+    }
+
+    private static int writeVarint(byte[] target, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            target[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Forward iteration over a snapshot of the postings
+     */
+    public static final class Cursor {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+        private int ordinal = -1;
+        private int frequency;
+
+        private Cursor(byte[] bytes, int end) {
+            this.bytes = bytes;
+            this.end = end;
+        }
+
+        /**
+         * @return false once all postings have been read
+         */
+        public boolean next() {
+            if (position >= end) {
+                return false;
+            }
+            ordinal += readVarint();
+            frequency = readVarint();
+            return true;
+        }
+
+        public int ordinal() {
+            return ordinal;
+        }
+
+        public int frequency() {
+            return frequency;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
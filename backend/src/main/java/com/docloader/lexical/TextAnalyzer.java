@@ -0,0 +1,78 @@
+package com.docloader.lexical;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into lowercase terms for the inverted index. Runs of letters and digits
+ * joined by '-', '_', '.', '/' or ':' are kept whole as well as split into their parts,
+ * so part numbers, identifiers and versions such as "AB-1234-X" or "v2.3.1" match
+ * exactly while their parts still match on their own.
+ */
+public final class TextAnalyzer {
+
+    // Longer tokens are mostly encoded data rather than words
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * @return the terms of the text in order, with repetitions
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            if (!isTermChar(lower.charAt(i))) {
+                i++;
+                continue;
+            }
+            // A compound: parts of term characters separated by single joiners
+            int start = i;
+            int parts = 0;
+            int partStart = i;
+            List<int[]> bounds = new ArrayList<>(2);
+            while (true) {
+                while (i < length && isTermChar(lower.charAt(i))) {
+                    i++;
+                }
+                bounds.add(new int[]{partStart, i});
+                parts++;
+                if (i + 1 < length && isJoiner(lower.charAt(i)) && isTermChar(lower.charAt(i + 1))) {
+                    i++;
+                    partStart = i;
+                } else {
+                    break;
+                }
+            }
+            if (parts > 1) {
+                add(terms, lower.substring(start, i));
+            }
+            for (int[] bound : bounds) {
+                add(terms, lower.substring(bound[0], bound[1]));
+            }
+        }
+        return terms;
+    }
+
+    private static void add(List<String> terms, String term) {
+        if (term.length() <= MAX_TERM_LENGTH) {
+            terms.add(term);
+        }
+    }
+
+    private static boolean isTermChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.' || c == '/' || c == ':';
+    }
+}
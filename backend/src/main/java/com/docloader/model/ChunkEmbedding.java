@@ -0,0 +1,62 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Embedding of one content-defined chunk, keyed by the fingerprint of the chunk text
+ * so documents sharing the chunk reuse it instead of calling the embedding model again
+ */
+@Entity
+@Table(name = "chunk_embeddings", schema = "app",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"tenant_id", "fingerprint", "model"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkEmbedding {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "tenant_id", nullable = false)
+    private UUID tenantId;
+
+    @Column(nullable = false)
+    private String fingerprint;
+
+    @Column(nullable = false)
+    private String model;
+
+    @Column(nullable = false)
+    private Integer dimensions;
+
+    @Column(nullable = false)
+    private byte[] embedding;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public float[] getVector() {
+        float[] vector = new float[dimensions];
+        ByteBuffer.wrap(embedding).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public void setVector(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        this.embedding = buffer.array();
+        this.dimensions = vector.length;
+    }
+}
@@ -0,0 +1,83 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An upload the client sends straight to a tenant bucket with pre-signed URLs,
+ * either as a single PUT or as the parts of an S3 multipart upload.
+ */
+@Entity
+@Table(name = "direct_uploads", schema = "app")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectUpload {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "md5_hash", nullable = false)
+    private String md5Hash;
+
+    @Column(name = "s3_bucket_config_id", nullable = false)
+    private UUID s3BucketConfigId;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    /**
+     * Null for single PUT uploads
+     */
+    @Column(name = "s3_upload_id")
+    private String s3UploadId;
+
+    @Column(name = "part_size")
+    private Long partSize;
+
+    @Column(name = "uploaded_by", nullable = false)
+    private UUID uploadedBy;
+
+    @Column(name = "tenant_id", nullable = false)
+    private UUID tenantId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private UploadSession.UploadStatus status = UploadSession.UploadStatus.ACTIVE;
+
+    @Column(name = "document_id")
+    private UUID documentId;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public boolean isMultipart() {
+        return s3UploadId != null;
+    }
+
+    public int getPartCount() {
+        return isMultipart() ? (int) ((fileSize + partSize - 1) / partSize) : 1;
+    }
+}
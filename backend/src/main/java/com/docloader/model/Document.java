@@ -60,6 +60,27 @@ public class Document {
     @Column(name = "md5_hash", nullable = false)
     private String md5Hash;
     
+    // Set for documents uploaded directly to a tenant bucket; others live in the configured storage backend
+    @Column(name = "s3_bucket_config_id")
+    private UUID s3BucketConfigId;
+    
+    // Whether we wrote the bucket object ourselves, as for direct uploads, and may delete it with the document.
+    // Objects registered from a tenant's bucket belong to the tenant and are never deleted.
+    @Column(name = "bucket_object_owned", nullable = false)
+    private boolean bucketObjectOwned;
+    
+    // ETag the bucket object had when it was registered; until a multipart object is processed it is also its md5Hash
+    @Column(name = "bucket_etag")
+    private String bucketETag;
+    
+    // Set when the document was found to be a near-duplicate of an already processed one
+    @Column(name = "canonical_document_id")
+    private UUID canonicalDocumentId;
+    
+    // Estimated similarity to the canonical document, the score of the NEAR_DUPLICATE_OF relationship in the graph
+    @Column(name = "canonical_similarity")
+    private Double canonicalSimilarity;
+    
     public enum DocumentStatus {
         PENDING, PROCESSING, PROCESSED, FAILED, SKIPPED
     }
@@ -0,0 +1,41 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * Position of a content-defined chunk within the extracted text of a document
+ */
+@Entity
+@Table(name = "document_chunks", schema = "app",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"document_id", "chunk_index"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "document_id", nullable = false)
+    private UUID documentId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    @Column(nullable = false)
+    private String fingerprint;
+
+    @Column(name = "start_offset", nullable = false)
+    private Integer startOffset;
+
+    @Column(name = "length", nullable = false)
+    private Integer length;
+}
@@ -0,0 +1,55 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * MinHash signature of a document, used to rebuild the tenant's near-duplicate
+ * index after a restart and to index a near-duplicate once it becomes canonical
+ */
+@Entity
+@Table(name = "document_signatures", schema = "app")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSignature {
+
+    @Id
+    @Column(name = "document_id")
+    private UUID documentId;
+
+    @Column(name = "tenant_id", nullable = false)
+    private UUID tenantId;
+
+    @Column(name = "minhash", nullable = false)
+    private byte[] minhash;
+
+    // Only canonical documents are in the index; near-duplicates are linked to one instead
+    @Column(nullable = false)
+    private boolean canonical;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public long[] getSignature() {
+        long[] signature = new long[minhash.length / Long.BYTES];
+        ByteBuffer.wrap(minhash).asLongBuffer().get(signature);
+        return signature;
+    }
+
+    public void setSignature(long[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(signature.length * Long.BYTES);
+        buffer.asLongBuffer().put(signature);
+        this.minhash = buffer.array();
+    }
+}
@@ -0,0 +1,88 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A resumable upload in progress. Chunks of a fixed size are written at their
+ * offsets, in any order, into either a preallocated file or an S3 multipart upload.
+ */
+@Entity
+@Table(name = "upload_sessions", schema = "app")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Long chunkSize;
+
+    @Column(name = "storage_type", nullable = false)
+    private String storageType;
+
+    /**
+     * Preallocated file path for filesystem storage, object key for S3 storage
+     */
+    @Column(name = "storage_path", nullable = false)
+    private String storagePath;
+
+    @Column(name = "s3_upload_id")
+    private String s3UploadId;
+
+    @Column(name = "uploaded_by", nullable = false)
+    private UUID uploadedBy;
+
+    @Column(name = "tenant_id")
+    private UUID tenantId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private UploadStatus status = UploadStatus.ACTIVE;
+
+    @Column(name = "md5_hash")
+    private String md5Hash;
+
+    @Column(name = "document_id")
+    private UUID documentId;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public int getChunkCount() {
+        return (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    public enum UploadStatus {
+        ACTIVE, COMPLETED, ABORTED
+    }
+}
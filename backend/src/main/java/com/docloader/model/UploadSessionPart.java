@@ -0,0 +1,47 @@
+package com.docloader.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_session_parts", schema = "app",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"session_id", "part_number"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionPart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "session_id", nullable = false)
+    private UUID sessionId;
+
+    /**
+     * 1-based part number, derived from the chunk offset and the session chunk size
+     */
+    @Column(name = "part_number", nullable = false)
+    private Integer partNumber;
+
+    @Column(name = "part_offset", nullable = false)
+    private Long offset;
+
+    @Column(name = "part_size", nullable = false)
+    private Long size;
+
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
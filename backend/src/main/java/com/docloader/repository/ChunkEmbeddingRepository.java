@@ -0,0 +1,15 @@
+package com.docloader.repository;
+
+import com.docloader.model.ChunkEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ChunkEmbeddingRepository extends JpaRepository<ChunkEmbedding, UUID> {
+    
+    List<ChunkEmbedding> findByTenantIdAndModelAndFingerprintIn(UUID tenantId, String model, Collection<String> fingerprints);
+}
@@ -0,0 +1,16 @@
+package com.docloader.repository;
+
+import com.docloader.model.DirectUpload;
+import com.docloader.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface DirectUploadRepository extends JpaRepository<DirectUpload, UUID> {
+    
+    List<DirectUpload> findByStatusAndExpiresAtBefore(UploadSession.UploadStatus status, LocalDateTime time);
+}
@@ -0,0 +1,20 @@
+package com.docloader.repository;
+
+import com.docloader.model.DocumentChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, UUID> {
+    
+    List<DocumentChunk> findByDocumentIdOrderByChunkIndex(UUID documentId);
+    
+    @Modifying
+    @Query("DELETE FROM DocumentChunk c WHERE c.documentId = ?1")
+    int deleteByDocumentId(UUID documentId);
+}
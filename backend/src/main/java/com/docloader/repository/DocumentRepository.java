@@ -3,9 +3,13 @@ package com.docloader.repository;
 import com.docloader.model.Document;
 import com.docloader.model.DocumentJob;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -45,6 +49,32 @@ public interface DocumentRepository extends JpaRepository<Document, UUID> {
     
     boolean existsByFilePathAndMd5Hash(String filePath, String md5Hash);
     
+    /**
+     * Find the documents registered for objects of a bucket
+     */
+    List<Document> findByS3BucketConfigIdAndFilePathIn(UUID s3BucketConfigId, Collection<String> filePaths);
+    
+    /**
+     * Find the near-duplicates linked to a canonical document, oldest first
+     */
+    List<Document> findByCanonicalDocumentIdOrderByCreatedAtAsc(UUID canonicalDocumentId);
+    
     @Query("SELECT COUNT(d) FROM Document d WHERE d.job.id = ?1 AND d.status = ?2")
     long countByJobIdAndStatus(UUID jobId, Document.DocumentStatus status);
+    
+    /**
+     * Set the status and processing time of many documents in one statement
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Document d SET d.status = ?2, d.processedAt = ?3 WHERE d.id IN ?1")
+    int updateStatus(Collection<UUID> ids, Document.DocumentStatus status, LocalDateTime processedAt);
+    
+    /**
+     * Attach many documents to a job in one statement
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Document d SET d.job = ?2 WHERE d.id IN ?1")
+    int attachToJob(Collection<UUID> ids, DocumentJob job);
 } 
\ No newline at end of file
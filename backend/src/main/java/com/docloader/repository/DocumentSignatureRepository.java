@@ -0,0 +1,14 @@
+package com.docloader.repository;
+
+import com.docloader.model.DocumentSignature;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface DocumentSignatureRepository extends JpaRepository<DocumentSignature, UUID> {
+    
+    List<DocumentSignature> findByTenantIdAndCanonicalTrue(UUID tenantId);
+}
@@ -0,0 +1,17 @@
+package com.docloader.repository;
+
+import com.docloader.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+    
+    List<UploadSession> findByUploadedByAndStatus(UUID uploadedBy, UploadSession.UploadStatus status);
+    
+    List<UploadSession> findByStatusAndExpiresAtBefore(UploadSession.UploadStatus status, LocalDateTime time);
+}
@@ -0,0 +1,47 @@
+package com.docloader.scheduler;
+
+import com.docloader.service.SimilarityGraphService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SimilarityGraphScheduler {
+
+    private final SimilarityGraphService similarityGraphService;
+
+    @Value("${docloader.graph.similarity.incremental:false}")
+    private boolean incremental;
+
+    /**
+     * Rebuilds the similarity relationships of all tenants
+     * Runs on docloader.graph.similarity.cron, never by default
+     */
+    @Scheduled(cron = "${docloader.graph.similarity.cron:-}")
+    public void rebuildSimilarityGraphs() {
+        if (!similarityGraphService.isEnabled()) {
+            log.debug("Skipping similarity graphs: no vector store with document vectors or no Neo4j");
+            return;
+        }
+        log.info("Rebuilding similarity graphs");
+        similarityGraphService.buildAll();
+    }
+
+    /**
+     * Links the documents indexed since the last rebuild or update of each tenant
+     * Runs every docloader.graph.similarity.update-interval ms when docloader.graph.similarity.incremental is set
+     */
+    @Scheduled(fixedDelayString = "${docloader.graph.similarity.update-interval:300000}",
+            initialDelayString = "${docloader.graph.similarity.update-interval:300000}")
+    public void updateSimilarityGraphs() {
+        if (!incremental || !similarityGraphService.isEnabled()) {
+            return;
+        }
+        log.debug("Updating similarity graphs");
+        similarityGraphService.updateAll();
+    }
+}
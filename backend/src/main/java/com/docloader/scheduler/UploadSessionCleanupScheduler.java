@@ -0,0 +1,32 @@
+package com.docloader.scheduler;
+
+import com.docloader.service.DirectUploadService;
+import com.docloader.service.ResumableUploadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionCleanupScheduler {
+
+    private final ResumableUploadService resumableUploadService;
+    private final DirectUploadService directUploadService;
+
+    /**
+     * Aborts expired resumable and direct uploads and releases their storage
+     * Runs every hour
+     */
+    @Scheduled(fixedRate = 3600000)
+    public void expireUploadSessions() {
+        log.debug("Checking for expired upload sessions...");
+        
+        int expired = resumableUploadService.expireSessions() + directUploadService.expireUploads();
+        
+        if (expired > 0) {
+            log.info("Expired {} upload sessions", expired);
+        }
+    }
+}
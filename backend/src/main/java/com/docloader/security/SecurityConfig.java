@@ -119,8 +119,8 @@ public class SecurityConfig {
         
         // Configure allowed methods and headers
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-TenantID", "Accept", "Origin", "X-Requested-With"));
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "X-TenantID"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-TenantID", "Accept", "Origin", "X-Requested-With", "Upload-Offset"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "X-TenantID", "Upload-Offset", "Location"));
         
         // Max age for preflight requests
         configuration.setMaxAge(maxAge);
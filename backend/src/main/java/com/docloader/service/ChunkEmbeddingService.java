@@ -0,0 +1,188 @@
+package com.docloader.service;
+
+import com.docloader.dedup.FastCdcChunker;
+import com.docloader.model.ChunkEmbedding;
+import com.docloader.model.Document;
+import com.docloader.model.DocumentChunk;
+import com.docloader.repository.ChunkEmbeddingRepository;
+import com.docloader.repository.DocumentChunkRepository;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Splits extracted text into content-defined chunks and embeds them. Embeddings are
+ * cached per tenant by chunk fingerprint, so a new version of a document only sends
+ * the chunks that actually changed to the embedding model.
+ */
+@Service
+@Slf4j
+public class ChunkEmbeddingService {
+
+    // Keeps IN lists and embedding requests to a reasonable size
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    // Chunks cached by another job first are left as they are; the vectors are the same
+    private static final String INSERT_EMBEDDING = "INSERT INTO app.chunk_embeddings "
+            + "(tenant_id, fingerprint, model, dimensions, embedding) VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (tenant_id, fingerprint, model) DO NOTHING";
+
+    private final ChunkEmbeddingRepository chunkEmbeddingRepository;
+    private final DocumentChunkRepository documentChunkRepository;
+    private final EmbeddingModel embeddingModel;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final FastCdcChunker chunker;
+    private final VectorWriteBehindService vectorWriteBehindService;
+    private final LexicalIndexService lexicalIndexService;
+    private final EmbeddingTruncation embeddingTruncation;
+
+    // Identifies the embedding model in the cache; change it when switching models
+    @Value("${docloader.embedding.model-id:default}")
+    private String modelId;
+
+    @Value("${docloader.embedding.batch-size:64}")
+    private int embeddingBatchSize;
+
+    public ChunkEmbeddingService(
+            ChunkEmbeddingRepository chunkEmbeddingRepository,
+            DocumentChunkRepository documentChunkRepository,
+            EmbeddingModel embeddingModel,
+            PlatformTransactionManager transactionManager,
+            DataSource dataSource,
+            VectorWriteBehindService vectorWriteBehindService,
+            LexicalIndexService lexicalIndexService,
+            EmbeddingTruncation embeddingTruncation,
+            @Value("${docloader.chunking.min-size:512}") int minChunkSize,
+            @Value("${docloader.chunking.avg-size:2048}") int avgChunkSize,
+            @Value("${docloader.chunking.max-size:8192}") int maxChunkSize) {
+        this.chunkEmbeddingRepository = chunkEmbeddingRepository;
+        this.documentChunkRepository = documentChunkRepository;
+        this.embeddingModel = embeddingModel;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.chunker = new FastCdcChunker(minChunkSize, avgChunkSize, maxChunkSize);
+        this.vectorWriteBehindService = vectorWriteBehindService;
+        this.lexicalIndexService = lexicalIndexService;
+        this.embeddingTruncation = embeddingTruncation;
+    }
+
+    /**
+     * Chunk and embed the text of a document, replace its chunk list and its lexical index
+     * entries, and queue its new vectors for the vector store
+     * @param tenantId the tenant whose embedding cache is used, or null to embed without caching
+     * @param quantization the encoding of the search codes of the vectors, or null for the store's default
+     * @return completes with true once the vectors are stored and the document is marked
+     * PROCESSED, or with false once the document is marked FAILED
+     */
+    public CompletableFuture<Boolean> embedDocument(UUID tenantId, Document document, String text, Quantization quantization) {
+        List<FastCdcChunker.TextChunk> chunks = chunker.chunk(text);
+
+        // First occurrence of each distinct chunk
+        Map<String, String> textsByFingerprint = new LinkedHashMap<>();
+        for (FastCdcChunker.TextChunk chunk : chunks) {
+            textsByFingerprint.putIfAbsent(chunk.getFingerprint(), chunk.getText());
+        }
+
+        Map<String, float[]> vectors = tenantId != null ? findCached(tenantId, textsByFingerprint.keySet()) : new HashMap<>();
+        Map<String, String> missing = new LinkedHashMap<>(textsByFingerprint);
+        missing.keySet().removeAll(vectors.keySet());
+        vectors.putAll(embed(tenantId, missing));
+
+        log.info("Document {}: {} chunks, {} distinct, {} embedded, {} reused", document.getId(), chunks.size(),
+                textsByFingerprint.size(), missing.size(), textsByFingerprint.size() - missing.size());
+
+        List<DocumentChunk> documentChunks = new ArrayList<>(chunks.size());
+        List<VectorRecord> records = new ArrayList<>(chunks.size());
+        for (FastCdcChunker.TextChunk chunk : chunks) {
+            DocumentChunk documentChunk = new DocumentChunk();
+            documentChunk.setDocumentId(document.getId());
+            documentChunk.setChunkIndex(chunk.getIndex());
+            documentChunk.setFingerprint(chunk.getFingerprint());
+            documentChunk.setStartOffset(chunk.getStartOffset());
+            documentChunk.setLength(chunk.getText().length());
+            documentChunks.add(documentChunk);
+            records.add(new VectorRecord(document.getId(), chunk.getIndex(), chunk.getFingerprint(),
+                    embeddingTruncation.apply(vectors.get(chunk.getFingerprint()))));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            documentChunkRepository.deleteByDocumentId(document.getId());
+            documentChunkRepository.saveAll(documentChunks);
+        });
+        lexicalIndexService.indexDocument(tenantId, document, chunks.stream().map(FastCdcChunker.TextChunk::getText).toList());
+
+        return vectorWriteBehindService.submit(tenantId, document, records, quantization);
+    }
+
+    private Map<String, float[]> findCached(UUID tenantId, Iterable<String> fingerprints) {
+        Map<String, float[]> cached = new HashMap<>();
+        List<String> batch = new ArrayList<>(LOOKUP_BATCH_SIZE);
+        for (String fingerprint : fingerprints) {
+            batch.add(fingerprint);
+            if (batch.size() == LOOKUP_BATCH_SIZE) {
+                addCached(tenantId, batch, cached);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            addCached(tenantId, batch, cached);
+        }
+        return cached;
+    }
+
+    private void addCached(UUID tenantId, List<String> fingerprints, Map<String, float[]> cached) {
+        for (ChunkEmbedding embedding : chunkEmbeddingRepository.findByTenantIdAndModelAndFingerprintIn(
+                tenantId, modelId, fingerprints)) {
+            cached.put(embedding.getFingerprint(), embedding.getVector());
+        }
+    }
+
+    private Map<String, float[]> embed(UUID tenantId, Map<String, String> textsByFingerprint) {
+        Map<String, float[]> vectors = new HashMap<>();
+        List<String> fingerprints = new ArrayList<>(textsByFingerprint.keySet());
+
+        for (int from = 0; from < fingerprints.size(); from += embeddingBatchSize) {
+            List<String> batch = fingerprints.subList(from, Math.min(from + embeddingBatchSize, fingerprints.size()));
+            List<float[]> embeddings = embeddingModel.embed(batch.stream().map(textsByFingerprint::get).toList());
+
+            List<ChunkEmbedding> entities = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                vectors.put(batch.get(i), embeddings.get(i));
+
+                ChunkEmbedding entity = new ChunkEmbedding();
+                entity.setTenantId(tenantId);
+                entity.setFingerprint(batch.get(i));
+                entity.setModel(modelId);
+                entity.setVector(embeddings.get(i));
+                entities.add(entity);
+            }
+
+            if (tenantId != null) {
+                jdbcTemplate.batchUpdate(INSERT_EMBEDDING, entities, entities.size(), (ps, entity) -> {
+                    ps.setObject(1, entity.getTenantId());
+                    ps.setString(2, entity.getFingerprint());
+                    ps.setString(3, entity.getModel());
+                    ps.setInt(4, entity.getDimensions());
+                    ps.setBytes(5, entity.getEmbedding());
+                });
+            }
+        }
+        return vectors;
+    }
+}
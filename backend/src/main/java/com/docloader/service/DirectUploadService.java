@@ -0,0 +1,291 @@
+package com.docloader.service;
+
+import com.docloader.dto.DirectUploadRequest;
+import com.docloader.dto.DirectUploadResponse;
+import com.docloader.model.DirectUpload;
+import com.docloader.model.Document;
+import com.docloader.model.S3BucketConfig;
+import com.docloader.model.UploadSession;
+import com.docloader.repository.DirectUploadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Uploads that bypass the application servers: the client PUTs the file, or its parts,
+ * straight to the tenant's bucket with pre-signed URLs, then asks us to confirm the
+ * object with HeadObject and register it as a Document.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DirectUploadService {
+
+    private static final long S3_MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int S3_MAX_PARTS = 10000;
+
+    private final DirectUploadRepository directUploadRepository;
+    private final S3BucketConfigService s3BucketConfigService;
+    private final S3Service s3Service;
+    private final DocumentService documentService;
+
+    // Files above this size are uploaded as S3 multipart uploads
+    @Value("${docloader.uploads.direct.multipart-threshold:100MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${docloader.uploads.direct.part-size:64MB}")
+    private DataSize defaultPartSize;
+
+    @Value("${docloader.uploads.direct.max-file-size:5TB}")
+    private DataSize maxFileSize;
+
+    @Value("${docloader.uploads.direct.url-ttl:1h}")
+    private Duration urlTtl;
+
+    @Value("${docloader.uploads.direct.upload-ttl:24h}")
+    private Duration uploadTtl;
+
+    public DirectUploadResponse createUpload(DirectUploadRequest request, UUID uploadedBy, UUID tenantId) {
+        String filename = StringUtils.cleanPath(request.getFilename());
+        if (filename.contains("..") || filename.contains("/")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Filename contains invalid path sequence: " + filename);
+        }
+
+        long fileSize = request.getFileSize();
+        if (fileSize > maxFileSize.toBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "File exceeds the maximum direct upload size of " + maxFileSize);
+        }
+
+        S3BucketConfig config = resolveBucketConfig(tenantId, request.getBucketConfigId());
+
+        DirectUpload upload = new DirectUpload();
+        upload.setFilename(filename);
+        upload.setContentType(request.getContentType());
+        upload.setFileSize(fileSize);
+        upload.setMd5Hash(request.getMd5Hash().toLowerCase());
+        upload.setS3BucketConfigId(config.getId());
+        upload.setObjectKey(String.format("uploads/%s/%s/%s_%s", tenantId, uploadedBy, UUID.randomUUID(), filename));
+        upload.setUploadedBy(uploadedBy);
+        upload.setTenantId(tenantId);
+        upload.setStatus(UploadSession.UploadStatus.ACTIVE);
+        upload.setExpiresAt(LocalDateTime.now().plus(uploadTtl));
+
+        try {
+            if (fileSize > multipartThreshold.toBytes()) {
+                upload.setPartSize(resolvePartSize(fileSize));
+                upload.setS3UploadId(s3Service.createMultipartUpload(config, upload.getObjectKey(),
+                        request.getContentType()));
+            }
+        } catch (RuntimeException e) {
+            log.error("Error starting direct upload of {}: {}", filename, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to start upload in bucket");
+        }
+
+        DirectUpload saved = directUploadRepository.save(upload);
+        log.info("Created direct upload {} for {} ({} bytes, {} parts)",
+                saved.getId(), filename, fileSize, saved.getPartCount());
+        return toResponse(saved, config);
+    }
+
+    /**
+     * Re-issue the pre-signed URLs of an active upload, e.g. after they expired
+     */
+    public DirectUploadResponse getUpload(UUID uploadId, UUID userId) {
+        DirectUpload upload = getOwnedUpload(uploadId, userId);
+        if (upload.getStatus() != UploadSession.UploadStatus.ACTIVE) {
+            return toResponse(upload, null);
+        }
+        return toResponse(upload, getBucketConfig(upload));
+    }
+
+    /**
+     * Confirm that the object is in the bucket and register it as a Document
+     */
+    public Document completeUpload(UUID uploadId, UUID userId) {
+        DirectUpload upload = getActiveUpload(uploadId, userId);
+        S3BucketConfig config = getBucketConfig(upload);
+
+        if (upload.isMultipart()) {
+            // Take the part ETags from S3 rather than from the client
+            Map<Integer, String> parts = s3Service.listParts(config, upload.getObjectKey(), upload.getS3UploadId());
+            if (parts.size() != upload.getPartCount()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Upload is incomplete: " + parts.size() + " of " + upload.getPartCount() + " parts received");
+            }
+            s3Service.completeMultipartUpload(config, upload.getObjectKey(), upload.getS3UploadId(), parts);
+        }
+
+        S3Service.ObjectInfo object = s3Service.headObject(config, upload.getObjectKey())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "File has not been uploaded yet"));
+
+        if (object.getSize() != upload.getFileSize()) {
+            discard(upload, config);
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Uploaded object has " + object.getSize() + " bytes, expected " + upload.getFileSize());
+        }
+        // Single PUT ETags are the content MD5; S3 already enforced the signed Content-MD5
+        if (!upload.isMultipart() && StorageBackend.isMd5Hex(object.getETag())
+                && !object.getETag().equals(upload.getMd5Hash())) {
+            discard(upload, config);
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Uploaded object does not match its MD5 hash");
+        }
+
+        Document document = new Document();
+        document.setFilename(upload.getFilename());
+        document.setFilePath(upload.getObjectKey());
+        document.setFileSize(object.getSize());
+        document.setContentType(upload.getContentType() != null ? upload.getContentType() : object.getContentType());
+        document.setMd5Hash(upload.getMd5Hash());
+        document.setS3BucketConfigId(config.getId());
+        document.setBucketObjectOwned(true);
+        document.setUploadedBy(userId);
+        document.setStatus(Document.DocumentStatus.PENDING);
+        Document saved = documentService.saveDocument(document);
+
+        upload.setStatus(UploadSession.UploadStatus.COMPLETED);
+        upload.setDocumentId(saved.getId());
+        directUploadRepository.save(upload);
+
+        log.info("Completed direct upload {} as document {}", uploadId, saved.getId());
+        return saved;
+    }
+
+    public void abortUpload(UUID uploadId, UUID userId) {
+        DirectUpload upload = getActiveUpload(uploadId, userId);
+        discard(upload, getBucketConfig(upload));
+    }
+
+    /**
+     * Abort all active uploads whose TTL has passed and remove what was sent to the bucket
+     * @return the number of uploads expired
+     */
+    public int expireUploads() {
+        List<DirectUpload> expired = directUploadRepository.findByStatusAndExpiresAtBefore(
+                UploadSession.UploadStatus.ACTIVE, LocalDateTime.now());
+
+        for (DirectUpload upload : expired) {
+            try {
+                discard(upload, getBucketConfig(upload));
+            } catch (Exception e) {
+                log.error("Error expiring direct upload {}: {}", upload.getId(), e.getMessage(), e);
+            }
+        }
+        return expired.size();
+    }
+
+    private void discard(DirectUpload upload, S3BucketConfig config) {
+        log.info("Aborting direct upload {}", upload.getId());
+
+        if (upload.isMultipart()) {
+            try {
+                s3Service.abortMultipartUpload(config, upload.getObjectKey(), upload.getS3UploadId());
+            } catch (RuntimeException e) {
+                // Already completed; the object itself is deleted below
+                log.debug("Multipart upload {} could not be aborted: {}", upload.getS3UploadId(), e.getMessage());
+            }
+        }
+        s3Service.deleteObject(config, upload.getObjectKey());
+
+        upload.setStatus(UploadSession.UploadStatus.ABORTED);
+        directUploadRepository.save(upload);
+    }
+
+    private S3BucketConfig resolveBucketConfig(UUID tenantId, UUID bucketConfigId) {
+        if (bucketConfigId != null) {
+            return s3BucketConfigService.getBucketConfigById(tenantId, bucketConfigId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Bucket configuration not found"));
+        }
+        return s3BucketConfigService.getDefaultBucketConfig(tenantId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Tenant has no bucket configuration for direct uploads"));
+    }
+
+    private S3BucketConfig getBucketConfig(DirectUpload upload) {
+        return s3BucketConfigService.getBucketConfigById(upload.getTenantId(), upload.getS3BucketConfigId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE, "Bucket configuration no longer exists"));
+    }
+
+    private DirectUpload getOwnedUpload(UUID uploadId, UUID userId) {
+        DirectUpload upload = directUploadRepository.findById(uploadId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found"));
+
+        if (!upload.getUploadedBy().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this upload");
+        }
+        return upload;
+    }
+
+    private DirectUpload getActiveUpload(UUID uploadId, UUID userId) {
+        DirectUpload upload = getOwnedUpload(uploadId, userId);
+
+        if (upload.getStatus() != UploadSession.UploadStatus.ACTIVE) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Upload is " + upload.getStatus());
+        }
+        if (upload.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Upload has expired");
+        }
+        return upload;
+    }
+
+    private long resolvePartSize(long fileSize) {
+        long partSize = Math.max(defaultPartSize.toBytes(), S3_MIN_PART_SIZE);
+        // S3 allows at most 10,000 parts per multipart upload
+        return Math.max(partSize, (fileSize + S3_MAX_PARTS - 1) / S3_MAX_PARTS);
+    }
+
+    private DirectUploadResponse toResponse(DirectUpload upload, S3BucketConfig config) {
+        DirectUploadResponse response = new DirectUploadResponse();
+        response.setId(upload.getId());
+        response.setFilename(upload.getFilename());
+        response.setFileSize(upload.getFileSize());
+        response.setStatus(upload.getStatus());
+        response.setExpiresAt(upload.getExpiresAt());
+
+        if (config == null) {
+            return response;
+        }
+
+        // Never sign past the end of the upload itself
+        Duration ttl = Duration.between(LocalDateTime.now(), upload.getExpiresAt());
+        Duration expiry = ttl.compareTo(urlTtl) < 0 ? ttl : urlTtl;
+
+        if (upload.isMultipart()) {
+            List<String> partUrls = new ArrayList<>(upload.getPartCount());
+            for (int partNumber = 1; partNumber <= upload.getPartCount(); partNumber++) {
+                partUrls.add(s3Service.presignUploadPart(config, upload.getObjectKey(), upload.getS3UploadId(),
+                        partNumber, expiry));
+            }
+            response.setPartSize(upload.getPartSize());
+            response.setPartUrls(partUrls);
+        } else {
+            String contentMd5 = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(upload.getMd5Hash()));
+            Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("Content-MD5", contentMd5);
+            if (upload.getContentType() != null) {
+                headers.put(HttpHeaders.CONTENT_TYPE, upload.getContentType());
+            }
+            response.setUploadUrl(s3Service.presignPutObject(config, upload.getObjectKey(),
+                    upload.getContentType(), contentMd5, expiry));
+            response.setRequiredHeaders(headers);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,198 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk registration of Document rows for ingestion. Small batches go through JDBC
+ * batches; large ones are streamed with PostgreSQL COPY into a temporary staging table
+ * and merged into documents with a single INSERT ... SELECT. Either way all rows are
+ * written on one connection in one transaction, which is rolled back if any row fails.
+ * <p>
+ * A document whose (file_path, md5_hash) is already registered is not inserted again;
+ * the existing row is attached to the job of the new one instead.
+ */
+@Service
+@Slf4j
+public class DocumentBulkLoader {
+
+    private static final String COLUMNS =
+            "id, job_id, filename, file_path, file_size, content_type, uploaded_by, status, md5_hash, s3_bucket_config_id, bucket_etag";
+    private static final String ON_CONFLICT =
+            " ON CONFLICT (file_path, md5_hash) DO UPDATE SET job_id = EXCLUDED.job_id";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+
+    @Value("${docloader.persistence.jdbc-batch-size:100}")
+    private int jdbcBatchSize;
+
+    @Value("${docloader.persistence.copy-threshold:500}")
+    private int copyThreshold;
+
+    public DocumentBulkLoader(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Register documents in one transaction. Documents without an ID get one generated here.
+     * @return the number of rows inserted or attached to the job
+     */
+    public int register(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+        for (Document document : documents) {
+            if (document.getId() == null) {
+                document.setId(UUID.randomUUID());
+            }
+        }
+
+        long start = System.nanoTime();
+        // Not a Spring transaction: the JPA transaction manager has no DataSource a JdbcTemplate could join
+        int rows = inTransaction(documents, documents.size() >= copyThreshold ? this::copy : this::insertBatched);
+        log.info("Registered {} of {} documents in {} ms", rows, documents.size(), (System.nanoTime() - start) / 1_000_000);
+        return rows;
+    }
+
+    private int insertBatched(Connection connection, List<Document> documents) throws SQLException {
+        String sql = "INSERT INTO app.documents (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" + ON_CONFLICT;
+        int rows = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int batched = 0;
+            for (Document document : documents) {
+                ps.setObject(1, document.getId());
+                ps.setObject(2, document.getJob() != null ? document.getJob().getId() : null, Types.OTHER);
+                ps.setString(3, document.getFilename());
+                ps.setString(4, document.getFilePath());
+                ps.setObject(5, document.getFileSize(), Types.BIGINT);
+                ps.setString(6, document.getContentType());
+                ps.setObject(7, document.getUploadedBy(), Types.OTHER);
+                ps.setString(8, document.getStatus().name());
+                ps.setString(9, document.getMd5Hash());
+                ps.setObject(10, document.getS3BucketConfigId(), Types.OTHER);
+                ps.setString(11, document.getBucketETag());
+                ps.addBatch();
+
+                if (++batched == jdbcBatchSize) {
+                    rows += countRows(ps.executeBatch());
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                rows += countRows(ps.executeBatch());
+            }
+        }
+        return rows;
+    }
+
+    private static int countRows(int[] counts) {
+        int rows = 0;
+        for (int count : counts) {
+            // The driver may only report success for rewritten batches
+            rows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return rows;
+    }
+
+    private int copy(Connection connection, List<Document> documents) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE document_staging "
+                    + "(LIKE app.documents INCLUDING DEFAULTS) ON COMMIT DROP");
+        }
+
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY document_staging (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)");
+        try {
+            writeRows(copyIn, documents);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            return statement.executeUpdate("INSERT INTO app.documents (" + COLUMNS + ") SELECT " + COLUMNS
+                    + " FROM document_staging" + ON_CONFLICT);
+        }
+    }
+
+    private int inTransaction(List<Document> documents, Registration registration) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int rows = registration.write(connection, documents);
+                connection.commit();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            log.error("Error registering {} documents: {}", documents.size(), e.getMessage(), e);
+            throw new IllegalStateException("Failed to register documents", e);
+        }
+    }
+
+    private static void writeRows(CopyIn copyIn, List<Document> documents) throws SQLException {
+        StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+        for (Document document : documents) {
+            buffer.append(document.getId()).append(',');
+            appendValue(buffer, document.getJob() != null ? document.getJob().getId() : null).append(',');
+            appendText(buffer, document.getFilename()).append(',');
+            appendText(buffer, document.getFilePath()).append(',');
+            appendValue(buffer, document.getFileSize()).append(',');
+            appendText(buffer, document.getContentType()).append(',');
+            appendValue(buffer, document.getUploadedBy()).append(',');
+            appendText(buffer, document.getStatus().name()).append(',');
+            appendText(buffer, document.getMd5Hash()).append(',');
+            appendValue(buffer, document.getS3BucketConfigId()).append(',');
+            appendText(buffer, document.getBucketETag()).append('\n');
+
+            if (buffer.length() >= COPY_BUFFER_SIZE) {
+                flush(copyIn, buffer);
+            }
+        }
+        flush(copyIn, buffer);
+    }
+
+    private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    // Unquoted empty fields are NULL in CSV format
+    private static StringBuilder appendValue(StringBuilder buffer, Object value) {
+        return value != null ? buffer.append(value) : buffer;
+    }
+
+    private static StringBuilder appendText(StringBuilder buffer, String value) {
+        if (value == null) {
+            return buffer;
+        }
+        return buffer.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private interface Registration {
+        int write(Connection connection, List<Document> documents) throws SQLException;
+    }
+}
@@ -1,43 +1,95 @@
 package com.docloader.service;
 
+import com.docloader.dedup.LshIndex;
 import com.docloader.model.Document;
 import com.docloader.model.DocumentJob;
+import com.docloader.model.S3BucketConfig;
+import com.docloader.model.User;
 import com.docloader.repository.DocumentRepository;
-import lombok.RequiredArgsConstructor;
+import com.docloader.repository.S3BucketConfigRepository;
+import com.docloader.vector.Quantization;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;  
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class DocumentProcessingService {
 
+    // Bucket objects registered per bulk insert
+    private static final int REGISTRATION_BATCH_SIZE = 10000;
+
     private final DocumentJobService documentJobService;
     private final DocumentRepository documentRepository;
-    private final EmbeddingModel embeddingModel;
+    private final DocumentService documentService;
     private final S3Service s3Service;
+    private final S3BucketConfigRepository s3BucketConfigRepository;
+    private final DocumentBulkLoader documentBulkLoader;
+    private final UserService userService;
+    private final TextExtractionService textExtractionService;
+    private final NearDuplicateService nearDuplicateService;
+    private final ChunkEmbeddingService chunkEmbeddingService;
+    private final VectorWriteBehindService vectorWriteBehindService;
+    private final ObjectMapper objectMapper;
     
     @Autowired(required = false)
-    private WeaviateService weaviateService;
+    private Neo4jService neo4jService;
     
     @Autowired(required = false)
-    private Neo4jService neo4jService;
+    @Qualifier("graphWriteExecutor")
+    private TaskExecutor graphWriteExecutor;
+    
+    // Used when the job config has no nearDuplicateThreshold; 0 disables near-duplicate detection
+    @Value("${docloader.dedup.similarity-threshold:0.9}")
+    private double defaultNearDuplicateThreshold;
 
     public DocumentProcessingService(
             DocumentJobService documentJobService,
             DocumentRepository documentRepository,
-            EmbeddingModel embeddingModel,
-            S3Service s3Service) {
+            DocumentService documentService,
+            S3Service s3Service,
+            S3BucketConfigRepository s3BucketConfigRepository,
+            DocumentBulkLoader documentBulkLoader,
+            UserService userService,
+            TextExtractionService textExtractionService,
+            NearDuplicateService nearDuplicateService,
+            ChunkEmbeddingService chunkEmbeddingService,
+            VectorWriteBehindService vectorWriteBehindService,
+            ObjectMapper objectMapper) {
         this.documentJobService = documentJobService;
         this.documentRepository = documentRepository;
-        this.embeddingModel = embeddingModel;
+        this.documentService = documentService;
         this.s3Service = s3Service;
+        this.s3BucketConfigRepository = s3BucketConfigRepository;
+        this.documentBulkLoader = documentBulkLoader;
+        this.userService = userService;
+        this.textExtractionService = textExtractionService;
+        this.nearDuplicateService = nearDuplicateService;
+        this.chunkEmbeddingService = chunkEmbeddingService;
+        this.vectorWriteBehindService = vectorWriteBehindService;
+        this.objectMapper = objectMapper;
     }
 
     @Async
@@ -53,7 +105,45 @@ public class DocumentProcessingService {
         });
     }
 
-    @Transactional
+    /**
+     * Processes a document requeued outside of a job run with the settings of its job
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentRequeued(DocumentRequeuedEvent event) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                reprocessDocument(event.documentId());
+            } catch (Exception e) {
+                log.error("Error processing requeued document {}: {}", event.documentId(), e.getMessage(), e);
+            }
+        });
+    }
+
+    private void reprocessDocument(UUID documentId) {
+        Document document = documentRepository.findById(documentId).orElse(null);
+        if (document == null || document.getStatus() != Document.DocumentStatus.PENDING) {
+            return;
+        }
+        Optional<DocumentJob> job = document.getJob() == null ? Optional.empty()
+                : documentJobService.getJobById(document.getJob().getId());
+        if (job.isEmpty()) {
+            log.warn("Requeued document {} has no job to take its settings from; leaving it pending", documentId);
+            return;
+        }
+        
+        log.info("Processing requeued document {} of job {}", documentId, job.get().getId());
+        CompletableFuture<Boolean> result = processDocument(document, readSettings(job.get()));
+        vectorWriteBehindService.flush();
+        result.join();
+        if (neo4jService != null) {
+            neo4jService.flush();
+        }
+    }
+
+    /**
+     * Runs the processing pipeline over the documents of a job. Each document is marked
+     * as soon as its vectors are stored, so a failure only affects the document it happened on.
+     */
     public void processJob(UUID jobId) {
         log.info("Processing document job: {}", jobId);
         
@@ -62,19 +152,41 @@ public class DocumentProcessingService {
                 .orElseThrow(() -> new IllegalArgumentException("Job not found: " + jobId));
         
         try {
-            // TODO: Implement actual document processing logic
-            // 1. Retrieve documents from S3 (or other source)
-            // 2. Check if documents are already processed (using MD5 hash)
-            // 3. Process documents and extract text
-            // 4. Generate embeddings
-            // 5. Store in vector database
-            // 6. Build relationships in Neo4j
+            JobSettings settings = readSettings(job);
+            List<Document> documents = resolveDocuments(job);
+            
+            List<CompletableFuture<Boolean>> results = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                if (document.getStatus() == Document.DocumentStatus.PROCESSED 
+                        || document.getStatus() == Document.DocumentStatus.SKIPPED) {
+                    continue;
+                }
+                results.add(processDocument(document, settings));
+            }
             
-            // PLACEHOLDER IMPLEMENTATION
-            log.info("Document job processing completed: {}", jobId);
+            // Vectors are written behind; the job is done once the last of them are stored
+            vectorWriteBehindService.flush();
+            int failed = 0;
+            for (CompletableFuture<Boolean> result : results) {
+                try {
+                    if (!result.join()) {
+                        failed++;
+                    }
+                } catch (CompletionException e) {
+                    log.error("Error completing a document of job {}: {}", jobId, e.getMessage());
+                    failed++;
+                }
+            }
+            if (neo4jService != null) {
+                neo4jService.flush();
+            }
             
-            // Update job status to COMPLETED
-            documentJobService.updateJobStatus(jobId, DocumentJob.JobStatus.COMPLETED);
+            log.info("Document job processing completed: {} ({} documents, {} processed, {} failed)",
+                    jobId, documents.size(), results.size(), failed);
+            
+            // A job fails only when none of the documents it processed succeeded
+            documentJobService.updateJobStatus(jobId, failed > 0 && failed == results.size()
+                    ? DocumentJob.JobStatus.FAILED : DocumentJob.JobStatus.COMPLETED);
         } catch (Exception e) {
             log.error("Error processing job {}: {}", jobId, e.getMessage(), e);
             // Update job status to FAILED
@@ -82,4 +194,214 @@ public class DocumentProcessingService {
             throw e;
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * @return completes with false if the document failed
+     */
+    private CompletableFuture<Boolean> processDocument(Document document, JobSettings settings) {
+        document.setStatus(Document.DocumentStatus.PROCESSING);
+        documentRepository.save(document);
+        
+        try {
+            // Bucket objects are registered with their ETag, which is not the MD5 of multipart ones
+            if (!StorageBackend.isMd5Hex(document.getMd5Hash())) {
+                try (InputStream in = documentService.openContent(document)) {
+                    document.setMd5Hash(StorageBackend.md5Hex(in));
+                }
+            }
+            
+            // 1. Extract text
+            String text = textExtractionService.extractText(document);
+            
+            // 2. Detect near-duplicates of documents already processed for the tenant
+            if (settings.tenantId != null && settings.nearDuplicateThreshold > 0) {
+                long[] signature = nearDuplicateService.computeSignature(text);
+                Optional<LshIndex.Match> match = signature == null ? Optional.empty()
+                        : nearDuplicateService.matchOrRegister(settings.tenantId, document.getId(), signature,
+                                settings.nearDuplicateThreshold)
+                                .filter(m -> !m.getDocumentId().equals(document.getId()));
+                
+                if (match.isPresent()) {
+                    log.info("Document {} is a near-duplicate of {} (similarity {})", 
+                            document.getId(), match.get().getDocumentId(), match.get().getSimilarity());
+                    document.setCanonicalDocumentId(match.get().getDocumentId());
+                    document.setCanonicalSimilarity(match.get().getSimilarity());
+                    if (neo4jService != null) {
+                        neo4jService.createRelationship(document.getId(), match.get().getDocumentId(),
+                                NearDuplicateService.RELATIONSHIP_TYPE, Map.of("score", match.get().getSimilarity()));
+                    }
+                    
+                    if (settings.skipNearDuplicates) {
+                        document.setStatus(Document.DocumentStatus.SKIPPED);
+                        document.setProcessedAt(LocalDateTime.now());
+                        documentRepository.save(document);
+                        return CompletableFuture.completedFuture(true);
+                    }
+                }
+            }
+            
+            // Keeps the near-duplicate link; the status is set once the vectors are stored
+            documentRepository.save(document);
+            
+            // 3. Embed content-defined chunks, reusing the embeddings of unchanged chunks
+            CompletableFuture<Boolean> stored = chunkEmbeddingService.embedDocument(settings.tenantId, document, text,
+                    settings.quantization);
+            if (neo4jService == null) {
+                return stored;
+            }
+            // 4. Add the document to the graph once indexed, written in batches behind processing;
+            // incremental graph upkeep picks up the documents indexed since it last ran. Handed to the
+            // graph executor, as stored completes on the vector write-behind thread.
+            return stored.thenApplyAsync(success -> {
+                if (success) {
+                    Map<String, Object> metadata = graphMetadata(settings);
+                    metadata.put("indexedAt", LocalDateTime.now());
+                    neo4jService.storeDocument(document, metadata);
+                }
+                return success;
+            }, graphWriteExecutor);
+        } catch (Exception e) {
+            log.error("Error processing document {}: {}", document.getId(), e.getMessage(), e);
+            document.setStatus(Document.DocumentStatus.FAILED);
+            documentRepository.save(document);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+    
+    private static Map<String, Object> graphMetadata(JobSettings settings) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("tenantId", settings.tenantId);
+        metadata.put("jobId", settings.jobId);
+        return metadata;
+    }
+    
+    private List<Document> resolveDocuments(DocumentJob job) {
+        if (job.getSourceType() == DocumentJob.SourceType.UPLOAD) {
+            // Source location is a comma-separated list of document IDs
+            List<UUID> ids = Arrays.stream(job.getSourceLocation().split(","))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(UUID::fromString)
+                    .toList();
+            List<Document> documents = documentRepository.findAllById(ids);
+            documents.forEach(document -> document.setJob(job));
+            return documentRepository.saveAll(documents);
+        }
+        
+        if (job.getSourceType() == DocumentJob.SourceType.S3 && job.getS3BucketConfig() != null) {
+            return registerBucketObjects(job);
+        }
+        
+        return documentRepository.findByJob(job);
+    }
+    
+    // Register the objects under the job's bucket prefix that are not documents yet
+    private List<Document> registerBucketObjects(DocumentJob job) {
+        S3BucketConfig config = s3BucketConfigRepository.findById(job.getS3BucketConfig().getId())
+                .orElseThrow(() -> new IllegalStateException("Bucket configuration of job " + job.getId() + " not found"));
+        String prefix = job.getSourceLocation().startsWith("/") 
+                ? job.getSourceLocation().substring(1) : job.getSourceLocation();
+        
+        List<Document> pending = new ArrayList<>();
+        int[] registered = {0};
+        s3Service.listObjects(config, prefix, page -> {
+            List<S3Service.ObjectInfo> objects = page.stream()
+                    .filter(object -> !object.getKey().endsWith("/"))
+                    .toList();
+            if (objects.isEmpty()) {
+                return;
+            }
+            // Objects already registered, keyed by their unchanged ETag, are only attached to the job
+            Map<String, List<Document>> existing = documentRepository.findByS3BucketConfigIdAndFilePathIn(config.getId(),
+                            objects.stream().map(S3Service.ObjectInfo::getKey).toList())
+                    .stream()
+                    .collect(Collectors.groupingBy(Document::getFilePath));
+            
+            List<UUID> known = new ArrayList<>();
+            for (S3Service.ObjectInfo object : objects) {
+                Optional<Document> document = existing.getOrDefault(object.getKey(), List.of()).stream()
+                        .filter(candidate -> isSameObject(candidate, object))
+                        .findFirst();
+                if (document.isPresent()) {
+                    known.add(document.get().getId());
+                } else {
+                    toBucketDocument(job, config, object).ifPresent(pending::add);
+                }
+            }
+            if (!known.isEmpty()) {
+                registered[0] += documentRepository.attachToJob(known, job);
+            }
+            if (pending.size() >= REGISTRATION_BATCH_SIZE) {
+                registered[0] += documentBulkLoader.register(pending);
+                pending.clear();
+            }
+        });
+        registered[0] += documentBulkLoader.register(pending);
+        log.info("Registered {} bucket objects for job {}", registered[0], job.getId());
+        
+        return documentRepository.findByJob(job);
+    }
+    
+    // Documents registered before ETags were recorded match on the key alone
+    private static boolean isSameObject(Document document, S3Service.ObjectInfo object) {
+        return document.getBucketETag() == null || document.getBucketETag().equals(object.getETag());
+    }
+    
+    private Optional<Document> toBucketDocument(DocumentJob job, S3BucketConfig config, S3Service.ObjectInfo object) {
+        String key = object.getKey();
+        if (object.getETag() == null) {
+            log.warn("Skipping object {} of job {}: the listing has no ETag", key, job.getId());
+            return Optional.empty();
+        }
+        
+        String filename = key.substring(key.lastIndexOf('/') + 1);
+        Document document = new Document();
+        document.setJob(job);
+        document.setFilename(filename);
+        document.setFilePath(key);
+        document.setFileSize(object.getSize());
+        document.setContentType(MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse(null));
+        // Single-part ETags are the MD5; multipart ones are replaced by the MD5 when the document is processed
+        document.setMd5Hash(object.getETag());
+        document.setBucketETag(object.getETag());
+        document.setS3BucketConfigId(config.getId());
+        document.setUploadedBy(job.getCreatedBy());
+        document.setStatus(Document.DocumentStatus.PENDING);
+        return Optional.of(document);
+    }
+    
+    private JobSettings readSettings(DocumentJob job) {
+        JobSettings settings = new JobSettings();
+        settings.jobId = job.getId();
+        settings.tenantId = userService.getUserById(job.getCreatedBy()).map(User::getTenantId).orElse(null);
+        settings.nearDuplicateThreshold = defaultNearDuplicateThreshold;
+        
+        if (job.getConfigJson() != null) {
+            try {
+                JsonNode config = objectMapper.readTree(job.getConfigJson());
+                settings.nearDuplicateThreshold = config.path("nearDuplicateThreshold").asDouble(defaultNearDuplicateThreshold);
+                settings.skipNearDuplicates = config.path("skipNearDuplicates").asBoolean(false);
+                if (config.hasNonNull("quantization")) {
+                    settings.quantization = Quantization.valueOf(config.get("quantization").asText().toUpperCase());
+                }
+            } catch (Exception e) {
+                log.warn("Ignoring invalid config of job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+        return settings;
+    }
+    
+    /**
+     * Per-job settings read from DocumentJob.configJson
+     */
+    private static class JobSettings {
+        private UUID jobId;
+        private UUID tenantId;
+        // Estimated Jaccard similarity above which a document is a near-duplicate
+        private double nearDuplicateThreshold;
+        // Near-duplicates are always linked to their canonical document; jobs opt in to also skip them
+        private boolean skipNearDuplicates;
+        // Encoding of the search codes of the job's vectors: NONE, INT8 or PQ; null for the default
+        private Quantization quantization;
+    }
+} 
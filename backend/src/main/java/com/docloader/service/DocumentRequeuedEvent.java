@@ -0,0 +1,11 @@
+package com.docloader.service;
+
+import java.util.UUID;
+
+/**
+ * Published when a document was set back to PENDING outside of a job run, such as a
+ * skipped near-duplicate that became canonical. It is processed again once the
+ * transaction that requeued it commits.
+ */
+public record DocumentRequeuedEvent(UUID documentId) {
+}
@@ -1,9 +1,14 @@
 package com.docloader.service;
 
 import com.docloader.dto.DocumentResponse;
+import com.docloader.dto.DocumentUploadResult;
 import com.docloader.model.Document;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,7 +21,11 @@ public interface DocumentService {
     
     List<Document> getDocumentsByUploadedBy(UUID uploadedBy);
     
-    List<Document> uploadDocuments(List<MultipartFile> files, UUID uploadedBy, UUID tenantId);
+    /**
+     * Store a batch of uploaded files and register a Document for each
+     * @return one result per file, in the order of the given files
+     */
+    List<DocumentUploadResult> uploadDocuments(List<MultipartFile> files, UUID uploadedBy, UUID tenantId);
     
     DocumentResponse toDocumentResponse(Document document);
     
@@ -25,4 +34,20 @@ public interface DocumentService {
     void deleteDocument(UUID id);
     
     int getDocumentCountByUserId(UUID userId);
+    
+    /**
+     * @return the local file holding the document content, if it is stored on the local filesystem
+     */
+    Optional<Path> getLocalContentPath(Document document);
+    
+    /**
+     * Open the document content for reading
+     */
+    InputStream openContent(Document document) throws IOException;
+    
+    /**
+     * Write the document content to a channel
+     * @return the number of bytes written
+     */
+    long transferContent(Document document, WritableByteChannel target) throws IOException;
 }
\ No newline at end of file
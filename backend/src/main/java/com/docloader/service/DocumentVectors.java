@@ -0,0 +1,24 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorRecord;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The new chunk vectors of one document in a batch write to the vector store
+ */
+@Getter
+@AllArgsConstructor
+public class DocumentVectors {
+
+    private final Document document;
+
+    private final List<VectorRecord> records;
+
+    // Encoding of the search codes of the vectors, or null for the store's default
+    private final Quantization quantization;
+}
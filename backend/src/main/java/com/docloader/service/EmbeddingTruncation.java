@@ -0,0 +1,36 @@
+package com.docloader.service;
+
+import com.docloader.vector.VectorMath;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Prefix truncation of embeddings between the embedding model and the vector store.
+ * Models trained with Matryoshka representation learning, such as OpenAI's
+ * text-embedding-3 family, put the most information into the leading dimensions, so a
+ * prefix rescaled to unit length still ranks chunks well at a fraction of the memory and
+ * search time. Chunk and query embeddings are truncated alike; cached chunk embeddings
+ * keep all dimensions, so the setting can change without embedding documents again,
+ * although stored vectors only change when their documents are processed again.
+ * <p>
+ * Models without Matryoshka training lose much more by truncation; the embedded store can
+ * instead search PCA codes trained per tenant and keep full vectors for re-ranking.
+ */
+@Service
+public class EmbeddingTruncation {
+
+    // Leading dimensions kept, 0 to keep all
+    @Value("${docloader.embedding.dimensions:0}")
+    private int dimensions;
+
+    /**
+     * @return the embedding truncated to the configured dimensions, or the embedding itself
+     * when it has no more dimensions than that
+     */
+    public float[] apply(float[] embedding) {
+        if (dimensions <= 0 || embedding.length <= dimensions) {
+            return embedding;
+        }
+        return VectorMath.truncate(embedding, dimensions);
+    }
+}
@@ -0,0 +1,266 @@
+package com.docloader.service;
+
+import com.docloader.graph.ImportCsvWriter;
+import com.docloader.model.Tenant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Exports the graph as CSV files for neo4j-admin database import, which loads an empty
+ * database offline many times faster than transactional writes. It is meant for the
+ * first build of a large graph; later changes go through {@link Neo4jService} as usual.
+ * <p>
+ * Documents are read from PostgreSQL, split into partitions by a hash of the document
+ * id, each partition streamed by its own writer. At the same time the similarity graph
+ * is built from the vector store, one tenant after another. The files hold the graph the
+ * transactional path builds:
+ * <ul>
+ *   <li>Document nodes of processed documents, with the properties stored once they are
+ *   indexed</li>
+ *   <li>NEAR_DUPLICATE_OF relationships to canonical documents, with their score. Their
+ *   documents have a node even if not processed, as the relationship merges them.</li>
+ *   <li>SIMILAR_TO relationships, and a GraphEpoch node per tenant with the watermark
+ *   from which incremental updates carry on</li>
+ * </ul>
+ * The import command is written next to the files, in import-command.txt.
+ */
+@Service
+@Slf4j
+public class GraphImportExporter {
+
+    private static final String DOCUMENTS = "documents";
+    private static final String NEAR_DUPLICATES = "near-duplicates";
+    private static final String SIMILAR = "similar";
+    private static final String EPOCHS = "epochs";
+
+    // The tenant of a document is the one of the user who created its job. Besides processed documents,
+    // those at either end of a near-duplicate link are read.
+    private static final String DOCUMENT_QUERY =
+            "SELECT d.id, d.filename, d.file_path, d.file_size, d.content_type, d.md5_hash, d.created_at, "
+                    + "d.processed_at, d.status, d.job_id, d.canonical_document_id, d.canonical_similarity, u.tenant_id "
+                    + "FROM app.documents d "
+                    + "LEFT JOIN app.document_jobs j ON j.id = d.job_id "
+                    + "LEFT JOIN app.users u ON u.id = j.created_by "
+                    + "WHERE (hashtext(d.id::text) & 2147483647) % ? = ? "
+                    + "AND (d.status = 'PROCESSED' OR d.canonical_document_id IS NOT NULL "
+                    + "OR EXISTS (SELECT 1 FROM app.documents c WHERE c.canonical_document_id = d.id))";
+
+    private final DataSource dataSource;
+    private final TenantService tenantService;
+    private final SimilarityGraphService similarityGraphService;
+
+    // Writers per kind of PostgreSQL rows; each holds a connection while it runs
+    @Value("${docloader.graph.export.partitions:4}")
+    private int partitions;
+
+    @Value("${docloader.graph.export.rows-per-file:1000000}")
+    private long rowsPerFile;
+
+    @Value("${docloader.graph.export.fetch-size:10000}")
+    private int fetchSize;
+
+    public GraphImportExporter(DataSource dataSource, TenantService tenantService,
+                               SimilarityGraphService similarityGraphService) {
+        this.dataSource = dataSource;
+        this.tenantService = tenantService;
+        this.similarityGraphService = similarityGraphService;
+    }
+
+    /**
+     * Write the import files into an empty or new directory
+     * @return the rows written per group of files
+     */
+    public Map<String, Long> export(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> existing = Files.list(directory)) {
+            if (existing.findAny().isPresent()) {
+                // The importer picks parts by pattern, so files of an earlier export would be imported too
+                throw new IllegalArgumentException("Export directory is not empty: " + directory);
+            }
+        }
+        long start = System.currentTimeMillis();
+        writeHeaders(directory);
+
+        List<Callable<Map<String, Long>>> tasks = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            int p = partition;
+            tasks.add(() -> exportDocuments(directory, p));
+        }
+        if (similarityGraphService.hasVectorStore()) {
+            tasks.add(() -> exportSimilarity(directory));
+        } else {
+            log.warn("No vector store with document vectors: exporting the graph without SIMILAR_TO relationships");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), runnable -> {
+            Thread thread = new Thread(runnable, "graph-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Long> rows = new LinkedHashMap<>();
+        try {
+            List<Future<Map<String, Long>>> futures = new ArrayList<>();
+            for (Callable<Map<String, Long>> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Map<String, Long>> future : futures) {
+                future.get().forEach((group, count) -> rows.merge(group, count, Long::sum));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting the graph", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to export the graph: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String command = importCommand(directory);
+        Files.writeString(directory.resolve("import-command.txt"), command, StandardCharsets.UTF_8);
+        log.info("Exported the graph to {} in {} ms: {}. Import into a stopped, empty database with:\n{}", directory,
+                System.currentTimeMillis() - start, rows, command);
+        return rows;
+    }
+
+    private void writeHeaders(Path directory) throws IOException {
+        ImportCsvWriter.writeHeader(directory, DOCUMENTS, "id:ID(Document)", "filename", "filePath", "fileSize:long",
+                "contentType", "md5Hash", "createdAt:localdatetime", "indexedAt:localdatetime", "tenantId", "jobId");
+        ImportCsvWriter.writeHeader(directory, NEAR_DUPLICATES, ":START_ID(Document)", ":END_ID(Document)", "score:double");
+        ImportCsvWriter.writeHeader(directory, SIMILAR, ":START_ID(Document)", ":END_ID(Document)", "score:double",
+                "builtAt:long");
+        ImportCsvWriter.writeHeader(directory, EPOCHS, ":ID(GraphEpoch)", "tenantId", "name", "watermark:localdatetime",
+                "epoch:long");
+    }
+
+    private Map<String, Long> exportDocuments(Path directory, int partition) throws IOException, SQLException {
+        try (ImportCsvWriter documents = new ImportCsvWriter(directory, DOCUMENTS, partition, rowsPerFile);
+             ImportCsvWriter nearDuplicates = new ImportCsvWriter(directory, NEAR_DUPLICATES, partition, rowsPerFile)) {
+            query(DOCUMENT_QUERY, partition, results -> {
+                String id = results.getString("id");
+                // Documents are stored in the graph once their vectors are, as in DocumentProcessingService;
+                // the others only have the node a near-duplicate link merges
+                if ("PROCESSED".equals(results.getString("status"))) {
+                    documents.row(id, results.getString("filename"), results.getString("file_path"),
+                            (Long) results.getObject("file_size"), results.getString("content_type"),
+                            results.getString("md5_hash"), localDateTime(results.getTimestamp("created_at")),
+                            localDateTime(results.getTimestamp("processed_at")),
+                            results.getString("tenant_id"), results.getString("job_id"));
+                } else {
+                    documents.row(id, null, null, null, null, null, null, null, null, null);
+                }
+                String canonical = results.getString("canonical_document_id");
+                if (canonical != null) {
+                    nearDuplicates.row(id, canonical, (Double) results.getObject("canonical_similarity"));
+                }
+            });
+            return Map.of(DOCUMENTS, documents.getRows(), NEAR_DUPLICATES, nearDuplicates.getRows());
+        }
+    }
+
+    /**
+     * Builds the similarity graph of each tenant in turn, as its vectors are held in memory meanwhile
+     */
+    private Map<String, Long> exportSimilarity(Path directory) throws IOException {
+        List<UUID> tenantIds = new ArrayList<>();
+        tenantIds.add(null);
+        for (Tenant tenant : tenantService.getAllTenants()) {
+            tenantIds.add(tenant.getId());
+        }
+        long builtAt = System.currentTimeMillis();
+        try (ImportCsvWriter similar = new ImportCsvWriter(directory, SIMILAR, 0, rowsPerFile);
+             ImportCsvWriter epochs = new ImportCsvWriter(directory, EPOCHS, 0, rowsPerFile)) {
+            for (UUID tenantId : tenantIds) {
+                LocalDateTime watermark = LocalDateTime.now();
+                try {
+                    similarityGraphService.export(tenantId, (source, target, score) -> {
+                        try {
+                            similar.row(source.toString(), target.toString(), (double) score, builtAt);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                // Keyed as Neo4jServiceImpl keys watermarks, "" standing for no tenant
+                String tenantKey = tenantId != null ? tenantId.toString() : "";
+                epochs.row(tenantKey + ":" + SimilarityGraphService.RELATIONSHIP_TYPE, tenantKey,
+                        SimilarityGraphService.RELATIONSHIP_TYPE, watermark, 1L);
+            }
+            return Map.of(SIMILAR, similar.getRows(), EPOCHS, epochs.getRows());
+        }
+    }
+
+    /**
+     * Stream the rows of a partition; a cursor is only used outside auto-commit
+     */
+    private void query(String sql, int partition, RowHandler handler) throws IOException, SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setFetchSize(fetchSize);
+                statement.setInt(1, partitions);
+                statement.setInt(2, partition);
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        handler.handle(results);
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private String importCommand(Path directory) {
+        return "neo4j-admin database import full"
+                + argument("--nodes=Document=" + ImportCsvWriter.filePattern(directory, DOCUMENTS))
+                + argument("--nodes=GraphEpoch=" + ImportCsvWriter.filePattern(directory, EPOCHS))
+                + argument("--relationships=" + NearDuplicateService.RELATIONSHIP_TYPE + "="
+                        + ImportCsvWriter.filePattern(directory, NEAR_DUPLICATES))
+                + argument("--relationships=" + SimilarityGraphService.RELATIONSHIP_TYPE + "="
+                        + ImportCsvWriter.filePattern(directory, SIMILAR))
+                // Canonical documents may have been deleted since
+                + argument("--skip-bad-relationships=true")
+                + " \\\n    <database>\n";
+    }
+
+    // One argument per line, quoted for the shell as file patterns are regular expressions
+    private static String argument(String argument) {
+        return " \\\n    '" + argument + "'";
+    }
+
+    private static LocalDateTime localDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private interface RowHandler {
+        void handle(ResultSet results) throws IOException, SQLException;
+    }
+}
@@ -0,0 +1,255 @@
+package com.docloader.service;
+
+import com.docloader.dto.SearchHit;
+import com.docloader.lexical.LexicalHit;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.VectorSearchFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Search over the lexical index, the vector store or both. The BM25 retrieval and the
+ * query embedding followed by the vector search run on the search executor side by side,
+ * the latter skipped when the result cache holds the ranking of a nearly identical query,
+ * and whatever finished by the deadline is ranked; hybrid searches fuse the two rankings
+ * with Reciprocal Rank Fusion: each hit scores the sum of 1 / (k + rank) over the rankings
+ * it appears in, which needs no calibration between BM25 scores and similarities.
+ * Latencies are published as docloader.search.latency with p50, p95 and p99 per mode.
+ */
+@Service
+@Slf4j
+public class HybridSearchService {
+
+    private final LexicalIndexService lexicalIndexService;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final SearchResultCache searchResultCache;
+    private final TaskExecutor searchExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private WeaviateService weaviateService;
+
+    // Damps the weight of top ranks; 60 is the constant of the original RRF paper
+    @Value("${docloader.search.rrf-k:60}")
+    private int rrfK;
+
+    // Each retrieval returns this many candidates per requested hit before fusion
+    @Value("${docloader.search.candidate-factor:3}")
+    private int candidateFactor;
+
+    public HybridSearchService(
+            LexicalIndexService lexicalIndexService,
+            QueryEmbeddingCache queryEmbeddingCache,
+            SearchResultCache searchResultCache,
+            @Qualifier("searchExecutor") TaskExecutor searchExecutor,
+            MeterRegistry meterRegistry) {
+        this.lexicalIndexService = lexicalIndexService;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.searchResultCache = searchResultCache;
+        this.searchExecutor = searchExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param filter the job, uploader and content type to restrict the search to, or null
+     * @param chunks whether to rank chunks, several of which may belong to the same document,
+     *               rather than documents
+     * @param timeoutMillis time after which the retrievals still running are abandoned
+     * @return up to limit hits, best first; fails with a 504 status when no retrieval finished in time
+     */
+    public CompletableFuture<SearchResults> search(UUID tenantId, String query, int limit, SearchMode mode,
+                                                   VectorSearchFilter filter, boolean chunks, long timeoutMillis) {
+        return search(tenantId, query, limit, mode, filter, chunks, timeoutMillis, null);
+    }
+
+    /**
+     * Search as above, telling a listener about each retrieval as it finishes
+     * @param onRetrieval called on the search executor with "lexical" or "vector" and the
+     *                    first limit hits of that retrieval's ranking, carrying only its
+     *                    ranks, as soon as the retrieval finishes; it is not called for
+     *                    retrievals that fail, and may be called after the deadline for one
+     *                    that finishes meanwhile. May be null.
+     */
+    public CompletableFuture<SearchResults> search(UUID tenantId, String query, int limit, SearchMode mode,
+                                                   VectorSearchFilter filter, boolean chunks, long timeoutMillis,
+                                                   BiConsumer<String, List<SearchHit>> onRetrieval) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int candidates = mode == SearchMode.HYBRID ? limit * Math.max(1, candidateFactor) : limit;
+        boolean lexical = mode != SearchMode.VECTOR;
+        boolean vector = mode != SearchMode.LEXICAL && weaviateService != null;
+
+        CompletableFuture<List<SearchHit>> lexicalHits = lexical
+                ? CompletableFuture.supplyAsync(() -> announce("lexical",
+                        timed("lexical", () -> lexicalRanking(tenantId, query, candidates, filter)), limit, onRetrieval), searchExecutor)
+                : CompletableFuture.completedFuture(List.of());
+        // Announced within the composed stage, so cancelling vectorHits still keeps the search from starting
+        CompletableFuture<List<SearchHit>> vectorHits = vector
+                ? queryEmbeddingCache.embed(tenantId, query).thenCompose(embedding -> vectorSearch(tenantId, embedding, candidates, filter, chunks)
+                        .thenApply(ranking -> announce("vector", ranking, limit, onRetrieval)))
+                : CompletableFuture.completedFuture(List.of());
+
+        // Failures are told apart from timeouts once the deadline passed or both settled
+        return CompletableFuture.allOf(lexicalHits.handle((hits, e) -> null), vectorHits.handle((hits, e) -> null))
+                .completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(settled -> {
+                    RuntimeException failure = null;
+                    boolean partial = false;
+                    List<List<SearchHit>> rankings = new ArrayList<>(2);
+                    for (CompletableFuture<List<SearchHit>> retrieval : List.of(lexicalHits, vectorHits)) {
+                        if (retrieval.isDone() && !retrieval.isCompletedExceptionally()) {
+                            rankings.add(retrieval.join());
+                            continue;
+                        }
+                        partial = true;
+                        if (retrieval.isCompletedExceptionally()) {
+                            failure = failureOf(retrieval);
+                            log.warn("Retrieval of {} search failed: {}", mode, failure.getMessage());
+                        } else {
+                            // Keeps a vector search from starting once the embedding arrives
+                            retrieval.cancel(false);
+                        }
+                    }
+                    if (rankings.isEmpty()) {
+                        record(sample, mode, failure != null ? "error" : "timeout");
+                        throw failure != null ? failure
+                                : new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Search did not finish within " + timeoutMillis + " ms");
+                    }
+                    record(sample, mode, partial ? "partial" : "complete");
+                    return new SearchResults(fuse(rankings, limit, chunks), partial);
+                });
+    }
+
+    private List<SearchHit> lexicalRanking(UUID tenantId, String query, int candidates, VectorSearchFilter filter) {
+        List<LexicalHit> lexicalHits = lexicalIndexService.search(tenantId, query, candidates, filter);
+        List<SearchHit> ranking = new ArrayList<>(lexicalHits.size());
+        for (int i = 0; i < lexicalHits.size(); i++) {
+            LexicalHit lexicalHit = lexicalHits.get(i);
+            ranking.add(new SearchHit(lexicalHit.getDocumentId(), 0, i + 1, null, lexicalHit.getChunkIndex()));
+        }
+        return ranking;
+    }
+
+    /**
+     * Serve the vector ranking from the result cache when a query close enough to this one
+     * was searched since the tenant's vectors last changed, else search on the executor
+     */
+    private CompletableFuture<List<SearchHit>> vectorSearch(UUID tenantId, float[] embedding, int candidates,
+                                                           VectorSearchFilter filter, boolean chunks) {
+        List<SearchHit> cached = searchResultCache.get(tenantId, filter, chunks, candidates, embedding);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = searchResultCache.generation(tenantId);
+        return CompletableFuture.supplyAsync(() -> {
+            List<SearchHit> ranking = timed("vector", () -> vectorRanking(tenantId, embedding, candidates, filter, chunks));
+            searchResultCache.put(tenantId, filter, chunks, candidates, embedding, generation, ranking);
+            return ranking;
+        }, searchExecutor);
+    }
+
+    private List<SearchHit> vectorRanking(UUID tenantId, float[] embedding, int candidates, VectorSearchFilter filter, boolean chunks) {
+        List<SearchHit> ranking = new ArrayList<>(candidates);
+        if (chunks) {
+            for (ChunkHit chunkHit : weaviateService.findSimilarChunks(tenantId, embedding, candidates, filter)) {
+                ranking.add(new SearchHit(chunkHit.getDocumentId(), 0, null, ranking.size() + 1, chunkHit.getChunkIndex()));
+            }
+        } else {
+            for (String documentId : weaviateService.findSimilarDocuments(tenantId, embedding, candidates, filter)) {
+                ranking.add(new SearchHit(UUID.fromString(documentId), 0, null, ranking.size() + 1, null));
+            }
+        }
+        return ranking;
+    }
+
+    /**
+     * @param rankings the lexical ranking first, then the vector one, each carrying its ranks
+     */
+    private List<SearchHit> fuse(List<List<SearchHit>> rankings, int limit, boolean chunks) {
+        Map<Object, SearchHit> hits = new LinkedHashMap<>();
+        for (List<SearchHit> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                SearchHit retrieved = ranking.get(i);
+                Object key = chunks ? Map.entry(retrieved.getDocumentId(), retrieved.getChunkIndex()) : retrieved.getDocumentId();
+                SearchHit hit = hits.computeIfAbsent(key, k -> new SearchHit(retrieved.getDocumentId(), 0, null, null, null));
+                if (retrieved.getLexicalRank() != null) {
+                    hit.setLexicalRank(retrieved.getLexicalRank());
+                }
+                if (retrieved.getVectorRank() != null) {
+                    hit.setVectorRank(retrieved.getVectorRank());
+                }
+                if (hit.getChunkIndex() == null) {
+                    hit.setChunkIndex(retrieved.getChunkIndex());
+                }
+                hit.setScore(hit.getScore() + 1.0 / (rrfK + i + 1));
+            }
+        }
+
+        List<SearchHit> fused = new ArrayList<>(hits.values());
+        // Ties, such as the same rank in opposite lists, keep the lexical order first
+        fused.sort(Comparator.comparingDouble(SearchHit::getScore).reversed());
+        return fused.size() > limit ? new ArrayList<>(fused.subList(0, limit)) : fused;
+    }
+
+    private static List<SearchHit> announce(String retrieval, List<SearchHit> ranking, int limit,
+                                            BiConsumer<String, List<SearchHit>> onRetrieval) {
+        if (onRetrieval != null) {
+            try {
+                onRetrieval.accept(retrieval, List.copyOf(ranking.subList(0, Math.min(limit, ranking.size()))));
+            } catch (RuntimeException e) {
+                // The ranking is still fused into the results
+                log.warn("Listener of the {} retrieval failed: {}", retrieval, e.getMessage());
+            }
+        }
+        return ranking;
+    }
+
+    private <T> T timed(String retrieval, Supplier<T> task) {
+        return Timer.builder("docloader.search.retrieval")
+                .tag("retrieval", retrieval)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry)
+                .record(task);
+    }
+
+    private void record(Timer.Sample sample, SearchMode mode, String outcome) {
+        sample.stop(Timer.builder("docloader.search.latency")
+                .description("Time from receiving a search to ranking its hits")
+                .tag("mode", mode.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private static RuntimeException failureOf(CompletableFuture<?> retrieval) {
+        try {
+            retrieval.join();
+        } catch (CompletionException e) {
+            return e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+        throw new IllegalStateException("Retrieval did not fail");
+    }
+}
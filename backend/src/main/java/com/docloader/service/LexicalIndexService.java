@@ -0,0 +1,133 @@
+package com.docloader.service;
+
+import com.docloader.lexical.InvertedIndex;
+import com.docloader.lexical.LexicalHit;
+import com.docloader.model.Document;
+import com.docloader.vector.VectorMetadata;
+import com.docloader.vector.VectorSearchFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Keyword search over the chunk texts of processed documents, with one BM25 inverted index
+ * per tenant kept in its own directory. Complements vector search on part numbers, IDs and
+ * other exact terms that embeddings blur.
+ */
+@Service
+@Slf4j
+public class LexicalIndexService {
+
+    // Key of the index shared by users without a tenant
+    private static final UUID NO_TENANT = new UUID(0L, 0L);
+
+    private final Map<UUID, InvertedIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<UUID, UUID> documentTenants = new ConcurrentHashMap<>();
+
+    @Value("${docloader.lexical-index.dir:lexical}")
+    private String indexDir;
+
+    @Value("${docloader.lexical-index.bm25.k1:1.2}")
+    private float k1;
+
+    @Value("${docloader.lexical-index.bm25.b:0.75}")
+    private float b;
+
+    @PostConstruct
+    public void openIndexes() throws IOException {
+        Path root = Paths.get(indexDir);
+        Files.createDirectories(root);
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                UUID tenantKey;
+                try {
+                    tenantKey = UUID.fromString(directory.getFileName().toString());
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring unexpected directory in lexical index: {}", directory);
+                    continue;
+                }
+                openIndex(tenantKey).documentIds().forEach(documentId -> documentTenants.put(documentId, tenantKey));
+            }
+        }
+        log.info("Opened {} lexical indexes with {} documents from {}", indexes.size(), documentTenants.size(), root);
+    }
+
+    @PreDestroy
+    public void closeIndexes() {
+        for (InvertedIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("Error closing lexical index: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Index the chunks of a document, replacing what was indexed for it before
+     * @param chunkTexts the text of each chunk, in chunk index order
+     */
+    public void indexDocument(UUID tenantId, Document document, List<String> chunkTexts) {
+        UUID documentId = document.getId();
+        UUID tenantKey = tenantKey(tenantId);
+        try {
+            UUID previousTenant = documentTenants.put(documentId, tenantKey);
+            if (previousTenant != null && !previousTenant.equals(tenantKey)) {
+                indexes.get(previousTenant).remove(documentId);
+            }
+            openIndex(tenantKey).replace(documentId, chunkTexts, new VectorMetadata(
+                    document.getJob() != null ? document.getJob().getId() : null,
+                    document.getUploadedBy(), document.getContentType()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index chunks of document " + documentId, e);
+        }
+    }
+
+    public void removeDocument(UUID documentId) {
+        UUID tenantKey = documentTenants.remove(documentId);
+        if (tenantKey == null) {
+            return;
+        }
+        try {
+            indexes.get(tenantKey).remove(documentId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove document " + documentId + " from the lexical index", e);
+        }
+    }
+
+    /**
+     * @return the documents of the tenant best matching the query terms, best first
+     * @param filter the attributes documents must have, or null
+     */
+    public List<LexicalHit> search(UUID tenantId, String query, int limit, VectorSearchFilter filter) {
+        InvertedIndex index = indexes.get(tenantKey(tenantId));
+        return index != null ? index.search(query, limit, filter) : List.of();
+    }
+
+    private InvertedIndex openIndex(UUID tenantKey) {
+        return indexes.computeIfAbsent(tenantKey, key -> {
+            try {
+                return InvertedIndex.open(Paths.get(indexDir, key.toString()), k1, b);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open lexical index of tenant " + key, e);
+            }
+        });
+    }
+
+    private UUID tenantKey(UUID tenantId) {
+        return tenantId != null ? tenantId : NO_TENANT;
+    }
+}
@@ -0,0 +1,202 @@
+package com.docloader.service;
+
+import com.docloader.dedup.LshIndex;
+import com.docloader.dedup.MinHasher;
+import com.docloader.model.Document;
+import com.docloader.model.DocumentSignature;
+import com.docloader.repository.DocumentRepository;
+import com.docloader.repository.DocumentSignatureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Near-duplicate detection with MinHash signatures and one LSH index per tenant.
+ * Only canonical documents are indexed; near-duplicates are linked to them instead.
+ */
+@Service
+@Slf4j
+public class NearDuplicateService {
+
+    // Graph relationship from a near-duplicate to its canonical document
+    public static final String RELATIONSHIP_TYPE = "NEAR_DUPLICATE_OF";
+
+    private final DocumentSignatureRepository documentSignatureRepository;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MinHasher minHasher;
+    private final int bands;
+
+    // Built lazily from the stored signatures on first use per tenant
+    private final Map<UUID, LshIndex> indexes = new ConcurrentHashMap<>();
+
+    @Autowired(required = false)
+    private Neo4jService neo4jService;
+
+    public NearDuplicateService(
+            DocumentSignatureRepository documentSignatureRepository,
+            DocumentRepository documentRepository,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${docloader.dedup.minhash.num-hashes:128}") int numHashes,
+            @Value("${docloader.dedup.minhash.bands:32}") int bands,
+            @Value("${docloader.dedup.minhash.shingle-size:5}") int shingleSize,
+            @Value("${docloader.dedup.minhash.seed:42}") long seed) {
+        // Fail at startup rather than on the first document
+        if (bands <= 0 || numHashes % bands != 0) {
+            throw new IllegalArgumentException("docloader.dedup.minhash.num-hashes must be a multiple of docloader.dedup.minhash.bands");
+        }
+        this.documentSignatureRepository = documentSignatureRepository;
+        this.documentRepository = documentRepository;
+        this.eventPublisher = eventPublisher;
+        this.minHasher = new MinHasher(numHashes, shingleSize, seed);
+        this.bands = bands;
+    }
+
+    /**
+     * @return the MinHash signature of the text, or null if it has no words
+     */
+    public long[] computeSignature(String text) {
+        return minHasher.signature(text);
+    }
+
+    /**
+     * Look for an indexed document of the tenant at least as similar as the threshold.
+     * If there is none, the document becomes canonical and is added to the index. The
+     * signature is stored either way, so a near-duplicate can be indexed when promoted.
+     * @return the canonical document the signature duplicates, if any
+     */
+    public Optional<LshIndex.Match> matchOrRegister(UUID tenantId, UUID documentId, long[] signature, double threshold) {
+        LshIndex index = getIndex(tenantId);
+
+        // Check and insert atomically so two copies processed at once cannot both become canonical
+        synchronized (index) {
+            Optional<LshIndex.Match> match = index.findMostSimilar(signature, threshold);
+            if (match.isPresent() && match.get().getDocumentId().equals(documentId)) {
+                // Already indexed, e.g. a promoted near-duplicate processed again
+                return match;
+            }
+
+            DocumentSignature stored = new DocumentSignature();
+            stored.setDocumentId(documentId);
+            stored.setTenantId(tenantId);
+            stored.setSignature(signature);
+            stored.setCanonical(match.isEmpty());
+            documentSignatureRepository.save(stored);
+
+            if (match.isEmpty()) {
+                index.add(documentId, signature);
+            }
+            return match;
+        }
+    }
+
+    /**
+     * Drop a deleted document from the in-memory indexes; its stored signature is removed with it
+     */
+    public void forget(UUID documentId) {
+        indexes.values().forEach(index -> index.remove(documentId));
+    }
+
+    /**
+     * Hand the near-duplicates of a canonical document that is being deleted to the oldest
+     * of them. That one loses its canonical link and its stored signature is added to the
+     * index, whatever its status, so later copies of it are detected. If it was skipped, it
+     * is set back to PENDING and processed again once the deleting transaction commits.
+     * The others are linked to it instead, so none is left skipped without a canonical
+     * document, with their similarity to it estimated from the stored signatures and a
+     * NEAR_DUPLICATE_OF relationship to it in the graph. Call within the deleting transaction.
+     * @return the promoted document, if the document had near-duplicates
+     */
+    public Optional<UUID> promoteDuplicate(UUID canonicalDocumentId) {
+        List<Document> duplicates = documentRepository.findByCanonicalDocumentIdOrderByCreatedAtAsc(canonicalDocumentId);
+        if (duplicates.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Document promoted = duplicates.get(0);
+        promoted.setCanonicalDocumentId(null);
+        Optional<DocumentSignature> signature = documentSignatureRepository.findById(promoted.getId());
+        // Near-duplicates linked before their signatures were stored have to be processed again to get one
+        boolean requeue = promoted.getStatus() == Document.DocumentStatus.SKIPPED
+                || signature.isEmpty() && (promoted.getStatus() == Document.DocumentStatus.PROCESSED
+                        || promoted.getStatus() == Document.DocumentStatus.FAILED);
+        if (requeue) {
+            promoted.setStatus(Document.DocumentStatus.PENDING);
+            promoted.setProcessedAt(null);
+        }
+        promoted.setCanonicalSimilarity(null);
+        
+        List<Document> relinked = duplicates.subList(1, duplicates.size());
+        Map<UUID, DocumentSignature> signatures = signature.isEmpty() ? Map.of()
+                : documentSignatureRepository.findAllById(relinked.stream().map(Document::getId).toList()).stream()
+                        .collect(Collectors.toMap(DocumentSignature::getDocumentId, Function.identity()));
+        for (Document duplicate : relinked) {
+            DocumentSignature duplicateSignature = signatures.get(duplicate.getId());
+            duplicate.setCanonicalDocumentId(promoted.getId());
+            duplicate.setCanonicalSimilarity(duplicateSignature != null
+                    ? MinHasher.similarity(duplicateSignature.getSignature(), signature.get().getSignature()) : null);
+        }
+        documentRepository.saveAll(duplicates);
+        signature.ifPresent(this::registerCanonical);
+        if (neo4jService != null) {
+            for (Document duplicate : relinked) {
+                neo4jService.createRelationship(duplicate.getId(), promoted.getId(), RELATIONSHIP_TYPE,
+                        duplicate.getCanonicalSimilarity() != null ? Map.of("score", duplicate.getCanonicalSimilarity()) : null);
+            }
+        }
+
+        log.info("Promoted document {} to canonical in place of {} ({} near-duplicates relinked)",
+                promoted.getId(), canonicalDocumentId, duplicates.size() - 1);
+        if (requeue) {
+            eventPublisher.publishEvent(new DocumentRequeuedEvent(promoted.getId()));
+        }
+        return Optional.of(promoted.getId());
+    }
+
+    private void registerCanonical(DocumentSignature stored) {
+        stored.setCanonical(true);
+        documentSignatureRepository.save(stored);
+
+        // An index not loaded yet reads the signature from the table
+        LshIndex index = indexes.get(stored.getTenantId());
+        if (index != null) {
+            synchronized (index) {
+                index.add(stored.getDocumentId(), stored.getSignature());
+            }
+        }
+    }
+
+    private LshIndex getIndex(UUID tenantId) {
+        return indexes.computeIfAbsent(tenantId, this::loadIndex);
+    }
+
+    private LshIndex loadIndex(UUID tenantId) {
+        LshIndex index = new LshIndex(minHasher.getNumHashes(), bands);
+        int skipped = 0;
+        for (DocumentSignature stored : documentSignatureRepository.findByTenantIdAndCanonicalTrue(tenantId)) {
+            long[] signature = stored.getSignature();
+            if (signature.length != minHasher.getNumHashes()) {
+                // Computed with a different num-hashes setting
+                skipped++;
+                continue;
+            }
+            index.add(stored.getDocumentId(), signature);
+        }
+
+        log.info("Loaded near-duplicate index for tenant {} with {} signatures", tenantId, index.size());
+        if (skipped > 0) {
+            log.warn("Skipped {} signatures of tenant {} with a different number of hashes", skipped, tenantId);
+        }
+        return index;
+    }
+}
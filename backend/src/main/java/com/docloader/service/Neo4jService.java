@@ -2,6 +2,8 @@ package com.docloader.service;
 
 import com.docloader.model.Document;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -28,6 +30,16 @@ public interface Neo4jService {
      */
     List<UUID> findRelatedDocuments(UUID documentId, String relationshipType, int limit);
     
+    /**
+     * Find the documents reachable from a set of documents within a number of hops
+     * @param documentIds the documents to start from, which are not returned
+     * @param relationshipType the type of relationship to follow
+     * @param hops the maximum number of relationships on a path
+     * @param limit the maximum number of results to return
+     * @return related document IDs, nearest first
+     */
+    List<UUID> expandRelatedDocuments(Collection<UUID> documentIds, String relationshipType, int hops, int limit);
+    
     /**
      * Create a relationship between two documents
      * @param sourceDocumentId the source document ID
@@ -37,6 +49,22 @@ public interface Neo4jService {
      */
     void createRelationship(UUID sourceDocumentId, UUID targetDocumentId, String relationshipType, Map<String, Object> properties);
     
+    /**
+     * Remove the relationships of a type going out of documents, including pending ones
+     * @param documentIds the source documents
+     * @param relationshipType the type of relationship
+     */
+    void removeRelationships(Collection<UUID> documentIds, String relationshipType);
+    
+    /**
+     * Keep only the best scored relationships of a type going out of documents
+     * @param documentIds the source documents
+     * @param relationshipType the type of relationship
+     * @param maxDegree the number of relationships kept per document
+     * @return the number of relationships removed
+     */
+    int pruneRelationships(Collection<UUID> documentIds, String relationshipType, int maxDegree);
+    
     /**
      * Remove a document from Neo4j
      * @param documentId the document ID to remove
@@ -49,4 +77,30 @@ public interface Neo4jService {
      * @return true if the document exists, false otherwise
      */
     boolean documentExists(UUID documentId);
+
+    /**
+     * Find the documents of a tenant whose vectors were stored after a time
+     * @param tenantId the tenant, null for documents without a tenant
+     * @param since the time, exclusive
+     * @return the document IDs
+     */
+    List<UUID> findDocumentsIndexedSince(UUID tenantId, LocalDateTime since);
+
+    /**
+     * Get the time up to which a derived part of a tenant's graph is up to date
+     * @param tenantId the tenant, null for documents without a tenant
+     * @param name the part of the graph, such as a relationship type
+     * @return the watermark, or null if the part was never built
+     */
+    LocalDateTime getWatermark(UUID tenantId, String name);
+
+    /**
+     * Record the time up to which a derived part of a tenant's graph is up to date
+     */
+    void setWatermark(UUID tenantId, String name, LocalDateTime watermark);
+
+    /**
+     * Write buffered documents and relationships now
+     */
+    void flush();
 } 
\ No newline at end of file
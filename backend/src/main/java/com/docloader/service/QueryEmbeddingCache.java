@@ -0,0 +1,151 @@
+package com.docloader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embeddings of recent search queries. RAG applications repeat the same questions, and
+ * embedding one is a call to the model that costs more than the vector search itself.
+ * Entries are kept per tenant so that the latency of a query tells nothing about what
+ * other tenants search for, and keyed by the model ID so switching models never serves
+ * a vector of the previous one. Concurrent misses on the same query share one call.
+ */
+@Service
+public class QueryEmbeddingCache {
+
+    // Lock stripes of the LRU maps, so lookups of different queries rarely contend
+    private static final int STRIPES = 16;
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingTruncation embeddingTruncation;
+    private final TaskExecutor searchExecutor;
+    private final Map<Key, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    @Value("${docloader.embedding.model-id:default}")
+    private String modelId;
+
+    public QueryEmbeddingCache(
+            EmbeddingModel embeddingModel,
+            EmbeddingTruncation embeddingTruncation,
+            @Qualifier("searchExecutor") TaskExecutor searchExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${docloader.search.embedding-cache-size:10000}") int size) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingTruncation = embeddingTruncation;
+        this.searchExecutor = searchExecutor;
+        this.hits = meterRegistry.counter("docloader.search.embedding.cache", "result", "hit");
+        this.misses = meterRegistry.counter("docloader.search.embedding.cache", "result", "miss");
+        int stripeSize = Math.max(1, size / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeSize);
+        }
+    }
+
+    /**
+     * Embed a query, completing right away when it was embedded recently
+     * @param tenantId the tenant searching, null for users without a tenant
+     * @return the embedding, truncated like chunk embeddings; callers must not modify it
+     */
+    public CompletableFuture<float[]> embed(UUID tenantId, String query) {
+        Key key = new Key(tenantId, modelId, normalize(query));
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), STRIPES)];
+        float[] cached = stripe.get(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.increment();
+
+        CompletableFuture<float[]> created = new CompletableFuture<>();
+        CompletableFuture<float[]> pending = inFlight.putIfAbsent(key, created);
+        if (pending != null) {
+            return pending;
+        }
+        CompletableFuture.supplyAsync(() -> embed(key.text), searchExecutor).whenComplete((embedding, e) -> {
+            if (e == null) {
+                stripe.put(key, embedding);
+            }
+            inFlight.remove(key, created);
+            if (e == null) {
+                created.complete(embedding);
+            } else {
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+
+    private float[] embed(String text) {
+        return embeddingTruncation.apply(embeddingModel.embed(text));
+    }
+
+    /**
+     * Queries differing only in surrounding or repeated white space share an entry; case
+     * is kept since some models tell "US" from "us"
+     */
+    static String normalize(String query) {
+        return query.strip().replaceAll("\\s+", " ");
+    }
+
+    private static final class Key {
+        private final UUID tenantId;
+        private final String modelId;
+        private final String text;
+        private final int hash;
+
+        Key(UUID tenantId, String modelId, String text) {
+            this.tenantId = tenantId;
+            this.modelId = modelId;
+            this.text = text;
+            this.hash = Objects.hash(tenantId, modelId, text);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Objects.equals(tenantId, other.tenantId)
+                    && modelId.equals(other.modelId) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Stripe {
+        private final LinkedHashMap<Key, float[]> entries;
+
+        Stripe(int capacity) {
+            // Access order makes the eldest entry the least recently used one
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, float[]> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized float[] get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, float[] embedding) {
+            entries.put(key, embedding);
+        }
+    }
+}
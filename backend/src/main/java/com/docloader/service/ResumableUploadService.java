@@ -0,0 +1,601 @@
+package com.docloader.service;
+
+import com.docloader.dto.UploadSessionRequest;
+import com.docloader.dto.UploadSessionResponse;
+import com.docloader.model.Document;
+import com.docloader.model.UploadSession;
+import com.docloader.model.UploadSessionPart;
+import com.docloader.repository.UploadSessionPartRepository;
+import com.docloader.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.TeeInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Resumable chunked uploads for files larger than the servlet multipart limit.
+ * <p>
+ * A session fixes the file size and chunk size up front. Chunks are then sent at
+ * their offsets in any order and streamed straight into a preallocated file
+ * (filesystem storage) or into the parts of an S3 multipart upload. The MD5 of the
+ * file is computed incrementally over the contiguous prefix received so far, so
+ * finalizing a session does not have to read the whole file again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+
+    private static final long S3_MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final long MIN_CHUNK_SIZE = 256L * 1024;
+    private static final long MAX_CHUNK_SIZE = 512L * 1024 * 1024;
+    private static final int S3_MAX_PARTS = 10000;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadSessionPartRepository uploadSessionPartRepository;
+    private final DocumentService documentService;
+    private final S3Service s3Service;
+    private final StorageBackend storageBackend;
+
+    // Incremental hash state of the sessions handled by this node
+    private final Map<UUID, ChunkHasher> hashers = new ConcurrentHashMap<>();
+
+    @Value("${docloader.uploads.dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${docloader.storage.type:filesystem}")
+    private String storageType;
+
+    @Value("${docloader.uploads.resumable.chunk-size:8MB}")
+    private DataSize defaultChunkSize;
+
+    @Value("${docloader.uploads.resumable.max-file-size:20GB}")
+    private DataSize maxFileSize;
+
+    @Value("${docloader.uploads.resumable.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    public UploadSessionResponse createSession(UploadSessionRequest request, UUID uploadedBy, UUID tenantId) {
+        String filename = StringUtils.cleanPath(request.getFilename());
+        if (filename.contains("..") || filename.contains("/")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Filename contains invalid path sequence: " + filename);
+        }
+
+        long fileSize = request.getFileSize();
+        if (fileSize > maxFileSize.toBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "File exceeds the maximum resumable upload size of " + maxFileSize);
+        }
+
+        boolean s3 = isS3Storage();
+        long chunkSize = resolveChunkSize(request.getChunkSize(), fileSize, s3);
+
+        UploadSession session = new UploadSession();
+        session.setFilename(filename);
+        session.setContentType(request.getContentType());
+        session.setTotalSize(fileSize);
+        session.setChunkSize(chunkSize);
+        session.setUploadedBy(uploadedBy);
+        session.setTenantId(tenantId);
+        session.setStatus(UploadSession.UploadStatus.ACTIVE);
+        session.setExpiresAt(LocalDateTime.now().plus(sessionTtl));
+
+        try {
+            if (s3) {
+                String key = storageBackend.buildKey(tenantId, uploadedBy, filename);
+                session.setStorageType("s3");
+                session.setStoragePath(key);
+                session.setS3UploadId(s3Service.createMultipartUpload(key, request.getContentType()));
+            } else {
+                Path stagingDir = getStagingDir();
+                Files.createDirectories(stagingDir);
+                Path stagingFile = stagingDir.resolve(UUID.randomUUID() + ".part");
+
+                // Preallocate so chunks can be written at any offset
+                try (RandomAccessFile file = new RandomAccessFile(stagingFile.toFile(), "rw")) {
+                    file.setLength(fileSize);
+                }
+                session.setStorageType("filesystem");
+                session.setStoragePath(stagingFile.toString());
+            }
+        } catch (IOException e) {
+            log.error("Error preparing upload session for {}: {}", filename, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create upload session");
+        }
+
+        UploadSession saved = uploadSessionRepository.save(session);
+        log.info("Created upload session {} for {} ({} bytes in {} chunks of {} bytes)",
+                saved.getId(), filename, fileSize, saved.getChunkCount(), chunkSize);
+
+        return toResponse(saved, List.of());
+    }
+
+    /**
+     * Write one chunk of a session. The offset must be aligned to the session chunk size
+     * and the content length must match the expected chunk length.
+     * @return the end offset of the written chunk
+     */
+    public long writeChunk(UUID sessionId, UUID userId, long offset, long contentLength, InputStream body) {
+        UploadSession session = getActiveSession(sessionId, userId);
+
+        long chunkSize = session.getChunkSize();
+        if (offset < 0 || offset >= session.getTotalSize() || offset % chunkSize != 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Upload-Offset must be a multiple of the chunk size " + chunkSize + " within the file");
+        }
+
+        long expectedLength = Math.min(chunkSize, session.getTotalSize() - offset);
+        if (contentLength < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+        }
+        if (contentLength != expectedLength) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Chunk at offset " + offset + " must be " + expectedLength + " bytes");
+        }
+
+        int partNumber = (int) (offset / chunkSize) + 1;
+        ChunkHasher hasher = hashers.computeIfAbsent(sessionId, id -> createHasher(session));
+        MessageDigest inlineDigest = hasher.beginInline(offset);
+        boolean inline = inlineDigest != null;
+        Path spoolFile = null;
+        String etag = null;
+        boolean completed = false;
+
+        try {
+            try {
+                InputStream in = inline ? new DigestInputStream(body, inlineDigest) : body;
+
+                if ("s3".equals(session.getStorageType())) {
+                    if (!inline && hasher.needsSpool(offset)) {
+                        // Out-of-order chunk: keep a local copy until the hashed prefix reaches it
+                        spoolFile = getSpoolDir(sessionId).resolve(Long.toString(offset));
+                        Files.createDirectories(spoolFile.getParent());
+                        OutputStream spool = Files.newOutputStream(spoolFile);
+                        in = new TeeInputStream(in, spool, true);
+                    }
+                    try (InputStream partStream = in) {
+                        etag = s3Service.uploadPart(session.getStoragePath(), session.getS3UploadId(),
+                                partNumber, partStream, contentLength);
+                    }
+                } else {
+                    try (FileChannel channel = FileChannel.open(Paths.get(session.getStoragePath()), StandardOpenOption.WRITE)) {
+                        long written = 0;
+                        var source = Channels.newChannel(in);
+                        while (written < contentLength) {
+                            long n = channel.transferFrom(source, offset + written, contentLength - written);
+                            if (n <= 0) {
+                                break;
+                            }
+                            written += n;
+                        }
+                        if (written != contentLength) {
+                            throw new IOException("Connection closed after " + written + " of " + contentLength + " bytes");
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to write chunk {} of upload session {}: {}", partNumber, sessionId, e.getMessage());
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                        "Failed to store chunk at offset " + offset);
+            }
+
+            UploadSessionPart part = uploadSessionPartRepository.findBySessionIdAndPartNumber(sessionId, partNumber)
+                    .orElseGet(UploadSessionPart::new);
+            part.setSessionId(sessionId);
+            part.setPartNumber(partNumber);
+            part.setOffset(offset);
+            part.setSize(contentLength);
+            part.setEtag(etag);
+            uploadSessionPartRepository.save(part);
+
+            hasher.completeChunk(offset, contentLength, inline, spoolFile, session);
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Roll the digest back and drop the spool copy so a retry of the chunk starts clean
+                hasher.abortInline(inline);
+                deleteQuietly(spoolFile);
+            }
+        }
+
+        return offset + contentLength;
+    }
+
+    public List<UploadSessionResponse> getActiveSessions(UUID userId) {
+        return uploadSessionRepository.findByUploadedByAndStatus(userId, UploadSession.UploadStatus.ACTIVE).stream()
+                .map(session -> toResponse(session,
+                        uploadSessionPartRepository.findBySessionIdOrderByPartNumber(session.getId())))
+                .collect(Collectors.toList());
+    }
+
+    public UploadSessionResponse getSession(UUID sessionId, UUID userId) {
+        UploadSession session = getOwnedSession(sessionId, userId);
+        return toResponse(session, uploadSessionPartRepository.findBySessionIdOrderByPartNumber(sessionId));
+    }
+
+    /**
+     * Assemble the uploaded chunks and register the file as a Document
+     */
+    public Document completeSession(UUID sessionId, UUID userId) {
+        UploadSession session = getActiveSession(sessionId, userId);
+        List<UploadSessionPart> parts = uploadSessionPartRepository.findBySessionIdOrderByPartNumber(sessionId);
+
+        if (parts.size() != session.getChunkCount()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Upload is incomplete: " + parts.size() + " of " + session.getChunkCount() + " chunks received");
+        }
+
+        ChunkHasher hasher = hashers.remove(sessionId);
+        String md5Hash = hasher != null ? hasher.finish(session.getTotalSize()) : null;
+        String filePath;
+
+        try {
+            if ("s3".equals(session.getStorageType())) {
+                Map<Integer, String> etags = parts.stream()
+                        .collect(Collectors.toMap(UploadSessionPart::getPartNumber, UploadSessionPart::getEtag));
+                s3Service.completeMultipartUpload(session.getStoragePath(), session.getS3UploadId(), etags);
+                filePath = session.getStoragePath();
+
+                if (md5Hash == null) {
+                    log.info("Hash state of upload session {} not available on this node, re-reading object", sessionId);
+                    try (InputStream in = s3Service.downloadFile(filePath)) {
+                        md5Hash = StorageBackend.md5Hex(in);
+                    }
+                }
+                deleteRecursively(getSpoolDir(sessionId));
+            } else {
+                Path stagingFile = Paths.get(session.getStoragePath());
+                if (md5Hash == null) {
+                    log.info("Hash state of upload session {} not available on this node, re-reading file", sessionId);
+                    try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.READ)) {
+                        md5Hash = StorageBackend.md5Hex(channel);
+                    }
+                }
+
+                // Renamed into place when the staging area shares the upload volume
+                String key = storageBackend.buildKey(session.getTenantId(), userId, session.getFilename());
+                filePath = storageBackend.store(stagingFile, key, session.getContentType(), md5Hash).getLocation();
+            }
+        } catch (IOException e) {
+            log.error("Error completing upload session {}: {}", sessionId, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to complete upload");
+        }
+
+        Document document = new Document();
+        document.setFilename(session.getFilename());
+        document.setFilePath(filePath);
+        document.setFileSize(session.getTotalSize());
+        document.setContentType(session.getContentType());
+        document.setMd5Hash(md5Hash);
+        document.setUploadedBy(userId);
+        document.setStatus(Document.DocumentStatus.PENDING);
+        Document saved = documentService.saveDocument(document);
+
+        session.setStatus(UploadSession.UploadStatus.COMPLETED);
+        session.setMd5Hash(md5Hash);
+        session.setDocumentId(saved.getId());
+        uploadSessionRepository.save(session);
+
+        log.info("Completed upload session {} as document {}", sessionId, saved.getId());
+        return saved;
+    }
+
+    public void abortSession(UUID sessionId, UUID userId) {
+        abort(getActiveSession(sessionId, userId));
+    }
+
+    /**
+     * Abort all active sessions whose TTL has passed and release their storage
+     * @return the number of sessions expired
+     */
+    public int expireSessions() {
+        List<UploadSession> expired = uploadSessionRepository.findByStatusAndExpiresAtBefore(
+                UploadSession.UploadStatus.ACTIVE, LocalDateTime.now());
+
+        for (UploadSession session : expired) {
+            try {
+                abort(session);
+            } catch (Exception e) {
+                log.error("Error expiring upload session {}: {}", session.getId(), e.getMessage(), e);
+            }
+        }
+        return expired.size();
+    }
+
+    private void abort(UploadSession session) {
+        log.info("Aborting upload session {}", session.getId());
+        hashers.remove(session.getId());
+
+        if ("s3".equals(session.getStorageType())) {
+            s3Service.abortMultipartUpload(session.getStoragePath(), session.getS3UploadId());
+            deleteRecursively(getSpoolDir(session.getId()));
+        } else {
+            deleteQuietly(Paths.get(session.getStoragePath()));
+        }
+
+        session.setStatus(UploadSession.UploadStatus.ABORTED);
+        uploadSessionRepository.save(session);
+    }
+
+    private UploadSession getOwnedSession(UUID sessionId, UUID userId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+
+        if (!session.getUploadedBy().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this upload session");
+        }
+        return session;
+    }
+
+    private UploadSession getActiveSession(UUID sessionId, UUID userId) {
+        UploadSession session = getOwnedSession(sessionId, userId);
+
+        if (session.getStatus() != UploadSession.UploadStatus.ACTIVE) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Upload session is " + session.getStatus());
+        }
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Upload session has expired");
+        }
+        return session;
+    }
+
+    private long resolveChunkSize(Long requested, long fileSize, boolean s3) {
+        long chunkSize = requested != null ? requested : defaultChunkSize.toBytes();
+        chunkSize = Math.min(Math.max(chunkSize, s3 ? S3_MIN_PART_SIZE : MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+
+        if (s3) {
+            // S3 allows at most 10,000 parts per multipart upload
+            chunkSize = Math.max(chunkSize, (fileSize + S3_MAX_PARTS - 1) / S3_MAX_PARTS);
+        }
+        return chunkSize;
+    }
+
+    private ChunkHasher createHasher(UploadSession session) {
+        List<UploadSessionPart> received = uploadSessionPartRepository.findBySessionIdOrderByPartNumber(session.getId());
+        boolean s3 = "s3".equals(session.getStorageType());
+        ChunkHasher hasher = new ChunkHasher(s3);
+
+        if (!received.isEmpty()) {
+            if (s3) {
+                // Parts already in S3 cannot be re-read cheaply; fall back to hashing at completion
+                hasher.invalidate();
+            } else {
+                received.forEach(part -> hasher.pending.put(part.getOffset(), part.getSize()));
+                hasher.drain(session);
+            }
+        }
+        return hasher;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<UploadSessionPart> parts) {
+        Set<Long> receivedOffsets = parts.stream()
+                .map(UploadSessionPart::getOffset)
+                .collect(Collectors.toSet());
+
+        List<Long> missing = new ArrayList<>();
+        long bytesReceived = 0;
+        for (long offset = 0; offset < session.getTotalSize(); offset += session.getChunkSize()) {
+            if (!receivedOffsets.contains(offset)) {
+                missing.add(offset);
+            }
+        }
+        for (UploadSessionPart part : parts) {
+            bytesReceived += part.getSize();
+        }
+
+        UploadSessionResponse response = new UploadSessionResponse();
+        response.setId(session.getId());
+        response.setFilename(session.getFilename());
+        response.setContentType(session.getContentType());
+        response.setFileSize(session.getTotalSize());
+        response.setChunkSize(session.getChunkSize());
+        response.setChunkCount(session.getChunkCount());
+        response.setStatus(session.getStatus());
+        response.setMissingOffsets(session.getStatus() == UploadSession.UploadStatus.ACTIVE ? missing : null);
+        response.setBytesReceived(bytesReceived);
+        response.setDocumentId(session.getDocumentId());
+        response.setMd5Hash(session.getMd5Hash());
+        response.setExpiresAt(session.getExpiresAt());
+        return response;
+    }
+
+    private boolean isS3Storage() {
+        return "s3".equalsIgnoreCase(storageType);
+    }
+
+    private Path getStagingDir() {
+        return Paths.get(uploadsDir, ".resumable");
+    }
+
+    private Path getSpoolDir(UUID sessionId) {
+        return getStagingDir().resolve("spool").resolve(sessionId.toString());
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (var files = Files.list(dir)) {
+            files.forEach(ResumableUploadService::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("Could not list {}: {}", dir, e.getMessage());
+        }
+        deleteQuietly(dir);
+    }
+
+    /**
+     * MD5 state over the contiguous prefix of a session. The chunk that starts exactly at
+     * the hashed offset is digested while it streams in; chunks that arrive ahead of it are
+     * hashed once the gap closes, read back from the preallocated file or, for S3, from a
+     * local spool copy.
+     */
+    private static final class ChunkHasher {
+
+        private final boolean s3;
+        private MessageDigest digest;
+        private final NavigableMap<Long, Long> pending = new TreeMap<>();
+        private final Map<Long, Path> spooled = new HashMap<>();
+        private long hashedOffset;
+        private boolean streaming;
+        private boolean valid = true;
+        private MessageDigest snapshot;
+
+        ChunkHasher(boolean s3) {
+            this.s3 = s3;
+            try {
+                this.digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 not available", e);
+            }
+        }
+
+        /**
+         * Claim the chunk at the hashed offset for inline hashing
+         * @return the digest to feed while the chunk streams in, or null if the chunk is out of order
+         */
+        synchronized MessageDigest beginInline(long offset) {
+            if (!valid || streaming || offset != hashedOffset) {
+                return null;
+            }
+            try {
+                snapshot = (MessageDigest) digest.clone();
+            } catch (CloneNotSupportedException e) {
+                return null;
+            }
+            streaming = true;
+            return digest;
+        }
+
+        synchronized boolean needsSpool(long offset) {
+            return valid && offset > hashedOffset;
+        }
+
+        synchronized void abortInline(boolean inline) {
+            if (!inline) {
+                return;
+            }
+            // Roll the digest back to the state before the failed chunk
+            digest = snapshot;
+            snapshot = null;
+            streaming = false;
+        }
+
+        synchronized void completeChunk(long offset, long size, boolean inline, Path spoolFile, UploadSession session) {
+            if (inline) {
+                hashedOffset += size;
+                streaming = false;
+                snapshot = null;
+            } else if (valid && offset >= hashedOffset) {
+                pending.put(offset, size);
+                if (spoolFile != null) {
+                    spooled.put(offset, spoolFile);
+                }
+            }
+            drain(session);
+        }
+
+        synchronized void drain(UploadSession session) {
+            while (valid && !streaming && pending.containsKey(hashedOffset)) {
+                long offset = hashedOffset;
+                long size = pending.remove(offset);
+                try {
+                    if (s3) {
+                        Path spoolFile = spooled.remove(offset);
+                        if (spoolFile == null) {
+                            invalidate();
+                            return;
+                        }
+                        try (FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.READ)) {
+                            update(channel, 0, size);
+                        }
+                        deleteQuietly(spoolFile);
+                    } else {
+                        try (FileChannel channel = FileChannel.open(Paths.get(session.getStoragePath()), StandardOpenOption.READ)) {
+                            update(channel, offset, size);
+                        }
+                    }
+                    hashedOffset += size;
+                } catch (IOException e) {
+                    log.warn("Could not hash chunk at offset {} of upload session {}: {}",
+                            offset, session.getId(), e.getMessage());
+                    invalidate();
+                }
+            }
+        }
+
+        synchronized String finish(long totalSize) {
+            if (!valid || streaming || hashedOffset != totalSize) {
+                return null;
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        synchronized void invalidate() {
+            valid = false;
+            pending.clear();
+            spooled.values().forEach(ResumableUploadService::deleteQuietly);
+            spooled.clear();
+        }
+
+        private void update(FileChannel channel, long position, long size) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            long end = position + size;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file at " + position);
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+            }
+        }
+    }
+}
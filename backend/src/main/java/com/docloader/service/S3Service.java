@@ -1,13 +1,18 @@
 package com.docloader.service;
 
 import com.docloader.model.S3BucketConfig;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Service for interacting with S3 or S3-compatible storage (MinIO for local development)
@@ -87,6 +92,15 @@ public interface S3Service {
      */
     List<String> listObjects(S3BucketConfig config, String prefix);
 
+    /**
+     * List all objects under a prefix with their size and ETag, one page at a time,
+     * using a specific bucket configuration. The content type is not part of listings.
+     * @param config The S3 bucket configuration
+     * @param prefix The prefix/directory to list
+     * @param pageConsumer Called with each page of up to 1000 objects
+     */
+    void listObjects(S3BucketConfig config, String prefix, Consumer<List<ObjectInfo>> pageConsumer);
+
     /**
      * Get the full URL for an object using a specific bucket configuration
      * @param config The S3 bucket configuration
@@ -129,4 +143,125 @@ public interface S3Service {
      * @return True if the object exists, false otherwise
      */
     boolean fileExists(String key);
+    
+    /**
+     * Download a file using the default S3 configuration
+     * @param key The object key (path and filename)
+     * @return An input stream containing the file data
+     */
+    InputStream downloadFile(String key);
+    
+    /**
+     * Start a multipart upload using the default S3 configuration
+     * @param key The object key (path and filename)
+     * @param contentType The content type (MIME type)
+     * @return The multipart upload ID
+     */
+    String createMultipartUpload(String key, String contentType);
+    
+    /**
+     * Upload a single part of a multipart upload using the default S3 configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     * @param partNumber The 1-based part number
+     * @param inputStream The input stream to read the part data from
+     * @param contentLength The length of the part in bytes
+     * @return The ETag of the uploaded part
+     */
+    String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long contentLength);
+    
+    /**
+     * Complete a multipart upload using the default S3 configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     * @param partETags The ETags of all uploaded parts keyed by part number
+     * @return The full URL of the assembled object
+     */
+    String completeMultipartUpload(String key, String uploadId, Map<Integer, String> partETags);
+    
+    /**
+     * Abort a multipart upload and discard its parts using the default S3 configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     */
+    void abortMultipartUpload(String key, String uploadId);
+    
+    /**
+     * Create a pre-signed URL for a single PUT of an object using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param contentType The content type the client must send, or null
+     * @param contentMd5 The base64 Content-MD5 the client must send, or null
+     * @param expiry How long the URL stays valid
+     * @return The pre-signed URL
+     */
+    String presignPutObject(S3BucketConfig config, String key, String contentType, String contentMd5, Duration expiry);
+    
+    /**
+     * Start a multipart upload using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param contentType The content type (MIME type)
+     * @return The multipart upload ID
+     */
+    String createMultipartUpload(S3BucketConfig config, String key, String contentType);
+    
+    /**
+     * Create a pre-signed URL for one part of a multipart upload using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     * @param partNumber The 1-based part number
+     * @param expiry How long the URL stays valid
+     * @return The pre-signed URL
+     */
+    String presignUploadPart(S3BucketConfig config, String key, String uploadId, int partNumber, Duration expiry);
+    
+    /**
+     * List the parts uploaded so far to a multipart upload using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     * @return The ETags of the uploaded parts keyed by part number
+     */
+    Map<Integer, String> listParts(S3BucketConfig config, String key, String uploadId);
+    
+    /**
+     * Complete a multipart upload using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     * @param partETags The ETags of all uploaded parts keyed by part number
+     * @return The full URL of the assembled object
+     */
+    String completeMultipartUpload(S3BucketConfig config, String key, String uploadId, Map<Integer, String> partETags);
+    
+    /**
+     * Abort a multipart upload and discard its parts using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key (path and filename)
+     * @param uploadId The multipart upload ID
+     */
+    void abortMultipartUpload(S3BucketConfig config, String key, String uploadId);
+    
+    /**
+     * Read the metadata of an object with HeadObject using a specific bucket configuration
+     * @param config The S3 bucket configuration
+     * @param key The object key
+     * @return The object metadata, or empty if the object does not exist
+     */
+    Optional<ObjectInfo> headObject(S3BucketConfig config, String key);
+    
+    /**
+     * Metadata of a stored object
+     */
+    @Getter
+    @AllArgsConstructor
+    class ObjectInfo {
+        private final String key;
+        private final long size;
+        // Quotes stripped; the hex MD5 for objects stored with a single PUT
+        private final String eTag;
+        private final String contentType;
+    }
 } 
\ No newline at end of file
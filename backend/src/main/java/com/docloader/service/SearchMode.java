@@ -0,0 +1,13 @@
+package com.docloader.service;
+
+/**
+ * Retrieval used by a document search
+ */
+public enum SearchMode {
+    /** Embedding similarity only */
+    VECTOR,
+    /** BM25 over the chunk texts only */
+    LEXICAL,
+    /** Both, fused with Reciprocal Rank Fusion */
+    HYBRID
+}
@@ -0,0 +1,283 @@
+package com.docloader.service;
+
+import com.docloader.dto.SearchHit;
+import com.docloader.vector.VectorMath;
+import com.docloader.vector.VectorSearchFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vector search results of recent queries, served again for queries whose embedding is
+ * nearly the same. RAG front-ends send many rephrasings of the same question, which embed
+ * a few degrees apart and find the same chunks.
+ * <p>
+ * Entries are looked up by tenant, filter and a locality-sensitive hash of the query
+ * embedding: each of several tables hashes the signs of its own random projections, so
+ * queries at a small angle share a bucket in at least one table with high probability.
+ * A candidate only counts as a hit when its cosine similarity to the cached query reaches
+ * the threshold. Each tenant has an index generation, bumped whenever vectors of the
+ * tenant are stored or removed; entries from an earlier generation are never served.
+ * Entries also expire after a time to live, which bounds how stale they get on instances
+ * that did not see a write themselves.
+ */
+@Service
+public class SearchResultCache {
+
+    // Key of the generation shared by users without a tenant
+    private static final UUID NO_TENANT = new UUID(0L, 0L);
+
+    // Seed of the random projections, fixed so that every instance hashes alike
+    private static final long PROJECTION_SEED = 0x5eed_1a5bL;
+
+    private final boolean enabled;
+    private final int tables;
+    private final int bits;
+    private final float threshold;
+    private final long ttlMillis;
+    private final Map<UUID, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<Integer, float[][]> projections = new ConcurrentHashMap<>();
+    // Entries by bucket, and in LRU order; both guarded by the latter
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+    private final LinkedHashMap<Entry, Boolean> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    public SearchResultCache(
+            MeterRegistry meterRegistry,
+            @Value("${docloader.search.result-cache.enabled:true}") boolean enabled,
+            @Value("${docloader.search.result-cache.size:10000}") int size,
+            @Value("${docloader.search.result-cache.tables:4}") int tables,
+            @Value("${docloader.search.result-cache.bits:12}") int bits,
+            @Value("${docloader.search.result-cache.similarity-threshold:0.98}") float threshold,
+            @Value("${docloader.search.result-cache.ttl:60000}") long ttlMillis) {
+        if (bits < 1 || bits > 32) {
+            throw new IllegalArgumentException("Result cache hash bits must be between 1 and 32");
+        }
+        this.enabled = enabled;
+        this.tables = Math.max(1, tables);
+        this.bits = bits;
+        this.threshold = threshold;
+        this.ttlMillis = ttlMillis;
+        int capacity = Math.max(1, size);
+        // Access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Entry, Boolean> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                unlink(eldest.getKey());
+                return true;
+            }
+        };
+        this.hits = meterRegistry.counter("docloader.search.result.cache", "result", "hit");
+        this.misses = meterRegistry.counter("docloader.search.result.cache", "result", "miss");
+    }
+
+    /**
+     * @return the index generation of a tenant; read it before searching and pass it to
+     * {@link #put}, so results of a search that raced with a write are never served
+     */
+    public long generation(UUID tenantId) {
+        AtomicLong generation = generations.get(tenantKey(tenantId));
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * Invalidate the cached results of a tenant after its vectors were stored or removed
+     */
+    public void indexChanged(UUID tenantId) {
+        generations.computeIfAbsent(tenantKey(tenantId), key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @param chunks whether the results rank chunks rather than documents
+     * @param limit the number of hits the results were searched for
+     * @return the results of a cached query close enough to this one, or null
+     */
+    public List<SearchHit> get(UUID tenantId, VectorSearchFilter filter, boolean chunks, int limit, float[] embedding) {
+        if (!enabled) {
+            return null;
+        }
+        Scope scope = new Scope(tenantKey(tenantId), filter, chunks, limit);
+        long generation = generation(tenantId);
+        float[] unit = VectorMath.normalize(embedding);
+        long[] queryBuckets = buckets(scope, unit);
+        long now = System.currentTimeMillis();
+
+        Entry best = null;
+        float bestSimilarity = threshold;
+        synchronized (entries) {
+            List<Entry> stale = null;
+            for (long bucket : queryBuckets) {
+                List<Entry> candidates = buckets.get(bucket);
+                if (candidates == null) {
+                    continue;
+                }
+                for (Entry entry : candidates) {
+                    if (!entry.scope.equals(scope) || entry.query.length != unit.length) {
+                        continue;
+                    }
+                    if (entry.generation != generation || now - entry.createdAt > ttlMillis) {
+                        if (stale == null) {
+                            stale = new ArrayList<>();
+                        }
+                        stale.add(entry);
+                        continue;
+                    }
+                    float similarity = VectorMath.dot(unit, entry.query);
+                    if (similarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (stale != null) {
+                for (Entry entry : stale) {
+                    if (entries.remove(entry) != null) {
+                        unlink(entry);
+                    }
+                }
+            }
+            if (best != null) {
+                // Refreshes the entry's place in the LRU order
+                entries.get(best);
+            }
+        }
+        if (best == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return best.results;
+    }
+
+    /**
+     * Cache the results of a search
+     * @param generation the tenant's generation read before the search started
+     */
+    public void put(UUID tenantId, VectorSearchFilter filter, boolean chunks, int limit, float[] embedding,
+                    long generation, List<SearchHit> results) {
+        if (!enabled || generation != generation(tenantId)) {
+            return;
+        }
+        Scope scope = new Scope(tenantKey(tenantId), filter, chunks, limit);
+        float[] unit = VectorMath.normalize(embedding);
+        Entry entry = new Entry(scope, unit, generation, System.currentTimeMillis(), List.copyOf(results), buckets(scope, unit));
+        synchronized (entries) {
+            for (long bucket : entry.buckets) {
+                buckets.computeIfAbsent(bucket, key -> new ArrayList<>(2)).add(entry);
+            }
+            entries.put(entry, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return the bucket of the query in each table, mixed with the scope so that different
+     * scopes rarely share buckets
+     */
+    private long[] buckets(Scope scope, float[] unit) {
+        float[][] planes = projections.computeIfAbsent(unit.length, this::projections);
+        long[] buckets = new long[tables];
+        for (int table = 0; table < tables; table++) {
+            long signature = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                if (VectorMath.dot(unit, planes[table * bits + bit]) >= 0) {
+                    signature |= 1L << bit;
+                }
+            }
+            buckets[table] = ((long) scope.hashCode() << 32 | signature) * 31 + table;
+        }
+        return buckets;
+    }
+
+    private float[][] projections(int dimension) {
+        Random random = new Random(PROJECTION_SEED + dimension);
+        float[][] planes = new float[tables * bits][dimension];
+        for (float[] plane : planes) {
+            for (int i = 0; i < dimension; i++) {
+                plane[i] = (float) random.nextGaussian();
+            }
+        }
+        return planes;
+    }
+
+    private void unlink(Entry entry) {
+        for (long bucket : entry.buckets) {
+            List<Entry> candidates = buckets.get(bucket);
+            if (candidates != null) {
+                candidates.remove(entry);
+                if (candidates.isEmpty()) {
+                    buckets.remove(bucket);
+                }
+            }
+        }
+    }
+
+    private static UUID tenantKey(UUID tenantId) {
+        return tenantId == null ? NO_TENANT : tenantId;
+    }
+
+    private static final class Scope {
+        private final UUID tenantKey;
+        private final UUID jobId;
+        private final UUID uploadedBy;
+        private final String contentType;
+        private final boolean chunks;
+        private final int limit;
+        private final int hash;
+
+        Scope(UUID tenantKey, VectorSearchFilter filter, boolean chunks, int limit) {
+            this.tenantKey = tenantKey;
+            this.jobId = filter == null ? null : filter.getJobId();
+            this.uploadedBy = filter == null ? null : filter.getUploadedBy();
+            this.contentType = filter == null ? null : filter.getContentType();
+            this.chunks = chunks;
+            this.limit = limit;
+            this.hash = Objects.hash(tenantKey, jobId, uploadedBy, contentType, chunks, limit);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Scope other && hash == other.hash && chunks == other.chunks && limit == other.limit
+                    && tenantKey.equals(other.tenantKey) && Objects.equals(jobId, other.jobId)
+                    && Objects.equals(uploadedBy, other.uploadedBy) && Objects.equals(contentType, other.contentType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Scope scope;
+        private final float[] query;
+        private final long generation;
+        private final long createdAt;
+        private final List<SearchHit> results;
+        private final long[] buckets;
+
+        Entry(Scope scope, float[] query, long generation, long createdAt, List<SearchHit> results, long[] buckets) {
+            this.scope = scope;
+            this.query = query;
+            this.generation = generation;
+            this.createdAt = createdAt;
+            this.results = results;
+            this.buckets = buckets;
+        }
+    }
+}
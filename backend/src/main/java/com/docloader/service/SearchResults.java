@@ -0,0 +1,20 @@
+package com.docloader.service;
+
+import com.docloader.dto.SearchHit;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The ranked hits of a search
+ */
+@Getter
+@AllArgsConstructor
+public class SearchResults {
+
+    private final List<SearchHit> hits;
+
+    // Whether a retrieval missed the deadline or failed and the hits come from the others only
+    private final boolean partial;
+}
@@ -0,0 +1,353 @@
+package com.docloader.service;
+
+import com.docloader.model.Tenant;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.NnDescent;
+import com.docloader.vector.VectorMath;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Links each document of a tenant to its most similar documents with SIMILAR_TO
+ * relationships in the graph. Comparing every pair of documents costs n^2 / 2 vector
+ * comparisons, hours for a tenant with a million documents; instead an approximate
+ * k-nearest-neighbour graph is built by NN-Descent over one vector per document, the mean
+ * of its chunk vectors, in a bounded number of iterations and time. Neighbour lists are
+ * longer than the neighbours linked during the build, which raises the recall of the best
+ * of them. The vectors of the tenant are held in memory while the graph is built.
+ * <p>
+ * The outgoing SIMILAR_TO relationships of each document are replaced, in batches of
+ * documents, through the buffered writes of {@link Neo4jService}.
+ * <p>
+ * Between rebuilds, {@link #update} links only the documents indexed since the tenant's
+ * watermark, the start of the last build or update recorded in the graph: each is
+ * searched in the vector index for candidates, which are rescored on document vectors
+ * like a rebuild would, and linked both ways to its best neighbours. Neighbours that gain
+ * a relationship are pruned back to their best ones, so degrees stay bounded. Its cost
+ * grows with the documents indexed rather than with the tenant. Removed documents lose
+ * their relationships when they are deleted.
+ */
+@Service
+@Slf4j
+public class SimilarityGraphService {
+
+    public static final String RELATIONSHIP_TYPE = "SIMILAR_TO";
+    // Source documents whose relationships are replaced at a time
+    private static final int WRITE_BATCH = 1000;
+    // Chunks searched per candidate document of an update, as documents match with several chunks
+    private static final int CHUNKS_PER_CANDIDATE = 4;
+
+    private final TenantService tenantService;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired(required = false)
+    private WeaviateService weaviateService;
+
+    @Autowired(required = false)
+    private Neo4jService neo4jService;
+
+    @Value("${docloader.graph.similarity.neighbours:10}")
+    private int neighbours;
+
+    // Neighbours kept per document during the build, at least the neighbours linked
+    @Value("${docloader.graph.similarity.candidates:20}")
+    private int candidates;
+
+    @Value("${docloader.graph.similarity.min-score:0.5}")
+    private double minScore;
+
+    @Value("${docloader.graph.similarity.max-iterations:12}")
+    private int maxIterations;
+
+    @Value("${docloader.graph.similarity.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${docloader.graph.similarity.delta:0.001}")
+    private double delta;
+
+    @Value("${docloader.graph.similarity.max-duration:1800000}")
+    private long maxDurationMillis;
+
+    // Threads of the build, 0 for one per processor
+    @Value("${docloader.graph.similarity.parallelism:0}")
+    private int parallelism;
+
+    // How far before the watermark an update looks, for documents marked while the previous one ran
+    @Value("${docloader.graph.similarity.watermark-overlap:60000}")
+    private long watermarkOverlapMillis;
+
+    public SimilarityGraphService(TenantService tenantService) {
+        this.tenantService = tenantService;
+    }
+
+    public boolean isEnabled() {
+        return hasVectorStore() && neo4jService != null;
+    }
+
+    /**
+     * Rebuild the similarity relationships of every tenant and of the documents without one
+     */
+    public void buildAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (UUID tenantId : tenantIds()) {
+            try {
+                build(tenantId);
+            } catch (RuntimeException e) {
+                log.error("Error building the similarity graph of tenant {}: {}", tenantId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Link the documents indexed since the last build or update of every tenant and of the
+     * documents without one
+     */
+    public void updateAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (UUID tenantId : tenantIds()) {
+            try {
+                update(tenantId);
+            } catch (RuntimeException e) {
+                log.error("Error updating the similarity graph of tenant {}: {}", tenantId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the similarity relationships of a tenant's documents; skipped while another build runs
+     * @param tenantId the tenant, null for documents without a tenant
+     * @return the number of relationships written
+     */
+    public int build(UUID tenantId) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The similarity graph needs a vector store with document vectors and Neo4j");
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Skipping the similarity graph of tenant {}: another build is running", tenantId);
+            return 0;
+        }
+        try {
+            LocalDateTime watermark = LocalDateTime.now();
+            Knn knn = knn(tenantId);
+            if (knn == null) {
+                neo4jService.setWatermark(tenantId, RELATIONSHIP_TYPE, watermark);
+                return 0;
+            }
+            long start = System.currentTimeMillis();
+            int written = 0;
+            for (int from = 0; from < knn.documentIds.size(); from += WRITE_BATCH) {
+                int to = Math.min(knn.documentIds.size(), from + WRITE_BATCH);
+                neo4jService.removeRelationships(knn.documentIds.subList(from, to), RELATIONSHIP_TYPE);
+                for (int v = from; v < to; v++) {
+                    written += knn.forEachLink(v, (source, target, score) -> neo4jService.createRelationship(source, target,
+                            RELATIONSHIP_TYPE, Map.of("score", (double) score, "builtAt", start)));
+                }
+            }
+            neo4jService.flush();
+            neo4jService.setWatermark(tenantId, RELATIONSHIP_TYPE, watermark);
+            log.info("Similarity graph of tenant {}: {} relationships written in {} ms", tenantId, written,
+                    System.currentTimeMillis() - start);
+            return written;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Build the similarity graph of a tenant's documents without writing it, for an offline
+     * import of the graph; needs no Neo4j
+     * @param tenantId the tenant, null for documents without a tenant
+     * @param sink receives each relationship
+     * @return the number of relationships handed to the sink
+     */
+    public int export(UUID tenantId, RelationshipSink sink) {
+        if (!hasVectorStore()) {
+            throw new IllegalStateException("The similarity graph needs a vector store with document vectors");
+        }
+        Knn knn = knn(tenantId);
+        int exported = 0;
+        for (int v = 0; knn != null && v < knn.documentIds.size(); v++) {
+            exported += knn.forEachLink(v, sink);
+        }
+        return exported;
+    }
+
+    /**
+     * @return whether there is a vector store that can list the document vectors the graph is built from
+     */
+    public boolean hasVectorStore() {
+        return weaviateService != null && weaviateService.supportsDocumentVectors();
+    }
+
+    /**
+     * @return the approximate k-nearest-neighbour graph of the tenant's documents, or null if it has fewer than two
+     */
+    private Knn knn(UUID tenantId) {
+        long start = System.currentTimeMillis();
+        List<UUID> documentIds = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        weaviateService.forEachDocumentVector(tenantId, (documentId, vector) -> {
+            documentIds.add(documentId);
+            vectors.add(vector);
+        });
+        if (documentIds.size() < 2) {
+            return null;
+        }
+        long loaded = System.currentTimeMillis();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDurationMillis);
+        ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        NnDescent.Graph graph;
+        try {
+            graph = new NnDescent(Math.max(neighbours, candidates), maxIterations, sampleRate, delta,
+                    tenantId != null ? tenantId.getLeastSignificantBits() : 0L)
+                    .build(vectors.toArray(new float[0][]), deadline, pool);
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Similarity graph of tenant {}: {} documents loaded in {} ms, {} iterations and {} comparisons in {} ms",
+                tenantId, documentIds.size(), loaded - start, graph.getIterations(), graph.getComparisons(),
+                System.currentTimeMillis() - loaded);
+        return new Knn(documentIds, graph);
+    }
+
+    /**
+     * Link the documents of a tenant indexed since its watermark, or rebuild if there is none
+     * @param tenantId the tenant, null for documents without a tenant
+     * @return the number of relationships written
+     */
+    public int update(UUID tenantId) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The similarity graph needs a vector store with document vectors and Neo4j");
+        }
+        LocalDateTime previous = neo4jService.getWatermark(tenantId, RELATIONSHIP_TYPE);
+        if (previous == null) {
+            return build(tenantId);
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Skipping the similarity graph update of tenant {}: another build is running", tenantId);
+            return 0;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            LocalDateTime watermark = LocalDateTime.now();
+            // Index marks still buffered would otherwise be missed
+            neo4jService.flush();
+            List<UUID> changed = neo4jService.findDocumentsIndexedSince(tenantId,
+                    previous.minus(watermarkOverlapMillis, ChronoUnit.MILLIS));
+
+            int written = 0;
+            // Documents that may have gained relationships beyond their best, the changed ones included
+            Set<UUID> touched = new HashSet<>(changed);
+            for (int from = 0; from < changed.size(); from += WRITE_BATCH) {
+                List<UUID> batch = changed.subList(from, Math.min(changed.size(), from + WRITE_BATCH));
+                neo4jService.removeRelationships(batch, RELATIONSHIP_TYPE);
+                Map<UUID, float[]> vectors = weaviateService.getDocumentVectors(tenantId, batch);
+                for (Map.Entry<UUID, float[]> entry : vectors.entrySet()) {
+                    UUID documentId = entry.getKey();
+                    for (Map.Entry<UUID, Float> neighbour : nearest(tenantId, documentId, entry.getValue())) {
+                        Map<String, Object> properties = Map.of("score", (double) neighbour.getValue(), "builtAt", start);
+                        neo4jService.createRelationship(documentId, neighbour.getKey(), RELATIONSHIP_TYPE, properties);
+                        // The document may be among the neighbour's best; pruning drops it otherwise
+                        neo4jService.createRelationship(neighbour.getKey(), documentId, RELATIONSHIP_TYPE, properties);
+                        touched.add(neighbour.getKey());
+                        written += 2;
+                    }
+                }
+            }
+            int pruned = touched.isEmpty() ? 0 : neo4jService.pruneRelationships(touched, RELATIONSHIP_TYPE, neighbours);
+            neo4jService.flush();
+            neo4jService.setWatermark(tenantId, RELATIONSHIP_TYPE, watermark);
+            log.info("Similarity graph update of tenant {}: {} documents indexed since {}, {} relationships written "
+                            + "and {} pruned in {} ms", tenantId, changed.size(), previous, written, pruned,
+                    System.currentTimeMillis() - start);
+            return written - pruned;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Candidates come from a chunk search of the document vector and are scored on their own
+     * document vectors, as in a rebuild
+     * @return the best neighbours above the minimum score, best first
+     */
+    private List<Map.Entry<UUID, Float>> nearest(UUID tenantId, UUID documentId, float[] vector) {
+        Set<UUID> candidates = new LinkedHashSet<>();
+        for (ChunkHit hit : weaviateService.findSimilarChunks(tenantId, vector,
+                Math.max(neighbours, this.candidates) * CHUNKS_PER_CANDIDATE, null)) {
+            if (!hit.getDocumentId().equals(documentId)) {
+                candidates.add(hit.getDocumentId());
+            }
+        }
+        List<Map.Entry<UUID, Float>> scored = new ArrayList<>();
+        weaviateService.getDocumentVectors(tenantId, candidates).forEach((candidate, candidateVector) -> {
+            float score = VectorMath.dot(vector, candidateVector);
+            if (score >= minScore) {
+                scored.add(Map.entry(candidate, score));
+            }
+        });
+        scored.sort(Map.Entry.<UUID, Float>comparingByValue().reversed());
+        return scored.subList(0, Math.min(neighbours, scored.size()));
+    }
+
+    /**
+     * Receives the relationships of a similarity graph
+     */
+    public interface RelationshipSink {
+        void accept(UUID source, UUID target, float score);
+    }
+
+    private class Knn {
+        private final List<UUID> documentIds;
+        private final NnDescent.Graph graph;
+
+        private Knn(List<UUID> documentIds, NnDescent.Graph graph) {
+            this.documentIds = documentIds;
+            this.graph = graph;
+        }
+
+        /**
+         * Hand the best neighbours of a document above the minimum score to the sink
+         * @return the number of relationships
+         */
+        private int forEachLink(int v, RelationshipSink sink) {
+            int[] ids = graph.getNeighbours()[v];
+            float[] scores = graph.getScores()[v];
+            int links = 0;
+            for (int i = 0; i < Math.min(neighbours, ids.length) && scores[i] >= minScore; i++) {
+                sink.accept(documentIds.get(v), documentIds.get(ids[i]), scores[i]);
+                links++;
+            }
+            return links;
+        }
+    }
+
+    private List<UUID> tenantIds() {
+        List<UUID> tenantIds = new ArrayList<>();
+        tenantIds.add(null);
+        for (Tenant tenant : tenantService.getAllTenants()) {
+            tenantIds.add(tenant.getId());
+        }
+        return tenantIds;
+    }
+}
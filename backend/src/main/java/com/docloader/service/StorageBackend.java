@@ -0,0 +1,131 @@
+package com.docloader.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Storage for uploaded document content. The implementation is selected with
+ * docloader.storage.type (filesystem or s3). Locations returned by the store methods
+ * are what gets persisted in Document.filePath.
+ */
+public interface StorageBackend {
+
+    /**
+     * @return the storage type name as configured in docloader.storage.type
+     */
+    String getType();
+
+    /**
+     * Build a new unique key for a file uploaded by a user of a tenant
+     * @param tenantId the tenant ID
+     * @param userId the uploading user ID
+     * @param filename the cleaned original filename
+     * @return the storage key
+     */
+    String buildKey(UUID tenantId, UUID userId, String filename);
+
+    /**
+     * Store an uploaded multipart file
+     * @param file the multipart file
+     * @param key the storage key from {@link #buildKey}
+     * @return the stored location, size and MD5 hash
+     */
+    StoredFile store(MultipartFile file, String key) throws IOException;
+
+    /**
+     * Store a local file, taking ownership of it. The source no longer exists afterwards.
+     * @param source the local file
+     * @param key the storage key from {@link #buildKey}
+     * @param contentType the content type (MIME type)
+     * @param md5Hash the MD5 hash of the file if already known, otherwise null
+     * @return the stored location, size and MD5 hash
+     */
+    StoredFile store(Path source, String key, String contentType, String md5Hash) throws IOException;
+
+    /**
+     * Open the content at a stored location
+     * @param location the location as returned by store
+     * @return an input stream of the content
+     */
+    InputStream open(String location) throws IOException;
+
+    /**
+     * @param location the location as returned by store
+     * @return the local file backing the location, if the content lives on the local filesystem
+     */
+    Optional<Path> getLocalPath(String location);
+
+    /**
+     * Write the content at a stored location to a channel
+     * @param location the location as returned by store
+     * @param target the channel to write to
+     * @return the number of bytes written
+     */
+    long transferTo(String location, WritableByteChannel target) throws IOException;
+
+    /**
+     * Delete the content at a stored location if it exists
+     * @param location the location as returned by store
+     */
+    void delete(String location) throws IOException;
+
+    /**
+     * @return true if the value is a lowercase hex MD5, as opposed to e.g. the ETag of a multipart object
+     */
+    static boolean isMd5Hex(String value) {
+        return value != null && value.matches("[0-9a-f]{32}");
+    }
+
+    static String md5Hex(InputStream in) throws IOException {
+        MessageDigest md = newMd5();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    static String md5Hex(FileChannel channel) throws IOException {
+        MessageDigest md = newMd5();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) != -1) {
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+            position += read;
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    class StoredFile {
+        private final String location;
+        private final long size;
+        private final String md5Hash;
+    }
+}
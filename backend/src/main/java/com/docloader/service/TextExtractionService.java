@@ -0,0 +1,46 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Extracts plain text from stored documents with Apache Tika
+ */
+@Service
+@Slf4j
+public class TextExtractionService {
+
+    private final DocumentService documentService;
+    private final Tika tika = new Tika();
+
+    // Characters kept per document; the rest of very large files is ignored
+    @Value("${docloader.processing.max-text-length:10000000}")
+    private int maxTextLength;
+
+    public TextExtractionService(DocumentService documentService) {
+        this.documentService = documentService;
+    }
+
+    public String extractText(Document document) throws IOException, TikaException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, document.getFilename());
+        if (document.getContentType() != null) {
+            metadata.set(Metadata.CONTENT_TYPE, document.getContentType());
+        }
+
+        try (InputStream in = documentService.openContent(document)) {
+            String text = tika.parseToString(in, metadata, maxTextLength);
+            log.debug("Extracted {} characters from document {}", text.length(), document.getId());
+            return text;
+        }
+    }
+}
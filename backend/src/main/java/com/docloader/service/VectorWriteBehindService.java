@@ -0,0 +1,313 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import com.docloader.repository.DocumentRepository;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorRecord;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind buffer between document processing and the vector store. The vectors of
+ * processed documents are queued and written in batches per tenant once enough records
+ * are pending or the flush interval has passed, so processing moves on to the next
+ * document instead of waiting for a store round trip per document.
+ * <p>
+ * Each successful batch marks its documents PROCESSED in one update. Documents whose
+ * write failed are retried with exponential backoff and marked FAILED when they run out
+ * of attempts. Pending records are bounded; submitting blocks while the buffer is full.
+ */
+@Service
+@Slf4j
+public class VectorWriteBehindService {
+
+    private final DocumentRepository documentRepository;
+    private final SearchResultCache searchResultCache;
+    private final Object lock = new Object();
+    private final List<Pending> queue = new ArrayList<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vector-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore capacity;
+    private final int maxPendingRecords;
+    private int pendingRecords;
+
+    @Autowired(required = false)
+    private WeaviateService weaviateService;
+
+    @Value("${docloader.vector-store.write-behind.batch-size:2000}")
+    private int batchSize;
+
+    @Value("${docloader.vector-store.write-behind.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${docloader.vector-store.write-behind.retry-backoff:500}")
+    private long retryBackoffMillis;
+
+    public VectorWriteBehindService(
+            DocumentRepository documentRepository,
+            SearchResultCache searchResultCache,
+            @Value("${docloader.vector-store.write-behind.max-pending:20000}") int maxPendingRecords) {
+        this.documentRepository = documentRepository;
+        this.searchResultCache = searchResultCache;
+        this.maxPendingRecords = maxPendingRecords;
+        this.capacity = new Semaphore(maxPendingRecords);
+    }
+
+    /**
+     * Queue the new vectors of a document. A pending earlier submission of the same
+     * document is superseded and completes with this one.
+     * @param quantization the encoding of the search codes of the vectors, or null for the store's default
+     * @return completes with true once the vectors are stored and the document is marked
+     * PROCESSED, or with false once the document is marked FAILED
+     */
+    public CompletableFuture<Boolean> submit(UUID tenantId, Document document, List<VectorRecord> records,
+                                             Quantization quantization) {
+        Pending pending = new Pending(tenantId, new DocumentVectors(document, records, quantization));
+        if (weaviateService == null) {
+            complete(List.of(pending), Document.DocumentStatus.PROCESSED);
+            return pending.result;
+        }
+
+        try {
+            capacity.acquire(pending.permits(maxPendingRecords));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.completeExceptionally(e);
+            return pending.result;
+        }
+        boolean full;
+        synchronized (lock) {
+            enqueue(pending);
+            full = pendingRecords >= batchSize;
+        }
+        if (full) {
+            requestFlush();
+        }
+        return pending.result;
+    }
+
+    /**
+     * Write what is pending now instead of at the next interval
+     */
+    public void flush() {
+        requestFlush();
+    }
+
+    @Scheduled(fixedDelayString = "${docloader.vector-store.write-behind.flush-interval:1000}")
+    public void flushDue() {
+        boolean due;
+        synchronized (lock) {
+            due = !queue.isEmpty();
+        }
+        if (due) {
+            requestFlush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        // Write what is left before the store closes, retrying without backoff until each
+        // entry is stored or out of attempts
+        while (true) {
+            synchronized (lock) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+            }
+            drain(true);
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true) && !flusher.isShutdown()) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                drain(false);
+            });
+        }
+    }
+
+    /**
+     * Write the due entries in batches of at most batchSize records per tenant
+     * @param all whether to include entries still waiting for their retry backoff
+     */
+    private void drain(boolean all) {
+        long now = System.currentTimeMillis();
+        Map<UUID, List<Pending>> byTenant = new LinkedHashMap<>();
+        synchronized (lock) {
+            for (Iterator<Pending> iterator = queue.iterator(); iterator.hasNext(); ) {
+                Pending pending = iterator.next();
+                if (all || pending.notBefore <= now) {
+                    iterator.remove();
+                    pendingRecords -= pending.records();
+                    byTenant.computeIfAbsent(pending.tenantId, key -> new ArrayList<>()).add(pending);
+                }
+            }
+        }
+
+        for (Map.Entry<UUID, List<Pending>> tenant : byTenant.entrySet()) {
+            List<Pending> batch = new ArrayList<>();
+            int records = 0;
+            for (Pending pending : tenant.getValue()) {
+                if (!batch.isEmpty() && records + pending.records() > batchSize) {
+                    write(tenant.getKey(), batch);
+                    batch = new ArrayList<>();
+                    records = 0;
+                }
+                batch.add(pending);
+                records += pending.records();
+            }
+            write(tenant.getKey(), batch);
+        }
+    }
+
+    private void write(UUID tenantId, List<Pending> batch) {
+        long start = System.nanoTime();
+        Map<UUID, Exception> failures;
+        try {
+            failures = weaviateService.replaceDocumentVectors(tenantId, batch.stream().map(pending -> pending.vectors).toList());
+        } catch (RuntimeException e) {
+            failures = new LinkedHashMap<>();
+            for (Pending pending : batch) {
+                failures.put(pending.documentId(), e);
+            }
+        }
+        // Even a failed write may have replaced the vectors of some documents
+        searchResultCache.indexChanged(tenantId);
+
+        List<Pending> stored = new ArrayList<>(batch.size());
+        List<Pending> failed = new ArrayList<>();
+        List<Pending> retried = new ArrayList<>();
+        for (Pending pending : batch) {
+            Exception failure = failures.get(pending.documentId());
+            if (failure == null) {
+                stored.add(pending);
+            } else if (++pending.attempts >= maxAttempts) {
+                log.error("Giving up storing vectors of document {} after {} attempts: {}",
+                        pending.documentId(), pending.attempts, failure.getMessage());
+                failed.add(pending);
+            } else {
+                log.warn("Storing vectors of document {} failed (attempt {} of {}), retrying: {}",
+                        pending.documentId(), pending.attempts, maxAttempts, failure.getMessage());
+                pending.notBefore = System.currentTimeMillis() + (retryBackoffMillis << (pending.attempts - 1));
+                retried.add(pending);
+            }
+        }
+        log.debug("Wrote vectors of {} documents for tenant {} in {} ms, {} to retry", stored.size(), tenantId,
+                (System.nanoTime() - start) / 1_000_000, retried.size());
+
+        complete(stored, Document.DocumentStatus.PROCESSED);
+        complete(failed, Document.DocumentStatus.FAILED);
+        synchronized (lock) {
+            for (Pending pending : retried) {
+                enqueue(pending);
+            }
+        }
+        for (Pending pending : stored) {
+            capacity.release(pending.permits(maxPendingRecords));
+        }
+        for (Pending pending : failed) {
+            capacity.release(pending.permits(maxPendingRecords));
+        }
+    }
+
+    private void complete(List<Pending> batch, Document.DocumentStatus status) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            documentRepository.updateStatus(batch.stream().map(Pending::documentId).toList(), status, LocalDateTime.now());
+            batch.forEach(pending -> pending.result.complete(status == Document.DocumentStatus.PROCESSED));
+        } catch (RuntimeException e) {
+            log.error("Error marking {} documents {}: {}", batch.size(), status, e.getMessage(), e);
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+        }
+    }
+
+    // Caller holds the lock
+    private void enqueue(Pending pending) {
+        for (Iterator<Pending> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Pending queued = iterator.next();
+            if (queued.documentId().equals(pending.documentId())) {
+                if (queued.sequence > pending.sequence) {
+                    // A retry of a write that has been superseded while it was in flight
+                    queued.result.whenComplete((stored, e) -> pending.completeFrom(stored, e));
+                    capacity.release(pending.permits(maxPendingRecords));
+                    return;
+                }
+                iterator.remove();
+                pendingRecords -= queued.records();
+                capacity.release(queued.permits(maxPendingRecords));
+                pending.result.whenComplete((stored, e) -> queued.completeFrom(stored, e));
+                break;
+            }
+        }
+        queue.add(pending);
+        pendingRecords += pending.records();
+    }
+
+    private static final class Pending {
+        private static long nextSequence;
+
+        private final UUID tenantId;
+        private final DocumentVectors vectors;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // Submission order, so a retried write never overtakes a newer one of the same document
+        private final long sequence;
+        private int attempts;
+        private long notBefore;
+
+        private Pending(UUID tenantId, DocumentVectors vectors) {
+            this.tenantId = tenantId;
+            this.vectors = vectors;
+            synchronized (Pending.class) {
+                this.sequence = nextSequence++;
+            }
+        }
+
+        private UUID documentId() {
+            return vectors.getDocument().getId();
+        }
+
+        private int records() {
+            return vectors.getRecords().size();
+        }
+
+        // A document larger than the buffer takes all of it rather than waiting forever
+        private int permits(int maxPendingRecords) {
+            return Math.min(Math.max(records(), 1), maxPendingRecords);
+        }
+
+        private void completeFrom(Boolean stored, Throwable e) {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(stored);
+            }
+        }
+    }
+}
@@ -1,41 +1,136 @@
 package com.docloader.service;
 
 import com.docloader.model.Document;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorRecord;
+import com.docloader.vector.VectorSearchFilter;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
- * Service for interacting with Weaviate vector database to store and retrieve document embeddings
+ * Service for storing and retrieving document embeddings in a vector store.
+ * The implementation is selected with docloader.vector-store.type.
+ * Vectors are kept per tenant; a null tenant ID stands for users without a tenant.
  */
 public interface WeaviateService {
 
     /**
-     * Store document embeddings in Weaviate
+     * Store document embeddings in the vector store
+     * @param tenantId the tenant the document belongs to
      * @param document the document entity
      * @param embedding the document's embedding vector
-     * @return the document ID in Weaviate
+     * @return the document ID in the vector store
      */
-    String storeDocumentEmbedding(Document document, float[] embedding);
-    
+    String storeDocumentEmbedding(UUID tenantId, Document document, float[] embedding);
+
     /**
      * Find similar documents based on embedding vector
+     * @param tenantId the tenant whose documents are searched
      * @param embedding the query embedding vector
      * @param limit the maximum number of results to return
-     * @return list of document IDs with similarity scores
+     * @return list of document IDs, most similar first
+     */
+    default List<String> findSimilarDocuments(UUID tenantId, float[] embedding, int limit) {
+        return findSimilarDocuments(tenantId, embedding, limit, null);
+    }
+
+    /**
+     * Find similar documents among those matching a metadata filter. Each document is
+     * scored from its chunk vectors as docloader.vector-store.document-scoring says, and
+     * appears once.
+     * @param tenantId the tenant whose documents are searched
+     * @param embedding the query embedding vector
+     * @param limit the maximum number of results to return
+     * @param filter the job, uploader and content type to restrict the search to, or null
+     * @return list of document IDs, most similar first
+     */
+    List<String> findSimilarDocuments(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter);
+
+    /**
+     * Find the chunks most similar to a query, several of which may belong to the same document
+     * @param tenantId the tenant whose documents are searched
+     * @param embedding the query embedding vector
+     * @param limit the maximum number of chunks to return
+     * @param filter the job, uploader and content type to restrict the search to, or null
+     * @return the matching chunks, most similar first
      */
-    List<String> findSimilarDocuments(float[] embedding, int limit);
-    
+    List<ChunkHit> findSimilarChunks(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter);
+
+    /**
+     * Replace all chunk vectors of a document in one step, so searches see either the
+     * previous set or the new one but never a mix
+     * @param tenantId the tenant the document belongs to
+     * @param document the document; its job, uploader and content type are kept for filtering
+     * @param records the new chunk vectors of the document
+     * @param quantization the compressed encoding searches use for the vectors, or null for the default;
+     *                     stores without quantization ignore it
+     */
+    void replaceDocumentVectors(UUID tenantId, Document document, List<VectorRecord> records, Quantization quantization);
+
     /**
-     * Remove a document from Weaviate
+     * Replace the chunk vectors of many documents of a tenant in as few writes as the store
+     * allows. Each document is replaced in one step as with the single-document variant;
+     * a document that fails keeps its previous vectors without failing the others.
+     * @param tenantId the tenant the documents belong to
+     * @param batch the documents and their new chunk vectors
+     * @return the error of each document that could not be stored, by document ID
+     */
+    default Map<UUID, Exception> replaceDocumentVectors(UUID tenantId, List<DocumentVectors> batch) {
+        Map<UUID, Exception> failures = new HashMap<>();
+        for (DocumentVectors item : batch) {
+            try {
+                replaceDocumentVectors(tenantId, item.getDocument(), item.getRecords(), item.getQuantization());
+            } catch (RuntimeException e) {
+                failures.put(item.getDocument().getId(), e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Remove a document from the vector store
      * @param documentId the document ID to remove
      */
     void removeDocument(UUID documentId);
-    
+
     /**
-     * Check if the document is already stored in Weaviate
+     * Check if the document is already stored in the vector store
      * @param documentId the document ID to check
      * @return true if the document exists, false otherwise
      */
     boolean documentExists(UUID documentId);
-} 
\ No newline at end of file
+
+    /**
+     * @return whether the store implements {@link #forEachDocumentVector} and
+     * {@link #getDocumentVectors}, which the similarity graph is built from
+     */
+    default boolean supportsDocumentVectors() {
+        return false;
+    }
+
+    /**
+     * Visit one vector per document of a tenant: the mean of its chunk vectors scaled to
+     * unit length, for document-to-document similarity. Only stores whose
+     * {@link #supportsDocumentVectors} is true implement it.
+     * @param tenantId the tenant, null for documents without a tenant
+     */
+    default void forEachDocumentVector(UUID tenantId, BiConsumer<UUID, float[]> consumer) {
+        throw new UnsupportedOperationException("This vector store cannot list document vectors");
+    }
+
+    /**
+     * The document vectors, as in {@link #forEachDocumentVector}, of some documents of a tenant
+     * @param tenantId the tenant, null for documents without a tenant
+     * @param documentIds the documents
+     * @return the vectors by document ID; documents without vectors are left out
+     */
+    default Map<UUID, float[]> getDocumentVectors(UUID tenantId, Collection<UUID> documentIds) {
+        throw new UnsupportedOperationException("This vector store cannot read document vectors");
+    }
+}
\ No newline at end of file
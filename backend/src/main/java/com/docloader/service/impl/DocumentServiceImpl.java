@@ -1,46 +1,89 @@
 package com.docloader.service.impl;
 
 import com.docloader.dto.DocumentResponse;
+import com.docloader.dto.DocumentUploadResult;
 import com.docloader.model.Document;
+import com.docloader.model.S3BucketConfig;
+import com.docloader.model.User;
 import com.docloader.repository.DocumentRepository;
+import com.docloader.repository.S3BucketConfigRepository;
 import com.docloader.service.DocumentService;
+import com.docloader.service.LexicalIndexService;
+import com.docloader.service.Neo4jService;
+import com.docloader.service.NearDuplicateService;
 import com.docloader.service.S3Service;
-import lombok.RequiredArgsConstructor;
+import com.docloader.service.SearchResultCache;
+import com.docloader.service.UserService;
+import com.docloader.service.WeaviateService;
+import com.docloader.service.StorageBackend;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class DocumentServiceImpl implements DocumentService {
 
     private final DocumentRepository documentRepository;
+    private final StorageBackend storageBackend;
     private final S3Service s3Service;
+    private final S3BucketConfigRepository s3BucketConfigRepository;
+    private final NearDuplicateService nearDuplicateService;
+    private final LexicalIndexService lexicalIndexService;
+    private final SearchResultCache searchResultCache;
+    private final UserService userService;
+    private final TaskExecutor uploadExecutor;
+    private final TransactionTemplate transactionTemplate;
     
-    @Value("${docloader.uploads.dir:uploads}")
-    private String uploadsDir;
-    
-    @Value("${docloader.storage.type:filesystem}")
-    private String storageType;
+    @Autowired(required = false)
+    private WeaviateService weaviateService;
+
+    @Autowired(required = false)
+    private Neo4jService neo4jService;
+
+    public DocumentServiceImpl(
+            DocumentRepository documentRepository,
+            StorageBackend storageBackend,
+            S3Service s3Service,
+            S3BucketConfigRepository s3BucketConfigRepository,
+            NearDuplicateService nearDuplicateService,
+            LexicalIndexService lexicalIndexService,
+            SearchResultCache searchResultCache,
+            UserService userService,
+            @Qualifier("documentUploadExecutor") TaskExecutor uploadExecutor,
+            PlatformTransactionManager transactionManager) {
+        this.documentRepository = documentRepository;
+        this.storageBackend = storageBackend;
+        this.s3Service = s3Service;
+        this.s3BucketConfigRepository = s3BucketConfigRepository;
+        this.nearDuplicateService = nearDuplicateService;
+        this.lexicalIndexService = lexicalIndexService;
+        this.searchResultCache = searchResultCache;
+        this.userService = userService;
+        this.uploadExecutor = uploadExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
     @Override
     public Optional<Document> getDocumentById(UUID id) {
@@ -71,16 +114,32 @@ public class DocumentServiceImpl implements DocumentService {
                         "Document not found with id: " + id));
         
         try {
-            // Delete the physical file
-            if ("s3".equalsIgnoreCase(storageType)) {
-                s3Service.deleteFile(document.getFilePath());
+            // Delete the physical file, unless it is an object of the tenant's own bucket
+            Optional<S3BucketConfig> bucketConfig = getBucketConfig(document);
+            if (bucketConfig.isPresent()) {
+                if (document.isBucketObjectOwned()) {
+                    s3Service.deleteObject(bucketConfig.get(), document.getFilePath());
+                } else {
+                    log.info("Keeping bucket object {} of deleted document {}", document.getFilePath(), id);
+                }
             } else {
-                Path filePath = Paths.get(document.getFilePath());
-                Files.deleteIfExists(filePath);
+                storageBackend.delete(document.getFilePath());
             }
             
+            // Near-duplicates linked to the document get a new canonical one before the link is cleared
+            nearDuplicateService.promoteDuplicate(id);
+            
             // Delete the database record
             documentRepository.deleteById(id);
+            nearDuplicateService.forget(id);
+            lexicalIndexService.removeDocument(id);
+            if (weaviateService != null) {
+                weaviateService.removeDocument(id);
+                searchResultCache.indexChanged(tenantOf(document));
+            }
+            if (neo4jService != null) {
+                neo4jService.removeDocument(id);
+            }
             
         } catch (IOException e) {
             log.error("Error deleting file {}: {}", document.getFilePath(), e.getMessage(), e);
@@ -89,6 +148,15 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
+    /**
+     * The tenant whose vector index holds the document: that of the job's creator, as
+     * when the document was processed
+     */
+    private UUID tenantOf(Document document) {
+        UUID owner = document.getJob() != null ? document.getJob().getCreatedBy() : document.getUploadedBy();
+        return owner == null ? null : userService.getUserById(owner).map(User::getTenantId).orElse(null);
+    }
+
     @Override
     public int getDocumentCountByUserId(UUID userId) {
         // For now, we'll return a default value
@@ -96,64 +164,95 @@ public class DocumentServiceImpl implements DocumentService {
         return 0;
     }
     
+    /**
+     * Stores the files of a batch concurrently on the upload executor, outside any
+     * transaction, then inserts the Document rows of all stored files in one transaction.
+     * A file that cannot be stored is reported in its result instead of failing the batch.
+     */
     @Override
-    @Transactional
-    public List<Document> uploadDocuments(List<MultipartFile> files, UUID uploadedBy, UUID tenantId) {
-        List<Document> documents = new ArrayList<>();
-        
+    public List<DocumentUploadResult> uploadDocuments(List<MultipartFile> files, UUID uploadedBy, UUID tenantId) {
+        List<CompletableFuture<Document>> futures = new ArrayList<>(files.size());
         for (MultipartFile file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> storeFile(file, uploadedBy, tenantId), uploadExecutor));
+        }
+        
+        List<DocumentUploadResult> results = new ArrayList<>(files.size());
+        List<Document> stored = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
             try {
-                String filename = StringUtils.cleanPath(file.getOriginalFilename());
-                
-                if (filename.contains("..")) {
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
-                            "Filename contains invalid path sequence: " + filename);
-                }
-                
-                // Calculate MD5 hash
-                String md5Hash = calculateMD5(file);
-                
-                // Create unique filepath 
-                String uniqueFilename = UUID.randomUUID().toString() + "_" + filename;
-                String tenantFolder = tenantId.toString();
-                String userFolder = uploadedBy.toString();
-                String filePath;
-                
-                if ("s3".equalsIgnoreCase(storageType)) {
-                    // Store in S3
-                    filePath = String.format("uploads/%s/%s/%s", tenantFolder, userFolder, uniqueFilename);
-                    s3Service.uploadFile(filePath, file.getInputStream(), file.getSize(), file.getContentType());
-                } else {
-                    // Store in filesystem
-                    Path uploadPath = Paths.get(uploadsDir, tenantFolder, userFolder);
-                    if (!Files.exists(uploadPath)) {
-                        Files.createDirectories(uploadPath);
-                    }
-                    
-                    Path destinationFile = uploadPath.resolve(uniqueFilename);
-                    Files.copy(file.getInputStream(), destinationFile, StandardCopyOption.REPLACE_EXISTING);
-                    filePath = destinationFile.toString();
+                Document document = futures.get(i).join();
+                stored.add(document);
+                results.add(null);
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                String reason = cause instanceof ResponseStatusException rse ? rse.getReason() : "Failed to store file";
+                results.add(DocumentUploadResult.failure(files.get(i).getOriginalFilename(), reason));
+            }
+        }
+        
+        List<Document> saved;
+        try {
+            saved = stored.isEmpty() ? List.of() : transactionTemplate.execute(status -> documentRepository.saveAll(stored));
+        } catch (Exception e) {
+            log.error("Error saving {} uploaded documents: {}", stored.size(), e.getMessage(), e);
+            stored.forEach(this::deleteStoredFile);
+            saved = List.of();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    results.set(i, DocumentUploadResult.failure(files.get(i).getOriginalFilename(),
+                            "Failed to register document"));
                 }
-                
-                Document document = new Document();
-                document.setFilename(filename);
-                document.setFilePath(filePath);
-                document.setFileSize(file.getSize());
-                document.setContentType(file.getContentType());
-                document.setMd5Hash(md5Hash);
-                document.setUploadedBy(uploadedBy);
-                document.setStatus(Document.DocumentStatus.PENDING);
-                
-                documents.add(documentRepository.save(document));
-                
-            } catch (IOException | NoSuchAlgorithmException e) {
-                log.error("Error uploading file {}: {}", file.getOriginalFilename(), e.getMessage(), e);
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
-                        "Failed to store file: " + file.getOriginalFilename());
             }
         }
         
-        return documents;
+        // Fill the successful slots in their original order
+        int next = 0;
+        for (int i = 0; i < results.size() && next < saved.size(); i++) {
+            if (results.get(i) == null) {
+                Document document = saved.get(next++);
+                results.set(i, DocumentUploadResult.success(document.getFilename(), document.getId(), document.getFileSize()));
+            }
+        }
+        
+        return results;
+    }
+    
+    private Document storeFile(MultipartFile file, UUID uploadedBy, UUID tenantId) {
+        String filename = StringUtils.cleanPath(file.getOriginalFilename());
+        
+        if (filename.contains("..")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "Filename contains invalid path sequence: " + filename);
+        }
+        
+        try {
+            // Store the content; the backend computes the MD5 hash
+            String key = storageBackend.buildKey(tenantId, uploadedBy, filename);
+            StorageBackend.StoredFile storedFile = storageBackend.store(file, key);
+            
+            Document document = new Document();
+            document.setFilename(filename);
+            document.setFilePath(storedFile.getLocation());
+            document.setFileSize(storedFile.getSize());
+            document.setContentType(file.getContentType());
+            document.setMd5Hash(storedFile.getMd5Hash());
+            document.setUploadedBy(uploadedBy);
+            document.setStatus(Document.DocumentStatus.PENDING);
+            return document;
+            
+        } catch (IOException | RuntimeException e) {
+            log.error("Error uploading file {}: {}", file.getOriginalFilename(), e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+                    "Failed to store file: " + file.getOriginalFilename());
+        }
+    }
+    
+    private void deleteStoredFile(Document document) {
+        try {
+            storageBackend.delete(document.getFilePath());
+        } catch (Exception e) {
+            log.warn("Could not remove orphaned file {}: {}", document.getFilePath(), e.getMessage());
+        }
     }
     
     @Override
@@ -171,15 +270,41 @@ public class DocumentServiceImpl implements DocumentService {
         return response;
     }
     
-    private String calculateMD5(MultipartFile file) throws IOException, NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        md.update(file.getBytes());
-        byte[] digest = md.digest();
-        
-        StringBuilder sb = new StringBuilder();
-        for (byte b : digest) {
-            sb.append(String.format("%02x", b));
+    @Override
+    public Optional<Path> getLocalContentPath(Document document) {
+        if (document.getS3BucketConfigId() != null) {
+            return Optional.empty();
+        }
+        return storageBackend.getLocalPath(document.getFilePath());
+    }
+    
+    @Override
+    public InputStream openContent(Document document) throws IOException {
+        Optional<S3BucketConfig> bucketConfig = getBucketConfig(document);
+        if (bucketConfig.isPresent()) {
+            return s3Service.downloadFile(bucketConfig.get(), document.getFilePath());
+        }
+        return storageBackend.open(document.getFilePath());
+    }
+    
+    @Override
+    public long transferContent(Document document, WritableByteChannel target) throws IOException {
+        Optional<S3BucketConfig> bucketConfig = getBucketConfig(document);
+        if (bucketConfig.isPresent()) {
+            try (InputStream in = s3Service.downloadFile(bucketConfig.get(), document.getFilePath())) {
+                return in.transferTo(Channels.newOutputStream(target));
+            }
+        }
+        return storageBackend.transferTo(document.getFilePath(), target);
+    }
+    
+    // Documents uploaded directly to a tenant bucket are not in the storage backend
+    private Optional<S3BucketConfig> getBucketConfig(Document document) {
+        if (document.getS3BucketConfigId() == null) {
+            return Optional.empty();
         }
-        return sb.toString();
+        return Optional.of(s3BucketConfigRepository.findById(document.getS3BucketConfigId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE,
+                        "Bucket configuration of document " + document.getId() + " no longer exists")));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,400 @@
+package com.docloader.service.impl;
+
+import com.docloader.model.Document;
+import com.docloader.service.DocumentVectors;
+import com.docloader.service.WeaviateService;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.DocumentScoring;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.TenantVectorIndex;
+import com.docloader.vector.VectorEncoding;
+import com.docloader.vector.VectorIndexCompaction;
+import com.docloader.vector.VectorIndexSettings;
+import com.docloader.vector.VectorMetadata;
+import com.docloader.vector.VectorRecord;
+import com.docloader.vector.VectorSearchFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * In-process vector store for deployments and tests that do not run an external vector
+ * database. Each tenant has its own directory of memory-mapped vector segments with an
+ * HNSW graph over them; the graphs of existing tenants are rebuilt in the background on
+ * startup while their searches fall back to exact scans. Vectors can additionally be
+ * encoded as int8 or product-quantized codes held on the heap; searches then run over
+ * the codes and re-rank the best candidates against the full-precision segments.
+ * <p>
+ * Replaced and removed vectors become tombstones that searches skip right away. A
+ * background compactor rebuilds the index of a tenant once tombstones pass a share of its
+ * vectors, and swaps the rebuilt index in while writes to the tenant briefly wait;
+ * searches keep running on the index they started on.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "docloader.vector-store.type", havingValue = "embedded", matchIfMissing = true)
+public class EmbeddedVectorStoreService implements WeaviateService {
+
+    // Key of the index shared by users without a tenant
+    private static final UUID NO_TENANT = new UUID(0L, 0L);
+
+    private final Map<UUID, TenantVectorIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<UUID, UUID> documentTenants = new ConcurrentHashMap<>();
+    // Writes to a tenant's index hold the read lock; swapping in a compacted index holds the write lock
+    private final Map<UUID, ReadWriteLock> writeLocks = new ConcurrentHashMap<>();
+    private final Set<UUID> compacting = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vector-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${docloader.vector-store.dir:vectors}")
+    private String storeDir;
+
+    @Value("${docloader.vector-store.encoding:FLOAT32}")
+    private VectorEncoding encoding;
+
+    @Value("${docloader.vector-store.segment-size:1GB}")
+    private DataSize segmentSize;
+
+    @Value("${docloader.vector-store.hnsw.m:16}")
+    private int m;
+
+    @Value("${docloader.vector-store.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${docloader.vector-store.hnsw.ef-search:100}")
+    private int efSearch;
+
+    @Value("${docloader.vector-store.quantization.default:NONE}")
+    private Quantization defaultQuantization;
+
+    @Value("${docloader.vector-store.quantization.rerank-factor:4}")
+    private int rerankFactor;
+
+    @Value("${docloader.vector-store.quantization.min-training-vectors:10000}")
+    private int minTrainingVectors;
+
+    @Value("${docloader.vector-store.quantization.training-sample-size:20000}")
+    private int trainingSampleSize;
+
+    @Value("${docloader.vector-store.quantization.pq-subspaces:0}")
+    private int pqSubspaces;
+
+    @Value("${docloader.vector-store.quantization.pca-components:0}")
+    private int pcaComponents;
+
+    @Value("${docloader.vector-store.document-scoring.mode:MAX}")
+    private DocumentScoring documentScoring;
+
+    @Value("${docloader.vector-store.document-scoring.chunks:3}")
+    private int documentScoringChunks;
+
+    @Value("${docloader.vector-store.compaction.tombstone-ratio:0.3}")
+    private double compactionTombstoneRatio;
+
+    @Value("${docloader.vector-store.compaction.min-vectors:10000}")
+    private int compactionMinVectors;
+
+    @Value("${docloader.vector-store.compaction.batch-size:256}")
+    private int compactionBatchSize;
+
+    private VectorIndexSettings settings;
+
+    @PostConstruct
+    public void openIndexes() throws IOException {
+        settings = new VectorIndexSettings();
+        settings.setEncoding(encoding);
+        settings.setSegmentSize(segmentSize.toBytes());
+        settings.setM(m);
+        settings.setEfConstruction(efConstruction);
+        settings.setEfSearch(efSearch);
+        settings.setRerankFactor(rerankFactor);
+        settings.setMinTrainingVectors(minTrainingVectors);
+        settings.setTrainingSampleSize(trainingSampleSize);
+        settings.setPqSubspaces(pqSubspaces);
+        settings.setPcaComponents(pcaComponents);
+        settings.setDocumentScoring(documentScoring);
+        settings.setDocumentScoringChunks(documentScoringChunks);
+
+        Path root = Paths.get(storeDir);
+        Files.createDirectories(root);
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                UUID tenantKey;
+                try {
+                    tenantKey = UUID.fromString(directory.getFileName().toString());
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring unexpected directory in vector store: {}", directory);
+                    continue;
+                }
+                TenantVectorIndex index = openIndex(tenantKey);
+                index.documentIds().forEach(documentId -> documentTenants.put(documentId, tenantKey));
+                CompletableFuture.runAsync(index::buildGraph)
+                        .whenComplete((result, e) -> {
+                            if (e != null) {
+                                log.error("Failed to rebuild vector graph of tenant {}: {}", tenantKey, e.getMessage(), e);
+                            } else {
+                                log.info("Rebuilt vector graph of tenant {}", tenantKey);
+                            }
+                        });
+            }
+        }
+        log.info("Opened {} vector indexes with {} documents from {}", indexes.size(), documentTenants.size(), root);
+    }
+
+    @PreDestroy
+    public void closeIndexes() {
+        compactor.shutdownNow();
+        for (TenantVectorIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("Error closing vector index: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String storeDocumentEmbedding(UUID tenantId, Document document, float[] embedding) {
+        replaceDocumentVectors(tenantId, document, List.of(new VectorRecord(document.getId(), 0, null, embedding)), null);
+        return document.getId().toString();
+    }
+
+    @Override
+    public List<String> findSimilarDocuments(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
+        TenantVectorIndex index = indexes.get(tenantKey(tenantId));
+        if (index == null) {
+            return List.of();
+        }
+        return index.findSimilarDocuments(embedding, limit, filter).stream().map(UUID::toString).toList();
+    }
+
+    @Override
+    public List<ChunkHit> findSimilarChunks(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
+        TenantVectorIndex index = indexes.get(tenantKey(tenantId));
+        if (index == null) {
+            return List.of();
+        }
+        return index.findSimilarChunks(embedding, limit, filter);
+    }
+
+    @Override
+    public void replaceDocumentVectors(UUID tenantId, Document document, List<VectorRecord> records, Quantization quantization) {
+        UUID documentId = document.getId();
+        UUID tenantKey = tenantKey(tenantId);
+        // Opened before the document is mapped to it, so a mapped tenant always has an index
+        openIndex(tenantKey);
+        UUID previousTenant = documentTenants.put(documentId, tenantKey);
+        if (previousTenant != null && !previousTenant.equals(tenantKey)) {
+            remove(previousTenant, documentId);
+        }
+        Lock lock = writeLock(tenantKey).readLock();
+        lock.lock();
+        try {
+            openIndex(tenantKey).replace(documentId, records, quantization != null ? quantization : defaultQuantization,
+                    attributes(document));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store vectors of document " + documentId, e);
+        } finally {
+            lock.unlock();
+        }
+        log.debug("Stored {} vectors of document {} for tenant {}", records.size(), documentId, tenantId);
+    }
+
+    @Override
+    public Map<UUID, Exception> replaceDocumentVectors(UUID tenantId, List<DocumentVectors> batch) {
+        UUID tenantKey = tenantKey(tenantId);
+        openIndex(tenantKey);
+        List<TenantVectorIndex.Replacement> replacements = new ArrayList<>(batch.size());
+        for (DocumentVectors item : batch) {
+            UUID documentId = item.getDocument().getId();
+            UUID previousTenant = documentTenants.put(documentId, tenantKey);
+            if (previousTenant != null && !previousTenant.equals(tenantKey)) {
+                remove(previousTenant, documentId);
+            }
+            replacements.add(new TenantVectorIndex.Replacement(documentId, item.getRecords(),
+                    item.getQuantization() != null ? item.getQuantization() : defaultQuantization, attributes(item.getDocument())));
+        }
+
+        Lock lock = writeLock(tenantKey).readLock();
+        lock.lock();
+        try {
+            // Looked up under the lock, as compaction may have swapped the index in the meantime
+            openIndex(tenantKey).replaceAll(replacements);
+            log.debug("Stored vectors of {} documents for tenant {}", batch.size(), tenantId);
+            return Map.of();
+        } catch (IOException | RuntimeException e) {
+            // Replacing is idempotent, so the batch is retried one document at a time to isolate failures
+            log.warn("Storing a batch of {} documents for tenant {} failed, retrying one by one: {}",
+                    batch.size(), tenantId, e.getMessage());
+            return WeaviateService.super.replaceDocumentVectors(tenantId, batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeDocument(UUID documentId) {
+        UUID tenantKey = documentTenants.remove(documentId);
+        if (tenantKey != null) {
+            remove(tenantKey, documentId);
+        }
+    }
+
+    @Override
+    public boolean supportsDocumentVectors() {
+        return true;
+    }
+
+    @Override
+    public void forEachDocumentVector(UUID tenantId, BiConsumer<UUID, float[]> consumer) {
+        TenantVectorIndex index = indexes.get(tenantKey(tenantId));
+        if (index != null) {
+            index.forEachDocumentVector(consumer);
+        }
+    }
+
+    @Override
+    public Map<UUID, float[]> getDocumentVectors(UUID tenantId, Collection<UUID> documentIds) {
+        Map<UUID, float[]> vectors = new HashMap<>();
+        TenantVectorIndex index = indexes.get(tenantKey(tenantId));
+        if (index != null) {
+            for (UUID documentId : documentIds) {
+                float[] vector = index.documentVector(documentId);
+                if (vector != null) {
+                    vectors.put(documentId, vector);
+                }
+            }
+        }
+        return vectors;
+    }
+
+    @Override
+    public boolean documentExists(UUID documentId) {
+        UUID tenantKey = documentTenants.get(documentId);
+        TenantVectorIndex index = tenantKey != null ? indexes.get(tenantKey) : null;
+        return index != null && index.contains(documentId);
+    }
+
+    /**
+     * Queue the compaction of each index whose tombstones passed the configured share
+     */
+    @Scheduled(fixedDelayString = "${docloader.vector-store.compaction.check-interval:60000}")
+    public void compactIndexes() {
+        for (Map.Entry<UUID, TenantVectorIndex> entry : indexes.entrySet()) {
+            TenantVectorIndex index = entry.getValue();
+            if (index.isGraphReady() && index.size() >= compactionMinVectors
+                    && index.tombstoneRatio() >= compactionTombstoneRatio && compacting.add(entry.getKey())) {
+                compactor.execute(() -> compact(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index of a tenant from its live vectors. Writes only wait while the
+     * documents written during the copy are replayed and the new index is swapped in.
+     */
+    private void compact(UUID tenantKey) {
+        TenantVectorIndex source = indexes.get(tenantKey);
+        VectorIndexCompaction compaction = null;
+        boolean swapped = false;
+        try {
+            long start = System.currentTimeMillis();
+            int size = source.size();
+            double tombstoneRatio = source.tombstoneRatio();
+            compaction = VectorIndexCompaction.start(source, compactionBatchSize);
+            compaction.copy();
+
+            long blockedFrom = System.currentTimeMillis();
+            TenantVectorIndex compacted;
+            Lock lock = writeLock(tenantKey).writeLock();
+            lock.lock();
+            try {
+                compacted = compaction.finish();
+                indexes.put(tenantKey, compacted);
+                swapped = true;
+            } finally {
+                lock.unlock();
+            }
+            long blockedMillis = System.currentTimeMillis() - blockedFrom;
+
+            source.close();
+            compaction.removeReplaced();
+            log.info("Compacted vector index of tenant {} from {} to {} vectors ({}% tombstones) in {} ms, writes held off for {} ms",
+                    tenantKey, size, compacted.size(), Math.round(tombstoneRatio * 100),
+                    System.currentTimeMillis() - start, blockedMillis);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to compact vector index of tenant {}: {}", tenantKey, e.getMessage(), e);
+            if (compaction != null && !swapped) {
+                compaction.abort();
+            }
+        } finally {
+            compacting.remove(tenantKey);
+        }
+    }
+
+    private void remove(UUID tenantKey, UUID documentId) {
+        Lock lock = writeLock(tenantKey).readLock();
+        lock.lock();
+        try {
+            TenantVectorIndex index = indexes.get(tenantKey);
+            if (index != null) {
+                index.remove(documentId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReadWriteLock writeLock(UUID tenantKey) {
+        return writeLocks.computeIfAbsent(tenantKey, key -> new ReentrantReadWriteLock());
+    }
+
+    private TenantVectorIndex openIndex(UUID tenantKey) {
+        return indexes.computeIfAbsent(tenantKey, key -> {
+            try {
+                return TenantVectorIndex.open(Paths.get(storeDir, key.toString()), settings);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open vector index of tenant " + key, e);
+            }
+        });
+    }
+
+    private static VectorMetadata attributes(Document document) {
+        return new VectorMetadata(document.getJob() != null ? document.getJob().getId() : null,
+                document.getUploadedBy(), document.getContentType());
+    }
+
+    private UUID tenantKey(UUID tenantId) {
+        return tenantId != null ? tenantId : NO_TENANT;
+    }
+}
@@ -0,0 +1,135 @@
+package com.docloader.service.impl;
+
+import com.docloader.config.ConditionalOnStorageType;
+import com.docloader.service.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Local filesystem storage.
+ * <p>
+ * Content never passes through a user-space copy loop: multipart uploads that Spring has
+ * spooled to disk are renamed into place, local files are moved (or copied with
+ * FileChannel.transferTo across filesystems), and downloads use transferTo as well.
+ * Files are sharded into two levels of directories below tenant/user so large tenant
+ * folders stay fast to list and create entries in.
+ */
+@Service
+@Slf4j
+@ConditionalOnStorageType("filesystem")
+public class FileSystemStorageBackend implements StorageBackend {
+
+    @Value("${docloader.uploads.dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${docloader.storage.filesystem.shard-depth:2}")
+    private int shardDepth;
+
+    @Override
+    public String getType() {
+        return "filesystem";
+    }
+
+    @Override
+    public String buildKey(UUID tenantId, UUID userId, String filename) {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        StringBuilder key = new StringBuilder()
+                .append(tenantId).append('/')
+                .append(userId).append('/');
+        for (int level = 0; level < shardDepth; level++) {
+            key.append(id, level * 2, level * 2 + 2).append('/');
+        }
+        return key.append(id).append('_').append(filename).toString();
+    }
+
+    @Override
+    public StoredFile store(MultipartFile file, String key) throws IOException {
+        Path destination = resolve(key);
+        Files.createDirectories(destination.getParent());
+
+        // transferTo(File) goes through Part.write, which renames the container's temp file
+        // when the part was spooled to disk; transferTo(Path) would copy the stream instead
+        file.transferTo(destination.toAbsolutePath().toFile());
+
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ)) {
+            return new StoredFile(destination.toString(), channel.size(), StorageBackend.md5Hex(channel));
+        }
+    }
+
+    @Override
+    public StoredFile store(Path source, String key, String contentType, String md5Hash) throws IOException {
+        Path destination = resolve(key);
+        Files.createDirectories(destination.getParent());
+
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.debug("Cannot rename {} to {}, copying across filesystems", source, destination);
+            copy(source, destination);
+            Files.delete(source);
+        }
+
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.READ)) {
+            String hash = md5Hash != null ? md5Hash : StorageBackend.md5Hex(channel);
+            return new StoredFile(destination.toString(), channel.size(), hash);
+        }
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        return Files.newInputStream(Paths.get(location));
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String location) {
+        Path path = Paths.get(location);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public long transferTo(String location, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        Files.deleteIfExists(Paths.get(location));
+    }
+
+    private Path resolve(String key) {
+        return Paths.get(uploadsDir).resolve(key);
+    }
+
+    private static void copy(Path source, Path destination) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+}
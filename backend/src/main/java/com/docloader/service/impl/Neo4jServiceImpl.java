@@ -1,52 +1,603 @@
 package com.docloader.service.impl;
 
+import com.docloader.graph.AdjacencyCache;
+import com.docloader.graph.CsrAdjacency;
 import com.docloader.model.Document;
 import com.docloader.service.Neo4jService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.temporal.Temporal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 /**
- * Stub implementation of Neo4jService
- * This class will be replaced with a real implementation when Neo4j integration is implemented
+ * Neo4j graph of documents and their relationships. Stored documents and created
+ * relationships are buffered and written in UNWIND batches of thousands of rows per
+ * transaction, instead of a round trip and a transaction per call, so building the graph
+ * keeps up with ingestion. Buffers are written once enough rows are pending, at the flush
+ * interval, on {@link #flush()} and on shutdown; callers block while the buffer is full.
+ * <p>
+ * Writes run in managed transactions, which the driver retries on transient errors such
+ * as deadlocks between concurrent MERGEs; a batch that still fails is retried with
+ * backoff and dropped after its last attempt, the graph being derived from the documents.
+ * Document nodes are unique by id, enforced by a constraint created at startup, which also
+ * backs the MERGE lookups. Reads see written batches only; {@link #documentExists} also
+ * looks at the buffer.
+ * <p>
+ * Related documents of the relationship types in docloader.neo4j.adjacency.types are
+ * served from an in-memory {@link AdjacencyCache} instead of a Cypher round trip. Each
+ * type is loaded at startup, falling back to Cypher until then, and changes made through
+ * this service are applied to it as they are made. It is reloaded once many documents have
+ * changed or it reaches its maximum age, which also picks up changes made elsewhere and
+ * writes that were dropped.
  */
 @Service
 @Slf4j
 @ConditionalOnProperty(name = "docloader.neo4j.enabled", havingValue = "true", matchIfMissing = false)
 public class Neo4jServiceImpl implements Neo4jService {
 
+    // Relationship types are part of the statement text, as Cypher takes no parameter for them
+    private static final Pattern RELATIONSHIP_TYPE = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final String DOCUMENT_CONSTRAINT =
+            "CREATE CONSTRAINT document_id IF NOT EXISTS FOR (d:Document) REQUIRE d.id IS UNIQUE";
+
+    private static final String MERGE_DOCUMENTS =
+            "UNWIND $rows AS row MERGE (d:Document {id: row.id}) SET d += row.properties";
+
+    // Endpoints are merged too, so a relationship never waits for its documents to be written
+    private static final String MERGE_RELATIONSHIPS =
+            "UNWIND $rows AS row "
+                    + "MERGE (s:Document {id: row.source}) "
+                    + "MERGE (t:Document {id: row.target}) "
+                    + "MERGE (s)-[r:%s]->(t) SET r += row.properties";
+
+    private final Driver driver;
+    private final Object lock = new Object();
+    // Latest properties of each pending document, in submission order
+    private final Map<UUID, Map<String, Object>> pendingDocuments = new LinkedHashMap<>();
+    private final Map<String, List<Map<String, Object>>> pendingRelationships = new LinkedHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "neo4j-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore capacity;
+    private int pendingRows;
+    // In-memory adjacency by relationship type
+    private final Map<String, AdjacencyCache> adjacency = new LinkedHashMap<>();
+    private final Set<String> reloading = ConcurrentHashMap.newKeySet();
+    private final ExecutorService adjacencyLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "neo4j-adjacency");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${docloader.neo4j.database:neo4j}")
+    private String database;
+
+    @Value("${docloader.neo4j.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${docloader.neo4j.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${docloader.neo4j.retry-backoff:500}")
+    private long retryBackoffMillis;
+
+    // Documents with changes since the last load after which a type is reloaded
+    @Value("${docloader.neo4j.adjacency.max-changes:100000}")
+    private int adjacencyMaxChanges;
+
+    @Value("${docloader.neo4j.adjacency.max-age:3600000}")
+    private long adjacencyMaxAgeMillis;
+
+    public Neo4jServiceImpl(Driver driver, @Value("${docloader.neo4j.max-pending:50000}") int maxPendingRows,
+                            @Value("${docloader.neo4j.adjacency.types:SIMILAR_TO,NEAR_DUPLICATE_OF}") List<String> adjacencyTypes) {
+        this.driver = driver;
+        this.capacity = new Semaphore(maxPendingRows);
+        for (String type : adjacencyTypes) {
+            if (!type.isBlank()) {
+                adjacency.put(validate(type.trim()), new AdjacencyCache());
+            }
+        }
+    }
+
+    @PostConstruct
+    public void createConstraints() {
+        try (Session session = session(AccessMode.WRITE)) {
+            session.executeWriteWithoutResult(tx -> tx.run(DOCUMENT_CONSTRAINT));
+        } catch (RuntimeException e) {
+            // Writes still work without the constraint, only slower and without the uniqueness guarantee
+            log.error("Could not create the Document id constraint in Neo4j: {}", e.getMessage());
+        }
+    }
+
     @Override
     public String storeDocument(Document document, Map<String, Object> metadata) {
-        log.info("Stub implementation: Storing document in Neo4j with ID: {}", document.getId());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("filename", document.getFilename());
+        properties.put("filePath", document.getFilePath());
+        properties.put("fileSize", document.getFileSize());
+        properties.put("contentType", document.getContentType());
+        properties.put("md5Hash", document.getMd5Hash());
+        properties.put("createdAt", document.getCreatedAt());
+        if (metadata != null) {
+            properties.putAll(metadata);
+        }
+        // The id is the node key; SET += removes properties set to null, so absent ones are left out
+        properties.remove("id");
+        properties.values().removeIf(value -> value == null);
+        properties.replaceAll((key, value) -> propertyValue(value));
+
+        acquire();
+        boolean full;
+        synchronized (lock) {
+            if (pendingDocuments.put(document.getId(), properties) != null) {
+                capacity.release();
+            } else {
+                pendingRows++;
+            }
+            full = pendingRows >= batchSize;
+        }
+        if (full) {
+            requestFlush();
+        }
         return document.getId().toString();
     }
 
     @Override
     public List<UUID> findRelatedDocuments(UUID documentId, String relationshipType, int limit) {
-        log.info("Stub implementation: Finding related documents for ID: {} with relationship: {} and limit: {}", 
-                documentId, relationshipType, limit);
-        return new ArrayList<>();
+        AdjacencyCache cache = adjacency.get(relationshipType);
+        if (cache != null && cache.isLoaded()) {
+            return cache.neighbours(documentId, limit);
+        }
+        String query = "MATCH (:Document {id: $id})-[r:" + validate(relationshipType) + "]-(related:Document) "
+                + "WITH related, max(coalesce(r.score, 0.0)) AS score "
+                + "RETURN related.id AS id ORDER BY score DESC LIMIT $limit";
+        try (Session session = session(AccessMode.READ)) {
+            return session.executeRead(tx -> tx.run(query, Map.of("id", documentId.toString(), "limit", limit))
+                    .list(record -> UUID.fromString(record.get("id").asString())));
+        }
+    }
+
+    @Override
+    public List<UUID> expandRelatedDocuments(Collection<UUID> documentIds, String relationshipType, int hops, int limit) {
+        if (hops < 1) {
+            throw new IllegalArgumentException("Hops must be at least 1: " + hops);
+        }
+        AdjacencyCache cache = adjacency.get(relationshipType);
+        if (cache != null && cache.isLoaded()) {
+            return cache.expand(documentIds, hops, limit);
+        }
+        List<String> ids = documentIds.stream().map(UUID::toString).toList();
+        String query = "MATCH path = (d:Document)-[:" + validate(relationshipType) + "*1.." + hops + "]-(related:Document) "
+                + "WHERE d.id IN $ids AND NOT related.id IN $ids "
+                + "WITH related, min(length(path)) AS distance "
+                + "RETURN related.id AS id ORDER BY distance LIMIT $limit";
+        try (Session session = session(AccessMode.READ)) {
+            return session.executeRead(tx -> tx.run(query, Map.of("ids", ids, "limit", limit))
+                    .list(record -> UUID.fromString(record.get("id").asString())));
+        }
     }
 
     @Override
     public void createRelationship(UUID sourceDocumentId, UUID targetDocumentId, String relationshipType, Map<String, Object> properties) {
-        log.info("Stub implementation: Creating relationship from {} to {} of type: {}", 
-                sourceDocumentId, targetDocumentId, relationshipType);
+        Map<String, Object> row = new HashMap<>();
+        row.put("source", sourceDocumentId.toString());
+        row.put("target", targetDocumentId.toString());
+        row.put("properties", properties != null ? convert(properties) : Map.of());
+        String type = validate(relationshipType);
+
+        acquire();
+        boolean full;
+        synchronized (lock) {
+            pendingRelationships.computeIfAbsent(type, key -> new ArrayList<>()).add(row);
+            full = ++pendingRows >= batchSize;
+        }
+        AdjacencyCache cache = adjacency.get(type);
+        if (cache != null) {
+            Object score = properties != null ? properties.get("score") : null;
+            cache.added(sourceDocumentId, targetDocumentId, score instanceof Number number ? number.floatValue() : 0f);
+        }
+        if (full) {
+            requestFlush();
+        }
     }
 
+    /**
+     * Drop the pending writes of the document, then delete its node and relationships
+     */
     @Override
     public void removeDocument(UUID documentId) {
-        log.info("Stub implementation: Removing document from Neo4j with ID: {}", documentId);
+        String id = documentId.toString();
+        int dropped = 0;
+        synchronized (lock) {
+            if (pendingDocuments.remove(documentId) != null) {
+                dropped++;
+            }
+            for (List<Map<String, Object>> rows : pendingRelationships.values()) {
+                for (Iterator<Map<String, Object>> iterator = rows.iterator(); iterator.hasNext(); ) {
+                    Map<String, Object> row = iterator.next();
+                    if (id.equals(row.get("source")) || id.equals(row.get("target"))) {
+                        iterator.remove();
+                        dropped++;
+                    }
+                }
+            }
+            pendingRows -= dropped;
+        }
+        capacity.release(dropped);
+        // Holding the monitor of drain() waits for a write in progress, which may recreate the node
+        synchronized (this) {
+            try (Session session = session(AccessMode.WRITE)) {
+                session.executeWriteWithoutResult(tx -> tx.run("MATCH (d:Document {id: $id}) DETACH DELETE d", Map.of("id", id)));
+            }
+        }
+        for (AdjacencyCache cache : adjacency.values()) {
+            cache.removed(documentId);
+        }
+    }
+
+    @Override
+    public void removeRelationships(Collection<UUID> documentIds, String relationshipType) {
+        String type = validate(relationshipType);
+        Set<String> ids = new HashSet<>();
+        for (UUID documentId : documentIds) {
+            ids.add(documentId.toString());
+        }
+        int dropped = 0;
+        synchronized (lock) {
+            List<Map<String, Object>> rows = pendingRelationships.get(type);
+            if (rows != null) {
+                int before = rows.size();
+                rows.removeIf(row -> ids.contains(row.get("source")));
+                dropped = before - rows.size();
+            }
+            pendingRows -= dropped;
+        }
+        capacity.release(dropped);
+
+        String statement = "UNWIND $ids AS id MATCH (:Document {id: id})-[r:" + type + "]->() DELETE r";
+        List<String> remaining = new ArrayList<>(ids);
+        synchronized (this) {
+            for (int from = 0; from < remaining.size(); from += batchSize) {
+                List<String> batch = remaining.subList(from, Math.min(remaining.size(), from + batchSize));
+                try (Session session = session(AccessMode.WRITE)) {
+                    session.executeWriteWithoutResult(tx -> tx.run(statement, Map.of("ids", batch)));
+                }
+            }
+        }
+        AdjacencyCache cache = adjacency.get(type);
+        if (cache != null) {
+            for (UUID documentId : documentIds) {
+                cache.clearedOutgoing(documentId);
+            }
+        }
+    }
+
+    /**
+     * Write what is pending, then delete all but the best maxDegree outgoing relationships
+     * of each document
+     */
+    @Override
+    public int pruneRelationships(Collection<UUID> documentIds, String relationshipType, int maxDegree) {
+        String type = validate(relationshipType);
+        String statement = "UNWIND $ids AS id MATCH (d:Document {id: id})-[r:" + type + "]->(t:Document) "
+                + "WITH d, r, t ORDER BY coalesce(r.score, 0.0) DESC "
+                + "WITH d, collect({r: r, target: t.id}) AS edges WHERE size(edges) > $max "
+                + "UNWIND edges[$max..] AS edge "
+                + "WITH d, edge.r AS r, edge.target AS target DELETE r "
+                + "RETURN d.id AS source, target";
+        List<String> ids = documentIds.stream().map(UUID::toString).distinct().toList();
+        List<UUID[]> removed = new ArrayList<>();
+        flush();
+        synchronized (this) {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                try (Session session = session(AccessMode.WRITE)) {
+                    removed.addAll(session.executeWrite(tx -> tx.run(statement, Map.of("ids", batch, "max", maxDegree))
+                            .list(record -> new UUID[]{UUID.fromString(record.get("source").asString()),
+                                    UUID.fromString(record.get("target").asString())})));
+                }
+            }
+        }
+        AdjacencyCache cache = adjacency.get(type);
+        if (cache != null) {
+            for (UUID[] relationship : removed) {
+                cache.removedRelationship(relationship[0], relationship[1]);
+            }
+        }
+        return removed.size();
     }
 
     @Override
     public boolean documentExists(UUID documentId) {
-        log.info("Stub implementation: Checking if document exists in Neo4j with ID: {}", documentId);
-        return false;
+        synchronized (lock) {
+            if (pendingDocuments.containsKey(documentId)) {
+                return true;
+            }
+        }
+        try (Session session = session(AccessMode.READ)) {
+            return session.executeRead(tx -> tx.run("MATCH (d:Document {id: $id}) RETURN count(d) > 0 AS found",
+                    Map.of("id", documentId.toString())).single().get("found").asBoolean());
+        }
+    }
+
+    /**
+     * Documents are marked with indexedAt once their vectors are stored; see DocumentProcessingService
+     */
+    @Override
+    public List<UUID> findDocumentsIndexedSince(UUID tenantId, LocalDateTime since) {
+        String query = "MATCH (d:Document) WHERE d.indexedAt > $since AND "
+                + (tenantId != null ? "d.tenantId = $tenantId " : "d.tenantId IS NULL ")
+                + "RETURN d.id AS id";
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("since", since);
+        parameters.put("tenantId", tenantId != null ? tenantId.toString() : null);
+        try (Session session = session(AccessMode.READ)) {
+            return session.executeRead(tx -> tx.run(query, parameters)
+                    .list(record -> UUID.fromString(record.get("id").asString())));
+        }
+    }
+
+    @Override
+    public LocalDateTime getWatermark(UUID tenantId, String name) {
+        try (Session session = session(AccessMode.READ)) {
+            return session.executeRead(tx -> tx.run("MATCH (e:GraphEpoch {tenantId: $tenantId, name: $name}) RETURN e.watermark AS watermark",
+                            Map.of("tenantId", epochTenant(tenantId), "name", name))
+                    .list(record -> record.get("watermark").asLocalDateTime()))
+                    .stream().findFirst().orElse(null);
+        }
+    }
+
+    @Override
+    public void setWatermark(UUID tenantId, String name, LocalDateTime watermark) {
+        try (Session session = session(AccessMode.WRITE)) {
+            session.executeWriteWithoutResult(tx -> tx.run("MERGE (e:GraphEpoch {tenantId: $tenantId, name: $name}) "
+                            + "SET e.watermark = $watermark, e.epoch = coalesce(e.epoch, 0) + 1",
+                    Map.of("tenantId", epochTenant(tenantId), "name", name, "watermark", watermark)));
+        }
+    }
+
+    /**
+     * Write everything pending now, returning once it is written or dropped
+     */
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    @Scheduled(fixedDelayString = "${docloader.neo4j.flush-interval:1000}")
+    public void flushDue() {
+        boolean due;
+        synchronized (lock) {
+            due = pendingRows > 0;
+        }
+        if (due) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Load the adjacency of types not loaded yet, and reload those with many changes or past their age
+     */
+    @Scheduled(fixedDelayString = "${docloader.neo4j.adjacency.check-interval:10000}")
+    public void refreshAdjacency() {
+        long now = System.currentTimeMillis();
+        adjacency.forEach((type, cache) -> {
+            boolean due = !cache.isLoaded() || cache.getPendingChanges() >= adjacencyMaxChanges
+                    || now - cache.getLoadedAt() >= adjacencyMaxAgeMillis;
+            if (due && reloading.add(type) && !adjacencyLoader.isShutdown()) {
+                adjacencyLoader.execute(() -> {
+                    try {
+                        loadAdjacency(type, cache);
+                    } catch (RuntimeException e) {
+                        log.error("Could not load the {} adjacency from Neo4j: {}", type, e.getMessage());
+                    } finally {
+                        reloading.remove(type);
+                    }
+                });
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        adjacencyLoader.shutdownNow();
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        drain();
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true) && !flusher.isShutdown()) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                drain();
+            });
+        }
+    }
+
+    /**
+     * Take what is pending and write it, documents first, in batches of at most batchSize
+     * rows. Drains run one at a time, so batches are written in submission order.
+     */
+    private synchronized void drain() {
+        List<Map<String, Object>> documents;
+        Map<String, List<Map<String, Object>>> relationships;
+        synchronized (lock) {
+            if (pendingRows == 0) {
+                return;
+            }
+            documents = new ArrayList<>(pendingDocuments.size());
+            for (Map.Entry<UUID, Map<String, Object>> entry : pendingDocuments.entrySet()) {
+                documents.add(Map.of("id", entry.getKey().toString(), "properties", entry.getValue()));
+            }
+            relationships = new LinkedHashMap<>(pendingRelationships);
+            pendingDocuments.clear();
+            pendingRelationships.clear();
+            pendingRows = 0;
+        }
+
+        long start = System.nanoTime();
+        int rows = write("documents", MERGE_DOCUMENTS, documents);
+        for (Map.Entry<String, List<Map<String, Object>>> entry : relationships.entrySet()) {
+            rows += write(entry.getKey() + " relationships", String.format(MERGE_RELATIONSHIPS, entry.getKey()), entry.getValue());
+        }
+        log.debug("Wrote {} graph rows to Neo4j in {} ms", rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Read all relationships of a type into a snapshot per tenant of the source document.
+     * Changes made before the buffer is flushed are in what is read, so they are dropped
+     * from the cache once the snapshots are published; later ones are kept and applied on top.
+     */
+    private void loadAdjacency(String type, AdjacencyCache cache) {
+        long upToSequence = cache.getSequence();
+        flush();
+        long start = System.currentTimeMillis();
+        String query = "MATCH (s:Document)-[r:" + type + "]->(t:Document) "
+                + "RETURN s.tenantId AS tenantId, s.id AS source, t.id AS target, coalesce(r.score, 0.0) AS score";
+        Map<String, CsrAdjacency.Edges> edges = new HashMap<>();
+        try (Session session = session(AccessMode.READ)) {
+            session.executeRead(tx -> {
+                // A retried transaction reads everything again
+                edges.clear();
+                Result result = tx.run(query);
+                while (result.hasNext()) {
+                    Record record = result.next();
+                    String tenantId = record.get("tenantId").isNull() ? "" : record.get("tenantId").asString();
+                    edges.computeIfAbsent(tenantId, key -> new CsrAdjacency.Edges())
+                            .add(UUID.fromString(record.get("source").asString()), UUID.fromString(record.get("target").asString()),
+                                    record.get("score").asNumber().floatValue());
+                }
+                return null;
+            });
+        }
+        Map<String, CsrAdjacency> snapshots = new HashMap<>();
+        int relationships = 0;
+        for (Map.Entry<String, CsrAdjacency.Edges> entry : edges.entrySet()) {
+            relationships += entry.getValue().size();
+            snapshots.put(entry.getKey(), entry.getValue().toAdjacency());
+        }
+        cache.publish(snapshots, upToSequence, System.currentTimeMillis());
+        log.info("Loaded {} {} relationships of {} tenants from Neo4j in {} ms", relationships, type, snapshots.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the number of rows taken from the buffer, whether they were written or dropped
+     */
+    private int write(String what, String statement, List<Map<String, Object>> rows) {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Map<String, Object>> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            for (int attempt = 1; ; attempt++) {
+                try (Session session = session(AccessMode.WRITE)) {
+                    session.executeWriteWithoutResult(tx -> tx.run(statement, Map.of("rows", batch)));
+                    break;
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts) {
+                        log.error("Giving up writing {} {} to Neo4j after {} attempts: {}", batch.size(), what,
+                                attempt, e.getMessage());
+                        break;
+                    }
+                    log.warn("Writing {} {} to Neo4j failed (attempt {} of {}), retrying: {}", batch.size(), what,
+                            attempt, maxAttempts, e.getMessage());
+                    try {
+                        Thread.sleep(retryBackoffMillis << (attempt - 1));
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        log.error("Dropping {} {} for Neo4j: interrupted", batch.size(), what);
+                        break;
+                    }
+                }
+            }
+            capacity.release(batch.size());
+        }
+        return rows.size();
+    }
+
+    private void acquire() {
+        if (capacity.tryAcquire()) {
+            return;
+        }
+        // Writing now frees room sooner than waiting for the flush interval
+        requestFlush();
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in the Neo4j write buffer", e);
+        }
+    }
+
+    private Session session(AccessMode mode) {
+        return driver.session(SessionConfig.builder().withDatabase(database).withDefaultAccessMode(mode).build());
+    }
+
+    // MERGE takes no null key, so documents without a tenant have theirs under ""
+    private static String epochTenant(UUID tenantId) {
+        return tenantId != null ? tenantId.toString() : "";
+    }
+
+    private static String validate(String relationshipType) {
+        if (relationshipType == null || !RELATIONSHIP_TYPE.matcher(relationshipType).matches()) {
+            throw new IllegalArgumentException("Invalid relationship type: " + relationshipType);
+        }
+        return relationshipType;
+    }
+
+    private static Map<String, Object> convert(Map<String, Object> properties) {
+        Map<String, Object> converted = new HashMap<>();
+        properties.forEach((key, value) -> {
+            if (value != null) {
+                converted.put(key, propertyValue(value));
+            }
+        });
+        return converted;
+    }
+
+    /**
+     * Neo4j properties are numbers, strings, booleans, temporals or lists of them; anything
+     * else, UUIDs included, is stored as its string form
+     */
+    private static Object propertyValue(Object value) {
+        if (value instanceof Number || value instanceof String || value instanceof Boolean || value instanceof Temporal) {
+            return value;
+        }
+        if (value instanceof Collection<?> values) {
+            return values.stream().filter(element -> element != null).map(Neo4jServiceImpl::propertyValue).toList();
+        }
+        return value.toString();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,658 @@
+package com.docloader.service.impl;
+
+import com.docloader.model.Document;
+import com.docloader.service.DocumentVectors;
+import com.docloader.service.WeaviateService;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.DocumentScoring;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorMath;
+import com.docloader.vector.VectorRecord;
+import com.docloader.vector.VectorSearchFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Vector store on PostgreSQL with the pgvector extension, for tenants small enough not to
+ * need a separate vector database. Chunk vectors go into a chunk_vectors table in the
+ * tenant's schema together with the job, uploader and content type of their document, so
+ * filtered searches are answered by one SQL query. The table and its HNSW or IVFFlat
+ * index are created on the first write, when the dimension is known.
+ * <p>
+ * Vectors are stored normalized and compared by inner product, which equals cosine
+ * similarity. Documents are replaced in one transaction per call, loaded with binary COPY;
+ * batches of documents share the transaction and the COPY.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "docloader.vector-store.type", havingValue = "pgvector")
+public class PgVectorStoreService implements WeaviateService {
+
+    private static final String TABLE = "chunk_vectors";
+    // Schema of the vectors of users without a tenant
+    private static final String NO_TENANT_SCHEMA = "app";
+    private static final String COLUMNS = "document_id, chunk_index, job_id, uploaded_by, content_type, fingerprint, embedding";
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Largest hnsw.ef_search pgvector accepts
+    private static final int MAX_EF_SEARCH = 1000;
+    // Chunks scanned per requested document; the index scan cannot group chunks by document
+    private static final int CHUNKS_PER_DOCUMENT = 4;
+    // Most chunks a document search scans, pgvector's default hnsw.max_scan_tuples
+    private static final int MAX_DOCUMENT_SCAN_CHUNKS = 20000;
+    // Earliest pgvector with iterative index scans
+    private static final int[] ITERATIVE_SCAN_VERSION = {0, 8};
+
+    private final DataSource dataSource;
+    // Schemas whose chunk_vectors table is known to exist
+    private final Set<String> readySchemas = ConcurrentHashMap.newKeySet();
+    // Whether the installed pgvector has iterative index scans, checked on the first search
+    private volatile Boolean iterativeScanSupported;
+
+    @Value("${docloader.vector-store.pgvector.index-type:HNSW}")
+    private IndexType indexType;
+
+    @Value("${docloader.vector-store.hnsw.m:16}")
+    private int m;
+
+    @Value("${docloader.vector-store.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${docloader.vector-store.hnsw.ef-search:100}")
+    private int efSearch;
+
+    @Value("${docloader.vector-store.pgvector.ivfflat-lists:100}")
+    private int ivfflatLists;
+
+    @Value("${docloader.vector-store.pgvector.ivfflat-probes:10}")
+    private int ivfflatProbes;
+
+    @Value("${docloader.vector-store.pgvector.iterative-scan:relaxed_order}")
+    private String iterativeScan;
+
+    @Value("${docloader.vector-store.document-scoring.mode:MAX}")
+    private DocumentScoring documentScoring;
+
+    @Value("${docloader.vector-store.document-scoring.chunks:3}")
+    private int documentScoringChunks;
+
+    public PgVectorStoreService(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public enum IndexType {
+        HNSW, IVFFLAT
+    }
+
+    @Override
+    public String storeDocumentEmbedding(UUID tenantId, Document document, float[] embedding) {
+        replaceDocumentVectors(tenantId, document, List.of(new VectorRecord(document.getId(), 0, null, embedding)), null);
+        return document.getId().toString();
+    }
+
+    /**
+     * Chunks are ranked by the index, then each document is scored from its best chunks.
+     * When the chunks scanned belong to fewer than limit documents, the scan is repeated
+     * with four times as many chunks until it finds enough documents or runs out of rows.
+     */
+    @Override
+    public List<String> findSimilarDocuments(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        String suffix;
+        List<Object> suffixParameters;
+        if (documentScoring == DocumentScoring.SUM_TOP_N) {
+            suffix = ") SELECT document_id, sum(score) AS score, (SELECT count(*) FROM chunks) AS scanned FROM ("
+                    + "SELECT document_id, score, row_number() OVER (PARTITION BY document_id ORDER BY score DESC) AS chunk_rank "
+                    + "FROM chunks) ranked WHERE chunk_rank <= ? GROUP BY document_id ORDER BY score DESC LIMIT ?";
+            suffixParameters = List.of(Math.max(1, documentScoringChunks), limit);
+        } else {
+            suffix = ") SELECT document_id, max(score) AS score, (SELECT count(*) FROM chunks) AS scanned "
+                    + "FROM chunks GROUP BY document_id ORDER BY score DESC LIMIT ?";
+            suffixParameters = List.of(limit);
+        }
+        int chunks = Math.min(MAX_DOCUMENT_SCAN_CHUNKS, limit * CHUNKS_PER_DOCUMENT);
+        while (true) {
+            long[] scanned = new long[1];
+            List<String> documents = search(tenantId, embedding, chunks, filter, "WITH chunks AS MATERIALIZED (", suffix,
+                    suffixParameters, results -> {
+                        scanned[0] = results.getLong(3);
+                        return results.getString(1);
+                    });
+            // A scan returning fewer chunks than asked for has run out of matching rows
+            if (documents.size() >= limit || scanned[0] < chunks || chunks >= MAX_DOCUMENT_SCAN_CHUNKS) {
+                return documents;
+            }
+            chunks = (int) Math.min(MAX_DOCUMENT_SCAN_CHUNKS, 4L * chunks);
+        }
+    }
+
+    @Override
+    public List<ChunkHit> findSimilarChunks(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
+        // Relaxed iterative scans may return rows slightly out of order
+        return search(tenantId, embedding, limit, filter, "WITH chunks AS MATERIALIZED (",
+                ") SELECT document_id, chunk_index, score FROM chunks ORDER BY score DESC", List.of(),
+                results -> new ChunkHit(results.getObject(1, UUID.class), results.getInt(2), results.getFloat(3)));
+    }
+
+    /**
+     * Run the index scan returning the chunks of a tenant most similar to a query, wrapped
+     * in an outer query that shapes the rows returned
+     * @param chunks the number of chunks the index scan returns
+     * @param prefix SQL preceding the scan, which yields document_id, chunk_index and score
+     * @param suffix SQL following the scan
+     * @param suffixParameters the parameters of the suffix
+     */
+    private <T> List<T> search(UUID tenantId, float[] embedding, int chunks, VectorSearchFilter filter,
+                               String prefix, String suffix, List<Object> suffixParameters, RowReader<T> reader) {
+        String schema = schemaOf(tenantId);
+        List<Object> parameters = new ArrayList<>();
+        String query = toLiteral(VectorMath.normalize(embedding));
+
+        StringBuilder sql = new StringBuilder(prefix).append("SELECT document_id, chunk_index, ")
+                .append("-(embedding <#> ?::vector) AS score FROM ").append(table(schema));
+        parameters.add(query);
+        boolean filtered = filter != null && !filter.isEmpty();
+        if (filtered) {
+            List<String> conditions = new ArrayList<>(3);
+            if (filter.getJobId() != null) {
+                conditions.add("job_id = ?");
+                parameters.add(filter.getJobId());
+            }
+            if (filter.getUploadedBy() != null) {
+                conditions.add("uploaded_by = ?");
+                parameters.add(filter.getUploadedBy());
+            }
+            if (filter.getContentType() != null) {
+                conditions.add("content_type = ?");
+                parameters.add(filter.getContentType());
+            }
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY embedding <#> ?::vector LIMIT ?").append(suffix);
+        parameters.add(query);
+        parameters.add(chunks);
+        parameters.addAll(suffixParameters);
+
+        try (Connection connection = dataSource.getConnection()) {
+            if (!tableExists(connection, schema)) {
+                return List.of();
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    // SET LOCAL only lasts until the end of this transaction
+                    if (indexType == IndexType.HNSW) {
+                        statement.execute("SET LOCAL hnsw.ef_search = " + Math.min(MAX_EF_SEARCH, Math.max(efSearch, chunks)));
+                    } else {
+                        statement.execute("SET LOCAL ivfflat.probes = " + ivfflatProbes);
+                    }
+                    if (!iterativeScan.isBlank() && supportsIterativeScan(connection)) {
+                        // Keeps scanning the index until enough rows pass the filter, rather than
+                        // stopping at ef_search candidates
+                        statement.execute("SET LOCAL " + (indexType == IndexType.HNSW ? "hnsw" : "ivfflat")
+                                + ".iterative_scan = " + iterativeScan);
+                    }
+                }
+
+                List<T> rows = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        statement.setObject(i + 1, parameters.get(i));
+                    }
+                    try (ResultSet results = statement.executeQuery()) {
+                        while (results.next()) {
+                            rows.add(reader.read(results));
+                        }
+                    }
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            log.error("Error searching vectors of tenant {}: {}", tenantId, e.getMessage(), e);
+            throw new IllegalStateException("Failed to search vectors", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowReader<T> {
+        T read(ResultSet results) throws SQLException;
+    }
+
+    @Override
+    public void replaceDocumentVectors(UUID tenantId, Document document, List<VectorRecord> records, Quantization quantization) {
+        try {
+            replace(schemaOf(tenantId), List.of(new DocumentVectors(document, records, quantization)));
+        } catch (SQLException e) {
+            log.error("Error storing vectors of document {}: {}", document.getId(), e.getMessage(), e);
+            throw new IllegalStateException("Failed to store vectors of document " + document.getId(), e);
+        }
+    }
+
+    @Override
+    public Map<UUID, Exception> replaceDocumentVectors(UUID tenantId, List<DocumentVectors> batch) {
+        try {
+            replace(schemaOf(tenantId), batch);
+            return Map.of();
+        } catch (SQLException | RuntimeException e) {
+            // The transaction rolled back as a whole; retry one document at a time to isolate failures
+            log.warn("Storing a batch of {} documents for tenant {} failed, retrying one by one: {}",
+                    batch.size(), tenantId, e.getMessage());
+            return WeaviateService.super.replaceDocumentVectors(tenantId, batch);
+        }
+    }
+
+    @Override
+    public void removeDocument(UUID documentId) {
+        try (Connection connection = dataSource.getConnection()) {
+            for (String schema : schemasOf(connection, documentId)) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM " + table(schema) + " WHERE document_id = ?")) {
+                    statement.setObject(1, documentId);
+                    statement.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error removing vectors of document {}: {}", documentId, e.getMessage(), e);
+            throw new IllegalStateException("Failed to remove vectors of document " + documentId, e);
+        }
+    }
+
+    @Override
+    public boolean documentExists(UUID documentId) {
+        try (Connection connection = dataSource.getConnection()) {
+            for (String schema : schemasOf(connection, documentId)) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT 1 FROM " + table(schema) + " WHERE document_id = ? LIMIT 1")) {
+                    statement.setObject(1, documentId);
+                    try (ResultSet results = statement.executeQuery()) {
+                        if (results.next()) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            log.error("Error checking vectors of document {}: {}", documentId, e.getMessage(), e);
+            throw new IllegalStateException("Failed to check vectors of document " + documentId, e);
+        }
+    }
+
+    @Override
+    public boolean supportsDocumentVectors() {
+        return true;
+    }
+
+    /**
+     * Averages the chunk vectors in the database and streams one row per document
+     */
+    @Override
+    public void forEachDocumentVector(UUID tenantId, BiConsumer<UUID, float[]> consumer) {
+        String schema = schemaOf(tenantId);
+        try (Connection connection = dataSource.getConnection()) {
+            if (!tableExists(connection, schema)) {
+                return;
+            }
+            // A cursor is only used outside auto-commit
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT document_id, avg(embedding) FROM " + table(schema) + " GROUP BY document_id")) {
+                statement.setFetchSize(1000);
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        consumer.accept(results.getObject(1, UUID.class), VectorMath.normalize(fromLiteral(results.getString(2))));
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("Error reading document vectors of tenant {}: {}", tenantId, e.getMessage(), e);
+            throw new IllegalStateException("Failed to read document vectors of tenant " + tenantId, e);
+        }
+    }
+
+    @Override
+    public Map<UUID, float[]> getDocumentVectors(UUID tenantId, Collection<UUID> documentIds) {
+        Map<UUID, float[]> vectors = new HashMap<>();
+        String schema = schemaOf(tenantId);
+        try (Connection connection = dataSource.getConnection()) {
+            if (documentIds.isEmpty() || !tableExists(connection, schema)) {
+                return vectors;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT document_id, avg(embedding) FROM " + table(schema) + " WHERE document_id = ANY(?) GROUP BY document_id")) {
+                statement.setArray(1, connection.createArrayOf("uuid", documentIds.toArray()));
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        vectors.put(results.getObject(1, UUID.class), VectorMath.normalize(fromLiteral(results.getString(2))));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error reading document vectors of tenant {}: {}", tenantId, e.getMessage(), e);
+            throw new IllegalStateException("Failed to read document vectors of tenant " + tenantId, e);
+        }
+        return vectors;
+    }
+
+    /**
+     * Replace the vectors of the documents in one transaction: their old rows are deleted
+     * and the new ones loaded with a single binary COPY
+     */
+    private void replace(String schema, List<DocumentVectors> batch) throws SQLException {
+        long start = System.nanoTime();
+        int rows = 0;
+        for (DocumentVectors item : batch) {
+            rows += item.getRecords().size();
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            DocumentVectors first = batch.stream().filter(item -> !item.getRecords().isEmpty()).findFirst().orElse(null);
+            if (first != null) {
+                ensureTable(connection, schema, first.getRecords().get(0).getVector().length);
+            } else if (!tableExists(connection, schema)) {
+                return;
+            }
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                // Serializes concurrent replacements of the same documents; taken in key
+                // order so overlapping batches cannot deadlock
+                long[] lockKeys = batch.stream().map(item -> item.getDocument().getId())
+                        .mapToLong(id -> id.getMostSignificantBits() ^ id.getLeastSignificantBits())
+                        .sorted().distinct().toArray();
+                try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+                    for (long key : lockKeys) {
+                        statement.setLong(1, key);
+                        statement.execute();
+                    }
+                }
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM " + table(schema) + " WHERE document_id = ANY(?)")) {
+                    statement.setArray(1, connection.createArrayOf("uuid",
+                            batch.stream().map(item -> item.getDocument().getId()).distinct().toArray()));
+                    statement.executeUpdate();
+                }
+
+                if (rows > 0) {
+                    CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyIn("COPY " + table(schema) + " (" + COLUMNS + ") FROM STDIN WITH (FORMAT binary)");
+                    try {
+                        writeRows(copyIn, batch);
+                        copyIn.endCopy();
+                    } finally {
+                        if (copyIn.isActive()) {
+                            copyIn.cancelCopy();
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        log.debug("Stored {} vectors of {} documents in {} in {} ms", rows, batch.size(), schema,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Create the tenant's table and indexes unless they exist. Instances creating the same
+     * table at once are serialized with an advisory lock on the schema name.
+     */
+    private void ensureTable(Connection connection, String schema, int dimension) throws SQLException {
+        if (readySchemas.contains(schema)) {
+            return;
+        }
+        String table = table(schema);
+        String vectorIndex = indexType == IndexType.HNSW
+                ? "USING hnsw (embedding vector_ip_ops) WITH (m = " + m + ", ef_construction = " + efConstruction + ")"
+                : "USING ivfflat (embedding vector_ip_ops) WITH (lists = " + ivfflatLists + ")";
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_advisory_xact_lock(hashtext('" + table + "'))");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                    + "document_id uuid NOT NULL, "
+                    + "chunk_index integer NOT NULL, "
+                    + "job_id uuid, "
+                    + "uploaded_by uuid, "
+                    + "content_type varchar(255), "
+                    + "fingerprint varchar(64), "
+                    + "embedding vector(" + dimension + ") NOT NULL, "
+                    + "PRIMARY KEY (document_id, chunk_index))");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_embedding_idx ON " + table + " " + vectorIndex);
+            statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_job_idx ON " + table + " (job_id)");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_uploaded_by_idx ON " + table + " (uploaded_by)");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_content_type_idx ON " + table + " (content_type)");
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        readySchemas.add(schema);
+        log.info("Created pgvector table {} with {} index for {} dimensions", table, indexType, dimension);
+    }
+
+    private boolean supportsIterativeScan(Connection connection) throws SQLException {
+        Boolean supported = iterativeScanSupported;
+        if (supported != null) {
+            return supported;
+        }
+        String version = null;
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT extversion FROM pg_extension WHERE extname = 'vector'")) {
+            if (results.next()) {
+                version = results.getString(1);
+            }
+        }
+        supported = version != null && atLeast(version, ITERATIVE_SCAN_VERSION);
+        if (!supported) {
+            log.warn("pgvector {} has no iterative index scans, which came with 0.8; ignoring "
+                    + "docloader.vector-store.pgvector.iterative-scan={}", version, iterativeScan);
+        }
+        iterativeScanSupported = supported;
+        return supported;
+    }
+
+    // Compares the leading numbers of a version such as 0.8.0 with a minimum
+    private static boolean atLeast(String version, int[] minimum) {
+        String[] parts = version.split("\\.");
+        for (int i = 0; i < minimum.length; i++) {
+            int part;
+            try {
+                part = i < parts.length ? Integer.parseInt(parts[i].replaceAll("\\D.*", "")) : 0;
+            } catch (NumberFormatException e) {
+                part = 0;
+            }
+            if (part != minimum[i]) {
+                return part > minimum[i];
+            }
+        }
+        return true;
+    }
+
+    private boolean tableExists(Connection connection, String schema) throws SQLException {
+        if (readySchemas.contains(schema)) {
+            return true;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?)")) {
+            statement.setString(1, table(schema));
+            try (ResultSet results = statement.executeQuery()) {
+                boolean exists = results.next() && results.getString(1) != null;
+                if (exists) {
+                    readySchemas.add(schema);
+                }
+                return exists;
+            }
+        }
+    }
+
+    /**
+     * The schemas that may hold vectors of a document: the schema of the tenant of the user
+     * who created its job, or every schema with a vector table if the document is gone
+     */
+    private List<String> schemasOf(Connection connection, UUID documentId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT u.tenant_id FROM app.documents d "
+                + "JOIN app.document_jobs j ON j.id = d.job_id JOIN app.users u ON u.id = j.created_by WHERE d.id = ?")) {
+            statement.setObject(1, documentId);
+            try (ResultSet results = statement.executeQuery()) {
+                if (results.next()) {
+                    String schema = schemaOf(results.getObject(1, UUID.class));
+                    return tableExists(connection, schema) ? List.of(schema) : List.of();
+                }
+            }
+        }
+
+        List<String> schemas = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT table_schema FROM information_schema.tables WHERE table_name = ?")) {
+            statement.setString(1, TABLE);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    schemas.add(results.getString(1));
+                }
+            }
+        }
+        return schemas;
+    }
+
+    // Tenant schemas are created by app.create_tenant_database from the tenant ID
+    private static String schemaOf(UUID tenantId) {
+        return tenantId != null ? "tenant_" + tenantId.toString().replace("-", "_") : NO_TENANT_SCHEMA;
+    }
+
+    private static String table(String schema) {
+        return "\"" + schema + "\"." + TABLE;
+    }
+
+    private static float[] fromLiteral(String literal) {
+        String[] values = literal.substring(1, literal.length() - 1).split(",");
+        float[] vector = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            vector[i] = Float.parseFloat(values[i]);
+        }
+        return vector;
+    }
+
+    private static String toLiteral(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    // Rows in the PostgreSQL binary COPY format; pgvector's binary form of a vector is the
+    // dimension and an unused word as int16, followed by the float4 values
+    private static void writeRows(CopyIn copyIn, List<DocumentVectors> batch) throws SQLException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE + 16 * 1024);
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0); // flags
+            out.writeInt(0); // header extension length
+            for (DocumentVectors item : batch) {
+                Document document = item.getDocument();
+                UUID jobId = document.getJob() != null ? document.getJob().getId() : null;
+                byte[] contentType = document.getContentType() != null
+                        ? document.getContentType().getBytes(StandardCharsets.UTF_8) : null;
+                for (VectorRecord record : item.getRecords()) {
+                    float[] vector = VectorMath.normalize(record.getVector());
+                    out.writeShort(7);
+                    writeUuid(out, document.getId());
+                    out.writeInt(4);
+                    out.writeInt(record.getChunkIndex());
+                    writeUuid(out, jobId);
+                    writeUuid(out, document.getUploadedBy());
+                    writeBytes(out, contentType);
+                    writeBytes(out, record.getFingerprint() != null ? record.getFingerprint().getBytes(StandardCharsets.UTF_8) : null);
+                    out.writeInt(4 + 4 * vector.length);
+                    out.writeShort(vector.length);
+                    out.writeShort(0);
+                    for (float value : vector) {
+                        out.writeFloat(value);
+                    }
+
+                    if (buffer.size() >= COPY_BUFFER_SIZE) {
+                        flush(copyIn, buffer);
+                    }
+                }
+            }
+            out.writeShort(-1); // trailer
+        } catch (IOException e) {
+            // Writes to a ByteArrayOutputStream do not fail
+            throw new UncheckedIOException(e);
+        }
+        flush(copyIn, buffer);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static void flush(CopyIn copyIn, ByteArrayOutputStream buffer) throws SQLException {
+        byte[] bytes = buffer.toByteArray();
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.reset();
+    }
+}
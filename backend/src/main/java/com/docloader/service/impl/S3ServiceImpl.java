@@ -19,6 +19,9 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,8 +33,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -55,9 +61,14 @@ public class S3ServiceImpl implements S3Service {
     @Value("${docloader.s3.path-style-access}")
     private boolean defaultPathStyleAccess;
     
+    // Endpoint browsers use for pre-signed URLs when the default endpoint is only reachable internally
+    @Value("${docloader.s3.public-endpoint:}")
+    private String publicEndpoint;
+    
     // Cache S3 clients per config to avoid creating new ones for each request
     private final Map<String, S3Client> s3ClientCache = new ConcurrentHashMap<>();
     private final Map<String, S3AsyncClient> s3AsyncClientCache = new ConcurrentHashMap<>();
+    private final Map<String, S3Presigner> s3PresignerCache = new ConcurrentHashMap<>();
     
     // Default clients for backward compatibility
     private final S3Client defaultS3Client;
@@ -118,6 +129,44 @@ public class S3ServiceImpl implements S3Service {
         return builder.build();
     }
     
+    // Get or create a presigner for the given bucket config
+    private S3Presigner getS3Presigner(S3BucketConfig config) {
+        String configId = config.getId().toString();
+        return s3PresignerCache.computeIfAbsent(configId, id -> createS3Presigner(config));
+    }
+    
+    // Create a new presigner for the given bucket config
+    private S3Presigner createS3Presigner(S3BucketConfig config) {
+        String endpoint = config.getEndpoint() != null ? config.getEndpoint() : defaultEndpoint;
+        String region = config.getRegion() != null ? config.getRegion() : defaultRegion;
+        String accessKey = config.getAccessKey() != null ? config.getAccessKey() : defaultAccessKey;
+        String secretKey = config.getSecretKey() != null ? config.getSecretKey() : defaultSecretKey;
+        boolean pathStyleAccess = config.getPathStyleAccess() != null ? config.getPathStyleAccess() : defaultPathStyleAccess;
+        
+        // The signature covers the host, so sign for the endpoint the client will call
+        if (publicEndpoint != null && !publicEndpoint.isEmpty() && Objects.equals(endpoint, defaultEndpoint)) {
+            endpoint = publicEndpoint;
+        }
+        
+        log.info("Creating S3 presigner for bucket config {}", config.getName());
+        
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secretKey);
+        
+        var builder = S3Presigner.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                .region(Region.of(region))
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(pathStyleAccess)
+                        .build());
+        
+        // Set custom endpoint if configured (for MinIO)
+        if (endpoint != null && !endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        
+        return builder.build();
+    }
+    
     // Create a new S3 async client for the given bucket config
     private S3AsyncClient createS3AsyncClient(S3BucketConfig config) {
         String endpoint = config.getEndpoint() != null ? config.getEndpoint() : defaultEndpoint;
@@ -319,6 +368,28 @@ public class S3ServiceImpl implements S3Service {
         }
     }
 
+    @Override
+    public void listObjects(S3BucketConfig config, String prefix, Consumer<List<ObjectInfo>> pageConsumer) {
+        try {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                    .bucket(config.getBucketName())
+                    .prefix(prefix)
+                    .build();
+            
+            for (ListObjectsV2Response page : getS3Client(config).listObjectsV2Paginator(request)) {
+                List<ObjectInfo> objects = new ArrayList<>(page.contents().size());
+                for (S3Object object : page.contents()) {
+                    String eTag = object.eTag() != null ? object.eTag().replace("\"", "") : null;
+                    objects.add(new ObjectInfo(object.key(), object.size(), eTag, null));
+                }
+                pageConsumer.accept(objects);
+            }
+        } catch (Exception e) {
+            log.error("Error listing objects in S3: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to list objects in S3", e);
+        }
+    }
+
     @Override
     public String getObjectUrl(S3BucketConfig config, String key) {
         try {
@@ -414,6 +485,252 @@ public class S3ServiceImpl implements S3Service {
         }
     }
 
+    @Override
+    public InputStream downloadFile(String key) {
+        try {
+            GetObjectRequest request = GetObjectRequest.builder()
+                    .bucket(defaultBucketName)
+                    .key(key)
+                    .build();
+            
+            return defaultS3Client.getObject(request);
+        } catch (Exception e) {
+            log.error("Error downloading file from S3: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to download file from S3", e);
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(String key, String contentType) {
+        try {
+            CreateMultipartUploadRequest.Builder requestBuilder = CreateMultipartUploadRequest.builder()
+                    .bucket(defaultBucketName)
+                    .key(key);
+            
+            if (contentType != null) {
+                requestBuilder.contentType(contentType);
+            }
+            
+            return defaultS3Client.createMultipartUpload(requestBuilder.build()).uploadId();
+        } catch (Exception e) {
+            log.error("Error creating multipart upload in S3: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to create multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long contentLength) {
+        try {
+            UploadPartRequest request = UploadPartRequest.builder()
+                    .bucket(defaultBucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength(contentLength)
+                    .build();
+            
+            return defaultS3Client.uploadPart(request, RequestBody.fromInputStream(inputStream, contentLength)).eTag();
+        } catch (Exception e) {
+            log.error("Error uploading part {} of multipart upload {} to S3: {}", partNumber, uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to upload part to S3", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String key, String uploadId, Map<Integer, String> partETags) {
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            partETags.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> parts.add(CompletedPart.builder()
+                            .partNumber(entry.getKey())
+                            .eTag(entry.getValue())
+                            .build()));
+            
+            CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                    .bucket(defaultBucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build();
+            
+            defaultS3Client.completeMultipartUpload(request);
+            
+            if (defaultEndpoint != null && !defaultEndpoint.isEmpty()) {
+                return String.format("%s/%s/%s", defaultEndpoint, defaultBucketName, key);
+            } else {
+                return String.format("https://%s.s3.%s.amazonaws.com/%s", defaultBucketName, defaultRegion, key);
+            }
+        } catch (Exception e) {
+            log.error("Error completing multipart upload {} in S3: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to complete multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                    .bucket(defaultBucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build();
+            
+            defaultS3Client.abortMultipartUpload(request);
+        } catch (Exception e) {
+            log.error("Error aborting multipart upload {} in S3: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to abort multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public String presignPutObject(S3BucketConfig config, String key, String contentType, String contentMd5, Duration expiry) {
+        try {
+            PutObjectRequest.Builder requestBuilder = PutObjectRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key);
+            
+            if (contentType != null) {
+                requestBuilder.contentType(contentType);
+            }
+            
+            // A signed Content-MD5 makes S3 reject a body that does not match the declared hash
+            if (contentMd5 != null) {
+                requestBuilder.contentMD5(contentMd5);
+            }
+            
+            PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                    .signatureDuration(expiry)
+                    .putObjectRequest(requestBuilder.build())
+                    .build();
+            
+            return getS3Presigner(config).presignPutObject(presignRequest).url().toString();
+        } catch (Exception e) {
+            log.error("Error pre-signing upload of {} to S3: {}", key, e.getMessage(), e);
+            throw new RuntimeException("Failed to pre-sign upload to S3", e);
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(S3BucketConfig config, String key, String contentType) {
+        try {
+            CreateMultipartUploadRequest.Builder requestBuilder = CreateMultipartUploadRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key);
+            
+            if (contentType != null) {
+                requestBuilder.contentType(contentType);
+            }
+            
+            return getS3Client(config).createMultipartUpload(requestBuilder.build()).uploadId();
+        } catch (Exception e) {
+            log.error("Error creating multipart upload in S3: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to create multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public String presignUploadPart(S3BucketConfig config, String key, String uploadId, int partNumber, Duration expiry) {
+        try {
+            UploadPartRequest request = UploadPartRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .build();
+            
+            UploadPartPresignRequest presignRequest = UploadPartPresignRequest.builder()
+                    .signatureDuration(expiry)
+                    .uploadPartRequest(request)
+                    .build();
+            
+            return getS3Presigner(config).presignUploadPart(presignRequest).url().toString();
+        } catch (Exception e) {
+            log.error("Error pre-signing part {} of multipart upload {}: {}", partNumber, uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to pre-sign upload part", e);
+        }
+    }
+
+    @Override
+    public Map<Integer, String> listParts(S3BucketConfig config, String key, String uploadId) {
+        try {
+            ListPartsRequest request = ListPartsRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build();
+            
+            Map<Integer, String> parts = new HashMap<>();
+            getS3Client(config).listPartsPaginator(request).parts()
+                    .forEach(part -> parts.put(part.partNumber(), part.eTag()));
+            return parts;
+        } catch (Exception e) {
+            log.error("Error listing parts of multipart upload {} in S3: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to list parts of multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(S3BucketConfig config, String key, String uploadId, Map<Integer, String> partETags) {
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            partETags.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> parts.add(CompletedPart.builder()
+                            .partNumber(entry.getKey())
+                            .eTag(entry.getValue())
+                            .build()));
+            
+            CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build();
+            
+            getS3Client(config).completeMultipartUpload(request);
+            return getObjectUrl(config, key);
+        } catch (Exception e) {
+            log.error("Error completing multipart upload {} in S3: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to complete multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(S3BucketConfig config, String key, String uploadId) {
+        try {
+            AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build();
+            
+            getS3Client(config).abortMultipartUpload(request);
+        } catch (Exception e) {
+            log.error("Error aborting multipart upload {} in S3: {}", uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to abort multipart upload in S3", e);
+        }
+    }
+
+    @Override
+    public Optional<ObjectInfo> headObject(S3BucketConfig config, String key) {
+        try {
+            HeadObjectRequest request = HeadObjectRequest.builder()
+                    .bucket(config.getBucketName())
+                    .key(key)
+                    .build();
+            
+            HeadObjectResponse response = getS3Client(config).headObject(request);
+            String eTag = response.eTag() != null ? response.eTag().replace("\"", "") : null;
+            return Optional.of(new ObjectInfo(key, response.contentLength(), eTag, response.contentType()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (Exception e) {
+            log.error("Error reading metadata of object {} in S3: {}", key, e.getMessage(), e);
+            throw new RuntimeException("Failed to read object metadata in S3", e);
+        }
+    }
+
     private void createBucketIfNotExistsInternal(S3Client s3Client, String bucketName) {
         try {
             HeadBucketRequest headBucketRequest = HeadBucketRequest.builder()
@@ -0,0 +1,89 @@
+package com.docloader.service.impl;
+
+import com.docloader.config.ConditionalOnStorageType;
+import com.docloader.service.S3Service;
+import com.docloader.service.StorageBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Storage in the default S3 bucket
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnStorageType("s3")
+public class S3StorageBackend implements StorageBackend {
+
+    private final S3Service s3Service;
+
+    @Override
+    public String getType() {
+        return "s3";
+    }
+
+    @Override
+    public String buildKey(UUID tenantId, UUID userId, String filename) {
+        return String.format("uploads/%s/%s/%s_%s", tenantId, userId, UUID.randomUUID(), filename);
+    }
+
+    @Override
+    public StoredFile store(MultipartFile file, String key) throws IOException {
+        String md5Hash;
+        try (InputStream in = file.getInputStream()) {
+            md5Hash = StorageBackend.md5Hex(in);
+        }
+        try (InputStream in = file.getInputStream()) {
+            s3Service.uploadFile(key, in, file.getSize(), file.getContentType());
+        }
+        return new StoredFile(key, file.getSize(), md5Hash);
+    }
+
+    @Override
+    public StoredFile store(Path source, String key, String contentType, String md5Hash) throws IOException {
+        long size = Files.size(source);
+        if (md5Hash == null) {
+            try (InputStream in = Files.newInputStream(source)) {
+                md5Hash = StorageBackend.md5Hex(in);
+            }
+        }
+        try (InputStream in = Files.newInputStream(source)) {
+            s3Service.uploadFile(key, in, size, contentType);
+        }
+        Files.delete(source);
+        return new StoredFile(key, size, md5Hash);
+    }
+
+    @Override
+    public InputStream open(String location) {
+        return s3Service.downloadFile(location);
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String location) {
+        return Optional.empty();
+    }
+
+    @Override
+    public long transferTo(String location, WritableByteChannel target) throws IOException {
+        try (InputStream in = open(location)) {
+            return in.transferTo(Channels.newOutputStream(target));
+        }
+    }
+
+    @Override
+    public void delete(String location) {
+        s3Service.deleteFile(location);
+    }
+}
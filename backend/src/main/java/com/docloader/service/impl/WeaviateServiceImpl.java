@@ -2,6 +2,10 @@ package com.docloader.service.impl;
 
 import com.docloader.model.Document;
 import com.docloader.service.WeaviateService;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.Quantization;
+import com.docloader.vector.VectorRecord;
+import com.docloader.vector.VectorSearchFilter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
@@ -16,21 +20,32 @@ import java.util.UUID;
  */
 @Service
 @Slf4j
-@ConditionalOnProperty(name = "docloader.weaviate.enabled", havingValue = "true", matchIfMissing = false)
+@ConditionalOnProperty(name = "docloader.vector-store.type", havingValue = "weaviate")
 public class WeaviateServiceImpl implements WeaviateService {
 
     @Override
-    public String storeDocumentEmbedding(Document document, float[] embedding) {
+    public String storeDocumentEmbedding(UUID tenantId, Document document, float[] embedding) {
         log.info("Stub implementation: Storing document embedding for document ID: {}", document.getId());
         return document.getId().toString();
     }
 
     @Override
-    public List<String> findSimilarDocuments(float[] embedding, int limit) {
+    public List<String> findSimilarDocuments(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
         log.info("Stub implementation: Finding similar documents with limit: {}", limit);
         return new ArrayList<>();
     }
 
+    @Override
+    public List<ChunkHit> findSimilarChunks(UUID tenantId, float[] embedding, int limit, VectorSearchFilter filter) {
+        log.info("Stub implementation: Finding similar chunks with limit: {}", limit);
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void replaceDocumentVectors(UUID tenantId, Document document, List<VectorRecord> records, Quantization quantization) {
+        log.info("Stub implementation: Replacing {} chunk vectors of document ID: {}", records.size(), document.getId());
+    }
+
     @Override
     public void removeDocument(UUID documentId) {
         log.info("Stub implementation: Removing document ID: {}", documentId);
@@ -0,0 +1,17 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * A chunk matching a vector query, scored by the similarity of its vector to the query
+ */
+@Getter
+@AllArgsConstructor
+public class ChunkHit {
+    private final UUID documentId;
+    private final int chunkIndex;
+    private final float score;
+}
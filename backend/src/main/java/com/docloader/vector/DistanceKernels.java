@@ -0,0 +1,45 @@
+package com.docloader.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The inner loops of all vector distance computations. {@link VectorMath} picks one
+ * implementation at startup and every caller goes through it.
+ */
+interface DistanceKernels {
+
+    /**
+     * @return the dot product of the ranges of the same length starting at the offsets
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * @return the squared Euclidean distance of the ranges starting at the offsets
+     */
+    float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * @return the cosine similarity of the vectors, or 0 if either is zero
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * @return the dot product of the query with the float32 values at the byte offset
+     */
+    float dotFloat32(float[] query, ByteBuffer buffer, int offset);
+
+    /**
+     * @return the dot product of the query with the half precision values at the byte offset
+     */
+    float dotFloat16(float[] query, ByteBuffer buffer, int offset);
+
+    /**
+     * @return the dot product of the first length query values with the signed bytes at the offset
+     */
+    float dotInt8(float[] query, byte[] codes, int offset, int length);
+
+    /**
+     * @return a short name of the implementation for logs and benchmarks
+     */
+    String name();
+}
@@ -0,0 +1,30 @@
+package com.docloader.vector;
+
+/**
+ * How the scores of a document's chunks combine into the score document searches rank it by
+ */
+public enum DocumentScoring {
+
+    // The score of the document's best chunk
+    MAX,
+    // The sum of the scores of the document's best chunks; favours documents that match in several places
+    SUM_TOP_N;
+
+    /**
+     * @param scores chunk scores of one document, best first
+     * @param count the number of leading scores to combine
+     */
+    public float aggregate(float[] scores, int count) {
+        if (count == 0) {
+            return 0f;
+        }
+        if (this == MAX) {
+            return scores[0];
+        }
+        float sum = 0f;
+        for (int i = 0; i < count; i++) {
+            sum += scores[i];
+        }
+        return sum;
+    }
+}
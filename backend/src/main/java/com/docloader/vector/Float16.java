@@ -0,0 +1,73 @@
+package com.docloader.vector;
+
+/**
+ * Conversion between float and IEEE 754 half precision bits. Decoding uses a table of
+ * all 65536 values, since it sits in the inner loop of distance computations.
+ */
+public final class Float16 {
+
+    private static final float[] DECODED = new float[1 << 16];
+
+    static {
+        for (int bits = 0; bits < DECODED.length; bits++) {
+            DECODED[bits] = decode(bits);
+        }
+    }
+
+    private Float16() {
+    }
+
+    public static float toFloat(short half) {
+        return DECODED[half & 0xffff];
+    }
+
+    /**
+     * @return the half precision bits nearest to the value; out-of-range values become infinity
+     */
+    public static short fromFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int magnitude = bits & 0x7fffffff;
+
+        if (magnitude >= 0x7f800000) {
+            // Infinity or NaN, keeping NaN payloads non-zero
+            return (short) (sign | 0x7c00 | (magnitude > 0x7f800000 ? 0x200 : 0));
+        }
+        // Round to nearest, ties to even, on the 13 mantissa bits that are dropped
+        int rounded = magnitude + 0xfff + ((magnitude >>> 13) & 1);
+        if (rounded >= 0x47800000) {
+            return (short) (sign | 0x7c00);
+        }
+        if (magnitude >= 0x38800000) {
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        }
+        if (magnitude < 0x33000000) {
+            return (short) sign;
+        }
+        // Subnormal half
+        int exponent = magnitude >>> 23;
+        int mantissa = (magnitude & 0x7fffff) | 0x800000;
+        int shift = 126 - exponent;
+        int half = mantissa >>> shift;
+        int remainder = mantissa & ((1 << shift) - 1);
+        int midpoint = 1 << (shift - 1);
+        if (remainder > midpoint || (remainder == midpoint && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    private static float decode(int bits) {
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
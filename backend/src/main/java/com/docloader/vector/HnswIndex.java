@@ -0,0 +1,524 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Hierarchical navigable small world graph over the unit vectors of a {@link VectorStorage},
+ * scored by cosine similarity. The graph only holds neighbour lists; vectors are read from
+ * the storage by ordinal. Inserts may run concurrently and in any ordinal order: the
+ * neighbour lists are copy-on-write arrays that searches read without locking, and writers
+ * serialize on one of a fixed set of lock stripes per node, never holding two at once.
+ */
+public class HnswIndex {
+
+    private static final int LOCK_STRIPES = 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final VectorStorage storage;
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final ReentrantLock[] linkLocks = new ReentrantLock[LOCK_STRIPES];
+    private final Object allocationLock = new Object();
+    private final Object entryLock = new Object();
+
+    private volatile Node[] nodes;
+    private volatile int size;
+    private volatile Entry entry;
+
+    /**
+     * @param m the number of links per node on the upper levels; level 0 allows twice as many
+     * @param efConstruction the candidate list size used when linking a new vector
+     * @param efSearch the default candidate list size of searches
+     */
+    public HnswIndex(VectorStorage storage, int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < m || efSearch <= 0) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: m=" + m
+                    + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.storage = storage;
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            linkLocks[i] = new ReentrantLock();
+        }
+        this.nodes = new Node[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return the number of vectors linked into the graph
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int ordinal) {
+        Node[] current = nodes;
+        return ordinal < current.length && current[ordinal] != null;
+    }
+
+    /**
+     * Link a stored vector into the graph
+     */
+    public void insert(int ordinal) {
+        VectorScorer scorer = storage.scorer(storage.vector(ordinal));
+        int level = randomLevel();
+        allocate(ordinal, new Node(level));
+
+        Entry start = entry;
+        if (start == null) {
+            synchronized (entryLock) {
+                if (entry == null) {
+                    entry = new Entry(ordinal, level);
+                    return;
+                }
+                start = entry;
+            }
+        }
+
+        Candidate nearest = greedySearch(scorer, start, level);
+        List<Candidate> entryPoints = List.of(nearest);
+        for (int lc = Math.min(level, start.level); lc >= 0; lc--) {
+            List<Candidate> found = searchLayer(scorer, entryPoints, efConstruction, lc, null);
+            int[] neighbours = selectNeighbours(found, m);
+            setLinks(ordinal, lc, neighbours);
+            for (int neighbour : neighbours) {
+                addLink(neighbour, ordinal, lc);
+            }
+            entryPoints = found;
+        }
+
+        if (level > start.level) {
+            synchronized (entryLock) {
+                if (level > entry.level) {
+                    entry = new Entry(ordinal, level);
+                }
+            }
+        }
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Find the approximate k nearest vectors to the query
+     * @param ef the candidate list size; larger values trade speed for recall
+     * @param accept restricts results to the ordinals it accepts, or null to accept all
+     * @return the hits ordered by descending similarity
+     */
+    public List<Hit> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (query.length != storage.dimension()) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + storage.dimension() + " but got " + query.length);
+        }
+        return search(storage.scorer(VectorMath.normalize(query)), k, ef, accept);
+    }
+
+    /**
+     * Search with a scorer of the query, which may approximate the similarity, e.g. from
+     * quantized codes. The hits carry the scorer's scores.
+     */
+    public List<Hit> search(VectorScorer scorer, int k, int ef, IntPredicate accept) {
+        Entry start = entry;
+        if (start == null || k <= 0) {
+            return List.of();
+        }
+        Candidate nearest = greedySearch(scorer, start, 0);
+        List<Candidate> found = searchLayer(scorer, List.of(nearest), Math.max(ef, k), 0, accept);
+
+        List<Hit> hits = new ArrayList<>(Math.min(k, found.size()));
+        for (int i = 0; i < found.size() && hits.size() < k; i++) {
+            Candidate candidate = found.get(i);
+            hits.add(new Hit(candidate.ordinal, candidate.score));
+        }
+        return hits;
+    }
+
+    /**
+     * Find the approximate k nearest groups of vectors, such as the chunks of a document.
+     * The candidate list holds ef groups ranked by their best vector, so a group with many
+     * similar vectors takes a single place instead of crowding out other groups.
+     * @param perGroup the best vectors kept per group
+     * @param groupOf the group of an ordinal
+     * @return the kept vectors of the k best groups, ordered by descending similarity
+     */
+    public List<Hit> searchGroups(VectorScorer scorer, int k, int perGroup, int ef, IntPredicate accept,
+                                  IntToLongFunction groupOf) {
+        Entry start = entry;
+        if (start == null || k <= 0) {
+            return List.of();
+        }
+        Candidate nearest = greedySearch(scorer, start, 0);
+        List<Group> groups = searchGroupsLayer(scorer, nearest, Math.max(ef, k), Math.max(1, perGroup), accept, groupOf);
+
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < groups.size() && i < k; i++) {
+            Group group = groups.get(i);
+            for (int j = 0; j < group.count; j++) {
+                hits.add(new Hit(group.best[j].ordinal, group.best[j].score));
+            }
+        }
+        hits.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return hits;
+    }
+
+    // Descend from the entry point to the given level, moving to the closest neighbour each step
+    private Candidate greedySearch(VectorScorer scorer, Entry start, int targetLevel) {
+        int current = start.ordinal;
+        float currentScore = scorer.score(current);
+        for (int lc = start.level; lc > targetLevel; lc--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int neighbour : links(current, lc)) {
+                    float score = scorer.score(neighbour);
+                    if (score > currentScore) {
+                        current = neighbour;
+                        currentScore = score;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return new Candidate(current, currentScore);
+    }
+
+    /**
+     * Best-first search of one level. Ordinals rejected by the filter are still traversed.
+     * @return up to ef accepted candidates ordered by descending similarity
+     */
+    private List<Candidate> searchLayer(VectorScorer scorer, List<Candidate> entryPoints, int ef, int level, IntPredicate filter) {
+        BitSet visited = new BitSet();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.BEST_FIRST.reversed());
+
+        for (Candidate entryPoint : entryPoints) {
+            visited.set(entryPoint.ordinal);
+            candidates.add(entryPoint);
+            if (filter == null || filter.test(entryPoint.ordinal)) {
+                results.add(entryPoint);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score < results.peek().score) {
+                break;
+            }
+            for (int neighbour : links(candidate.ordinal, level)) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = scorer.score(neighbour);
+                if (results.size() < ef || score > results.peek().score) {
+                    Candidate next = new Candidate(neighbour, score);
+                    candidates.add(next);
+                    if (filter == null || filter.test(neighbour)) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Best-first search of level 0 like {@link #searchLayer}, bounded by the worst of ef
+     * groups instead of the worst of ef vectors
+     * @return up to ef groups ordered by descending best similarity
+     */
+    private List<Group> searchGroupsLayer(VectorScorer scorer, Candidate entryPoint, int ef, int perGroup,
+                                          IntPredicate filter, IntToLongFunction groupOf) {
+        BitSet visited = new BitSet();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.BEST_FIRST);
+        GroupedResults results = new GroupedResults(ef, perGroup);
+
+        visited.set(entryPoint.ordinal);
+        candidates.add(entryPoint);
+        if (filter == null || filter.test(entryPoint.ordinal)) {
+            results.add(entryPoint, groupOf.applyAsLong(entryPoint.ordinal));
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (candidate.score < results.bound()) {
+                break;
+            }
+            for (int neighbour : links(candidate.ordinal, 0)) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = scorer.score(neighbour);
+                if (score <= results.bound()) {
+                    continue;
+                }
+                Candidate next = new Candidate(neighbour, score);
+                candidates.add(next);
+                if (filter == null || filter.test(neighbour)) {
+                    results.add(next, groupOf.applyAsLong(neighbour));
+                }
+            }
+        }
+        return results.sorted();
+    }
+
+    /**
+     * Neighbour selection heuristic: a candidate is kept only if it is closer to the base
+     * vector than to every neighbour kept so far, which keeps links spread out across clusters.
+     * @param candidates candidates ordered by descending similarity to the base vector
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        for (Candidate candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            float[] vector = storage.vector(candidate.ordinal);
+            boolean keep = true;
+            for (int i = 0; i < count && keep; i++) {
+                keep = storage.dot(vector, selected[i]) <= candidate.score;
+            }
+            if (keep) {
+                selected[count++] = candidate.ordinal;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void setLinks(int ordinal, int level, int[] links) {
+        ReentrantLock lock = lockFor(ordinal);
+        lock.lock();
+        try {
+            node(ordinal).links.set(level, links);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Add a back link, pruning the neighbour list with the selection heuristic when it is full
+    private void addLink(int ordinal, int target, int level) {
+        int maxLinks = level == 0 ? maxLinksLevel0 : m;
+        ReentrantLock lock = lockFor(ordinal);
+        lock.lock();
+        try {
+            Node node = node(ordinal);
+            int[] current = node.links.get(level);
+            for (int link : current) {
+                if (link == target) {
+                    return;
+                }
+            }
+            if (current.length < maxLinks) {
+                int[] extended = Arrays.copyOf(current, current.length + 1);
+                extended[current.length] = target;
+                node.links.set(level, extended);
+                return;
+            }
+
+            float[] vector = storage.vector(ordinal);
+            List<Candidate> candidates = new ArrayList<>(current.length + 1);
+            for (int link : current) {
+                candidates.add(new Candidate(link, storage.dot(vector, link)));
+            }
+            candidates.add(new Candidate(target, storage.dot(vector, target)));
+            candidates.sort(Candidate.BEST_FIRST);
+            node.links.set(level, selectNeighbours(candidates, maxLinks));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void allocate(int ordinal, Node node) {
+        synchronized (allocationLock) {
+            Node[] current = nodes;
+            if (ordinal >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, ordinal + 1));
+            }
+            if (current[ordinal] != null) {
+                throw new IllegalArgumentException("Ordinal " + ordinal + " is already in the graph");
+            }
+            current[ordinal] = node;
+            nodes = current;
+            size++;
+        }
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(uniform) * levelMultiplier);
+    }
+
+    private int[] links(int ordinal, int level) {
+        return node(ordinal).links.get(level);
+    }
+
+    private Node node(int ordinal) {
+        return nodes[ordinal];
+    }
+
+    private ReentrantLock lockFor(int ordinal) {
+        return linkLocks[ordinal & (LOCK_STRIPES - 1)];
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final int ordinal;
+        private final float score;
+    }
+
+    private static final class Node {
+        // Neighbour ordinals per level; arrays are replaced, never modified
+        private final AtomicReferenceArray<int[]> links;
+
+        private Node(int level) {
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                links.set(i, new int[0]);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final int ordinal;
+        private final int level;
+
+        private Entry(int ordinal, int level) {
+            this.ordinal = ordinal;
+            this.level = level;
+        }
+    }
+
+    /**
+     * The best ef groups found so far. The heap orders groups by the best score they had
+     * when last placed in it; since that only rises, a stale group is just re-placed when it
+     * reaches the top, instead of being moved on every improvement.
+     */
+    private static final class GroupedResults {
+        private final int ef;
+        private final int perGroup;
+        private final Map<Long, Group> groups = new HashMap<>();
+        private final PriorityQueue<Group> worstFirst = new PriorityQueue<>((a, b) -> Float.compare(a.placedScore, b.placedScore));
+
+        private GroupedResults(int ef, int perGroup) {
+            this.ef = ef;
+            this.perGroup = perGroup;
+        }
+
+        /**
+         * @return the best score of the worst group once there are ef groups, below which
+         * a vector can neither join the results nor lead to better ones
+         */
+        private float bound() {
+            return groups.size() < ef ? Float.NEGATIVE_INFINITY : worst().placedScore;
+        }
+
+        private void add(Candidate candidate, long key) {
+            Group group = groups.get(key);
+            if (group != null) {
+                group.add(candidate);
+                return;
+            }
+            group = new Group(key, perGroup);
+            group.add(candidate);
+            group.placedScore = candidate.score;
+            groups.put(key, group);
+            worstFirst.add(group);
+            if (groups.size() > ef) {
+                groups.remove(worst().key);
+                worstFirst.poll();
+            }
+        }
+
+        private Group worst() {
+            Group worst = worstFirst.peek();
+            while (worst.placedScore != worst.bestScore()) {
+                worstFirst.poll();
+                worst.placedScore = worst.bestScore();
+                worstFirst.add(worst);
+                worst = worstFirst.peek();
+            }
+            return worst;
+        }
+
+        private List<Group> sorted() {
+            List<Group> sorted = new ArrayList<>(groups.values());
+            sorted.sort((a, b) -> Float.compare(b.bestScore(), a.bestScore()));
+            return sorted;
+        }
+    }
+
+    private static final class Group {
+        private final long key;
+        // The best members so far, best first
+        private final Candidate[] best;
+        private int count;
+        // The best score when the group was last placed in the heap of its results
+        private float placedScore;
+
+        private Group(long key, int size) {
+            this.key = key;
+            this.best = new Candidate[size];
+        }
+
+        private float bestScore() {
+            return best[0].score;
+        }
+
+        private void add(Candidate candidate) {
+            if (count == best.length && candidate.score <= best[count - 1].score) {
+                return;
+            }
+            int i = count == best.length ? count - 1 : count++;
+            while (i > 0 && best[i - 1].score < candidate.score) {
+                best[i] = best[i - 1];
+                i--;
+            }
+            best[i] = candidate;
+        }
+    }
+
+    private static final class Candidate {
+        private static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.score, a.score);
+
+        private final int ordinal;
+        private final float score;
+
+        private Candidate(int ordinal, float score) {
+            this.ordinal = ordinal;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.docloader.vector;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The searchable ordinals of a vector index as a bitmap. An ordinal's bit is set once its
+ * version is published and cleared when the version is replaced or removed; a cleared bit
+ * below the store size is a tombstone. Searches test the bit of every node they visit, so
+ * a removal takes effect on the next node tested, without a lookup of the document.
+ * <p>
+ * Bits live in pages of 65536 that are added as the store grows. Setting and clearing are
+ * atomic per bit and may run concurrently with each other and with readers.
+ */
+public class LiveOrdinals {
+
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / Long.SIZE;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+    private final AtomicInteger cardinality = new AtomicInteger();
+
+    public boolean contains(int ordinal) {
+        AtomicLongArray[] current = pages;
+        int page = ordinal >>> PAGE_BITS;
+        if (page >= current.length) {
+            return false;
+        }
+        return (current[page].get(word(ordinal)) & mask(ordinal)) != 0;
+    }
+
+    public void set(int[] ordinals) {
+        for (int ordinal : ordinals) {
+            long mask = mask(ordinal);
+            if ((page(ordinal).getAndAccumulate(word(ordinal), mask, (word, bit) -> word | bit) & mask) == 0) {
+                cardinality.incrementAndGet();
+            }
+        }
+    }
+
+    public void clear(int[] ordinals) {
+        for (int ordinal : ordinals) {
+            AtomicLongArray[] current = pages;
+            int page = ordinal >>> PAGE_BITS;
+            if (page >= current.length) {
+                continue;
+            }
+            long mask = mask(ordinal);
+            if ((current[page].getAndAccumulate(word(ordinal), mask, (word, bit) -> word & ~bit) & mask) != 0) {
+                cardinality.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the number of live ordinals
+     */
+    public int cardinality() {
+        return cardinality.get();
+    }
+
+    private AtomicLongArray page(int ordinal) {
+        int page = ordinal >>> PAGE_BITS;
+        AtomicLongArray[] current = pages;
+        if (page < current.length) {
+            return current[page];
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length) {
+                AtomicLongArray[] grown = Arrays.copyOf(current, page + 1);
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new AtomicLongArray(WORDS_PER_PAGE);
+                }
+                pages = grown;
+                current = grown;
+            }
+            return current[page];
+        }
+    }
+
+    private static int word(int ordinal) {
+        return (ordinal & ((1 << PAGE_BITS) - 1)) >>> 6;
+    }
+
+    private static long mask(int ordinal) {
+        return 1L << ordinal;
+    }
+}
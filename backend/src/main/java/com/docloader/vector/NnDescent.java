@@ -0,0 +1,384 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Approximate k-nearest-neighbour graph of a set of unit vectors by NN-Descent (Dong,
+ * Charikar and Li, 2011), scored by cosine similarity. Starting from random neighbours,
+ * each iteration compares the neighbours of every node with each other, on the premise
+ * that a neighbour of a neighbour is likely a neighbour, and keeps the best k seen per
+ * node. Only pairs involving a neighbour that is new since the previous iteration are
+ * compared, and at most a sample of them per node, so an iteration costs about
+ * n * (sampleRate * k)^2 comparisons rather than the n^2 / 2 of an exact graph. It stops
+ * once an iteration changes fewer than delta * n * k neighbours, after the maximum number
+ * of iterations, or at the deadline; the graph is usable at any of these points.
+ * <p>
+ * Nodes are processed in parallel on a fork-join pool. Neighbour lists live in flat
+ * arrays, k entries per node, kept as min-heaps on the score; updates lock one of a
+ * fixed set of stripes per node.
+ */
+public class NnDescent {
+
+    private static final int LOCK_STRIPES = 1024;
+    // Nodes per fork-join task
+    private static final int GRAIN = 256;
+
+    private final int k;
+    private final int maxIterations;
+    private final int sampleSize;
+    private final double delta;
+    private final long seed;
+
+    /**
+     * @param k the neighbours kept per node
+     * @param sampleRate the share of a node's new neighbours, and of the nodes that have it as
+     * a new neighbour, joined per iteration; 0.5 to 1
+     * @param delta the share of n * k neighbour changes under which iterations stop
+     */
+    public NnDescent(int k, int maxIterations, double sampleRate, double delta, long seed) {
+        if (k < 1 || maxIterations < 1 || sampleRate <= 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Invalid NN-Descent parameters: k=" + k + ", maxIterations="
+                    + maxIterations + ", sampleRate=" + sampleRate);
+        }
+        this.k = k;
+        this.maxIterations = maxIterations;
+        this.sampleSize = Math.max(1, (int) Math.round(sampleRate * k));
+        this.delta = delta;
+        this.seed = seed;
+    }
+
+    /**
+     * @param vectors unit vectors, indexed by node
+     * @param deadline System.nanoTime() after which no further work is started
+     */
+    public Graph build(float[][] vectors, long deadline, ForkJoinPool pool) {
+        int n = vectors.length;
+        int neighbours = Math.min(k, n - 1);
+        if (neighbours < 1) {
+            return new Graph(new int[n][0], new float[n][0], 0, 0);
+        }
+        Lists lists = new Lists(n, neighbours);
+        LongAdder comparisons = new LongAdder();
+
+        // Random initial neighbours
+        parallel(pool, n, v -> {
+            SplittableRandom random = new SplittableRandom(seed ^ (v * 0x9E3779B97F4A7C15L));
+            while (lists.size(v) < neighbours) {
+                int u = random.nextInt(n);
+                if (u != v) {
+                    lists.push(v, u, VectorMath.dot(vectors[v], vectors[u]));
+                    comparisons.increment();
+                }
+            }
+        });
+
+        int iterations = 0;
+        while (iterations < maxIterations && System.nanoTime() < deadline) {
+            iterations++;
+            int iteration = iterations;
+            // Each node's old neighbours and a sample of its new ones, which count as old from now on
+            int[][] newNeighbours = new int[n][];
+            int[][] oldNeighbours = new int[n][];
+            parallel(pool, n, v -> {
+                SplittableRandom random = new SplittableRandom(seed ^ iteration ^ (v * 0x9E3779B97F4A7C15L));
+                lists.sample(v, sampleSize, random, newNeighbours, oldNeighbours);
+            });
+            // The same for the nodes that have each node as a neighbour
+            int[][] reverseNew = reverse(newNeighbours, n, iteration);
+            int[][] reverseOld = reverse(oldNeighbours, n, iteration + maxIterations);
+
+            LongAdder updates = new LongAdder();
+            parallel(pool, n, v -> {
+                if (System.nanoTime() >= deadline) {
+                    return;
+                }
+                int[] fresh = concat(newNeighbours[v], reverseNew[v]);
+                int[] old = concat(oldNeighbours[v], reverseOld[v]);
+                int changed = 0;
+                int compared = 0;
+                for (int i = 0; i < fresh.length; i++) {
+                    int a = fresh[i];
+                    for (int j = i + 1; j < fresh.length; j++) {
+                        changed += join(lists, vectors, a, fresh[j]);
+                        compared++;
+                    }
+                    for (int b : old) {
+                        changed += join(lists, vectors, a, b);
+                        compared++;
+                    }
+                }
+                updates.add(changed);
+                comparisons.add(compared);
+            });
+            if (updates.sum() < delta * n * neighbours) {
+                break;
+            }
+        }
+        return lists.toGraph(iterations, comparisons.sum());
+    }
+
+    /**
+     * Score a pair and offer each node to the other's neighbours
+     * @return the number of neighbour lists that changed
+     */
+    private static int join(Lists lists, float[][] vectors, int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        float score = VectorMath.dot(vectors[a], vectors[b]);
+        return (lists.push(a, b, score) ? 1 : 0) + (lists.push(b, a, score) ? 1 : 0);
+    }
+
+    /**
+     * @return for each node, up to sampleSize of the nodes listing it
+     */
+    private int[][] reverse(int[][] lists, int n, int salt) {
+        int[] counts = new int[n];
+        for (int[] list : lists) {
+            for (int u : list) {
+                counts[u]++;
+            }
+        }
+        int[][] reversed = new int[n][];
+        for (int u = 0; u < n; u++) {
+            reversed[u] = new int[counts[u]];
+            counts[u] = 0;
+        }
+        for (int v = 0; v < n; v++) {
+            for (int u : lists[v]) {
+                reversed[u][counts[u]++] = v;
+            }
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ salt);
+        for (int u = 0; u < n; u++) {
+            int[] list = reversed[u];
+            if (list.length > sampleSize) {
+                // Partial Fisher-Yates shuffle keeps a uniform sample at the front
+                for (int i = 0; i < sampleSize; i++) {
+                    int j = i + random.nextInt(list.length - i);
+                    int swap = list[i];
+                    list[i] = list[j];
+                    list[j] = swap;
+                }
+                reversed[u] = Arrays.copyOf(list, sampleSize);
+            }
+        }
+        return reversed;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static void parallel(ForkJoinPool pool, int n, IntConsumer action) {
+        pool.invoke(new Range(0, n, action));
+    }
+
+    /**
+     * The neighbours of each node, best first
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Graph {
+        private final int[][] neighbours;
+        private final float[][] scores;
+        private final int iterations;
+        // Pairs scored, for comparison with the n * (n - 1) / 2 of an exact graph
+        private final long comparisons;
+    }
+
+    private static final class Range extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        Range(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Range(from, middle, action), new Range(middle, to, action));
+        }
+    }
+
+    /**
+     * Bounded neighbour lists of all nodes in flat arrays. Each list is a min-heap on the
+     * score, so the worst neighbour is the first to be replaced.
+     */
+    private static final class Lists {
+        private final int k;
+        private final int[] ids;
+        private final float[] scores;
+        // Whether a neighbour arrived since it was last sampled for a join
+        private final boolean[] fresh;
+        private final int[] sizes;
+        private final Object[] locks = new Object[LOCK_STRIPES];
+
+        Lists(int n, int k) {
+            this.k = k;
+            this.ids = new int[n * k];
+            this.scores = new float[n * k];
+            this.fresh = new boolean[n * k];
+            this.sizes = new int[n];
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                locks[i] = new Object();
+            }
+        }
+
+        int size(int v) {
+            synchronized (locks[v % LOCK_STRIPES]) {
+                return sizes[v];
+            }
+        }
+
+        /**
+         * @return whether the node became a neighbour of v
+         */
+        boolean push(int v, int u, float score) {
+            int base = v * k;
+            synchronized (locks[v % LOCK_STRIPES]) {
+                int size = sizes[v];
+                if (size == k && score <= scores[base]) {
+                    return false;
+                }
+                for (int i = 0; i < size; i++) {
+                    if (ids[base + i] == u) {
+                        return false;
+                    }
+                }
+                if (size < k) {
+                    // Sift up from the end
+                    int i = size;
+                    while (i > 0) {
+                        int parent = (i - 1) >>> 1;
+                        if (scores[base + parent] <= score) {
+                            break;
+                        }
+                        move(base, parent, i);
+                        i = parent;
+                    }
+                    set(base, i, u, score);
+                    sizes[v] = size + 1;
+                } else {
+                    // Replace the worst neighbour at the root and sift down
+                    int i = 0;
+                    while (true) {
+                        int child = 2 * i + 1;
+                        if (child >= k) {
+                            break;
+                        }
+                        if (child + 1 < k && scores[base + child + 1] < scores[base + child]) {
+                            child++;
+                        }
+                        if (score <= scores[base + child]) {
+                            break;
+                        }
+                        move(base, child, i);
+                        i = child;
+                    }
+                    set(base, i, u, score);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Put the old neighbours of v and up to count of its new ones into the arrays,
+         * and mark the sampled new ones old
+         */
+        void sample(int v, int count, SplittableRandom random, int[][] newNeighbours, int[][] oldNeighbours) {
+            int base = v * k;
+            synchronized (locks[v % LOCK_STRIPES]) {
+                int size = sizes[v];
+                int freshCount = 0;
+                for (int i = 0; i < size; i++) {
+                    if (fresh[base + i]) {
+                        freshCount++;
+                    }
+                }
+                int[] old = new int[size - freshCount];
+                int[] candidates = new int[freshCount];
+                int o = 0;
+                int c = 0;
+                for (int i = 0; i < size; i++) {
+                    if (fresh[base + i]) {
+                        candidates[c++] = i;
+                    } else {
+                        old[o++] = ids[base + i];
+                    }
+                }
+                int taken = Math.min(count, freshCount);
+                int[] sampled = new int[taken];
+                for (int i = 0; i < taken; i++) {
+                    int j = i + random.nextInt(freshCount - i);
+                    int slot = candidates[j];
+                    candidates[j] = candidates[i];
+                    fresh[base + slot] = false;
+                    sampled[i] = ids[base + slot];
+                }
+                newNeighbours[v] = sampled;
+                oldNeighbours[v] = old;
+            }
+        }
+
+        Graph toGraph(int iterations, long comparisons) {
+            int n = sizes.length;
+            int[][] neighbours = new int[n][];
+            float[][] best = new float[n][];
+            for (int v = 0; v < n; v++) {
+                int base = v * k;
+                int size = sizes[v];
+                int[] ids = Arrays.copyOfRange(this.ids, base, base + size);
+                float[] sorted = Arrays.copyOfRange(scores, base, base + size);
+                // Insertion sort, best first; lists are short
+                for (int i = 1; i < size; i++) {
+                    int id = ids[i];
+                    float score = sorted[i];
+                    int j = i - 1;
+                    while (j >= 0 && sorted[j] < score) {
+                        ids[j + 1] = ids[j];
+                        sorted[j + 1] = sorted[j];
+                        j--;
+                    }
+                    ids[j + 1] = id;
+                    sorted[j + 1] = score;
+                }
+                neighbours[v] = ids;
+                best[v] = sorted;
+            }
+            return new Graph(neighbours, best, iterations, comparisons);
+        }
+
+        private void move(int base, int from, int to) {
+            ids[base + to] = ids[base + from];
+            scores[base + to] = scores[base + from];
+            fresh[base + to] = fresh[base + from];
+        }
+
+        private void set(int base, int i, int u, float score) {
+            ids[base + i] = u;
+            scores[base + i] = score;
+            fresh[base + i] = true;
+        }
+    }
+}
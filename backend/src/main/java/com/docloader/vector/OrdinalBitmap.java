@@ -0,0 +1,248 @@
+package com.docloader.vector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of vector ordinals in the style of Roaring bitmaps: ordinals are grouped
+ * by their upper 16 bits into containers that hold the lower 16 bits either as a sorted
+ * array, while there are at most 4096 of them, or as a 65536-bit bitmap.
+ * <p>
+ * Ordinals are only ever added in increasing order, as the vector store assigns them, so
+ * additions always append. A single writer at a time may add; readers need no locking and
+ * see every ordinal whose addition happened before their read.
+ */
+public class OrdinalBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+
+    private volatile Container[] containers = new Container[4];
+    private volatile int containerCount;
+    private volatile int cardinality;
+    private int last = -1;
+
+    /**
+     * Add an ordinal greater than all ordinals added before
+     */
+    public synchronized void add(int ordinal) {
+        if (ordinal <= last) {
+            if (ordinal == last) {
+                return;
+            }
+            throw new IllegalArgumentException("Ordinal " + ordinal + " added after " + last);
+        }
+        last = ordinal;
+
+        char key = (char) (ordinal >>> 16);
+        char low = (char) ordinal;
+        int count = containerCount;
+        Container[] current = containers;
+        if (count > 0 && current[count - 1].key == key) {
+            Container container = current[count - 1];
+            if (container instanceof ArrayContainer array && array.size == ARRAY_LIMIT) {
+                // Published as a new array so readers never see a half-converted container
+                Container[] replaced = current.clone();
+                replaced[count - 1] = array.toBitmap();
+                containers = replaced;
+                container = replaced[count - 1];
+            }
+            container.add(low);
+        } else {
+            Container container = new ArrayContainer(key);
+            container.add(low);
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            current[count] = container;
+            containers = current;
+            containerCount = count + 1;
+        }
+        cardinality++;
+    }
+
+    public boolean contains(int ordinal) {
+        Container container = container((char) (ordinal >>> 16));
+        return container != null && container.contains((char) ordinal);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Pass each ordinal to the consumer in increasing order
+     */
+    public void forEach(IntConsumer consumer) {
+        int count = containerCount;
+        Container[] current = containers;
+        for (int i = 0; i < count; i++) {
+            current[i].forEach(consumer);
+        }
+    }
+
+    /**
+     * @return the approximate heap size of the bitmap in bytes
+     */
+    public long sizeInBytes() {
+        int count = containerCount;
+        Container[] current = containers;
+        long size = 32L + 8L * current.length;
+        for (int i = 0; i < count; i++) {
+            size += current[i].sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * @return the ordinals contained in all bitmaps; the smallest one is iterated and the
+     * others probed
+     */
+    public static OrdinalBitmap and(List<OrdinalBitmap> bitmaps) {
+        OrdinalBitmap smallest = bitmaps.get(0);
+        for (OrdinalBitmap bitmap : bitmaps) {
+            if (bitmap.cardinality() < smallest.cardinality()) {
+                smallest = bitmap;
+            }
+        }
+        OrdinalBitmap result = new OrdinalBitmap();
+        OrdinalBitmap iterated = smallest;
+        iterated.forEach(ordinal -> {
+            for (OrdinalBitmap bitmap : bitmaps) {
+                if (bitmap != iterated && !bitmap.contains(ordinal)) {
+                    return;
+                }
+            }
+            result.add(ordinal);
+        });
+        return result;
+    }
+
+    private Container container(char key) {
+        int count = containerCount;
+        Container[] current = containers;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleKey = current[middle].key;
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return current[middle];
+            }
+        }
+        return null;
+    }
+
+    private abstract static class Container {
+        final char key;
+
+        Container(char key) {
+            this.key = key;
+        }
+
+        abstract void add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract void forEach(IntConsumer consumer);
+
+        abstract long sizeInBytes();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private volatile char[] values = new char[8];
+        // Written after the value, so readers that see a size see the values below it
+        private volatile int size;
+
+        ArrayContainer(char key) {
+            super(key);
+        }
+
+        @Override
+        void add(char low) {
+            char[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, Math.min(ARRAY_LIMIT, current.length * 2));
+                current[size] = low;
+                values = current;
+            } else {
+                current[size] = low;
+            }
+            size++;
+        }
+
+        @Override
+        boolean contains(char low) {
+            int count = size;
+            return Arrays.binarySearch(values, 0, count, low) >= 0;
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            int count = size;
+            char[] current = values;
+            int base = key << 16;
+            for (int i = 0; i < count; i++) {
+                consumer.accept(base | current[i]);
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32L + 2L * values.length;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(key);
+            char[] current = values;
+            for (int i = 0; i < size; i++) {
+                bitmap.add(current[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[1024];
+        private volatile int cardinality;
+
+        BitmapContainer(char key) {
+            super(key);
+        }
+
+        @Override
+        void add(char low) {
+            words[low >>> 6] |= 1L << low;
+            cardinality++;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            if (cardinality == 0) {
+                return;
+            }
+            int base = key << 16;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16L + 8L * words.length;
+        }
+    }
+}
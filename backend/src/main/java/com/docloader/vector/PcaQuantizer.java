@@ -0,0 +1,213 @@
+package com.docloader.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Dimension reduction by principal component analysis, followed by int8 quantization of
+ * each component. Vectors are centred on the mean of the training sample and projected
+ * onto the principal components that hold most of its variance, typically a fraction of
+ * the dimensions of the embedding model; the projections are then quantized like
+ * {@link ScalarQuantizer}. A score approximates the dot product as
+ * query . mean + (P query) . (P (vector - mean)), where P projects onto the components.
+ * <p>
+ * The components are found by subspace iteration over the sample, a few passes costing
+ * sample size * dimension * components each, instead of decomposing the covariance
+ * matrix, which has dimension squared entries.
+ */
+public class PcaQuantizer implements VectorQuantizer {
+
+    // Subspace iteration converges on a few thousand vectors; more only cost training time
+    private static final int MAX_SAMPLE_SIZE = 8192;
+
+    private final float[] mean;
+    // Orthonormal principal directions, one per row
+    private final float[][] components;
+    // Projection of the mean onto each component
+    private final float[] meanProjection;
+    private final ScalarQuantizer scalar;
+
+    private PcaQuantizer(float[] mean, float[][] components, ScalarQuantizer scalar) {
+        this.mean = mean;
+        this.components = components;
+        this.meanProjection = project(components, mean, null);
+        this.scalar = scalar;
+    }
+
+    /**
+     * Find the principal components of a sample of vectors and the ranges of the projections
+     * @param components the number of components kept, which is also the code size; at most the dimension
+     * @param iterations passes of subspace iteration over the sample
+     */
+    public static PcaQuantizer train(List<float[]> sample, int components, int iterations, long seed) {
+        int dimension = sample.get(0).length;
+        if (components < 1 || components > dimension) {
+            throw new IllegalArgumentException("Invalid number of components " + components + " for dimension " + dimension);
+        }
+        List<float[]> vectors = sample.size() > MAX_SAMPLE_SIZE ? sample.subList(0, MAX_SAMPLE_SIZE) : sample;
+        int size = vectors.size();
+        float[] mean = new float[dimension];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < dimension; i++) {
+                mean[i] += vector[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            mean[i] /= size;
+        }
+
+        Random random = new Random(seed);
+        float[][] basis = new float[components][dimension];
+        for (float[] row : basis) {
+            for (int i = 0; i < dimension; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+        orthonormalize(basis);
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            // Coordinates of the centred sample in the current basis...
+            float[][] current = basis;
+            float[] meanCoordinates = project(current, mean, null);
+            float[][] coordinates = new float[size][];
+            IntStream.range(0, size).parallel().forEach(j -> coordinates[j] = project(current, vectors.get(j), meanCoordinates));
+            // ...weight the centred sample into the next basis, which turns towards the directions of most variance
+            float[][] next = new float[components][];
+            IntStream.range(0, components).parallel().forEach(c -> {
+                float[] row = new float[dimension];
+                float weights = 0f;
+                for (int j = 0; j < size; j++) {
+                    float weight = coordinates[j][c];
+                    float[] vector = vectors.get(j);
+                    for (int i = 0; i < dimension; i++) {
+                        row[i] += weight * vector[i];
+                    }
+                    weights += weight;
+                }
+                for (int i = 0; i < dimension; i++) {
+                    row[i] -= weights * mean[i];
+                }
+                next[c] = row;
+            });
+            orthonormalize(next);
+            basis = next;
+        }
+
+        float[] meanCoordinates = project(basis, mean, null);
+        List<float[]> projected = new ArrayList<>(size);
+        for (float[] vector : vectors) {
+            projected.add(project(basis, vector, meanCoordinates));
+        }
+        return new PcaQuantizer(mean, basis, ScalarQuantizer.train(projected));
+    }
+
+    public static PcaQuantizer read(DataInput in) throws IOException {
+        int dimension = in.readInt();
+        int count = in.readInt();
+        float[] mean = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            mean[i] = in.readFloat();
+        }
+        float[][] components = new float[count][dimension];
+        for (float[] component : components) {
+            for (int i = 0; i < dimension; i++) {
+                component[i] = in.readFloat();
+            }
+        }
+        return new PcaQuantizer(mean, components, ScalarQuantizer.read(in));
+    }
+
+    @Override
+    public Quantization getQuantization() {
+        return Quantization.PCA;
+    }
+
+    @Override
+    public int getDimension() {
+        return mean.length;
+    }
+
+    @Override
+    public int codeSize() {
+        return components.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        scalar.encode(project(components, vector, meanProjection), codes, offset);
+    }
+
+    /**
+     * The projection of the query scored against the quantized projections, plus the
+     * query's dot product with the mean added to the constant term
+     */
+    @Override
+    public float[] prepare(float[] unitQuery) {
+        float[] prepared = scalar.prepare(project(components, unitQuery, null));
+        prepared[components.length] += VectorMath.dot(unitQuery, mean);
+        return prepared;
+    }
+
+    @Override
+    public float score(float[] prepared, byte[] codes, int offset) {
+        return scalar.score(prepared, codes, offset);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(mean.length);
+        out.writeInt(components.length);
+        for (float value : mean) {
+            out.writeFloat(value);
+        }
+        for (float[] component : components) {
+            for (float value : component) {
+                out.writeFloat(value);
+            }
+        }
+        scalar.write(out);
+    }
+
+    /**
+     * @param offsets subtracted from the coordinates, such as the projection of the mean, or null
+     * @return the coordinates of the vector along each component
+     */
+    private static float[] project(float[][] components, float[] vector, float[] offsets) {
+        float[] projection = new float[components.length];
+        for (int c = 0; c < components.length; c++) {
+            projection[c] = VectorMath.dot(components[c], vector) - (offsets != null ? offsets[c] : 0f);
+        }
+        return projection;
+    }
+
+    /**
+     * Modified Gram-Schmidt over the rows. A row that is dependent on the previous ones
+     * ends up zero and contributes nothing to projections.
+     */
+    private static void orthonormalize(float[][] rows) {
+        for (int r = 0; r < rows.length; r++) {
+            float[] row = rows[r];
+            for (int p = 0; p < r; p++) {
+                float[] previous = rows[p];
+                float projection = VectorMath.dot(row, previous);
+                for (int i = 0; i < row.length; i++) {
+                    row[i] -= projection * previous[i];
+                }
+            }
+            float norm = VectorMath.norm(row);
+            if (norm > 1e-6f) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] /= norm;
+                }
+            } else {
+                Arrays.fill(row, 0f);
+            }
+        }
+    }
+}
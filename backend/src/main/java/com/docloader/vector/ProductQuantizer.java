@@ -0,0 +1,183 @@
+package com.docloader.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization: vectors are split into contiguous subspaces and each part is
+ * replaced by the index of its nearest centroid in that subspace's codebook of 256
+ * centroids, trained with k-means. Queries are scored with one lookup table per subspace
+ * holding the dot products of the query part with every centroid.
+ */
+public class ProductQuantizer implements VectorQuantizer {
+
+    private static final int CENTROIDS = 256;
+
+    private final int dimension;
+    // Start of each subspace, followed by the dimension
+    private final int[] offsets;
+    // Per subspace, the centroids one after another
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int dimension, int[] offsets, float[][] codebooks) {
+        this.dimension = dimension;
+        this.offsets = offsets;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Train the codebooks on a sample of vectors, one subspace per task in parallel
+     * @param subspaces the number of subspaces, which is also the code size; at most the dimension
+     */
+    public static ProductQuantizer train(List<float[]> sample, int subspaces, int iterations, long seed) {
+        int dimension = sample.get(0).length;
+        if (subspaces < 1 || subspaces > dimension) {
+            throw new IllegalArgumentException("Invalid number of subspaces " + subspaces + " for dimension " + dimension);
+        }
+        int[] offsets = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            offsets[s] = (int) ((long) s * dimension / subspaces);
+        }
+        float[][] codebooks = new float[subspaces][];
+        IntStream.range(0, subspaces).parallel().forEach(s ->
+                codebooks[s] = kMeans(sample, offsets[s], offsets[s + 1] - offsets[s], iterations, new Random(seed + s)));
+        return new ProductQuantizer(dimension, offsets, codebooks);
+    }
+
+    public static ProductQuantizer read(DataInput in) throws IOException {
+        int dimension = in.readInt();
+        int subspaces = in.readInt();
+        int[] offsets = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            offsets[s] = in.readInt();
+        }
+        float[][] codebooks = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = new float[CENTROIDS * (offsets[s + 1] - offsets[s])];
+            for (int i = 0; i < codebooks[s].length; i++) {
+                codebooks[s][i] = in.readFloat();
+            }
+        }
+        return new ProductQuantizer(dimension, offsets, codebooks);
+    }
+
+    @Override
+    public Quantization getQuantization() {
+        return Quantization.PQ;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public int codeSize() {
+        return codebooks.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < codebooks.length; s++) {
+            codes[offset + s] = (byte) nearest(codebooks[s], vector, offsets[s], offsets[s + 1] - offsets[s]);
+        }
+    }
+
+    @Override
+    public float[] prepare(float[] unitQuery) {
+        float[] table = new float[codebooks.length * CENTROIDS];
+        for (int s = 0; s < codebooks.length; s++) {
+            int start = offsets[s];
+            int length = offsets[s + 1] - start;
+            float[] codebook = codebooks[s];
+            for (int c = 0; c < CENTROIDS; c++) {
+                table[s * CENTROIDS + c] = VectorMath.dot(unitQuery, start, codebook, c * length, length);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public float score(float[] prepared, byte[] codes, int offset) {
+        float sum = 0f;
+        for (int s = 0; s < codebooks.length; s++) {
+            sum += prepared[s * CENTROIDS + (codes[offset + s] & 0xff)];
+        }
+        return sum;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(dimension);
+        out.writeInt(codebooks.length);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (float[] codebook : codebooks) {
+            for (float value : codebook) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    // Lloyd's k-means over one subspace of the sample, seeded with random sample parts
+    private static float[] kMeans(List<float[]> sample, int start, int length, int iterations, Random random) {
+        float[] centroids = new float[CENTROIDS * length];
+        for (int c = 0; c < CENTROIDS; c++) {
+            System.arraycopy(sample.get(random.nextInt(sample.size())), start, centroids, c * length, length);
+        }
+
+        int[] assignments = new int[sample.size()];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            boolean changed = false;
+            for (int v = 0; v < assignments.length; v++) {
+                int nearest = nearest(centroids, sample.get(v), start, length);
+                changed |= nearest != assignments[v] || iteration == 0;
+                assignments[v] = nearest;
+            }
+            if (!changed) {
+                break;
+            }
+
+            float[] sums = new float[centroids.length];
+            int[] counts = new int[CENTROIDS];
+            for (int v = 0; v < assignments.length; v++) {
+                float[] vector = sample.get(v);
+                int base = assignments[v] * length;
+                for (int i = 0; i < length; i++) {
+                    sums[base + i] += vector[start + i];
+                }
+                counts[assignments[v]]++;
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (counts[c] == 0) {
+                    // Reseed an empty cluster so the codebook keeps all its entries useful
+                    System.arraycopy(sample.get(random.nextInt(sample.size())), start, centroids, c * length, length);
+                    continue;
+                }
+                for (int i = 0; i < length; i++) {
+                    centroids[c * length + i] = sums[c * length + i] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    // The centroid with the smallest squared distance to the vector part
+    private static int nearest(float[] centroids, float[] vector, int start, int length) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < CENTROIDS; c++) {
+            float distance = VectorMath.squaredDistance(vector, start, centroids, c * length, length);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
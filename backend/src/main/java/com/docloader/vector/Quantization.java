@@ -0,0 +1,16 @@
+package com.docloader.vector;
+
+/**
+ * Compressed encoding of the codes searches run on. Full-precision vectors are always
+ * kept for re-ranking. The ordinal is stored in segment metadata, so constants are only appended.
+ */
+public enum Quantization {
+
+    NONE,
+    // One byte per dimension, scaled to the per-dimension range of the tenant's vectors
+    INT8,
+    // One byte per subspace, indexing a codebook of 256 centroids trained per tenant
+    PQ,
+    // One byte per principal component of the tenant's vectors, for a fraction of the dimensions
+    PCA
+}
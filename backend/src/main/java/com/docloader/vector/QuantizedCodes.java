@@ -0,0 +1,151 @@
+package com.docloader.vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Quantized codes of the vectors of one tenant, kept on the heap in pages indexed by
+ * ordinal. Each ordinal is encoded with at most one quantizer; ordinals without a code
+ * are scored exactly against the vector storage.
+ */
+public class QuantizedCodes {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+    private static final int FILE_MAGIC = 0x51564c44; // "DLVQ"
+
+    private final Map<Quantization, VectorQuantizer> quantizers = new ConcurrentHashMap<>();
+    private final Map<Quantization, AtomicReferenceArray<byte[]>> codePages = new ConcurrentHashMap<>();
+    // Quantization ordinal per ordinal, 0 (NONE) when there is no code
+    private final AtomicReferenceArray<byte[]> kindPages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger encodedCount = new AtomicInteger();
+
+    public boolean isTrained(Quantization quantization) {
+        return quantizers.containsKey(quantization);
+    }
+
+    public void addQuantizer(VectorQuantizer quantizer) {
+        codePages.putIfAbsent(quantizer.getQuantization(), new AtomicReferenceArray<>(MAX_PAGES));
+        quantizers.put(quantizer.getQuantization(), quantizer);
+    }
+
+    /**
+     * @return true if any ordinal has a code
+     */
+    public boolean hasCodes() {
+        return encodedCount.get() > 0;
+    }
+
+    /**
+     * Encode a unit vector, if the quantization is trained
+     * @return true if the ordinal now has a code
+     */
+    public boolean encode(int ordinal, Quantization quantization, float[] vector) {
+        VectorQuantizer quantizer = quantizers.get(quantization);
+        if (quantizer == null) {
+            return false;
+        }
+        int codeSize = quantizer.codeSize();
+        byte[] page = page(codePages.get(quantization), ordinal, PAGE_SIZE * codeSize);
+        quantizer.encode(vector, page, (ordinal & (PAGE_SIZE - 1)) * codeSize);
+
+        // The kind is written last; a search that sees it reads the code
+        byte[] kinds = page(kindPages, ordinal, PAGE_SIZE);
+        if (kinds[ordinal & (PAGE_SIZE - 1)] == 0) {
+            encodedCount.incrementAndGet();
+        }
+        kinds[ordinal & (PAGE_SIZE - 1)] = (byte) quantization.ordinal();
+        return true;
+    }
+
+    /**
+     * @return a scorer of the unit query that uses codes where they exist and the storage elsewhere
+     */
+    public VectorScorer scorer(float[] unitQuery, VectorStorage storage) {
+        VectorQuantizer int8 = quantizers.get(Quantization.INT8);
+        VectorQuantizer pq = quantizers.get(Quantization.PQ);
+        VectorQuantizer pca = quantizers.get(Quantization.PCA);
+        float[] int8Query = int8 != null ? int8.prepare(unitQuery) : null;
+        float[] pqQuery = pq != null ? pq.prepare(unitQuery) : null;
+        float[] pcaQuery = pca != null ? pca.prepare(unitQuery) : null;
+        AtomicReferenceArray<byte[]> int8Pages = codePages.get(Quantization.INT8);
+        AtomicReferenceArray<byte[]> pqPages = codePages.get(Quantization.PQ);
+        AtomicReferenceArray<byte[]> pcaPages = codePages.get(Quantization.PCA);
+
+        return ordinal -> {
+            byte[] kinds = kindPages.get(ordinal >>> PAGE_BITS);
+            int kind = kinds == null ? 0 : kinds[ordinal & (PAGE_SIZE - 1)];
+            if (kind == Quantization.INT8.ordinal() && int8Query != null) {
+                return int8.score(int8Query, int8Pages.get(ordinal >>> PAGE_BITS),
+                        (ordinal & (PAGE_SIZE - 1)) * int8.codeSize());
+            }
+            if (kind == Quantization.PQ.ordinal() && pqQuery != null) {
+                return pq.score(pqQuery, pqPages.get(ordinal >>> PAGE_BITS),
+                        (ordinal & (PAGE_SIZE - 1)) * pq.codeSize());
+            }
+            if (kind == Quantization.PCA.ordinal() && pcaQuery != null) {
+                return pca.score(pcaQuery, pcaPages.get(ordinal >>> PAGE_BITS),
+                        (ordinal & (PAGE_SIZE - 1)) * pca.codeSize());
+            }
+            return storage.dot(unitQuery, ordinal);
+        };
+    }
+
+    /**
+     * Load the quantizers saved in a file, if it exists
+     */
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a quantizer file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Quantization quantization = Quantization.values()[in.readInt()];
+                addQuantizer(switch (quantization) {
+                    case INT8 -> ScalarQuantizer.read(in);
+                    case PCA -> PcaQuantizer.read(in);
+                    default -> ProductQuantizer.read(in);
+                });
+            }
+        }
+    }
+
+    /**
+     * Save the quantizers, replacing the file atomically
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(quantizers.size());
+            for (VectorQuantizer quantizer : quantizers.values()) {
+                out.writeInt(quantizer.getQuantization().ordinal());
+                quantizer.write(out);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] page(AtomicReferenceArray<byte[]> pages, int ordinal, int size) {
+        int number = ordinal >>> PAGE_BITS;
+        byte[] page = pages.get(number);
+        if (page == null) {
+            pages.compareAndSet(number, null, new byte[size]);
+            page = pages.get(number);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,97 @@
+package com.docloader.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain loops, used where the Vector API is not available and for the tails the SIMD
+ * kernels leave over
+ */
+final class ScalarDistanceKernels implements DistanceKernels {
+
+    static final ScalarDistanceKernels INSTANCE = new ScalarDistanceKernels();
+
+    private ScalarDistanceKernels() {
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            float difference = a[aOffset + i] - b[bOffset + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0f;
+        float aNorm = 0f;
+        float bNorm = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            aNorm += a[i] * a[i];
+            bNorm += b[i] * b[i];
+        }
+        return cosine(dot, aNorm, bNorm);
+    }
+
+    @Override
+    public float dotFloat32(float[] query, ByteBuffer buffer, int offset) {
+        return dotFloat32(query, 0, buffer, offset);
+    }
+
+    @Override
+    public float dotFloat16(float[] query, ByteBuffer buffer, int offset) {
+        return dotFloat16(query, 0, buffer, offset);
+    }
+
+    @Override
+    public float dotInt8(float[] query, byte[] codes, int offset, int length) {
+        return dotInt8(query, 0, codes, offset, length);
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    static float cosine(float dot, float aNorm, float bNorm) {
+        float norms = (float) Math.sqrt(aNorm) * (float) Math.sqrt(bNorm);
+        return norms == 0f ? 0f : dot / norms;
+    }
+
+    // The query from the given index on, against the stored values of the following dimensions
+    static float dotFloat32(float[] query, int from, ByteBuffer buffer, int offset) {
+        float sum = 0f;
+        for (int i = from; i < query.length; i++) {
+            sum += query[i] * buffer.getFloat(offset + i * 4);
+        }
+        return sum;
+    }
+
+    static float dotFloat16(float[] query, int from, ByteBuffer buffer, int offset) {
+        float sum = 0f;
+        for (int i = from; i < query.length; i++) {
+            sum += query[i] * Float16.toFloat(buffer.getShort(offset + i * 2));
+        }
+        return sum;
+    }
+
+    static float dotInt8(float[] query, int from, byte[] codes, int offset, int length) {
+        float sum = 0f;
+        for (int i = from; i < length; i++) {
+            sum += query[i] * codes[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,108 @@
+package com.docloader.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * int8 scalar quantization: each dimension is mapped linearly onto 256 levels between the
+ * minimum and maximum seen for that dimension in the training sample.
+ */
+public class ScalarQuantizer implements VectorQuantizer {
+
+    private static final int LEVELS = 255;
+
+    private final float[] min;
+    private final float[] step;
+
+    private ScalarQuantizer(float[] min, float[] step) {
+        this.min = min;
+        this.step = step;
+    }
+
+    public static ScalarQuantizer train(List<float[]> sample) {
+        int dimension = sample.get(0).length;
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (float[] vector : sample) {
+            for (int i = 0; i < dimension; i++) {
+                min[i] = Math.min(min[i], vector[i]);
+                max[i] = Math.max(max[i], vector[i]);
+            }
+        }
+        float[] step = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            step[i] = max[i] > min[i] ? (max[i] - min[i]) / LEVELS : Float.MIN_NORMAL;
+        }
+        return new ScalarQuantizer(min, step);
+    }
+
+    public static ScalarQuantizer read(DataInput in) throws IOException {
+        int dimension = in.readInt();
+        float[] min = new float[dimension];
+        float[] step = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            min[i] = in.readFloat();
+            step[i] = in.readFloat();
+        }
+        return new ScalarQuantizer(min, step);
+    }
+
+    @Override
+    public Quantization getQuantization() {
+        return Quantization.INT8;
+    }
+
+    @Override
+    public int getDimension() {
+        return min.length;
+    }
+
+    @Override
+    public int codeSize() {
+        return min.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int i = 0; i < min.length; i++) {
+            int level = Math.round((vector[i] - min[i]) / step[i]);
+            codes[offset + i] = (byte) (Math.max(0, Math.min(LEVELS, level)) - 128);
+        }
+    }
+
+    /**
+     * A component decodes to min + (code + 128) * step, so the dot product is a constant
+     * plus the sum of query * step * code. The constant is the last prepared element.
+     */
+    @Override
+    public float[] prepare(float[] unitQuery) {
+        int dimension = min.length;
+        float[] prepared = new float[dimension + 1];
+        float constant = 0f;
+        for (int i = 0; i < dimension; i++) {
+            prepared[i] = unitQuery[i] * step[i];
+            constant += unitQuery[i] * (min[i] + 128 * step[i]);
+        }
+        prepared[dimension] = constant;
+        return prepared;
+    }
+
+    @Override
+    public float score(float[] prepared, byte[] codes, int offset) {
+        return prepared[min.length] + VectorMath.dotInt8(prepared, codes, offset, min.length);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(min.length);
+        for (int i = 0; i < min.length; i++) {
+            out.writeFloat(min[i]);
+            out.writeFloat(step[i]);
+        }
+    }
+}
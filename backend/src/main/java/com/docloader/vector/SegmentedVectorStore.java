@@ -0,0 +1,251 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * The vectors of one tenant, stored in a directory of memory-mapped {@link VectorSegment}
+ * files that all have the same capacity, so an ordinal maps directly to a segment and a
+ * record within it. Vectors are normalized before they are stored. Opening a store maps
+ * its files and reads nothing else.
+ */
+public class SegmentedVectorStore implements VectorStorage, Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".vec";
+
+    private final Path directory;
+    private final VectorEncoding encoding;
+    private final long segmentSize;
+    private volatile VectorSegment[] segments;
+
+    private SegmentedVectorStore(Path directory, VectorEncoding encoding, long segmentSize, VectorSegment[] segments) {
+        this.directory = directory;
+        this.encoding = encoding;
+        this.segmentSize = segmentSize;
+        this.segments = segments;
+    }
+
+    /**
+     * Open the store in a directory, creating the directory if needed
+     * @param encoding the encoding of a new store; an existing store keeps the encoding it was created with
+     * @param segmentSize the maximum size of a segment file in bytes
+     */
+    public static SegmentedVectorStore open(Path directory, VectorEncoding encoding, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        List<VectorSegment> segments = new ArrayList<>(paths.size());
+        try {
+            for (Path path : paths) {
+                segments.add(VectorSegment.open(path));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (VectorSegment segment : segments) {
+                segment.close();
+            }
+            throw e;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (!segments.get(i).getPath().equals(segmentPath(directory, i))) {
+                throw new IOException("Vector segment " + i + " is missing in " + directory);
+            }
+        }
+        return new SegmentedVectorStore(directory, encoding, segmentSize, segments.toArray(new VectorSegment[0]));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the dimension of the stored vectors, or 0 while the store is empty
+     */
+    @Override
+    public int dimension() {
+        VectorSegment[] current = segments;
+        return current.length == 0 ? 0 : current[0].getDimension();
+    }
+
+    @Override
+    public int size() {
+        VectorSegment[] current = segments;
+        if (current.length == 0) {
+            return 0;
+        }
+        return (current.length - 1) * current[0].getCapacity() + current[current.length - 1].count();
+    }
+
+    /**
+     * Append the vectors of one version of a document and make them durable
+     * @param quantization the encoding of the search codes to build for the vectors
+     * @return the ordinals of the records, in the order of the input
+     */
+    public int[] append(UUID documentId, long version, Quantization quantization,
+                        List<VectorRecord> records) throws IOException {
+        return append(List.of(new VectorSet(documentId, version, quantization, records))).get(0);
+    }
+
+    /**
+     * Append the vectors of several document versions and make them durable together, with
+     * one flush per segment touched instead of one per version
+     * @return the ordinals of the records of each set, in the order of the input
+     */
+    public synchronized List<int[]> append(List<VectorSet> sets) throws IOException {
+        List<int[]> ordinals = new ArrayList<>(sets.size());
+        List<VectorSegment> touched = new ArrayList<>(2);
+        for (VectorSet set : sets) {
+            List<VectorRecord> records = set.getRecords();
+            int[] setOrdinals = new int[records.size()];
+            for (int i = 0; i < setOrdinals.length; i++) {
+                VectorRecord record = records.get(i);
+                VectorSegment segment = writableSegment(record.getVector().length);
+                if (touched.isEmpty() || touched.get(touched.size() - 1) != segment) {
+                    touched.add(segment);
+                }
+                int index = segment.append(set.getDocumentId(), set.getVersion(), record.getChunkIndex(), setOrdinals.length,
+                        set.getQuantization().ordinal(), VectorMath.normalize(record.getVector()));
+                setOrdinals[i] = (segments.length - 1) * segment.getCapacity() + index;
+            }
+            ordinals.add(setOrdinals);
+        }
+        for (VectorSegment segment : touched) {
+            segment.commit();
+        }
+        return ordinals;
+    }
+
+    public UUID documentId(int ordinal) {
+        return segment(ordinal).documentId(index(ordinal));
+    }
+
+    public long version(int ordinal) {
+        return segment(ordinal).version(index(ordinal));
+    }
+
+    public int chunkIndex(int ordinal) {
+        return segment(ordinal).chunkIndex(index(ordinal));
+    }
+
+    public int setSize(int ordinal) {
+        return segment(ordinal).setSize(index(ordinal));
+    }
+
+    public Quantization quantization(int ordinal) {
+        return Quantization.values()[segment(ordinal).quantization(index(ordinal))];
+    }
+
+    public boolean isDeleted(int ordinal) {
+        return segment(ordinal).isDeleted(index(ordinal));
+    }
+
+    /**
+     * Flag records as deleted and make the flags durable
+     */
+    public void markDeleted(int[] ordinals) {
+        if (ordinals.length == 0) {
+            return;
+        }
+        int[] sorted = ordinals.clone();
+        Arrays.sort(sorted);
+        int capacity = segments[0].getCapacity();
+        int first = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            segment(sorted[i]).markDeleted(index(sorted[i]));
+            // Flush once per segment, over the range of flagged records
+            if (i == sorted.length - 1 || sorted[i + 1] / capacity != sorted[i] / capacity) {
+                segment(sorted[i]).flushMetadata(index(sorted[first]), index(sorted[i]) + 1);
+                first = i + 1;
+            }
+        }
+    }
+
+    @Override
+    public float dot(float[] query, int ordinal) {
+        return segment(ordinal).dot(query, index(ordinal));
+    }
+
+    @Override
+    public float[] vector(int ordinal) {
+        return segment(ordinal).vector(index(ordinal));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (VectorSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private VectorSegment writableSegment(int dimension) throws IOException {
+        VectorSegment[] current = segments;
+        if (current.length > 0) {
+            VectorSegment last = current[current.length - 1];
+            if (dimension != last.getDimension()) {
+                throw new IllegalArgumentException("Expected a vector of dimension " + last.getDimension() + " but got " + dimension);
+            }
+            if (!last.isFull()) {
+                return last;
+            }
+        }
+
+        // New segments match the first one, so all segments have the same capacity
+        VectorEncoding segmentEncoding = current.length > 0 ? current[0].getEncoding() : encoding;
+        int capacity = current.length > 0 ? current[0].getCapacity()
+                : VectorSegment.capacityFor(dimension, segmentEncoding, segmentSize);
+        VectorSegment segment = VectorSegment.create(segmentPath(directory, current.length), dimension, segmentEncoding, capacity);
+        VectorSegment[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = segment;
+        segments = extended;
+        return segment;
+    }
+
+    private VectorSegment segment(int ordinal) {
+        VectorSegment[] current = segments;
+        return current[ordinal / current[0].getCapacity()];
+    }
+
+    private int index(int ordinal) {
+        return ordinal % segments[0].getCapacity();
+    }
+
+    private static Path segmentPath(Path directory, int number) {
+        return directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * The vectors of one version of a document
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class VectorSet {
+        private final UUID documentId;
+        private final long version;
+        private final Quantization quantization;
+        private final List<VectorRecord> records;
+    }
+}
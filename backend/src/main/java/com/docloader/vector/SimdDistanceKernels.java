@@ -0,0 +1,173 @@
+package com.docloader.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kernels on the incubating Vector API, using the widest float vectors the CPU supports.
+ * Loops run over whole vectors with fused multiply-adds into one accumulator per result;
+ * the remaining dimensions are handled by the scalar kernels.
+ * <p>
+ * This class only loads when the JVM runs with {@code --add-modules jdk.incubator.vector};
+ * {@link VectorMath} falls back to {@link ScalarDistanceKernels} otherwise. It is compiled
+ * on its own with the module added, and nothing else refers to it other than by name, so
+ * the rest of the code compiles without the incubator module.
+ */
+final class SimdDistanceKernels implements DistanceKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    // Narrower vectors with as many lanes as the float vectors, null if no such shape exists
+    private static final VectorSpecies<Short> SHORTS = species(short.class, FLOATS.length() * 16);
+    private static final VectorSpecies<Byte> BYTES = species(byte.class, FLOATS.length() * 8);
+
+    /**
+     * @throws UnsupportedOperationException below 4 float lanes, where the Vector API gains nothing over scalar code
+     */
+    SimdDistanceKernels() {
+        if (FLOATS.length() < 4) {
+            throw new UnsupportedOperationException("Only " + FLOATS.length() + " float lanes");
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector difference = FloatVector.fromArray(FLOATS, a, aOffset + i)
+                    .sub(FloatVector.fromArray(FLOATS, b, bOffset + i));
+            sum = difference.fma(difference, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float difference = a[aOffset + i] - b[bOffset + i];
+            result += difference * difference;
+        }
+        return result;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        FloatVector dot = FloatVector.zero(FLOATS);
+        FloatVector aNorm = FloatVector.zero(FLOATS);
+        FloatVector bNorm = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(a.length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            dot = va.fma(vb, dot);
+            aNorm = va.fma(va, aNorm);
+            bNorm = vb.fma(vb, bNorm);
+        }
+        float dotSum = dot.reduceLanes(VectorOperators.ADD);
+        float aSum = aNorm.reduceLanes(VectorOperators.ADD);
+        float bSum = bNorm.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            dotSum += a[i] * b[i];
+            aSum += a[i] * a[i];
+            bSum += b[i] * b[i];
+        }
+        return ScalarDistanceKernels.cosine(dotSum, aSum, bSum);
+    }
+
+    @Override
+    public float dotFloat32(float[] query, ByteBuffer buffer, int offset) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(query.length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector stored = FloatVector.fromByteBuffer(FLOATS, buffer, offset + i * 4, buffer.order());
+            sum = FloatVector.fromArray(FLOATS, query, i).fma(stored, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + ScalarDistanceKernels.dotFloat32(query, i, buffer, offset);
+    }
+
+    /**
+     * Half precision values are widened to ints and rebuilt as floats with integer
+     * operations: the exponent and mantissa bits shifted into float position and scaled by
+     * 2^112 give the value of normal and subnormal halves alike; infinities and NaNs get
+     * the float exponent of all ones instead. Lanes are selected with bitwise operations,
+     * as masked blends are slow on CPUs without mask registers.
+     */
+    @Override
+    public float dotFloat16(float[] query, ByteBuffer buffer, int offset) {
+        if (SHORTS == null) {
+            return ScalarDistanceKernels.dotFloat16(query, 0, buffer, offset);
+        }
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(query.length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            IntVector half = (IntVector) ShortVector.fromByteBuffer(SHORTS, buffer, offset + i * 2, buffer.order())
+                    .convertShape(VectorOperators.S2I, INTS, 0);
+            IntVector magnitude = half.and(0x7fff);
+            IntVector bits = magnitude.lanewise(VectorOperators.LSHL, 13);
+            IntVector scaled = ((FloatVector) bits.reinterpretAsFloats()).mul(0x1p112f).reinterpretAsInts();
+            // All ones in lanes holding an infinity or NaN, selecting without masks
+            IntVector special = IntVector.broadcast(INTS, 0x7bff).sub(magnitude).lanewise(VectorOperators.ASHR, 31);
+            IntVector sign = half.and(0x8000).lanewise(VectorOperators.LSHL, 16);
+            FloatVector stored = (FloatVector) scaled.and(special.not())
+                    .or(bits.or(0x7f800000).and(special))
+                    .or(sign)
+                    .reinterpretAsFloats();
+            sum = FloatVector.fromArray(FLOATS, query, i).fma(stored, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + ScalarDistanceKernels.dotFloat16(query, i, buffer, offset);
+    }
+
+    @Override
+    public float dotInt8(float[] query, byte[] codes, int offset, int length) {
+        if (BYTES == null) {
+            return ScalarDistanceKernels.dotInt8(query, 0, codes, offset, length);
+        }
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector code = (FloatVector) ByteVector.fromArray(BYTES, codes, offset + i)
+                    .convertShape(VectorOperators.B2F, FLOATS, 0);
+            sum = FloatVector.fromArray(FLOATS, query, i).fma(code, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + ScalarDistanceKernels.dotInt8(query, i, codes, offset, length);
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + FLOATS.vectorBitSize();
+    }
+
+    private static <E> VectorSpecies<E> species(Class<E> elementType, int bits) {
+        try {
+            return VectorSpecies.of(elementType, VectorShape.forBitSize(bits));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,785 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The chunk vectors of one tenant: a {@link SegmentedVectorStore} with an {@link HnswIndex}
+ * over it. Each replacement of a document's vectors is appended as a new version, which
+ * becomes visible with a single map update once all its vectors are stored and linked, so
+ * searches never see two versions mixed.
+ * <p>
+ * On open, the live version of each document is restored from the record metadata: the
+ * newest version that was written completely and not deleted. The graph is rebuilt
+ * separately by {@link #buildGraph()}; until it is done, searches scan the store exactly.
+ * <p>
+ * Documents can be stored with quantized search codes. Their quantizer is trained in the
+ * background from a sample of the tenant's vectors once there are enough of them; searches
+ * then score candidates on the codes and re-rank the best ones at full precision.
+ * <p>
+ * Searches can be restricted by job, uploader and content type. The allowed ordinals come
+ * from bitmaps built before the search; a selective filter is answered by scoring just
+ * those ordinals, a broad one by a graph search that only collects allowed ordinals.
+ * <p>
+ * Document searches rank the documents themselves: the graph search's candidate list
+ * holds documents rather than chunks, and each document is scored from its best chunks
+ * by a {@link DocumentScoring}.
+ * <p>
+ * Replaced and removed vectors stay in the segments and the graph as tombstones: their
+ * bit in the {@link LiveOrdinals} bitmap is cleared, so searches skip them at once while
+ * still routing through them. {@link VectorIndexCompaction} copies the live vectors into
+ * a new generation directory once tombstones make up too much of the index; the tenant
+ * directory's CURRENT file names the generation in use.
+ */
+@Slf4j
+public class TenantVectorIndex implements Closeable {
+
+    static final String QUANTIZER_FILE = "quantizers.bin";
+    private static final String METADATA_FILE = "metadata.log";
+    private static final String CURRENT_FILE = "CURRENT";
+    private static final String GENERATION_PREFIX = "gen-";
+
+    private final Path root;
+    private final SegmentedVectorStore store;
+    private final VectorIndexSettings settings;
+    private final HnswIndex graph;
+    private final QuantizedCodes codes = new QuantizedCodes();
+    private final VectorMetadataIndex metadata;
+    // Keeps the ordinals added to the metadata bitmaps in the order the store assigns them
+    private final Object appendLock = new Object();
+    private final Set<Quantization> training = ConcurrentHashMap.newKeySet();
+    private final AtomicLong versions = new AtomicLong();
+    private final Map<UUID, LiveVersion> liveVersions = new ConcurrentHashMap<>();
+    private final LiveOrdinals live = new LiveOrdinals();
+    // Documents changed while a compaction copies the index, replayed before it is swapped in
+    private volatile Set<UUID> tracked;
+    // Ordinals below this were restored on open and are linked by buildGraph
+    private final int restoredCount;
+    private volatile boolean graphReady;
+
+    private TenantVectorIndex(Path root, SegmentedVectorStore store, VectorMetadataIndex metadata, VectorIndexSettings settings) {
+        this.root = root;
+        this.store = store;
+        this.metadata = metadata;
+        this.settings = settings;
+        this.graph = new HnswIndex(store, settings.getM(), settings.getEfConstruction(), settings.getEfSearch());
+        this.restoredCount = store.size();
+        this.graphReady = restoredCount == 0;
+    }
+
+    /**
+     * Open the index of a tenant directory, removing what an interrupted or completed
+     * compaction left behind
+     */
+    public static TenantVectorIndex open(Path root, VectorIndexSettings settings) throws IOException {
+        Files.createDirectories(root);
+        Path directory = dataDirectory(root);
+        removeReplaced(root, directory);
+        return open(root, directory, settings);
+    }
+
+    static TenantVectorIndex open(Path root, Path directory, VectorIndexSettings settings) throws IOException {
+        SegmentedVectorStore store = SegmentedVectorStore.open(directory, settings.getEncoding(), settings.getSegmentSize());
+        VectorMetadataIndex metadata;
+        try {
+            metadata = VectorMetadataIndex.open(directory.resolve(METADATA_FILE));
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        TenantVectorIndex index = new TenantVectorIndex(root, store, metadata, settings);
+        index.codes.load(directory.resolve(QUANTIZER_FILE));
+        index.restore();
+        return index;
+    }
+
+    /**
+     * Link the restored vectors into the graph and rebuild their codes. Searches switch
+     * from exact scans to the graph when this returns.
+     */
+    public void buildGraph() {
+        Set<Quantization> untrained = EnumSet.noneOf(Quantization.class);
+        for (int ordinal = 0; ordinal < restoredCount; ordinal++) {
+            if (isLive(ordinal) && !graph.contains(ordinal)) {
+                Quantization quantization = store.quantization(ordinal);
+                if (quantization != Quantization.NONE && !codes.encode(ordinal, quantization, store.vector(ordinal))) {
+                    untrained.add(quantization);
+                }
+                graph.insert(ordinal);
+            }
+        }
+        graphReady = true;
+        untrained.forEach(this::scheduleTraining);
+    }
+
+    public boolean isGraphReady() {
+        return graphReady;
+    }
+
+    /**
+     * Replace the vectors of a document
+     * @param quantization the encoding of the search codes of the vectors
+     * @param attributes the attributes searches can filter the vectors by, or null
+     */
+    public void replace(UUID documentId, List<VectorRecord> records, Quantization quantization,
+                        VectorMetadata attributes) throws IOException {
+        replaceAll(List.of(new Replacement(documentId, records, quantization, attributes)));
+    }
+
+    /**
+     * Replace the vectors of several documents, syncing the metadata log and each segment
+     * once for all of them. Documents without records are removed.
+     */
+    public void replaceAll(List<Replacement> replacements) throws IOException {
+        List<Replacement> stored = new ArrayList<>(replacements.size());
+        for (Replacement replacement : replacements) {
+            if (replacement.getRecords().isEmpty()) {
+                remove(replacement.getDocumentId());
+            } else {
+                stored.add(replacement);
+            }
+        }
+        if (stored.isEmpty()) {
+            return;
+        }
+
+        long[] setVersions = new long[stored.size()];
+        List<VectorMetadata> attributes = new ArrayList<>(stored.size());
+        List<SegmentedVectorStore.VectorSet> sets = new ArrayList<>(stored.size());
+        for (int i = 0; i < setVersions.length; i++) {
+            Replacement replacement = stored.get(i);
+            setVersions[i] = versions.incrementAndGet();
+            attributes.add(replacement.getAttributes());
+            sets.add(new SegmentedVectorStore.VectorSet(replacement.getDocumentId(), setVersions[i],
+                    replacement.getQuantization(), replacement.getRecords()));
+        }
+        metadata.log(setVersions, attributes);
+        List<int[]> ordinals;
+        synchronized (appendLock) {
+            ordinals = store.append(sets);
+            for (int i = 0; i < ordinals.size(); i++) {
+                metadata.add(ordinals.get(i), attributes.get(i));
+            }
+        }
+
+        for (int i = 0; i < setVersions.length; i++) {
+            Quantization quantization = stored.get(i).getQuantization();
+            for (int ordinal : ordinals.get(i)) {
+                if (quantization != Quantization.NONE) {
+                    codes.encode(ordinal, quantization, store.vector(ordinal));
+                }
+                graph.insert(ordinal);
+            }
+            if (quantization != Quantization.NONE && !codes.isTrained(quantization)) {
+                scheduleTraining(quantization);
+            }
+            publish(stored.get(i).getDocumentId(), new LiveVersion(setVersions[i], ordinals.get(i), stored.get(i).getAttributes()));
+        }
+        track(stored.stream().map(Replacement::getDocumentId).toList());
+    }
+
+    /**
+     * @return true if the document had vectors
+     */
+    public boolean remove(UUID documentId) {
+        LiveVersion removed = liveVersions.remove(documentId);
+        if (removed == null) {
+            return false;
+        }
+        live.clear(removed.ordinals);
+        store.markDeleted(removed.ordinals);
+        track(List.of(documentId));
+        return true;
+    }
+
+    public boolean contains(UUID documentId) {
+        return liveVersions.containsKey(documentId);
+    }
+
+    public Set<UUID> documentIds() {
+        return liveVersions.keySet();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Visit each live document with the mean of its chunk vectors scaled to unit length,
+     * which summarizes the document for document-to-document similarity
+     */
+    public void forEachDocumentVector(BiConsumer<UUID, float[]> consumer) {
+        for (Map.Entry<UUID, LiveVersion> entry : liveVersions.entrySet()) {
+            consumer.accept(entry.getKey(), meanVector(entry.getValue()));
+        }
+    }
+
+    /**
+     * @return the document vector as in {@link #forEachDocumentVector}, or null if the document has no live vectors
+     */
+    public float[] documentVector(UUID documentId) {
+        LiveVersion live = liveVersions.get(documentId);
+        return live != null ? meanVector(live) : null;
+    }
+
+    private float[] meanVector(LiveVersion live) {
+        int dimension = store.dimension();
+        float[] sum = new float[dimension];
+        for (int ordinal : live.ordinals) {
+            float[] vector = store.vector(ordinal);
+            for (int i = 0; i < dimension; i++) {
+                sum[i] += vector[i];
+            }
+        }
+        return VectorMath.normalize(sum);
+    }
+
+    /**
+     * @return the share of the stored vectors that are tombstones
+     */
+    public double tombstoneRatio() {
+        int size = store.size();
+        return size == 0 ? 0 : (double) (size - live.cardinality()) / size;
+    }
+
+    /**
+     * @param filter the attributes the documents must have, or null
+     * @return the documents whose chunks are most similar to the query, best first, scored
+     * as the settings say
+     */
+    public List<UUID> findSimilarDocuments(float[] query, int limit, VectorSearchFilter filter) {
+        return findSimilarDocuments(query, limit, filter, settings.getDocumentScoring());
+    }
+
+    /**
+     * Search for distinct documents directly: the search ranks documents by their best chunk
+     * as it goes, keeping a few of each document's best chunks to score it by, rather than
+     * collecting chunks some of which then turn out to belong to the same document
+     * @param scoring how the chunk scores of a document combine into its score
+     * @return the documents with the best combined chunk scores, best first
+     */
+    public List<UUID> findSimilarDocuments(float[] query, int limit, VectorSearchFilter filter, DocumentScoring scoring) {
+        if (limit <= 0 || store.size() == 0) {
+            return List.of();
+        }
+        OrdinalBitmap allowed = metadata.allowed(filter);
+        if (allowed != null && allowed.cardinality() == 0) {
+            return List.of();
+        }
+        int perDocument = scoring == DocumentScoring.MAX ? 1 : Math.max(1, settings.getDocumentScoringChunks());
+        // Summed scores can reorder documents ranked by their best chunk, so all candidates are scored
+        int documents = scoring == DocumentScoring.MAX ? limit : Math.max(limit, graph.getEfSearch());
+        List<HnswIndex.Hit> hits = search(query, documents, perDocument, allowed);
+
+        // Hits come best first, so each document's scores arrive in descending order
+        Map<UUID, float[]> chunkScores = new LinkedHashMap<>();
+        Map<UUID, Integer> counts = new HashMap<>();
+        for (HnswIndex.Hit hit : hits) {
+            UUID documentId = store.documentId(hit.getOrdinal());
+            float[] scores = chunkScores.computeIfAbsent(documentId, id -> new float[perDocument]);
+            int count = counts.getOrDefault(documentId, 0);
+            if (count < perDocument) {
+                scores[count] = hit.getScore();
+                counts.put(documentId, count + 1);
+            }
+        }
+        List<Map.Entry<UUID, Float>> ranked = new ArrayList<>(chunkScores.size());
+        for (Map.Entry<UUID, float[]> entry : chunkScores.entrySet()) {
+            ranked.add(Map.entry(entry.getKey(), scoring.aggregate(entry.getValue(), counts.get(entry.getKey()))));
+        }
+        // Stable, so ties keep the order of the best chunks
+        ranked.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+        List<UUID> found = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            found.add(ranked.get(i).getKey());
+        }
+        return found;
+    }
+
+    /**
+     * @param filter the attributes the documents must have, or null
+     * @return the chunks most similar to the query, best first
+     */
+    public List<ChunkHit> findSimilarChunks(float[] query, int limit, VectorSearchFilter filter) {
+        if (limit <= 0 || store.size() == 0) {
+            return List.of();
+        }
+        OrdinalBitmap allowed = metadata.allowed(filter);
+        if (allowed != null && allowed.cardinality() == 0) {
+            return List.of();
+        }
+        List<HnswIndex.Hit> hits = search(query, limit, allowed);
+        List<ChunkHit> chunks = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            int ordinal = hit.getOrdinal();
+            chunks.add(new ChunkHit(store.documentId(ordinal), store.chunkIndex(ordinal), hit.getScore()));
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        metadata.close();
+        store.close();
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    Path getDirectory() {
+        return store.getDirectory();
+    }
+
+    VectorIndexSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Start recording the documents replaced or removed from now on
+     */
+    void startTracking() {
+        tracked = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * @return the documents replaced or removed since tracking started, recording anew
+     */
+    Set<UUID> restartTracking() {
+        Set<UUID> changed = tracked;
+        tracked = ConcurrentHashMap.newKeySet();
+        return changed != null ? changed : Set.of();
+    }
+
+    boolean isTracked(UUID documentId) {
+        Set<UUID> changed = tracked;
+        return changed != null && changed.contains(documentId);
+    }
+
+    /**
+     * @return the documents replaced or removed since tracking started
+     */
+    Set<UUID> stopTracking() {
+        Set<UUID> changed = tracked;
+        tracked = null;
+        return changed != null ? changed : Set.of();
+    }
+
+    /**
+     * @return the live version of each document read back from the store, or a replacement
+     * without records for a document that has none
+     */
+    List<Replacement> snapshot(Collection<UUID> documentIds) {
+        List<Replacement> replacements = new ArrayList<>(documentIds.size());
+        for (UUID documentId : documentIds) {
+            LiveVersion version = liveVersions.get(documentId);
+            if (version == null) {
+                replacements.add(new Replacement(documentId, List.of(), Quantization.NONE, null));
+                continue;
+            }
+            // A replaced version keeps its records readable, so a concurrent replacement does no harm
+            List<VectorRecord> records = new ArrayList<>(version.ordinals.length);
+            for (int ordinal : version.ordinals) {
+                records.add(new VectorRecord(documentId, store.chunkIndex(ordinal), null, store.vector(ordinal)));
+            }
+            replacements.add(new Replacement(documentId, records, store.quantization(version.ordinals[0]), version.attributes));
+        }
+        return replacements;
+    }
+
+    /**
+     * @return the directory holding the current generation of a tenant's index: the one
+     * named by its CURRENT file, or the tenant directory itself before the first compaction
+     */
+    static Path dataDirectory(Path root) throws IOException {
+        Path current = root.resolve(CURRENT_FILE);
+        return Files.exists(current) ? root.resolve(Files.readString(current).strip()) : root;
+    }
+
+    /**
+     * @return a new directory for the generation following the current one
+     */
+    static Path nextGeneration(Path root, Path current) throws IOException {
+        String name = current.getFileName().toString();
+        long number = current.equals(root) ? 0 : Long.parseLong(name.substring(GENERATION_PREFIX.length()));
+        Path next = root.resolve(String.format("%s%06d", GENERATION_PREFIX, number + 1));
+        deleteRecursively(next);
+        Files.createDirectories(next);
+        return next;
+    }
+
+    /**
+     * Point the tenant directory at a generation with an atomic rename of its CURRENT file
+     */
+    static void makeCurrent(Path root, Path directory) throws IOException {
+        Path temporary = root.resolve(CURRENT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(directory.getFileName().toString().getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, root.resolve(CURRENT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the generations other than the current one, and the files of the tenant
+     * directory itself once a generation replaced them
+     */
+    static void removeReplaced(Path root, Path current) throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                boolean replacedGeneration = name.startsWith(GENERATION_PREFIX) && !file.equals(current);
+                boolean replacedRootFile = !current.equals(root) && Files.isRegularFile(file)
+                        && !name.startsWith(CURRENT_FILE);
+                if (replacedGeneration || replacedRootFile) {
+                    deleteRecursively(file);
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private List<HnswIndex.Hit> search(float[] query, int k, OrdinalBitmap allowed) {
+        return search(query, k, 0, allowed);
+    }
+
+    /**
+     * @param perDocument the best chunks kept of each of the k best documents, or 0 to search
+     * for the k best chunks regardless of their documents
+     * @param allowed the ordinals a filter allows, or null for all
+     * @return the best live allowed hits with full-precision scores, best first
+     */
+    private List<HnswIndex.Hit> search(float[] query, int k, int perDocument, OrdinalBitmap allowed) {
+        if (query.length != store.dimension()) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + store.dimension() + " but got " + query.length);
+        }
+        float[] unit = VectorMath.normalize(query);
+        IntPredicate accept = allowed == null ? this::isLive : ordinal -> allowed.contains(ordinal) && isLive(ordinal);
+        boolean quantized = codes.hasCodes();
+        int candidates = quantized ? k * settings.getRerankFactor() : k;
+        VectorScorer scorer = quantized ? codes.scorer(unit, store) : store.scorer(unit);
+        int ef = Math.max(graph.getEfSearch(), candidates);
+        // A set's version identifies the document's chunks stored together with it
+        IntToLongFunction documentOf = store::version;
+        List<HnswIndex.Hit> found;
+        if (useGraph(allowed, ef)) {
+            found = perDocument > 0
+                    ? graph.searchGroups(scorer, candidates, perDocument, ef, accept, documentOf)
+                    : graph.search(scorer, candidates, ef, accept);
+        } else {
+            found = perDocument > 0
+                    ? exactSearchGroups(scorer, candidates, perDocument, accept, allowed, documentOf)
+                    : exactSearch(scorer, candidates, accept, allowed);
+        }
+        // While a replacement is being published both versions are briefly live; only the current one is returned
+        found = new ArrayList<>(found);
+        found.removeIf(hit -> !isCurrent(hit.getOrdinal()));
+        if (!quantized) {
+            return found;
+        }
+
+        List<HnswIndex.Hit> reranked = new ArrayList<>(found.size());
+        for (HnswIndex.Hit hit : found) {
+            reranked.add(new HnswIndex.Hit(hit.getOrdinal(), store.dot(unit, hit.getOrdinal())));
+        }
+        reranked.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return perDocument > 0 || reranked.size() <= k ? reranked : reranked.subList(0, k);
+    }
+
+    /**
+     * A graph search scores about ef * 2M nodes to collect ef hits, and the inverse of the
+     * filter's selectivity times as many when it may only collect allowed ones. Scoring
+     * the allowed ordinals directly is cheaper once there are fewer of them than that.
+     */
+    private boolean useGraph(OrdinalBitmap allowed, int ef) {
+        if (!graphReady) {
+            return false;
+        }
+        if (allowed == null) {
+            return true;
+        }
+        long cardinality = allowed.cardinality();
+        return cardinality * cardinality > (long) ef * 2 * settings.getM() * store.size();
+    }
+
+    private List<HnswIndex.Hit> exactSearch(VectorScorer scorer, int k, IntPredicate accept, OrdinalBitmap allowed) {
+        PriorityQueue<HnswIndex.Hit> top = new PriorityQueue<>((a, b) -> Float.compare(a.getScore(), b.getScore()));
+        IntConsumer collect = ordinal -> {
+            if (!accept.test(ordinal)) {
+                return;
+            }
+            float score = scorer.score(ordinal);
+            if (top.size() < k) {
+                top.add(new HnswIndex.Hit(ordinal, score));
+            } else if (score > top.peek().getScore()) {
+                top.poll();
+                top.add(new HnswIndex.Hit(ordinal, score));
+            }
+        };
+        if (allowed != null) {
+            allowed.forEach(collect);
+        } else {
+            int size = store.size();
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                collect.accept(ordinal);
+            }
+        }
+        List<HnswIndex.Hit> hits = new ArrayList<>(top);
+        hits.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return hits;
+    }
+
+    /**
+     * Score every allowed ordinal, keeping the best chunks of the k documents with the best chunks
+     */
+    private List<HnswIndex.Hit> exactSearchGroups(VectorScorer scorer, int k, int perDocument, IntPredicate accept,
+                                                  OrdinalBitmap allowed, IntToLongFunction documentOf) {
+        Map<Long, PriorityQueue<HnswIndex.Hit>> documents = new HashMap<>();
+        IntConsumer collect = ordinal -> {
+            if (!accept.test(ordinal)) {
+                return;
+            }
+            float score = scorer.score(ordinal);
+            PriorityQueue<HnswIndex.Hit> best = documents.computeIfAbsent(documentOf.applyAsLong(ordinal),
+                    document -> new PriorityQueue<>(perDocument + 1, (a, b) -> Float.compare(a.getScore(), b.getScore())));
+            if (best.size() < perDocument) {
+                best.add(new HnswIndex.Hit(ordinal, score));
+            } else if (score > best.peek().getScore()) {
+                best.poll();
+                best.add(new HnswIndex.Hit(ordinal, score));
+            }
+        };
+        if (allowed != null) {
+            allowed.forEach(collect);
+        } else {
+            int size = store.size();
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                collect.accept(ordinal);
+            }
+        }
+
+        // Rank the documents by their best chunk, the same way the graph search does
+        List<List<HnswIndex.Hit>> ranked = new ArrayList<>(documents.size());
+        for (PriorityQueue<HnswIndex.Hit> best : documents.values()) {
+            List<HnswIndex.Hit> hits = new ArrayList<>(best);
+            hits.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+            ranked.add(hits);
+        }
+        ranked.sort((a, b) -> Float.compare(b.get(0).getScore(), a.get(0).getScore()));
+        List<HnswIndex.Hit> hits = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < k; i++) {
+            hits.addAll(ranked.get(i));
+        }
+        hits.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return hits;
+    }
+
+    private void scheduleTraining(Quantization quantization) {
+        if (store.size() < settings.getMinTrainingVectors() || !training.add(quantization)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> train(quantization)).whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Failed to train {} quantizer for {}: {}", quantization, store.getDirectory(), e.getMessage(), e);
+                training.remove(quantization);
+            }
+        });
+    }
+
+    /**
+     * Train a quantizer on a random sample of live vectors, save it and encode the vectors
+     * stored for it so far. Vectors stored from then on are encoded when they are added.
+     */
+    private void train(Quantization quantization) {
+        long start = System.currentTimeMillis();
+        int size = store.size();
+        List<float[]> sample = new ArrayList<>(settings.getTrainingSampleSize());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < 4 * settings.getTrainingSampleSize() && sample.size() < settings.getTrainingSampleSize(); attempt++) {
+            int ordinal = size <= settings.getTrainingSampleSize() ? attempt : random.nextInt(size);
+            if (ordinal >= size) {
+                break;
+            }
+            if (isLive(ordinal)) {
+                sample.add(store.vector(ordinal));
+            }
+        }
+        if (sample.isEmpty()) {
+            training.remove(quantization);
+            return;
+        }
+
+        VectorQuantizer quantizer;
+        if (quantization == Quantization.INT8) {
+            quantizer = ScalarQuantizer.train(sample);
+        } else if (quantization == Quantization.PCA) {
+            int components = settings.getPcaComponents() > 0 ? settings.getPcaComponents() : Math.max(1, store.dimension() / 4);
+            quantizer = PcaQuantizer.train(sample, Math.min(components, store.dimension()), settings.getPcaIterations(), random.nextLong());
+        } else {
+            int subspaces = settings.getPqSubspaces() > 0 ? settings.getPqSubspaces() : Math.max(1, store.dimension() / 8);
+            quantizer = ProductQuantizer.train(sample, subspaces, settings.getKMeansIterations(), random.nextLong());
+        }
+        codes.addQuantizer(quantizer);
+        try {
+            codes.save(store.getDirectory().resolve(QUANTIZER_FILE));
+        } catch (IOException e) {
+            log.warn("Could not save quantizers of {}: {}", store.getDirectory(), e.getMessage());
+        }
+
+        int encoded = 0;
+        for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+            if (store.quantization(ordinal) == quantization && isLive(ordinal)
+                    && codes.encode(ordinal, quantization, store.vector(ordinal))) {
+                encoded++;
+            }
+        }
+        log.info("Trained {} quantizer for {} on {} vectors and encoded {} vectors in {} ms", quantization,
+                store.getDirectory(), sample.size(), encoded, System.currentTimeMillis() - start);
+    }
+
+    // Make a version live unless a concurrent replacement that started later already is
+    private void publish(UUID documentId, LiveVersion version) {
+        live.set(version.ordinals);
+        LiveVersion[] replaced = new LiveVersion[1];
+        liveVersions.merge(documentId, version, (current, proposed) -> {
+            if (current.version > proposed.version) {
+                replaced[0] = proposed;
+                return current;
+            }
+            replaced[0] = current;
+            return proposed;
+        });
+        if (replaced[0] != null) {
+            live.clear(replaced[0].ordinals);
+            store.markDeleted(replaced[0].ordinals);
+        }
+    }
+
+    private boolean isLive(int ordinal) {
+        return live.contains(ordinal);
+    }
+
+    private boolean isCurrent(int ordinal) {
+        LiveVersion current = liveVersions.get(store.documentId(ordinal));
+        return current != null && current.version == store.version(ordinal);
+    }
+
+    private void track(List<UUID> documentIds) {
+        // A set swapped out while adding may already have been read, so add to its successor too
+        Set<UUID> changed = tracked;
+        while (changed != null) {
+            changed.addAll(documentIds);
+            Set<UUID> current = tracked;
+            if (current == changed) {
+                return;
+            }
+            changed = current;
+        }
+    }
+
+    /**
+     * Rebuild the live versions from the record metadata and flag everything else deleted.
+     * Appends are serialized, so the records of a version are one contiguous run of ordinals.
+     */
+    private void restore() {
+        IntStream.Builder stale = IntStream.builder();
+        long maxVersion = 0;
+        int start = 0;
+        while (start < restoredCount) {
+            long version = store.version(start);
+            int end = start + 1;
+            while (end < restoredCount && store.version(end) == version) {
+                end++;
+            }
+            maxVersion = Math.max(maxVersion, version);
+
+            int[] run = IntStream.range(start, end).toArray();
+            metadata.add(run, metadata.restoredMetadata(version));
+            boolean complete = run.length == store.setSize(start)
+                    && IntStream.of(run).noneMatch(store::isDeleted);
+            UUID documentId = store.documentId(start);
+            LiveVersion previous = liveVersions.get(documentId);
+            if (complete && (previous == null || previous.version < version)) {
+                liveVersions.put(documentId, new LiveVersion(version, run, metadata.restoredMetadata(version)));
+                if (previous != null) {
+                    IntStream.of(previous.ordinals).forEach(stale::add);
+                }
+            } else {
+                IntStream.of(run).filter(ordinal -> !store.isDeleted(ordinal)).forEach(stale::add);
+            }
+            start = end;
+        }
+        versions.set(maxVersion);
+        liveVersions.values().forEach(version -> live.set(version.ordinals));
+        store.markDeleted(stale.build().toArray());
+        metadata.restoreDone();
+    }
+
+    /**
+     * The new vectors of one document
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Replacement {
+        private final UUID documentId;
+        private final List<VectorRecord> records;
+        private final Quantization quantization;
+        // Attributes searches can filter the vectors by, or null
+        private final VectorMetadata attributes;
+    }
+
+    private static final class LiveVersion {
+        private final long version;
+        private final int[] ordinals;
+        private final VectorMetadata attributes;
+
+        private LiveVersion(long version, int[] ordinals, VectorMetadata attributes) {
+            this.version = version;
+            this.ordinals = ordinals;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.docloader.vector;
+
+/**
+ * How vector components are stored in a segment file
+ */
+public enum VectorEncoding {
+
+    FLOAT32(4),
+    // IEEE 754 half precision; about three significant digits, which is plenty for unit vectors
+    FLOAT16(2);
+
+    private final int bytesPerDimension;
+
+    VectorEncoding(int bytesPerDimension) {
+        this.bytesPerDimension = bytesPerDimension;
+    }
+
+    public int getBytesPerDimension() {
+        return bytesPerDimension;
+    }
+}
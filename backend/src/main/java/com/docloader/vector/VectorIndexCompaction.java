@@ -0,0 +1,132 @@
+package com.docloader.vector;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Rebuild of a tenant's vector index without its tombstones. The live vectors are copied
+ * into a new generation directory, building a fresh graph as they are inserted, while the
+ * source index keeps serving searches and writes. Documents written meanwhile are tracked
+ * and replayed by {@link #finish()}, which the caller runs with writes to the source held
+ * off; it then makes the new generation current and returns its index for the caller to
+ * swap in. Searches never wait: they run on whichever index they picked up.
+ * <p>
+ * Usage: {@link #start}, {@link #copy()} with writes allowed, {@link #finish()} with writes
+ * held off, swap and close the source, then {@link #removeReplaced()}; {@link #abort()} on failure.
+ */
+@Slf4j
+public class VectorIndexCompaction {
+
+    // Passes over the documents written during the copy before writes are held off for the rest
+    private static final int MAX_CATCH_UP_ROUNDS = 5;
+
+    private final TenantVectorIndex source;
+    private final TenantVectorIndex target;
+    private final int batchSize;
+
+    // Copy statistics, for logging and benchmarks
+    @Getter
+    private long copiedVectors;
+    @Getter
+    private long copyMillis;
+
+    private VectorIndexCompaction(TenantVectorIndex source, TenantVectorIndex target, int batchSize) {
+        this.source = source;
+        this.target = target;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Open an empty index in a new generation directory and start tracking writes to the source
+     * @param batchSize documents copied per write to the new index
+     */
+    public static VectorIndexCompaction start(TenantVectorIndex source, int batchSize) throws IOException {
+        Path root = source.getRoot();
+        Path directory = TenantVectorIndex.nextGeneration(root, source.getDirectory());
+        // Quantizers carry over, so quantized documents are encoded as they are copied
+        Path quantizers = source.getDirectory().resolve(TenantVectorIndex.QUANTIZER_FILE);
+        if (Files.exists(quantizers)) {
+            Files.copy(quantizers, directory.resolve(TenantVectorIndex.QUANTIZER_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+        TenantVectorIndex target = TenantVectorIndex.open(root, directory, source.getSettings());
+        source.startTracking();
+        return new VectorIndexCompaction(source, target, Math.max(1, batchSize));
+    }
+
+    /**
+     * Copy the documents that are live in the source now, then catch up with the documents
+     * written meanwhile until few enough are left for {@link #finish()}
+     */
+    public void copy() throws IOException {
+        long start = System.currentTimeMillis();
+        List<UUID> documentIds = new ArrayList<>(source.documentIds());
+        for (int from = 0; from < documentIds.size(); from += batchSize) {
+            List<TenantVectorIndex.Replacement> batch = source.snapshot(documentIds.subList(from, Math.min(documentIds.size(), from + batchSize)));
+            // Documents written since the copy started are replayed anyway
+            batch.removeIf(replacement -> replacement.getRecords().isEmpty() || source.isTracked(replacement.getDocumentId()));
+            target.replaceAll(batch);
+            for (TenantVectorIndex.Replacement replacement : batch) {
+                copiedVectors += replacement.getRecords().size();
+            }
+        }
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+            Set<UUID> changed = source.restartTracking();
+            replay(changed);
+            if (changed.size() <= batchSize) {
+                break;
+            }
+        }
+        copyMillis = System.currentTimeMillis() - start;
+        log.info("Copied {} live vectors of {} documents from {} in {} ms ({} vectors/s)", copiedVectors,
+                documentIds.size(), source.getDirectory(), copyMillis, copiedVectors * 1000 / Math.max(1, copyMillis));
+    }
+
+    /**
+     * Replay the documents written since the copy started and make the new generation
+     * current. Writes to the source must be held off until the returned index replaced it.
+     */
+    public TenantVectorIndex finish() throws IOException {
+        Set<UUID> changed = source.stopTracking();
+        replay(changed);
+        TenantVectorIndex.makeCurrent(source.getRoot(), target.getDirectory());
+        log.info("Compacted {} into {}, replaying {} documents written meanwhile", source.getDirectory(),
+                target.getDirectory(), changed.size());
+        return target;
+    }
+
+    private void replay(Set<UUID> changed) throws IOException {
+        List<UUID> documentIds = new ArrayList<>(changed);
+        for (int from = 0; from < documentIds.size(); from += batchSize) {
+            target.replaceAll(source.snapshot(documentIds.subList(from, Math.min(documentIds.size(), from + batchSize))));
+        }
+    }
+
+    /**
+     * Delete the files of the replaced generation once its index is closed
+     */
+    public void removeReplaced() throws IOException {
+        TenantVectorIndex.removeReplaced(source.getRoot(), target.getDirectory());
+    }
+
+    /**
+     * Drop the new generation, leaving the source as it is
+     */
+    public void abort() {
+        source.stopTracking();
+        try {
+            target.close();
+            TenantVectorIndex.deleteRecursively(target.getDirectory());
+        } catch (IOException e) {
+            log.warn("Could not remove abandoned vector index generation {}: {}", target.getDirectory(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.docloader.vector;
+
+import lombok.Data;
+
+/**
+ * Settings of the per-tenant vector indexes of the embedded vector store
+ */
+@Data
+public class VectorIndexSettings {
+
+    private VectorEncoding encoding = VectorEncoding.FLOAT32;
+    private long segmentSize = 1L << 30;
+    private int m = 16;
+    private int efConstruction = 200;
+    private int efSearch = 100;
+    // Candidates taken from the quantized search per requested hit, re-ranked at full precision
+    private int rerankFactor = 4;
+    // Quantizers are trained once a tenant has this many vectors
+    private int minTrainingVectors = 10000;
+    private int trainingSampleSize = 20000;
+    private int kMeansIterations = 15;
+    // Product quantization subspaces, 0 for one per 8 dimensions
+    private int pqSubspaces;
+    // Principal components of PCA codes, 0 for a quarter of the dimensions
+    private int pcaComponents;
+    private int pcaIterations = 4;
+    private DocumentScoring documentScoring = DocumentScoring.MAX;
+    // Best chunks per document combined by SUM_TOP_N
+    private int documentScoringChunks = 3;
+}
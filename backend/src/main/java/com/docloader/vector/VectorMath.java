@@ -0,0 +1,131 @@
+package com.docloader.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Similarity functions over float vectors. Indexes store unit vectors, so cosine
+ * similarity reduces to a dot product.
+ * <p>
+ * The loops run on SIMD kernels of the Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and the CPU has vectors of at least four
+ * floats, and on plain loops otherwise. {@code -Ddocloader.vector.simd=false} forces the
+ * plain loops.
+ */
+@Slf4j
+public final class VectorMath {
+
+    private static final DistanceKernels KERNELS = selectKernels();
+
+    private VectorMath() {
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return KERNELS.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * @return the dot product of the ranges of the same length starting at the offsets
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.dot(a, aOffset, b, bOffset, length);
+    }
+
+    public static float squaredDistance(float[] a, float[] b) {
+        return KERNELS.squaredDistance(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * @return the squared Euclidean distance of the ranges starting at the offsets
+     */
+    public static float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.squaredDistance(a, aOffset, b, bOffset, length);
+    }
+
+    public static float norm(float[] vector) {
+        return (float) Math.sqrt(dot(vector, vector));
+    }
+
+    public static float cosine(float[] a, float[] b) {
+        return KERNELS.cosine(a, b);
+    }
+
+    /**
+     * @return the dot product of the query with as many float32 values stored at the byte offset
+     */
+    public static float dotFloat32(float[] query, ByteBuffer buffer, int offset) {
+        return KERNELS.dotFloat32(query, buffer, offset);
+    }
+
+    /**
+     * @return the dot product of the query with as many half precision values stored at the byte offset
+     */
+    public static float dotFloat16(float[] query, ByteBuffer buffer, int offset) {
+        return KERNELS.dotFloat16(query, buffer, offset);
+    }
+
+    /**
+     * @return the dot product of the first length query values with the signed bytes at the offset
+     */
+    public static float dotInt8(float[] query, byte[] codes, int offset, int length) {
+        return KERNELS.dotInt8(query, codes, offset, length);
+    }
+
+    /**
+     * @return the kernels in use, "scalar" or "simd-" followed by the vector width in bits
+     */
+    public static String kernels() {
+        return KERNELS.name();
+    }
+
+    /**
+     * @return a unit-length copy of the vector; a zero vector is copied unchanged
+     */
+    public static float[] normalize(float[] vector) {
+        float[] unit = vector.clone();
+        float norm = norm(vector);
+        if (norm > 0f) {
+            for (int i = 0; i < unit.length; i++) {
+                unit[i] /= norm;
+            }
+        }
+        return unit;
+    }
+
+    /**
+     * @return the first dimensions of the vector scaled to unit length, or a unit-length
+     * copy when the vector has no more dimensions than that
+     */
+    public static float[] truncate(float[] vector, int dimensions) {
+        return normalize(dimensions < vector.length ? Arrays.copyOf(vector, dimensions) : vector);
+    }
+
+    static DistanceKernels scalarKernels() {
+        return ScalarDistanceKernels.INSTANCE;
+    }
+
+    /**
+     * @return the SIMD kernels, or null if the Vector API is unavailable or too narrow here
+     */
+    static DistanceKernels simdKernels() {
+        try {
+            // Loaded by name, since linking fails without the incubator module
+            return (DistanceKernels) Class.forName("com.docloader.vector.SimdDistanceKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static DistanceKernels selectKernels() {
+        DistanceKernels kernels = Boolean.parseBoolean(System.getProperty("docloader.vector.simd", "true"))
+                ? simdKernels() : null;
+        if (kernels == null) {
+            kernels = scalarKernels();
+        }
+        log.info("Using {} vector distance kernels", kernels.name());
+        return kernels;
+    }
+}
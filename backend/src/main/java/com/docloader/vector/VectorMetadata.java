@@ -0,0 +1,22 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * Attributes of a document that its vectors can be filtered by; each may be null
+ */
+@Getter
+@AllArgsConstructor
+public class VectorMetadata {
+
+    private final UUID jobId;
+    private final UUID uploadedBy;
+    private final String contentType;
+
+    public boolean isEmpty() {
+        return jobId == null && uploadedBy == null && contentType == null;
+    }
+}
@@ -0,0 +1,237 @@
+package com.docloader.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Bitmaps of the vector ordinals of one tenant per job, uploader and content type, used to
+ * restrict searches to the ordinals a filter allows before the search starts.
+ * <p>
+ * The metadata of each stored version is appended to a log next to the vector segments,
+ * so the bitmaps can be rebuilt on open. Records are length-prefixed and checksummed; a
+ * torn record at the end of the log is cut off.
+ */
+@Slf4j
+public class VectorMetadataIndex implements Closeable {
+
+    private static final int FLAG_JOB = 1;
+    private static final int FLAG_UPLOADER = 2;
+    private static final int FLAG_CONTENT_TYPE = 4;
+
+    private final FileChannel channel;
+    // Metadata read from the log by version, until the restored ordinals are indexed
+    private Map<Long, VectorMetadata> restored;
+    private final Map<UUID, OrdinalBitmap> byJob = new ConcurrentHashMap<>();
+    private final Map<UUID, OrdinalBitmap> byUploader = new ConcurrentHashMap<>();
+    private final Map<String, OrdinalBitmap> byContentType = new ConcurrentHashMap<>();
+
+    private VectorMetadataIndex(FileChannel channel, Map<Long, VectorMetadata> restored) {
+        this.channel = channel;
+        this.restored = restored;
+    }
+
+    public static VectorMetadataIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Map<Long, VectorMetadata> restored = new ConcurrentHashMap<>();
+            long valid = read(channel, restored);
+            if (valid < channel.size()) {
+                log.warn("Truncating {} bytes of incomplete metadata at the end of {}", channel.size() - valid, file);
+                channel.truncate(valid);
+            }
+            channel.position(valid);
+            return new VectorMetadataIndex(channel, restored);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the metadata logged for a version before the index was opened, or null
+     */
+    public VectorMetadata restoredMetadata(long version) {
+        return restored != null ? restored.get(version) : null;
+    }
+
+    /**
+     * Drop the metadata read on open once the restored ordinals are indexed
+     */
+    public void restoreDone() {
+        restored = null;
+    }
+
+    /**
+     * Durably log the metadata of a version before its vectors are stored
+     */
+    public void log(long version, VectorMetadata metadata) throws IOException {
+        log(new long[]{version}, Collections.singletonList(metadata));
+    }
+
+    /**
+     * Durably log the metadata of several versions with one sync
+     * @param metadata the metadata of each version, or null for versions without any
+     */
+    public synchronized void log(long[] versions, List<VectorMetadata> metadata) throws IOException {
+        boolean written = false;
+        for (int i = 0; i < versions.length; i++) {
+            VectorMetadata attributes = metadata.get(i);
+            if (attributes != null && !attributes.isEmpty()) {
+                write(versions[i], attributes);
+                written = true;
+            }
+        }
+        if (written) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Add the ordinals of a version to the bitmaps of its metadata. Ordinals must be added
+     * in increasing order across calls, as the store assigns them.
+     */
+    public void add(int[] ordinals, VectorMetadata metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return;
+        }
+        List<OrdinalBitmap> bitmaps = new ArrayList<>(3);
+        if (metadata.getJobId() != null) {
+            bitmaps.add(byJob.computeIfAbsent(metadata.getJobId(), key -> new OrdinalBitmap()));
+        }
+        if (metadata.getUploadedBy() != null) {
+            bitmaps.add(byUploader.computeIfAbsent(metadata.getUploadedBy(), key -> new OrdinalBitmap()));
+        }
+        if (metadata.getContentType() != null) {
+            bitmaps.add(byContentType.computeIfAbsent(metadata.getContentType(), key -> new OrdinalBitmap()));
+        }
+        for (OrdinalBitmap bitmap : bitmaps) {
+            for (int ordinal : ordinals) {
+                bitmap.add(ordinal);
+            }
+        }
+    }
+
+    /**
+     * @return the ordinals the filter allows, which may include deleted ones, or null if
+     * the filter does not restrict
+     */
+    public OrdinalBitmap allowed(VectorSearchFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        List<OrdinalBitmap> bitmaps = new ArrayList<>(3);
+        if (filter.getJobId() != null) {
+            bitmaps.add(byJob.get(filter.getJobId()));
+        }
+        if (filter.getUploadedBy() != null) {
+            bitmaps.add(byUploader.get(filter.getUploadedBy()));
+        }
+        if (filter.getContentType() != null) {
+            bitmaps.add(byContentType.get(filter.getContentType()));
+        }
+        if (bitmaps.contains(null)) {
+            return new OrdinalBitmap();
+        }
+        return bitmaps.size() == 1 ? bitmaps.get(0) : OrdinalBitmap.and(bitmaps);
+    }
+
+    /**
+     * @return the approximate heap size of all bitmaps in bytes
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (Map<?, OrdinalBitmap> bitmaps : List.of(byJob, byUploader, byContentType)) {
+            for (OrdinalBitmap bitmap : bitmaps.values()) {
+                size += bitmap.sizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(long version, VectorMetadata metadata) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(version);
+            int flags = (metadata.getJobId() != null ? FLAG_JOB : 0)
+                    | (metadata.getUploadedBy() != null ? FLAG_UPLOADER : 0)
+                    | (metadata.getContentType() != null ? FLAG_CONTENT_TYPE : 0);
+            out.writeByte(flags);
+            if (metadata.getJobId() != null) {
+                out.writeLong(metadata.getJobId().getMostSignificantBits());
+                out.writeLong(metadata.getJobId().getLeastSignificantBits());
+            }
+            if (metadata.getUploadedBy() != null) {
+                out.writeLong(metadata.getUploadedBy().getMostSignificantBits());
+                out.writeLong(metadata.getUploadedBy().getLeastSignificantBits());
+            }
+            if (metadata.getContentType() != null) {
+                out.writeUTF(metadata.getContentType());
+            }
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    // Reads records up to the first incomplete or corrupt one and returns its position
+    private static long read(FileChannel channel, Map<Long, VectorMetadata> metadata) throws IOException {
+        ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+        while (contents.hasRemaining() && channel.read(contents, contents.position()) > 0) {
+            // Reads until the buffer is full
+        }
+        contents.flip();
+
+        long valid = 0;
+        while (contents.remaining() >= 4) {
+            int length = contents.getInt();
+            if (length < 9 || contents.remaining() < length + 4) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            contents.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (contents.getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long version = in.readLong();
+            int flags = in.readByte();
+            UUID jobId = (flags & FLAG_JOB) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+            UUID uploadedBy = (flags & FLAG_UPLOADER) != 0 ? new UUID(in.readLong(), in.readLong()) : null;
+            String contentType = (flags & FLAG_CONTENT_TYPE) != 0 ? in.readUTF() : null;
+            metadata.put(version, new VectorMetadata(jobId, uploadedBy, contentType));
+            valid = contents.position();
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,34 @@
+package com.docloader.vector;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes unit vectors into compact codes and scores queries against them. Scoring is
+ * asymmetric: the query stays at full precision and is prepared once per search.
+ */
+public interface VectorQuantizer {
+
+    Quantization getQuantization();
+
+    int getDimension();
+
+    /**
+     * @return the number of bytes of one code
+     */
+    int codeSize();
+
+    void encode(float[] vector, byte[] codes, int offset);
+
+    /**
+     * @return the per-query state passed to {@link #score(float[], byte[], int)}
+     */
+    float[] prepare(float[] unitQuery);
+
+    /**
+     * @return the approximate dot product of the prepared query with the code at the offset
+     */
+    float score(float[] prepared, byte[] codes, int offset);
+
+    void write(DataOutput out) throws IOException;
+}
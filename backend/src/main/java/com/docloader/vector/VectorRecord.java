@@ -0,0 +1,20 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * One chunk vector as written to the vector store
+ */
+@Getter
+@AllArgsConstructor
+public class VectorRecord {
+
+    private final UUID documentId;
+    private final int chunkIndex;
+    // SHA-256 of the chunk text
+    private final String fingerprint;
+    private final float[] vector;
+}
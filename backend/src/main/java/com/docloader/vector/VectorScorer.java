@@ -0,0 +1,11 @@
+package com.docloader.vector;
+
+/**
+ * Similarity of one query to stored vectors, by ordinal. A scorer may hold per-query
+ * state, such as lookup tables for quantized codes.
+ */
+@FunctionalInterface
+public interface VectorScorer {
+
+    float score(int ordinal);
+}
@@ -0,0 +1,26 @@
+package com.docloader.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Metadata restrictions of a vector search; null fields do not restrict
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VectorSearchFilter {
+
+    private UUID jobId;
+
+    private UUID uploadedBy;
+
+    private String contentType;
+
+    public boolean isEmpty() {
+        return jobId == null && uploadedBy == null && contentType == null;
+    }
+}
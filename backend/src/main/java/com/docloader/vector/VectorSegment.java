@@ -0,0 +1,300 @@
+package com.docloader.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped file of fixed-stride vector records. The file starts with a header
+ * page, followed by a metadata region and a vector region, each sized for the segment's
+ * capacity, so startup scans of metadata never touch vector pages.
+ * <p>
+ * Records are only appended. The record count is published through the header, which has
+ * two checksummed copies written alternately: a torn header write leaves the previous copy
+ * valid, and records beyond the count of the valid copy are ignored on open. Records are
+ * flushed to disk before the header that covers them.
+ * <p>
+ * Metadata record (little endian): document ID (16 bytes), version (8), chunk index (4),
+ * number of records written with the same version (4), flags (4), {@link Quantization} of the
+ * search code (4).
+ */
+public class VectorSegment implements Closeable {
+
+    private static final int MAGIC = 0x53564c44; // "DLVS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int HEADER_SLOT_SIZE = 64;
+    private static final int METADATA_STRIDE = 40;
+    private static final int FLAG_DELETED = 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int dimension;
+    private final VectorEncoding encoding;
+    private final int capacity;
+    private final int vectorStride;
+    private final int vectorRegion;
+    private long generation;
+    private volatile int count;
+    private int committedCount;
+
+    private VectorSegment(Path path, FileChannel channel, int dimension, VectorEncoding encoding, int capacity) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.dimension = dimension;
+        this.encoding = encoding;
+        this.capacity = capacity;
+        this.vectorStride = dimension * encoding.getBytesPerDimension();
+        this.vectorRegion = HEADER_SIZE + capacity * METADATA_STRIDE;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(dimension, encoding, capacity));
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return how many records of the dimension and encoding fit in a file of at most the given size
+     */
+    public static int capacityFor(int dimension, VectorEncoding encoding, long maxFileSize) {
+        long recordSize = METADATA_STRIDE + (long) dimension * encoding.getBytesPerDimension();
+        long capacity = (Math.min(maxFileSize, Integer.MAX_VALUE) - HEADER_SIZE) / recordSize;
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Segment size too small for vectors of dimension " + dimension);
+        }
+        return (int) capacity;
+    }
+
+    public static VectorSegment create(Path path, int dimension, VectorEncoding encoding, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            VectorSegment segment = new VectorSegment(path, channel, dimension, encoding, capacity);
+            segment.writeHeader();
+            segment.buffer.force(0, HEADER_SIZE);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    public static VectorSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int slot = validSlot(header);
+            if (slot < 0) {
+                throw new IOException("No valid header in vector segment " + path);
+            }
+            int base = slot * HEADER_SLOT_SIZE;
+            VectorEncoding encoding = VectorEncoding.values()[header.getInt(base + 20)];
+            VectorSegment segment = new VectorSegment(path, channel, header.getInt(base + 16), encoding, header.getInt(base + 24));
+            segment.generation = header.getLong(base + 8);
+            segment.count = header.getInt(base + 28);
+            segment.committedCount = segment.count;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public VectorEncoding getEncoding() {
+        return encoding;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of records, including appended ones not committed yet
+     */
+    public int count() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == capacity;
+    }
+
+    /**
+     * Append a record. It becomes durable with the next {@link #commit()}.
+     * Callers serialize appends to a segment.
+     * @return the index of the record in the segment
+     */
+    public int append(UUID documentId, long version, int chunkIndex, int setSize, int quantization, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension + " but got " + vector.length);
+        }
+        int index = count;
+        if (index == capacity) {
+            throw new IllegalStateException("Vector segment " + path + " is full");
+        }
+
+        int offset = vectorRegion + index * vectorStride;
+        if (encoding == VectorEncoding.FLOAT32) {
+            for (int i = 0; i < dimension; i++) {
+                buffer.putFloat(offset + i * 4, vector[i]);
+            }
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                buffer.putShort(offset + i * 2, Float16.fromFloat(vector[i]));
+            }
+        }
+
+        int meta = metadataOffset(index);
+        buffer.putLong(meta, documentId.getMostSignificantBits());
+        buffer.putLong(meta + 8, documentId.getLeastSignificantBits());
+        buffer.putLong(meta + 16, version);
+        buffer.putInt(meta + 24, chunkIndex);
+        buffer.putInt(meta + 28, setSize);
+        buffer.putInt(meta + 32, 0);
+        buffer.putInt(meta + 36, quantization);
+        count = index + 1;
+        return index;
+    }
+
+    /**
+     * Flush the appended records, then publish them in the header
+     */
+    public synchronized void commit() {
+        int current = count;
+        if (current == committedCount) {
+            return;
+        }
+        buffer.force(metadataOffset(committedCount), (current - committedCount) * METADATA_STRIDE);
+        buffer.force(vectorRegion + committedCount * vectorStride, (current - committedCount) * vectorStride);
+        committedCount = current;
+        writeHeader();
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    public UUID documentId(int index) {
+        int meta = metadataOffset(index);
+        return new UUID(buffer.getLong(meta), buffer.getLong(meta + 8));
+    }
+
+    public long version(int index) {
+        return buffer.getLong(metadataOffset(index) + 16);
+    }
+
+    public int chunkIndex(int index) {
+        return buffer.getInt(metadataOffset(index) + 24);
+    }
+
+    public int setSize(int index) {
+        return buffer.getInt(metadataOffset(index) + 28);
+    }
+
+    public int quantization(int index) {
+        return buffer.getInt(metadataOffset(index) + 36);
+    }
+
+    public boolean isDeleted(int index) {
+        return (buffer.getInt(metadataOffset(index) + 32) & FLAG_DELETED) != 0;
+    }
+
+    /**
+     * Flag a record as deleted; flags are the only in-place writes. The flag becomes
+     * durable with the next {@link #flushMetadata(int, int)} covering the record.
+     */
+    public void markDeleted(int index) {
+        int flags = metadataOffset(index) + 32;
+        buffer.putInt(flags, buffer.getInt(flags) | FLAG_DELETED);
+    }
+
+    /**
+     * Flush the metadata of the records from the first index up to, excluding, the second
+     */
+    public void flushMetadata(int fromIndex, int toIndex) {
+        if (toIndex > fromIndex) {
+            buffer.force(metadataOffset(fromIndex), (toIndex - fromIndex) * METADATA_STRIDE);
+        }
+    }
+
+    public float dot(float[] query, int index) {
+        int offset = vectorRegion + index * vectorStride;
+        return encoding == VectorEncoding.FLOAT32
+                ? VectorMath.dotFloat32(query, buffer, offset)
+                : VectorMath.dotFloat16(query, buffer, offset);
+    }
+
+    public float[] vector(int index) {
+        int offset = vectorRegion + index * vectorStride;
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = encoding == VectorEncoding.FLOAT32
+                    ? buffer.getFloat(offset + i * 4)
+                    : Float16.toFloat(buffer.getShort(offset + i * 2));
+        }
+        return vector;
+    }
+
+    /**
+     * Closes the file; the mapping is released once the segment is garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int metadataOffset(int index) {
+        return HEADER_SIZE + index * METADATA_STRIDE;
+    }
+
+    // Write the next generation into the slot not holding the current one
+    private void writeHeader() {
+        generation++;
+        int base = (int) (generation % 2) * HEADER_SLOT_SIZE;
+        buffer.putInt(base, MAGIC);
+        buffer.putInt(base + 4, FORMAT_VERSION);
+        buffer.putLong(base + 8, generation);
+        buffer.putInt(base + 16, dimension);
+        buffer.putInt(base + 20, encoding.ordinal());
+        buffer.putInt(base + 24, capacity);
+        buffer.putInt(base + 28, committedCount);
+        buffer.putLong(base + 32, checksum(buffer, base));
+    }
+
+    // The valid header slot with the highest generation, or -1
+    private static int validSlot(MappedByteBuffer header) {
+        int best = -1;
+        long bestGeneration = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            int base = slot * HEADER_SLOT_SIZE;
+            if (header.getInt(base) == MAGIC && header.getInt(base + 4) == FORMAT_VERSION
+                    && header.getLong(base + 32) == checksum(header, base)
+                    && header.getLong(base + 8) > bestGeneration) {
+                best = slot;
+                bestGeneration = header.getLong(base + 8);
+            }
+        }
+        return best;
+    }
+
+    private static long checksum(MappedByteBuffer buffer, int base) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(base, 32));
+        return crc.getValue();
+    }
+
+    private static long fileSize(int dimension, VectorEncoding encoding, int capacity) {
+        return HEADER_SIZE + (long) capacity * (METADATA_STRIDE + (long) dimension * encoding.getBytesPerDimension());
+    }
+}
@@ -0,0 +1,31 @@
+package com.docloader.vector;
+
+/**
+ * Read access to stored unit vectors by ordinal, as used by the search structures
+ */
+public interface VectorStorage {
+
+    int dimension();
+
+    /**
+     * @return the number of stored vectors; ordinals range from 0 to size - 1
+     */
+    int size();
+
+    /**
+     * @return the dot product of the query with the stored vector
+     */
+    float dot(float[] query, int ordinal);
+
+    /**
+     * @return a decoded copy of the stored vector
+     */
+    float[] vector(int ordinal);
+
+    /**
+     * @return a scorer computing the exact dot product of the unit query with stored vectors
+     */
+    default VectorScorer scorer(float[] unitQuery) {
+        return ordinal -> dot(unitQuery, ordinal);
+    }
+}
@@ -0,0 +1,247 @@
+package com.docloader.service;
+
+import com.docloader.dto.DirectUploadRequest;
+import com.docloader.dto.DirectUploadResponse;
+import com.docloader.model.DirectUpload;
+import com.docloader.model.Document;
+import com.docloader.model.S3BucketConfig;
+import com.docloader.model.UploadSession;
+import com.docloader.repository.DirectUploadRepository;
+import com.docloader.service.impl.S3ServiceImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MinIOContainer;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Direct uploads against MinIO: the pre-signed URLs {@link DirectUploadService} hands out
+ * are used as a browser would, then the upload is completed and registered as a Document.
+ * The uploads and documents are kept in memory. Skipped without Docker.
+ */
+class DirectUploadServiceIntegrationTest {
+
+    private static final String BUCKET = "direct-uploads";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static MinIOContainer minio;
+    private static S3ServiceImpl s3Service;
+    private static S3BucketConfig config;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final Map<UUID, DirectUpload> uploads = new HashMap<>();
+    private final Map<UUID, Document> documents = new HashMap<>();
+    private final UUID tenantId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+    private DirectUploadService service;
+
+    @BeforeAll
+    static void startMinio() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker unavailable");
+        minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+        minio.start();
+
+        config = new S3BucketConfig();
+        config.setId(UUID.randomUUID());
+        config.setName("minio");
+        config.setBucketName(BUCKET);
+        config.setEndpoint(minio.getS3URL());
+        config.setRegion("us-east-1");
+        config.setAccessKey(minio.getUserName());
+        config.setSecretKey(minio.getPassword());
+        config.setPathStyleAccess(true);
+
+        // Only the clients of bucket configurations are used
+        s3Service = new S3ServiceImpl(BUCKET, null, null);
+        s3Service.createBucketIfNotExists(config);
+    }
+
+    @AfterAll
+    static void stopMinio() {
+        if (minio != null) {
+            minio.stop();
+        }
+    }
+
+    @BeforeEach
+    void createService() {
+        DirectUploadRepository repository = mock(DirectUploadRepository.class);
+        when(repository.save(any(DirectUpload.class))).thenAnswer(invocation -> {
+            DirectUpload upload = invocation.getArgument(0);
+            if (upload.getId() == null) {
+                upload.setId(UUID.randomUUID());
+            }
+            uploads.put(upload.getId(), upload);
+            return upload;
+        });
+        when(repository.findById(any(UUID.class)))
+                .thenAnswer(invocation -> Optional.ofNullable(uploads.get(invocation.<UUID>getArgument(0))));
+
+        S3BucketConfigService bucketConfigService = mock(S3BucketConfigService.class);
+        when(bucketConfigService.getDefaultBucketConfig(tenantId)).thenReturn(Optional.of(config));
+        when(bucketConfigService.getBucketConfigById(eq(tenantId), eq(config.getId()))).thenReturn(Optional.of(config));
+
+        DocumentService documentService = mock(DocumentService.class);
+        when(documentService.saveDocument(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(UUID.randomUUID());
+            documents.put(document.getId(), document);
+            return document;
+        });
+
+        service = new DirectUploadService(repository, bucketConfigService, s3Service, documentService);
+        ReflectionTestUtils.setField(service, "multipartThreshold", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(service, "defaultPartSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(service, "maxFileSize", DataSize.ofGigabytes(1));
+        ReflectionTestUtils.setField(service, "urlTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(service, "uploadTtl", Duration.ofHours(1));
+    }
+
+    @Test
+    void presignedPutIsRegisteredAsDocument() throws Exception {
+        byte[] content = content(64 * 1024);
+        DirectUploadResponse response = service.createUpload(request("report.pdf", content), userId, tenantId);
+        assertThat(response.getPartUrls()).isNull();
+
+        HttpRequest.Builder put = HttpRequest.newBuilder(URI.create(response.getUploadUrl()))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(content));
+        response.getRequiredHeaders().forEach(put::header);
+        assertThat(http.send(put.build(), HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+
+        Document document = service.completeUpload(response.getId(), userId);
+
+        assertRegistered(document, response.getId(), content);
+    }
+
+    @Test
+    void bodyNotMatchingSignedMd5IsRejected() throws Exception {
+        byte[] content = content(1024);
+        DirectUploadResponse response = service.createUpload(request("report.pdf", content), userId, tenantId);
+
+        byte[] tampered = content.clone();
+        tampered[0]++;
+        HttpRequest.Builder put = HttpRequest.newBuilder(URI.create(response.getUploadUrl()))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(tampered));
+        response.getRequiredHeaders().forEach(put::header);
+        assertThat(http.send(put.build(), HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(400);
+
+        assertThatThrownBy(() -> service.completeUpload(response.getId(), userId))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.CONFLICT);
+        assertThat(documents).isEmpty();
+    }
+
+    @Test
+    void multipartUploadIsCompletedAndRegisteredAsDocument() throws Exception {
+        byte[] content = content(2 * PART_SIZE + 1000);
+        DirectUploadResponse response = service.createUpload(request("archive.zip", content), userId, tenantId);
+        assertThat(response.getPartUrls()).hasSize(3);
+        assertThat(response.getPartSize()).isEqualTo((long) PART_SIZE);
+
+        // Parts may arrive in any order
+        for (int part = 3; part >= 1; part--) {
+            uploadPart(response, part, content);
+        }
+
+        Document document = service.completeUpload(response.getId(), userId);
+
+        assertRegistered(document, response.getId(), content);
+    }
+
+    @Test
+    void incompleteMultipartUploadIsNotRegistered() throws Exception {
+        byte[] content = content(PART_SIZE + 1000);
+        DirectUploadResponse response = service.createUpload(request("archive.zip", content), userId, tenantId);
+        uploadPart(response, 1, content);
+
+        assertThatThrownBy(() -> service.completeUpload(response.getId(), userId))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.CONFLICT);
+        assertThat(uploads.get(response.getId()).getStatus()).isEqualTo(UploadSession.UploadStatus.ACTIVE);
+        assertThat(documents).isEmpty();
+
+        // The rest of the parts can still be sent
+        uploadPart(response, 2, content);
+        assertRegistered(service.completeUpload(response.getId(), userId), response.getId(), content);
+    }
+
+    private void uploadPart(DirectUploadResponse response, int partNumber, byte[] content) throws Exception {
+        int from = (partNumber - 1) * PART_SIZE;
+        byte[] part = Arrays.copyOfRange(content, from, Math.min(content.length, from + PART_SIZE));
+        HttpRequest put = HttpRequest.newBuilder(URI.create(response.getPartUrls().get(partNumber - 1)))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(part))
+                .build();
+        assertThat(http.send(put, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+    }
+
+    /**
+     * The document points at the object holding the content, and the upload at the document
+     */
+    private void assertRegistered(Document document, UUID uploadId, byte[] content) throws Exception {
+        DirectUpload upload = uploads.get(uploadId);
+        assertThat(upload.getStatus()).isEqualTo(UploadSession.UploadStatus.COMPLETED);
+        assertThat(upload.getDocumentId()).isEqualTo(document.getId());
+        assertThat(documents).containsOnlyKeys(document.getId());
+
+        assertThat(document.getFilePath()).isEqualTo(upload.getObjectKey());
+        assertThat(document.getFileSize()).isEqualTo((long) content.length);
+        assertThat(document.getMd5Hash()).isEqualTo(md5(content));
+        assertThat(document.getS3BucketConfigId()).isEqualTo(config.getId());
+        assertThat(document.isBucketObjectOwned()).isTrue();
+        assertThat(document.getUploadedBy()).isEqualTo(userId);
+        assertThat(document.getStatus()).isEqualTo(Document.DocumentStatus.PENDING);
+
+        try (InputStream stored = s3Service.downloadFile(config, upload.getObjectKey())) {
+            assertThat(stored.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    private static DirectUploadRequest request(String filename, byte[] content) throws Exception {
+        DirectUploadRequest request = new DirectUploadRequest();
+        request.setFilename(filename);
+        request.setContentType("application/octet-stream");
+        request.setFileSize((long) content.length);
+        request.setMd5Hash(md5(content));
+        return request;
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static String md5(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+    }
+}
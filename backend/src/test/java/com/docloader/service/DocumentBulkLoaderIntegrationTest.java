@@ -0,0 +1,152 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import com.docloader.model.DocumentJob;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * {@link DocumentBulkLoader} against PostgreSQL: both the JDBC batch and the COPY path
+ * register all documents or none of them. Skipped without Docker.
+ */
+class DocumentBulkLoaderIntegrationTest {
+
+    private static final DockerImageName IMAGE = DockerImageName.parse("postgres:16-alpine");
+    private static final int BATCH_SIZE = 4;
+
+    private static PostgreSQLContainer<?> postgres;
+    private static PGSimpleDataSource dataSource;
+
+    private DocumentBulkLoader loader;
+
+    @BeforeAll
+    static void startPostgres() throws SQLException {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker unavailable");
+        postgres = new PostgreSQLContainer<>(IMAGE);
+        postgres.start();
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+
+        // The columns of app.documents the loader writes, with the constraint it merges on
+        execute("CREATE SCHEMA app");
+        execute("CREATE TABLE app.documents ("
+                + "id uuid PRIMARY KEY, job_id uuid, filename varchar(255) NOT NULL, file_path varchar(1024) NOT NULL, "
+                + "file_size bigint, content_type varchar(255), uploaded_by uuid, status varchar(20), "
+                + "md5_hash varchar(64) NOT NULL, s3_bucket_config_id uuid, bucket_etag varchar(255), "
+                + "created_at timestamp with time zone NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "UNIQUE (file_path, md5_hash))");
+    }
+
+    @AfterAll
+    static void stopPostgres() {
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @BeforeEach
+    void createLoader() throws SQLException {
+        execute("TRUNCATE app.documents");
+        loader = new DocumentBulkLoader(dataSource);
+        ReflectionTestUtils.setField(loader, "jdbcBatchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(loader, "copyThreshold", 100);
+    }
+
+    @Test
+    void batchedInsertRegistersAndAttachesDocuments() throws SQLException {
+        DocumentJob first = job();
+        List<Document> documents = documents(first, 10);
+        assertThat(loader.register(documents)).isEqualTo(10);
+        assertThat(count("job_id = '" + first.getId() + "'")).isEqualTo(10);
+
+        // The same objects registered again are attached to the new job instead of inserted
+        DocumentJob second = job();
+        List<Document> again = documents(second, 10);
+        assertThat(loader.register(again)).isEqualTo(10);
+        assertThat(count("true")).isEqualTo(10);
+        assertThat(count("job_id = '" + second.getId() + "'")).isEqualTo(10);
+    }
+
+    @Test
+    void failureInSecondBatchInsertsNothing() throws SQLException {
+        List<Document> documents = documents(job(), 3 * BATCH_SIZE);
+        // The first batch is valid; the second one violates the NOT NULL filename
+        documents.get(BATCH_SIZE + 1).setFilename(null);
+
+        assertThatThrownBy(() -> loader.register(documents)).isInstanceOf(IllegalStateException.class);
+        assertThat(count("true")).isZero();
+    }
+
+    @Test
+    void failureInCopyInsertsNothing() throws SQLException {
+        ReflectionTestUtils.setField(loader, "copyThreshold", 1);
+        List<Document> documents = documents(job(), 3 * BATCH_SIZE);
+        documents.get(BATCH_SIZE + 1).setFilename(null);
+
+        assertThatThrownBy(() -> loader.register(documents)).isInstanceOf(IllegalStateException.class);
+        assertThat(count("true")).isZero();
+
+        documents.get(BATCH_SIZE + 1).setFilename("fixed.txt");
+        assertThat(loader.register(documents)).isEqualTo(3 * BATCH_SIZE);
+        assertThat(count("true")).isEqualTo(3 * BATCH_SIZE);
+    }
+
+    private static DocumentJob job() {
+        DocumentJob job = new DocumentJob();
+        job.setId(UUID.randomUUID());
+        return job;
+    }
+
+    private static List<Document> documents(DocumentJob job, int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Document document = new Document();
+            document.setJob(job);
+            document.setFilename("file-" + i + ".txt");
+            document.setFilePath("bucket/prefix/file-" + i + ".txt");
+            document.setFileSize(1024L * i);
+            document.setContentType("text/plain");
+            document.setUploadedBy(UUID.randomUUID());
+            document.setStatus(Document.DocumentStatus.PENDING);
+            document.setMd5Hash(String.format("%032x", i));
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static long count(String condition) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT count(*) FROM app.documents WHERE " + condition)) {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
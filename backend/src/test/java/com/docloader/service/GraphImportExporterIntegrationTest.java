@@ -0,0 +1,344 @@
+package com.docloader.service;
+
+import com.docloader.model.Document;
+import com.docloader.service.impl.Neo4jServiceImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.Neo4jContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The files of {@link GraphImportExporter} hold the graph {@link Neo4jServiceImpl} builds
+ * when the same documents are processed: documents are read from PostgreSQL and exported,
+ * and written to Neo4j the way DocumentProcessingService writes them, then the nodes and
+ * relationships of both are compared. Skipped without Docker.
+ */
+class GraphImportExporterIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:16-alpine");
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 3, 1, 9, 30, 15);
+    private static final LocalDateTime PROCESSED_AT = LocalDateTime.of(2026, 3, 1, 9, 45, 0);
+
+    private static PostgreSQLContainer<?> postgres;
+    private static PGSimpleDataSource dataSource;
+    private static Neo4jContainer<?> neo4j;
+    private static Driver driver;
+
+    private final List<Row> rows = new ArrayList<>();
+    private UUID tenantId;
+    private UUID jobId;
+
+    @BeforeAll
+    static void startContainers() throws SQLException {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker unavailable");
+        postgres = new PostgreSQLContainer<>(POSTGRES_IMAGE);
+        postgres.start();
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+
+        // The columns the export reads
+        execute("CREATE SCHEMA app");
+        execute("CREATE TABLE app.users (id uuid PRIMARY KEY, tenant_id uuid)");
+        execute("CREATE TABLE app.document_jobs (id uuid PRIMARY KEY, created_by uuid)");
+        execute("CREATE TABLE app.documents (id uuid PRIMARY KEY, job_id uuid, filename varchar(255) NOT NULL, "
+                + "file_path varchar(1024) NOT NULL, file_size bigint, content_type varchar(255), "
+                + "md5_hash varchar(64) NOT NULL, created_at timestamp, processed_at timestamp, status varchar(20), "
+                + "canonical_document_id uuid, canonical_similarity double precision)");
+
+        neo4j = new Neo4jContainer<>("neo4j:5.15").withoutAuthentication();
+        neo4j.start();
+        driver = GraphDatabase.driver(neo4j.getBoltUrl(), AuthTokens.none());
+    }
+
+    @AfterAll
+    static void stopContainers() {
+        if (driver != null) {
+            driver.close();
+        }
+        if (neo4j != null) {
+            neo4j.stop();
+        }
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @Test
+    void exportMatchesTransactionalGraph(@TempDir Path directory) throws Exception {
+        createJob();
+        Row canonical = add("canonical.pdf", "PROCESSED", null, null, true);
+        add("kept-copy.pdf", "PROCESSED", canonical, 0.93, true);
+        add("skipped-copy.pdf", "SKIPPED", canonical, 0.97, true);
+        add("failed.pdf", "FAILED", null, null, true);
+        add("pending.pdf", "PENDING", null, null, true);
+        add("no-job.txt", "PROCESSED", null, null, false);
+        insertRows();
+
+        writeTransactionally();
+
+        GraphImportExporter exporter = new GraphImportExporter(dataSource, mock(TenantService.class),
+                new SimilarityGraphService(mock(TenantService.class)));
+        ReflectionTestUtils.setField(exporter, "partitions", 2);
+        ReflectionTestUtils.setField(exporter, "rowsPerFile", 2L);
+        ReflectionTestUtils.setField(exporter, "fetchSize", 100);
+        exporter.export(directory);
+
+        Map<String, Map<String, String>> exportedNodes = new HashMap<>();
+        for (Map<String, String> row : readGroup(directory, "documents")) {
+            exportedNodes.put(row.remove("id"), row);
+        }
+        Set<String> exportedRelationships = new HashSet<>();
+        for (Map<String, String> row : readGroup(directory, "near-duplicates")) {
+            exportedRelationships.add(relationship(NearDuplicateService.RELATIONSHIP_TYPE,
+                    row.remove(":START_ID"), row.remove(":END_ID"), row));
+        }
+
+        assertThat(labels()).containsExactly("Document");
+        assertThat(exportedNodes).isEqualTo(storedNodes());
+        assertThat(exportedRelationships).isEqualTo(storedRelationships()).hasSize(2);
+        // Failed and pending documents are in neither graph
+        assertThat(exportedNodes).hasSize(4);
+        assertThat(Files.readString(directory.resolve("import-command.txt")))
+                .contains("--relationships=" + NearDuplicateService.RELATIONSHIP_TYPE + "=")
+                .doesNotContain("Chunk", "PART_OF");
+    }
+
+    /**
+     * Writes the documents as DocumentProcessingService does: the near-duplicate link when
+     * it is found, the document once its vectors are stored
+     */
+    private void writeTransactionally() throws InterruptedException {
+        Neo4jServiceImpl service = new Neo4jServiceImpl(driver, 1000, List.of());
+        ReflectionTestUtils.setField(service, "database", "neo4j");
+        ReflectionTestUtils.setField(service, "batchSize", 1000);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        ReflectionTestUtils.setField(service, "retryBackoffMillis", 10L);
+        ReflectionTestUtils.setField(service, "adjacencyMaxChanges", 100000);
+        ReflectionTestUtils.setField(service, "adjacencyMaxAgeMillis", 3600000L);
+        service.createConstraints();
+        try {
+            for (Row row : rows) {
+                if (row.canonical != null) {
+                    service.createRelationship(row.document.getId(), row.canonical.document.getId(),
+                            NearDuplicateService.RELATIONSHIP_TYPE, Map.of("score", row.similarity));
+                }
+                if ("PROCESSED".equals(row.status)) {
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("tenantId", row.withJob ? tenantId : null);
+                    metadata.put("jobId", row.withJob ? jobId : null);
+                    metadata.put("indexedAt", PROCESSED_AT);
+                    service.storeDocument(row.document, metadata);
+                }
+            }
+            service.flush();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private void createJob() throws SQLException {
+        tenantId = UUID.randomUUID();
+        jobId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        execute("INSERT INTO app.users VALUES ('" + userId + "', '" + tenantId + "')");
+        execute("INSERT INTO app.document_jobs VALUES ('" + jobId + "', '" + userId + "')");
+    }
+
+    private Row add(String filename, String status, Row canonical, Double similarity, boolean withJob) {
+        Document document = new Document();
+        document.setId(UUID.randomUUID());
+        document.setFilename(filename);
+        document.setFilePath("uploads/" + filename);
+        document.setFileSize(1024L * (rows.size() + 1));
+        document.setContentType("application/pdf");
+        document.setMd5Hash(String.format("%032x", rows.size()));
+        document.setCreatedAt(CREATED_AT);
+        Row row = new Row(document, status, canonical, similarity, withJob);
+        rows.add(row);
+        return row;
+    }
+
+    private void insertRows() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO app.documents VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Row row : rows) {
+                Document document = row.document;
+                statement.setObject(1, document.getId());
+                statement.setObject(2, row.withJob ? jobId : null);
+                statement.setString(3, document.getFilename());
+                statement.setString(4, document.getFilePath());
+                statement.setLong(5, document.getFileSize());
+                statement.setString(6, document.getContentType());
+                statement.setString(7, document.getMd5Hash());
+                statement.setObject(8, CREATED_AT);
+                statement.setObject(9, "PENDING".equals(row.status) ? null : PROCESSED_AT);
+                statement.setString(10, row.status);
+                statement.setObject(11, row.canonical != null ? row.canonical.document.getId() : null);
+                statement.setObject(12, row.similarity, Types.DOUBLE);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static Map<String, Map<String, String>> storedNodes() {
+        Map<String, Map<String, String>> nodes = new HashMap<>();
+        try (Session session = driver.session(SessionConfig.forDatabase("neo4j"))) {
+            session.run("MATCH (d:Document) RETURN d.id AS id, properties(d) AS properties").forEachRemaining(record -> {
+                Map<String, String> properties = strings(record.get("properties").asMap());
+                properties.remove("id");
+                nodes.put(record.get("id").asString(), properties);
+            });
+        }
+        return nodes;
+    }
+
+    private static Set<String> storedRelationships() {
+        Set<String> relationships = new HashSet<>();
+        try (Session session = driver.session(SessionConfig.forDatabase("neo4j"))) {
+            session.run("MATCH (s:Document)-[r]->(t:Document) "
+                            + "RETURN type(r) AS type, s.id AS source, t.id AS target, properties(r) AS properties")
+                    .forEachRemaining(record -> relationships.add(relationship(record.get("type").asString(),
+                            record.get("source").asString(), record.get("target").asString(),
+                            strings(record.get("properties").asMap()))));
+        }
+        return relationships;
+    }
+
+    private static List<String> labels() {
+        try (Session session = driver.session(SessionConfig.forDatabase("neo4j"))) {
+            return session.run("MATCH (n) UNWIND labels(n) AS label RETURN DISTINCT label")
+                    .list(record -> record.get("label").asString());
+        }
+    }
+
+    private static String relationship(String type, String source, String target, Map<String, String> properties) {
+        return type + " " + source + " -> " + target + " " + new TreeMap<>(properties);
+    }
+
+    private static Map<String, String> strings(Map<String, Object> values) {
+        Map<String, String> strings = new HashMap<>();
+        values.forEach((key, value) -> strings.put(key, value.toString()));
+        return strings;
+    }
+
+    /**
+     * Rows of all parts of a group keyed by the property names of its header, without
+     * the empty fields the importer leaves out
+     */
+    private static List<Map<String, String>> readGroup(Path directory, String name) throws IOException {
+        List<String> header = new ArrayList<>();
+        for (String column : parseLine(Files.readString(directory.resolve(name + ".header.csv")).trim())) {
+            // "fileSize:long" is the property fileSize, "id:ID(Document)" the property id
+            header.add(column.startsWith(":") ? column.replaceAll("\\(.*\\)", "") : column.substring(0, column.indexOf(':') < 0
+                    ? column.length() : column.indexOf(':')));
+        }
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        List<Path> parts;
+        try (Stream<Path> files = Files.list(directory)) {
+            parts = files.filter(file -> file.getFileName().toString().matches(name + "-[0-9]+-[0-9]+\\.csv\\.gz"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path part : parts) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(part)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    List<String> fields = parseLine(line);
+                    Map<String, String> row = new HashMap<>();
+                    for (int i = 0; i < fields.size(); i++) {
+                        if (fields.get(i) != null) {
+                            row.put(header.get(i), fields.get(i));
+                        }
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Fields of one line as ImportCsvWriter writes them; empty unquoted fields are null
+    private static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+                field.setLength(0);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+        return fields;
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private record Row(Document document, String status, Row canonical, Double similarity, boolean withJob) {
+    }
+}
@@ -0,0 +1,206 @@
+package com.docloader.service.impl;
+
+import com.docloader.model.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.Neo4jContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Write batching and retries of {@link Neo4jServiceImpl} against Neo4j 5. Write
+ * transactions go through sessions that count them and can be made to fail before
+ * reaching the database. Skipped without Docker.
+ */
+class Neo4jServiceImplIntegrationTest {
+
+    private static Neo4jContainer<?> neo4j;
+    private static Driver driver;
+
+    // Write transactions started, and how many of the next ones fail
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private Neo4jServiceImpl service;
+
+    @BeforeAll
+    static void startNeo4j() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker unavailable");
+        neo4j = new Neo4jContainer<>("neo4j:5.15").withoutAuthentication();
+        neo4j.start();
+        driver = GraphDatabase.driver(neo4j.getBoltUrl(), AuthTokens.none());
+    }
+
+    @AfterAll
+    static void stopNeo4j() {
+        if (driver != null) {
+            driver.close();
+        }
+        if (neo4j != null) {
+            neo4j.stop();
+        }
+    }
+
+    @AfterEach
+    void clearGraph() throws InterruptedException {
+        if (service != null) {
+            service.shutdown();
+        }
+        query("MATCH (n) DETACH DELETE n");
+    }
+
+    @Test
+    void writesBufferedRowsInBatches() {
+        service = service(1000, 1000);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            service.storeDocument(document(id, "doc-" + i), Map.of("tenantId", "t1"));
+        }
+        // Stored again before the flush, the latest properties win and the row is not duplicated
+        service.storeDocument(document(ids.get(0), "renamed"), null);
+        for (int i = 1; i < 16; i++) {
+            service.createRelationship(ids.get(0), ids.get(i), "SIMILAR_TO", Map.of("score", 1.0 - i / 100.0));
+        }
+        UUID unstored = UUID.randomUUID();
+        service.createRelationship(ids.get(1), unstored, "SIMILAR_TO", null);
+        assertThat(service.documentExists(ids.get(3))).isTrue();
+        assertThat(writes.get()).isZero();
+
+        ReflectionTestUtils.setField(service, "batchSize", 10);
+        service.flush();
+
+        // 25 documents and 16 relationships at 10 rows per transaction
+        assertThat(writes.get()).isEqualTo(5);
+        assertThat(count("MATCH (d:Document) RETURN count(d)")).isEqualTo(26);
+        assertThat(count("MATCH (:Document)-[r:SIMILAR_TO]->(:Document) RETURN count(r)")).isEqualTo(16);
+        assertThat(query("MATCH (d:Document {id: '" + ids.get(0) + "'}) RETURN d.filename").get(0)).isEqualTo("renamed");
+        assertThat(service.documentExists(unstored)).isTrue();
+        assertThat(service.findRelatedDocuments(ids.get(0), "SIMILAR_TO", 3))
+                .containsExactly(ids.get(1), ids.get(2), ids.get(3));
+    }
+
+    @Test
+    void retriesFailedBatch() {
+        service = service(10, 1000);
+        UUID id = UUID.randomUUID();
+        service.storeDocument(document(id, "retried"), null);
+        failures.set(2);
+
+        service.flush();
+
+        assertThat(writes.get()).isEqualTo(3);
+        assertThat(count("MATCH (d:Document) RETURN count(d)")).isEqualTo(1);
+    }
+
+    @Test
+    void dropsBatchAfterLastAttemptAndFreesItsRoom() {
+        service = service(10, 5);
+        for (int i = 0; i < 5; i++) {
+            service.storeDocument(document(UUID.randomUUID(), "dropped-" + i), null);
+        }
+        failures.set(3);
+        service.flush();
+        assertThat(writes.get()).isEqualTo(3);
+        assertThat(count("MATCH (d:Document) RETURN count(d)")).isZero();
+
+        // The buffer holds 5 rows; storing more would block if the dropped rows kept their room
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 5; i++) {
+                service.storeDocument(document(UUID.randomUUID(), "kept-" + i), null);
+            }
+        });
+        service.flush();
+        assertThat(count("MATCH (d:Document) RETURN count(d)")).isEqualTo(5);
+    }
+
+    @Test
+    void removingDocumentDropsItsPendingRows() {
+        service = service(1000, 1000);
+        UUID removed = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        service.storeDocument(document(removed, "removed"), null);
+        service.storeDocument(document(kept, "kept"), null);
+        service.createRelationship(removed, kept, "SIMILAR_TO", Map.of("score", 0.9));
+
+        service.removeDocument(removed);
+        service.flush();
+
+        assertThat(service.documentExists(removed)).isFalse();
+        assertThat(service.documentExists(kept)).isTrue();
+        assertThat(count("MATCH ()-[r]->() RETURN count(r)")).isZero();
+    }
+
+    /**
+     * A service whose sessions count write transactions and fail while failures is positive
+     */
+    private Neo4jServiceImpl service(int batchSize, int maxPendingRows) {
+        Driver counting = mock(Driver.class, delegatesTo(driver));
+        doAnswer(invocation -> {
+            Session session = driver.session(invocation.<SessionConfig>getArgument(0));
+            Session wrapped = mock(Session.class, delegatesTo(session));
+            doAnswer(write -> {
+                writes.incrementAndGet();
+                if (failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                    throw new ServiceUnavailableException("Connection lost");
+                }
+                session.executeWriteWithoutResult(write.getArgument(0));
+                return null;
+            }).when(wrapped).executeWriteWithoutResult(any());
+            return wrapped;
+        }).when(counting).session(any(SessionConfig.class));
+
+        Neo4jServiceImpl created = new Neo4jServiceImpl(counting, maxPendingRows, List.of("SIMILAR_TO"));
+        ReflectionTestUtils.setField(created, "database", "neo4j");
+        ReflectionTestUtils.setField(created, "batchSize", batchSize);
+        ReflectionTestUtils.setField(created, "maxAttempts", 3);
+        ReflectionTestUtils.setField(created, "retryBackoffMillis", 10L);
+        ReflectionTestUtils.setField(created, "adjacencyMaxChanges", 100000);
+        ReflectionTestUtils.setField(created, "adjacencyMaxAgeMillis", 3600000L);
+        created.createConstraints();
+        writes.set(0);
+        return created;
+    }
+
+    private static Document document(UUID id, String filename) {
+        Document document = new Document();
+        document.setId(id);
+        document.setFilename(filename);
+        document.setFilePath("/data/" + filename);
+        document.setMd5Hash(id.toString().replace("-", ""));
+        return document;
+    }
+
+    private static long count(String cypher) {
+        return ((Number) query(cypher).get(0)).longValue();
+    }
+
+    private static List<Object> query(String cypher) {
+        try (Session session = driver.session(SessionConfig.forDatabase("neo4j"))) {
+            return session.run(cypher).list(record -> record.get(0).asObject());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.docloader.service.impl;
+
+import com.docloader.model.Document;
+import com.docloader.model.DocumentJob;
+import com.docloader.service.DocumentVectors;
+import com.docloader.vector.ChunkHit;
+import com.docloader.vector.DocumentScoring;
+import com.docloader.vector.VectorMath;
+import com.docloader.vector.VectorRecord;
+import com.docloader.vector.VectorSearchFilter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * {@link PgVectorStoreService} against PostgreSQL with pgvector 0.8: binary COPY loads,
+ * filtered searches and document searches over documents with many chunks. Skipped
+ * without Docker.
+ */
+class PgVectorStoreServiceIntegrationTest {
+
+    private static final DockerImageName IMAGE = DockerImageName.parse("pgvector/pgvector:0.8.0-pg16")
+            .asCompatibleSubstituteFor("postgres");
+    private static final int DIMENSION = 16;
+
+    private static PostgreSQLContainer<?> postgres;
+    private static PGSimpleDataSource dataSource;
+
+    private final Random random = new Random(42);
+    private PgVectorStoreService service;
+    private UUID tenantId;
+
+    @BeforeAll
+    static void startPostgres() throws SQLException {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker unavailable");
+        postgres = new PostgreSQLContainer<>(IMAGE);
+        postgres.start();
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+        execute("CREATE EXTENSION IF NOT EXISTS vector");
+    }
+
+    @AfterAll
+    static void stopPostgres() {
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @BeforeEach
+    void createService() throws SQLException {
+        // Each test writes to a tenant schema of its own
+        tenantId = UUID.randomUUID();
+        execute("CREATE SCHEMA tenant_" + tenantId.toString().replace("-", "_"));
+        service = new PgVectorStoreService(dataSource);
+        ReflectionTestUtils.setField(service, "indexType", PgVectorStoreService.IndexType.HNSW);
+        ReflectionTestUtils.setField(service, "m", 16);
+        ReflectionTestUtils.setField(service, "efConstruction", 64);
+        ReflectionTestUtils.setField(service, "efSearch", 40);
+        ReflectionTestUtils.setField(service, "ivfflatLists", 100);
+        ReflectionTestUtils.setField(service, "ivfflatProbes", 10);
+        ReflectionTestUtils.setField(service, "iterativeScan", "relaxed_order");
+        ReflectionTestUtils.setField(service, "documentScoring", DocumentScoring.MAX);
+        ReflectionTestUtils.setField(service, "documentScoringChunks", 3);
+    }
+
+    @Test
+    void copyLoadsAndReplacesDocumentVectors() throws SQLException {
+        DocumentJob job = job();
+        List<DocumentVectors> batch = new ArrayList<>();
+        for (int d = 0; d < 3; d++) {
+            batch.add(vectors(document(job, "text/plain", null), 4, null, 1f));
+        }
+        assertThat(service.replaceDocumentVectors(tenantId, batch)).isEmpty();
+        assertThat(count("true")).isEqualTo(12);
+        assertThat(count("job_id = '" + job.getId() + "' AND content_type = 'text/plain'")).isEqualTo(12);
+
+        for (DocumentVectors item : batch) {
+            for (VectorRecord record : item.getRecords()) {
+                List<ChunkHit> hits = service.findSimilarChunks(tenantId, record.getVector(), 1, null);
+                assertThat(hits).hasSize(1);
+                assertThat(hits.get(0).getDocumentId()).isEqualTo(item.getDocument().getId());
+                assertThat(hits.get(0).getChunkIndex()).isEqualTo(record.getChunkIndex());
+                assertThat(hits.get(0).getScore()).isCloseTo(1f, within(1e-4f));
+            }
+        }
+
+        // Replacing a document deletes the rows of its old chunks
+        DocumentVectors first = batch.get(0);
+        DocumentVectors replacement = vectors(first.getDocument(), 2, null, 1f);
+        service.replaceDocumentVectors(tenantId, first.getDocument(), replacement.getRecords(), null);
+        assertThat(count("true")).isEqualTo(10);
+        assertThat(count("document_id = '" + first.getDocument().getId() + "'")).isEqualTo(2);
+        List<ChunkHit> hits = service.findSimilarChunks(tenantId, replacement.getRecords().get(1).getVector(), 1, null);
+        assertThat(hits.get(0).getDocumentId()).isEqualTo(first.getDocument().getId());
+        assertThat(service.findSimilarChunks(tenantId, first.getRecords().get(3).getVector(), 10, null))
+                .noneMatch(hit -> hit.getDocumentId().equals(first.getDocument().getId()) && hit.getChunkIndex() == 3);
+    }
+
+    @Test
+    void filteredSearchesReturnOnlyMatchingDocuments() {
+        DocumentJob wanted = job();
+        DocumentJob other = job();
+        UUID uploader = UUID.randomUUID();
+        float[] query = unit();
+        Set<String> wantedIds = new HashSet<>();
+        List<DocumentVectors> batch = new ArrayList<>();
+        for (int d = 0; d < 300; d++) {
+            // One document in ten matches the filter; the others are nearer to the query
+            boolean matches = d % 10 == 0;
+            Document document = document(matches ? wanted : other, "application/pdf", matches ? uploader : null);
+            batch.add(vectors(document, 2, query, matches ? 1f : 0.3f));
+            if (matches) {
+                wantedIds.add(document.getId().toString());
+            }
+        }
+        assertThat(service.replaceDocumentVectors(tenantId, batch)).isEmpty();
+
+        List<String> documents = service.findSimilarDocuments(tenantId, query, 10,
+                new VectorSearchFilter(wanted.getId(), null, null));
+        assertThat(documents).hasSize(10).allMatch(wantedIds::contains);
+
+        List<ChunkHit> chunks = service.findSimilarChunks(tenantId, query, 20, new VectorSearchFilter(null, uploader, null));
+        assertThat(chunks).hasSize(20).allMatch(hit -> wantedIds.contains(hit.getDocumentId().toString()));
+        assertThat(chunks).isSortedAccordingTo((a, b) -> Float.compare(b.getScore(), a.getScore()));
+    }
+
+    @Test
+    void documentSearchReturnsLimitDistinctDocuments() {
+        DocumentJob job = job();
+        float[] query = unit();
+        List<DocumentVectors> batch = new ArrayList<>();
+        // The chunks of one document fill the first scans, which then have to widen
+        Document crowding = document(job, "text/plain", null);
+        batch.add(vectors(crowding, 100, query, 0.02f));
+        List<String> others = new ArrayList<>();
+        for (int d = 0; d < 4; d++) {
+            Document document = document(job, "text/plain", null);
+            batch.add(vectors(document, 3, query, 0.5f));
+            others.add(document.getId().toString());
+        }
+        for (int d = 0; d < 20; d++) {
+            batch.add(vectors(document(job, "text/plain", null), 3, null, 1f));
+        }
+        assertThat(service.replaceDocumentVectors(tenantId, batch)).isEmpty();
+
+        List<String> documents = service.findSimilarDocuments(tenantId, query, 5, null);
+        assertThat(documents).hasSize(5).doesNotHaveDuplicates();
+        assertThat(documents.get(0)).isEqualTo(crowding.getId().toString());
+        assertThat(documents.subList(1, 5)).containsExactlyInAnyOrderElementsOf(others);
+    }
+
+    /**
+     * @param near the vector the chunks scatter around, or null for random chunks
+     * @param spread the scale of the noise added to near
+     */
+    private DocumentVectors vectors(Document document, int chunks, float[] near, float spread) {
+        List<VectorRecord> records = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            float[] vector = unit();
+            if (near != null) {
+                for (int i = 0; i < DIMENSION; i++) {
+                    vector[i] = near[i] + spread * vector[i];
+                }
+                vector = VectorMath.normalize(vector);
+            }
+            records.add(new VectorRecord(document.getId(), c, null, vector));
+        }
+        return new DocumentVectors(document, records, null);
+    }
+
+    private float[] unit() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+
+    private static DocumentJob job() {
+        DocumentJob job = new DocumentJob();
+        job.setId(UUID.randomUUID());
+        return job;
+    }
+
+    private static Document document(DocumentJob job, String contentType, UUID uploadedBy) {
+        Document document = new Document();
+        document.setId(UUID.randomUUID());
+        document.setJob(job);
+        document.setFilename(document.getId() + ".txt");
+        document.setContentType(contentType);
+        document.setUploadedBy(uploadedBy);
+        return document;
+    }
+
+    private long count(String condition) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT count(*) FROM \"tenant_"
+                     + tenantId.toString().replace("-", "_") + "\".chunk_vectors WHERE " + condition)) {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
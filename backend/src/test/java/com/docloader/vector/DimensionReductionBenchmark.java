@@ -0,0 +1,257 @@
+package com.docloader.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * What reducing the dimensions of embeddings gains in query latency, comparing prefix
+ * truncation, the Matryoshka approach of {@code docloader.embedding.dimensions}, with
+ * {@link PcaQuantizer} codes. Truncated vectors get their own graph and are searched with
+ * and without re-ranking against the full vectors; PCA codes are searched over the graph
+ * of the full vectors, which the embedded store keeps for re-ranking anyway. The recall@k
+ * of each method and the bytes per vector it searches and keeps are printed before its
+ * measurements.
+ * <p>
+ * The random clustered vectors have a variance that decays over the dimensions, like the
+ * embeddings of a Matryoshka-trained model. With layout=shuffled their dimensions are
+ * shuffled, which is what truncation sees with a model trained without it; PCA finds the
+ * directions of most variance either way.
+ * <p>
+ * Run with {@code mvn -P benchmarks -DskipTests test -Djmh.args=DimensionReductionBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DimensionReductionBenchmark {
+
+    private static final int CLUSTERS = 64;
+    private static final int QUERIES = 200;
+    private static final long SEGMENT_SIZE = 256L << 20;
+    private static final int EF_SEARCH = 100;
+    private static final int TRAINING_SAMPLE_SIZE = 20000;
+    private static final int PCA_ITERATIONS = 4;
+
+    /**
+     * The full vectors and their graph
+     */
+    @State(Scope.Benchmark)
+    public static class Vectors {
+
+        @Param("20000")
+        public int vectors;
+
+        @Param("384")
+        public int dimension;
+
+        @Param("10")
+        public int k;
+
+        @Param("16")
+        public int m;
+
+        @Param("100")
+        public int efConstruction;
+
+        @Param({"matryoshka", "shuffled"})
+        public String layout;
+
+        float[][] data;
+        float[][] queries;
+        int[][] exact;
+        SegmentedVectorStore store;
+        HnswIndex index;
+        private Path directory;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void build() throws IOException {
+            Random random = new Random(42);
+            // Standard deviation of each dimension, a third of the first one at a quarter of the dimensions
+            float[] scales = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                scales[i] = (float) Math.exp(-4.0 * i / dimension);
+            }
+            float[][] centroids = new float[CLUSTERS][];
+            for (int i = 0; i < CLUSTERS; i++) {
+                centroids[i] = gaussian(random, scales, 1f, null);
+            }
+            data = new float[vectors][];
+            for (int i = 0; i < vectors; i++) {
+                data[i] = VectorMath.normalize(gaussian(random, scales, 0.5f, centroids[random.nextInt(CLUSTERS)]));
+            }
+            queries = new float[QUERIES][];
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = VectorMath.normalize(gaussian(random, scales, 0.5f, centroids[random.nextInt(CLUSTERS)]));
+            }
+            if ("shuffled".equals(layout)) {
+                int[] permutation = permutation(random, dimension);
+                data = shuffle(data, permutation);
+                queries = shuffle(queries, permutation);
+            }
+
+            exact = new int[QUERIES][];
+            for (int q = 0; q < QUERIES; q++) {
+                exact[q] = VectorTestData.bruteForce(data, queries[q], k, null);
+            }
+            directory = Files.createTempDirectory("dimension-benchmark");
+            store = SegmentedVectorStore.open(directory, VectorEncoding.FLOAT32, SEGMENT_SIZE);
+            VectorTestData.append(store, data);
+            index = VectorTestData.graph(store, m, efConstruction, EF_SEARCH);
+            report("full", dimension, q -> index.search(queries[q], k, EF_SEARCH, null), dimension * Float.BYTES, 0);
+        }
+
+        int nextQuery() {
+            next = (next + 1) % queries.length;
+            return next;
+        }
+
+        void report(String method, int dimensions, IntFunction<List<HnswIndex.Hit>> search,
+                    int searchBytes, int rerankBytes) {
+            int found = 0;
+            for (int q = 0; q < queries.length; q++) {
+                found += VectorTestData.overlap(search.apply(q), exact[q]);
+            }
+            System.out.printf("%s d=%d: recall@%d=%.4f, %d bytes/vector searched, %d kept%n", method, dimensions, k,
+                    (double) found / (queries.length * k), searchBytes, searchBytes + rerankBytes);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            store.close();
+            TenantVectorIndex.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Vectors reduced to dimension / divisor dimensions by truncation or PCA
+     */
+    @State(Scope.Benchmark)
+    public static class Reduced {
+
+        @Param({"truncated", "pca"})
+        public String method;
+
+        @Param({"16", "8", "4", "2"})
+        public int divisor;
+
+        @Param({"1", "4"})
+        public int rerankFactor;
+
+        int dimensions;
+        // Graph over the truncated vectors, null for PCA
+        HnswIndex truncatedIndex;
+        QuantizedCodes codes;
+        private SegmentedVectorStore truncatedStore;
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void reduce(Vectors full) throws IOException {
+            dimensions = Math.max(1, full.dimension / divisor);
+            int rerankBytes = rerankFactor > 1 ? full.dimension * Float.BYTES : 0;
+            if ("truncated".equals(method)) {
+                float[][] prefixes = new float[full.data.length][];
+                for (int i = 0; i < prefixes.length; i++) {
+                    prefixes[i] = VectorMath.truncate(full.data[i], dimensions);
+                }
+                directory = Files.createTempDirectory("dimension-benchmark");
+                truncatedStore = SegmentedVectorStore.open(directory, VectorEncoding.FLOAT32, SEGMENT_SIZE);
+                VectorTestData.append(truncatedStore, prefixes);
+                truncatedIndex = VectorTestData.graph(truncatedStore, full.m, full.efConstruction, EF_SEARCH);
+                full.report("truncated rerank=" + rerankFactor + "x", dimensions, q -> search(full, q),
+                        dimensions * Float.BYTES, rerankBytes);
+            } else {
+                List<float[]> sample = Arrays.asList(full.data).subList(0, Math.min(full.data.length, TRAINING_SAMPLE_SIZE));
+                PcaQuantizer pca = PcaQuantizer.train(sample, dimensions, PCA_ITERATIONS, 42);
+                codes = new QuantizedCodes();
+                codes.addQuantizer(pca);
+                for (int i = 0; i < full.data.length; i++) {
+                    codes.encode(i, Quantization.PCA, full.data[i]);
+                }
+                full.report("pca rerank=" + rerankFactor + "x", dimensions, q -> search(full, q), pca.codeSize(), rerankBytes);
+            }
+        }
+
+        List<HnswIndex.Hit> search(Vectors full, int q) {
+            float[] query = full.queries[q];
+            int candidates = full.k * rerankFactor;
+            List<HnswIndex.Hit> hits = truncatedIndex != null
+                    ? truncatedIndex.search(VectorMath.truncate(query, dimensions), candidates,
+                            Math.max(EF_SEARCH, candidates), null)
+                    : full.index.search(codes.scorer(query, full.store), candidates, Math.max(EF_SEARCH, candidates), null);
+            return rerankFactor > 1 ? VectorTestData.rerank(hits, query, full.store, full.k) : hits;
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            if (truncatedStore != null) {
+                truncatedStore.close();
+                TenantVectorIndex.deleteRecursively(directory);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> full(Vectors full) {
+        return full.index.search(full.queries[full.nextQuery()], full.k, EF_SEARCH, null);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> reduced(Vectors full, Reduced reduced) {
+        return reduced.search(full, full.nextQuery());
+    }
+
+    private static int[] permutation(Random random, int dimension) {
+        int[] permutation = new int[dimension];
+        for (int i = 0; i < dimension; i++) {
+            permutation[i] = i;
+        }
+        for (int i = dimension - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
+        }
+        return permutation;
+    }
+
+    private static float[][] shuffle(float[][] vectors, int[] permutation) {
+        float[][] shuffled = new float[vectors.length][];
+        for (int v = 0; v < vectors.length; v++) {
+            shuffled[v] = new float[permutation.length];
+            for (int i = 0; i < permutation.length; i++) {
+                shuffled[v][i] = vectors[v][permutation[i]];
+            }
+        }
+        return shuffled;
+    }
+
+    private static float[] gaussian(Random random, float[] scales, float scale, float[] mean) {
+        float[] vector = new float[scales.length];
+        for (int i = 0; i < scales.length; i++) {
+            vector[i] = (float) random.nextGaussian() * scale * scales[i] + (mean != null ? mean[i] : 0f);
+        }
+        return vector;
+    }
+}
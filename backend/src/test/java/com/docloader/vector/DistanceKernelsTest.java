@@ -0,0 +1,70 @@
+package com.docloader.vector;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The SIMD kernels against the plain loops. Surefire adds the incubator module; without
+ * it, or on a CPU with fewer than 4 float lanes, the comparisons are skipped.
+ */
+class DistanceKernelsTest {
+
+    private static final DistanceKernels SCALAR = VectorMath.scalarKernels();
+    private static DistanceKernels simd;
+
+    @BeforeAll
+    static void loadSimdKernels() {
+        simd = VectorMath.simdKernels();
+    }
+
+    // Odd dimensions leave a tail the SIMD kernels hand to the scalar loops
+    @ParameterizedTest
+    @ValueSource(ints = {3, 17, 384, 770, 1536})
+    void simdKernelsMatchPlainLoops(int dimension) {
+        assumeTrue(simd != null, "Vector API unavailable");
+        Random random = new Random(dimension);
+        float[] a = VectorKernelBenchmark.unitScaled(random, dimension);
+        float[] b = VectorKernelBenchmark.unitScaled(random, dimension);
+        // Accumulation order differs between the kernels, so results only match approximately
+        float tolerance = 1e-4f * (float) Math.sqrt(dimension);
+
+        assertThat(simd.dot(a, 0, b, 0, dimension)).isCloseTo(SCALAR.dot(a, 0, b, 0, dimension), within(tolerance));
+        assertThat(simd.cosine(a, b)).isCloseTo(SCALAR.cosine(a, b), within(tolerance));
+        assertThat(simd.squaredDistance(a, 0, b, 0, dimension))
+                .isCloseTo(SCALAR.squaredDistance(a, 0, b, 0, dimension), within(tolerance));
+
+        ByteBuffer float32 = ByteBuffer.allocateDirect(4 + dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer float16 = ByteBuffer.allocateDirect(2 + dimension * 2).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] int8 = new byte[1 + dimension];
+        for (int i = 0; i < dimension; i++) {
+            float32.putFloat(4 + i * 4, b[i]);
+            float16.putShort(2 + i * 2, Float16.fromFloat(b[i]));
+            int8[1 + i] = (byte) Math.max(-128, Math.min(127, Math.round(b[i] * 40)));
+        }
+        // Stored vectors start at an offset, as they do in the segments
+        assertThat(simd.dotFloat32(a, float32, 4)).isCloseTo(SCALAR.dotFloat32(a, float32, 4), within(tolerance));
+        assertThat(simd.dotFloat16(a, float16, 2)).isCloseTo(SCALAR.dotFloat16(a, float16, 2), within(tolerance));
+        assertThat(simd.dotInt8(a, int8, 1, dimension))
+                .isCloseTo(SCALAR.dotInt8(a, int8, 1, dimension), within(tolerance * 40));
+    }
+
+    @Test
+    void cosineOfZeroVectorIsZero() {
+        float[] zero = new float[8];
+        float[] other = {1, 2, 3, 4, 5, 6, 7, 8};
+        assertThat(SCALAR.cosine(zero, other)).isZero();
+        if (simd != null) {
+            assertThat(simd.cosine(zero, other)).isZero();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.docloader.vector;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Recall of {@link HnswIndex} searches against exact results, over random clustered
+ * vectors: plain, filtered and over int8 codes re-ranked with the full vectors. The
+ * latency of the same searches is measured by {@link HnswSearchBenchmark}.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HnswIndexTest {
+
+    private static final int VECTORS = 5000;
+    private static final int DIMENSION = 64;
+    private static final int CLUSTERS = 32;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int EF_SEARCH = 100;
+
+    private float[][] data;
+    private float[][] queries;
+    private Path directory;
+    private SegmentedVectorStore store;
+    private HnswIndex index;
+
+    @BeforeAll
+    void build() throws IOException {
+        Random random = new Random(42);
+        float[][] centroids = VectorTestData.centroids(random, CLUSTERS, DIMENSION);
+        data = VectorTestData.clustered(random, centroids, VECTORS);
+        queries = VectorTestData.clustered(random, centroids, QUERIES);
+        directory = Files.createTempDirectory("hnsw-test");
+        store = SegmentedVectorStore.open(directory, VectorEncoding.FLOAT32, 64L << 20);
+        VectorTestData.append(store, data);
+        index = VectorTestData.graph(store, 16, 100, EF_SEARCH);
+    }
+
+    @AfterAll
+    void close() throws IOException {
+        store.close();
+        TenantVectorIndex.deleteRecursively(directory);
+    }
+
+    @Test
+    void searchFindsNearlyAllExactNeighbours() {
+        int found = 0;
+        for (float[] query : queries) {
+            List<HnswIndex.Hit> hits = index.search(query, K, EF_SEARCH, null);
+            assertThat(hits).hasSize(K);
+            assertThat(hits).isSortedAccordingTo((a, b) -> Float.compare(b.getScore(), a.getScore()));
+            found += VectorTestData.overlap(hits, VectorTestData.bruteForce(data, query, K, null));
+        }
+        assertThat(recall(found)).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void filteredSearchReturnsOnlyAllowedNeighbours() {
+        Random random = new Random(7);
+        OrdinalBitmap allowed = new OrdinalBitmap();
+        for (int i = 0; i < VECTORS; i++) {
+            if (random.nextDouble() < 0.1) {
+                allowed.add(i);
+            }
+        }
+        int found = 0;
+        for (float[] query : queries) {
+            List<HnswIndex.Hit> hits = index.search(query, K, EF_SEARCH, allowed::contains);
+            assertThat(hits).allMatch(hit -> allowed.contains(hit.getOrdinal()));
+            found += VectorTestData.overlap(hits, VectorTestData.bruteForce(data, query, K, allowed::contains));
+        }
+        assertThat(recall(found)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void quantizedSearchRecoversRecallByReranking() {
+        QuantizedCodes codes = new QuantizedCodes();
+        codes.addQuantizer(ScalarQuantizer.train(Arrays.asList(data)));
+        for (int i = 0; i < VECTORS; i++) {
+            codes.encode(i, Quantization.INT8, data[i]);
+        }
+        int found = 0;
+        for (float[] query : queries) {
+            List<HnswIndex.Hit> candidates = index.search(codes.scorer(query, store), 4 * K, EF_SEARCH, null);
+            List<HnswIndex.Hit> hits = VectorTestData.rerank(candidates, query, store, K);
+            found += VectorTestData.overlap(hits, VectorTestData.bruteForce(data, query, K, null));
+        }
+        assertThat(recall(found)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    private static double recall(int found) {
+        return (double) found / (QUERIES * K);
+    }
+}
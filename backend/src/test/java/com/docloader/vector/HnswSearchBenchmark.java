@@ -0,0 +1,198 @@
+package com.docloader.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of {@link HnswIndex} over random clustered vectors held in a
+ * {@link SegmentedVectorStore}: full-precision searches by efSearch, searches over int8
+ * and product-quantized codes with and without full-precision re-ranking, and filtered
+ * searches of several selectivities, both as graph searches that only collect allowed
+ * ordinals and as exact scans of an {@link OrdinalBitmap} of the allowed ordinals.
+ * Recall of the same searches is checked by {@link HnswIndexTest}.
+ * <p>
+ * Run with {@code mvn -P benchmarks -DskipTests test -Djmh.args=HnswSearchBenchmark};
+ * add e.g. {@code -p vectors=200000} to the JMH arguments for other sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class HnswSearchBenchmark {
+
+    private static final int CLUSTERS = 64;
+    private static final int QUERIES = 500;
+    private static final long SEGMENT_SIZE = 256L << 20;
+    private static final int TRAINING_SAMPLE_SIZE = 20000;
+    private static final int QUANTIZED_EF_SEARCH = 100;
+    private static final int FILTERED_EF_SEARCH = 100;
+
+    /**
+     * The graph and vectors, built once per trial
+     */
+    @State(Scope.Benchmark)
+    public static class Graph {
+
+        @Param("50000")
+        public int vectors;
+
+        @Param("384")
+        public int dimension;
+
+        @Param("16")
+        public int m;
+
+        @Param("200")
+        public int efConstruction;
+
+        @Param("10")
+        public int k;
+
+        @Param({"FLOAT32", "FLOAT16"})
+        public String encoding;
+
+        float[][] data;
+        float[][] queries;
+        SegmentedVectorStore store;
+        HnswIndex index;
+        private Path directory;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void build() throws IOException {
+            Random random = new Random(42);
+            float[][] centroids = VectorTestData.centroids(random, CLUSTERS, dimension);
+            data = VectorTestData.clustered(random, centroids, vectors);
+            queries = VectorTestData.clustered(random, centroids, QUERIES);
+            directory = Files.createTempDirectory("hnsw-benchmark");
+            store = SegmentedVectorStore.open(directory, VectorEncoding.valueOf(encoding), SEGMENT_SIZE);
+            VectorTestData.append(store, data);
+            index = VectorTestData.graph(store, m, efConstruction, efConstruction);
+        }
+
+        float[] nextQuery() {
+            next = (next + 1) % queries.length;
+            return queries[next];
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            store.close();
+            TenantVectorIndex.deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Search {
+
+        @Param({"10", "25", "50", "100", "200", "400"})
+        public int efSearch;
+    }
+
+    /**
+     * Search codes of all vectors, trained on a sample of them
+     */
+    @State(Scope.Benchmark)
+    public static class Codes {
+
+        @Param({"INT8", "PQ"})
+        public String quantization;
+
+        @Param({"1", "2", "4", "8"})
+        public int rerankFactor;
+
+        QuantizedCodes codes;
+
+        @Setup(Level.Trial)
+        public void encode(Graph graph) {
+            Quantization type = Quantization.valueOf(quantization);
+            List<float[]> sample = Arrays.asList(graph.data).subList(0, Math.min(graph.data.length, TRAINING_SAMPLE_SIZE));
+            VectorQuantizer quantizer = type == Quantization.INT8
+                    ? ScalarQuantizer.train(sample)
+                    : ProductQuantizer.train(sample, Math.max(1, graph.dimension / 8), 15, 42);
+            codes = new QuantizedCodes();
+            codes.addQuantizer(quantizer);
+            for (int i = 0; i < graph.data.length; i++) {
+                codes.encode(i, type, graph.data[i]);
+            }
+        }
+    }
+
+    /**
+     * A random share of the ordinals that searches may return
+     */
+    @State(Scope.Benchmark)
+    public static class Filter {
+
+        @Param({"0.5", "0.1", "0.01", "0.001"})
+        public double selectivity;
+
+        OrdinalBitmap allowed;
+
+        @Setup(Level.Trial)
+        public void select(Graph graph) {
+            Random random = new Random(7);
+            allowed = new OrdinalBitmap();
+            for (int i = 0; i < graph.data.length; i++) {
+                if (random.nextDouble() < selectivity) {
+                    allowed.add(i);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> search(Graph graph, Search search) {
+        return graph.index.search(graph.nextQuery(), graph.k, Math.max(graph.k, search.efSearch), null);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> searchQuantized(Graph graph, Codes codes) {
+        float[] query = graph.nextQuery();
+        int candidates = graph.k * codes.rerankFactor;
+        List<HnswIndex.Hit> hits = graph.index.search(codes.codes.scorer(query, graph.store), candidates,
+                Math.max(QUANTIZED_EF_SEARCH, candidates), null);
+        return codes.rerankFactor > 1 ? VectorTestData.rerank(hits, query, graph.store, graph.k) : hits;
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> searchFilteredGraph(Graph graph, Filter filter) {
+        return graph.index.search(graph.nextQuery(), graph.k, FILTERED_EF_SEARCH, filter.allowed::contains);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> searchFilteredScan(Graph graph, Filter filter) {
+        VectorScorer scorer = graph.store.scorer(graph.nextQuery());
+        int k = graph.k;
+        PriorityQueue<HnswIndex.Hit> top = new PriorityQueue<>((a, b) -> Float.compare(a.getScore(), b.getScore()));
+        filter.allowed.forEach(ordinal -> {
+            top.add(new HnswIndex.Hit(ordinal, scorer.score(ordinal)));
+            if (top.size() > k) {
+                top.poll();
+            }
+        });
+        return new ArrayList<>(top);
+    }
+}
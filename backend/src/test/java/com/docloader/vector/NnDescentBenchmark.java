@@ -0,0 +1,134 @@
+package com.docloader.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time of {@link NnDescent} over random clustered vectors. Like embeddings, the
+ * vectors vary along fewer directions than they have dimensions: they are drawn in a
+ * space of intrinsic dimension and projected up by a random matrix. NN-Descent needs more
+ * iterations as the intrinsic dimension grows, since neighbours of neighbours are then
+ * less often neighbours; keeping longer lists than the k neighbours wanted during the
+ * build makes up for it.
+ * <p>
+ * After each iteration the recall@k of the last graph against exact neighbours of a
+ * sample of the nodes, its iterations and its comparisons as a share of the
+ * n * (n - 1) / 2 pairs of an exact all-pairs graph are printed with the results.
+ * <p>
+ * Run with {@code mvn -P benchmarks -DskipTests test -Djmh.args=NnDescentBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class NnDescentBenchmark {
+
+    private static final int CLUSTERS = 64;
+    private static final int MAX_ITERATIONS = 12;
+    private static final double DELTA = 0.001;
+    private static final int SAMPLED_NODES = 200;
+
+    @Param("100000")
+    public int vectors;
+
+    @Param("384")
+    public int dimension;
+
+    @Param("32")
+    public int intrinsicDimension;
+
+    @Param("10")
+    public int k;
+
+    // Neighbours kept per node during the build, in multiples of k
+    @Param({"1", "2"})
+    public int listFactor;
+
+    @Param({"0.5", "1.0"})
+    public double sampleRate;
+
+    private float[][] data;
+    private int[] nodes;
+    private int[][] exact;
+    private ForkJoinPool pool;
+    private NnDescent.Graph graph;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        float[][] projection = new float[dimension][];
+        for (int i = 0; i < dimension; i++) {
+            projection[i] = VectorTestData.gaussian(random, intrinsicDimension, 1f, null);
+        }
+        float[][] centroids = VectorTestData.centroids(random, CLUSTERS, intrinsicDimension);
+        data = new float[vectors][];
+        for (int i = 0; i < vectors; i++) {
+            float[] latent = VectorTestData.gaussian(random, intrinsicDimension, 0.5f, centroids[random.nextInt(CLUSTERS)]);
+            float[] vector = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                vector[j] = VectorMath.dot(projection[j], latent);
+            }
+            data[i] = VectorMath.normalize(vector);
+        }
+
+        nodes = new int[Math.min(SAMPLED_NODES, vectors)];
+        exact = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++) {
+            int node = random.nextInt(vectors);
+            nodes[i] = node;
+            exact[i] = VectorTestData.bruteForce(data, data[node], k, ordinal -> ordinal != node);
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public NnDescent.Graph build() {
+        graph = new NnDescent(k * listFactor, MAX_ITERATIONS, sampleRate, DELTA, 7).build(data, Long.MAX_VALUE, pool);
+        return graph;
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        int found = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            Set<Integer> expected = new HashSet<>();
+            for (int ordinal : exact[i]) {
+                expected.add(ordinal);
+            }
+            int[] neighbours = graph.getNeighbours()[nodes[i]];
+            for (int j = 0; j < Math.min(k, neighbours.length); j++) {
+                if (expected.contains(neighbours[j])) {
+                    found++;
+                }
+            }
+        }
+        double pairs = (double) vectors * (vectors - 1) / 2;
+        System.out.printf("%d iterations, recall@%d=%.4f, %d comparisons (%.2f%% of all pairs)%n",
+                graph.getIterations(), k, (double) found / (nodes.length * k),
+                graph.getComparisons(), graph.getComparisons() * 100 / pairs);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
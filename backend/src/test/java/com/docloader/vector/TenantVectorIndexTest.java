@@ -0,0 +1,141 @@
+package com.docloader.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Persistence of {@link TenantVectorIndex}: what survives closing and reopening, and
+ * compaction into a new generation
+ */
+class TenantVectorIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int CHUNKS = 3;
+
+    @TempDir
+    Path root;
+
+    private final Random random = new Random(42);
+    // The live vectors of each document, as last written
+    private final Map<UUID, float[][]> written = new HashMap<>();
+
+    @Test
+    void reopenRestoresLiveVersions() throws IOException {
+        UUID jobId = UUID.randomUUID();
+        List<UUID> ids = new ArrayList<>();
+        UUID removed;
+        UUID replaced;
+        try (TenantVectorIndex index = TenantVectorIndex.open(root, settings())) {
+            for (int d = 0; d < 20; d++) {
+                UUID documentId = UUID.randomUUID();
+                ids.add(documentId);
+                write(index, documentId, d % 2 == 0 ? jobId : null);
+            }
+            removed = ids.get(3);
+            replaced = ids.get(5);
+            remove(index, removed);
+            write(index, replaced, jobId);
+        }
+
+        try (TenantVectorIndex index = TenantVectorIndex.open(root, settings())) {
+            assertThat(index.isGraphReady()).isFalse();
+            assertThat(index.documentIds()).hasSize(19).doesNotContain(removed);
+            assertSearchable(index);
+
+            index.buildGraph();
+            assertThat(index.isGraphReady()).isTrue();
+            assertSearchable(index);
+            // The replacement carries the attributes of its own write
+            List<ChunkHit> hits = index.findSimilarChunks(written.get(replaced)[0], 1, new VectorSearchFilter(jobId, null, null));
+            assertThat(hits).extracting(ChunkHit::getDocumentId).containsExactly(replaced);
+            assertThat(index.findSimilarDocuments(written.get(ids.get(1))[0], 20, new VectorSearchFilter(jobId, null, null)))
+                    .doesNotContain(ids.get(1))
+                    .allMatch(id -> id.equals(replaced) || ids.indexOf(id) % 2 == 0);
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveDocumentsOnly() throws IOException {
+        TenantVectorIndex index = TenantVectorIndex.open(root, settings());
+        List<UUID> ids = new ArrayList<>();
+        for (int d = 0; d < 50; d++) {
+            UUID documentId = UUID.randomUUID();
+            ids.add(documentId);
+            write(index, documentId, null);
+        }
+        for (int d = 0; d < 50; d += 5) {
+            remove(index, ids.get(d));
+            write(index, ids.get(d + 1), null);
+        }
+        assertThat(index.tombstoneRatio()).isGreaterThan(0);
+
+        VectorIndexCompaction compaction = VectorIndexCompaction.start(index, 8);
+        compaction.copy();
+        // Written between the copy and the swap, so replayed by finish
+        write(index, ids.get(2), null);
+        TenantVectorIndex compacted = compaction.finish();
+        index.close();
+        compaction.removeReplaced();
+
+        try (compacted) {
+            // Only the copied version of the document written during the compaction is a tombstone
+            assertThat(compacted.size()).isEqualTo((written.size() + 1) * CHUNKS);
+            assertThat(compacted.documentIds()).containsExactlyInAnyOrderElementsOf(written.keySet());
+            assertSearchable(compacted);
+        }
+        try (TenantVectorIndex reopened = TenantVectorIndex.open(root, settings())) {
+            assertThat(reopened.documentIds()).containsExactlyInAnyOrderElementsOf(written.keySet());
+            reopened.buildGraph();
+            assertSearchable(reopened);
+        }
+    }
+
+    /**
+     * Each chunk of each live document, last written version, is its own nearest neighbour
+     */
+    private void assertSearchable(TenantVectorIndex index) {
+        written.forEach((documentId, vectors) -> {
+            for (int c = 0; c < vectors.length; c++) {
+                List<ChunkHit> hits = index.findSimilarChunks(vectors[c], 1, null);
+                assertThat(hits).hasSize(1);
+                assertThat(hits.get(0).getDocumentId()).isEqualTo(documentId);
+                assertThat(hits.get(0).getChunkIndex()).isEqualTo(c);
+            }
+        });
+    }
+
+    private void write(TenantVectorIndex index, UUID documentId, UUID jobId) throws IOException {
+        float[][] vectors = new float[CHUNKS][];
+        List<VectorRecord> records = new ArrayList<>(CHUNKS);
+        for (int c = 0; c < CHUNKS; c++) {
+            vectors[c] = VectorMath.normalize(VectorTestData.gaussian(random, DIMENSION, 1f, null));
+            records.add(new VectorRecord(documentId, c, null, vectors[c]));
+        }
+        index.replace(documentId, records, Quantization.NONE,
+                jobId != null ? new VectorMetadata(jobId, null, null) : null);
+        written.put(documentId, vectors);
+    }
+
+    private void remove(TenantVectorIndex index, UUID documentId) {
+        assertThat(index.remove(documentId)).isTrue();
+        written.remove(documentId);
+    }
+
+    private static VectorIndexSettings settings() {
+        VectorIndexSettings settings = new VectorIndexSettings();
+        settings.setSegmentSize(1L << 20);
+        settings.setEfConstruction(100);
+        return settings;
+    }
+}
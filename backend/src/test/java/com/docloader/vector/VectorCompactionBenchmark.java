@@ -0,0 +1,220 @@
+package com.docloader.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search latency of a {@link TenantVectorIndex} with many tombstones, while
+ * {@link VectorIndexCompaction} rebuilds it again and again under concurrent writes, and
+ * once the rebuilt index is swapped in. Writes are held off during the swap the way the
+ * embedded vector store does it; the compactions of each iteration and the longest time
+ * writes waited are printed with the results.
+ * <p>
+ * Run with {@code mvn -P benchmarks -DskipTests test -Djmh.args="VectorCompactionBenchmark -t 4"}
+ * to search from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorCompactionBenchmark {
+
+    private static final int CLUSTERS = 64;
+    private static final int BATCH = 256;
+    private static final int QUERIES = 200;
+    private static final long SEGMENT_SIZE = 256L << 20;
+
+    @Param("10000")
+    public int documents;
+
+    @Param("4")
+    public int chunks;
+
+    @Param("384")
+    public int dimension;
+
+    @Param("50")
+    public int tombstonePercent;
+
+    @Param("10")
+    public int k;
+
+    // tombstoned: before compaction, compacting: while compactions run, compacted: after one
+    @Param({"tombstoned", "compacting", "compacted"})
+    public String phase;
+
+    private float[][] centroids;
+    private float[][] queries;
+    private List<UUID> ids;
+    private Path root;
+    private final AtomicReference<TenantVectorIndex> current = new AtomicReference<>();
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private Thread writer;
+    private Thread compactor;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong maxHeldOffNanos = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        Random random = new Random(42);
+        centroids = VectorTestData.centroids(random, CLUSTERS, dimension);
+        queries = VectorTestData.clustered(random, centroids, QUERIES);
+
+        VectorIndexSettings settings = new VectorIndexSettings();
+        settings.setSegmentSize(SEGMENT_SIZE);
+        settings.setEfConstruction(100);
+        root = Files.createTempDirectory("compaction-benchmark");
+        TenantVectorIndex index = TenantVectorIndex.open(root, settings);
+        current.set(index);
+
+        ids = new ArrayList<>(documents);
+        List<TenantVectorIndex.Replacement> batch = new ArrayList<>(BATCH);
+        for (int d = 0; d < documents; d++) {
+            UUID documentId = UUID.randomUUID();
+            ids.add(documentId);
+            batch.add(new TenantVectorIndex.Replacement(documentId, records(random, documentId), Quantization.NONE, null));
+            if (batch.size() == BATCH || d == documents - 1) {
+                index.replaceAll(batch);
+                batch = new ArrayList<>(BATCH);
+            }
+        }
+
+        // Half of the tombstones come from removed documents, half from replaced ones
+        int churned = (int) (2L * documents * tombstonePercent / (200 - tombstonePercent));
+        for (int i = 0; i < churned; i++) {
+            UUID documentId = ids.get(random.nextInt(ids.size()));
+            if (i % 2 == 0) {
+                index.remove(documentId);
+            } else {
+                index.replace(documentId, records(random, documentId), Quantization.NONE, null);
+            }
+        }
+
+        if ("compacted".equals(phase)) {
+            compact();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startCompacting() {
+        if (!"compacting".equals(phase)) {
+            return;
+        }
+        running = true;
+        writes.set(0);
+        compactions.set(0);
+        maxHeldOffNanos.set(0);
+        writer = new Thread(() -> {
+            Random random = new Random(11);
+            while (running) {
+                UUID documentId = ids.get(random.nextInt(ids.size()));
+                writeLock.readLock().lock();
+                try {
+                    current.get().replace(documentId, records(random, documentId), Quantization.NONE, null);
+                    writes.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    writeLock.readLock().unlock();
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        compactor = new Thread(() -> {
+            while (running) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        writer.start();
+        compactor.start();
+    }
+
+    @Benchmark
+    public List<ChunkHit> search() {
+        float[] query = queries[ThreadLocalRandom.current().nextInt(queries.length)];
+        return current.get().findSimilarChunks(query, k, null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopCompacting() throws InterruptedException {
+        if (!"compacting".equals(phase)) {
+            return;
+        }
+        running = false;
+        compactor.join();
+        writer.join();
+        System.out.printf("%d compactions, %d writes, writes held off up to %.1f ms%n",
+                compactions.get(), writes.get(), maxHeldOffNanos.get() / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        current.get().close();
+        TenantVectorIndex.deleteRecursively(root);
+    }
+
+    private void compact() throws IOException {
+        TenantVectorIndex source = current.get();
+        VectorIndexCompaction compaction = VectorIndexCompaction.start(source, BATCH);
+        compaction.copy();
+        long blockedFrom = System.nanoTime();
+        writeLock.writeLock().lock();
+        try {
+            current.set(compaction.finish());
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+        maxHeldOffNanos.accumulateAndGet(System.nanoTime() - blockedFrom, Math::max);
+        source.close();
+        compaction.removeReplaced();
+        compactions.incrementAndGet();
+    }
+
+    private List<VectorRecord> records(Random random, UUID documentId) {
+        float[] centroid = centroids[random.nextInt(centroids.length)];
+        List<VectorRecord> records = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            records.add(new VectorRecord(documentId, c, null,
+                    VectorMath.normalize(VectorTestData.gaussian(random, dimension, 0.5f, centroid))));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,143 @@
+package com.docloader.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the distance kernels of {@link VectorMath}, the plain loops against the SIMD
+ * kernels of the Vector API, at the dimensions of common embedding models. Each call
+ * scores one query against a pool of vectors small enough to stay in cache, so the
+ * numbers reflect computation rather than memory bandwidth; the time is per vector.
+ * {@link DistanceKernelsTest} checks that both kernels agree.
+ * <p>
+ * Run with {@code mvn -P benchmarks -DskipTests test -Djmh.args=VectorKernelBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorKernelBenchmark {
+
+    private static final int POOL_SIZE = 32;
+
+    @Param({"384", "768", "1536", "3072"})
+    public int dimension;
+
+    @Param({"scalar", "simd"})
+    public String kernels;
+
+    private DistanceKernels impl;
+    private float[] query;
+    private float[][] pool;
+    private ByteBuffer float32;
+    private ByteBuffer float16;
+    private byte[] int8;
+
+    @Setup
+    public void setUp() {
+        impl = "simd".equals(kernels) ? VectorMath.simdKernels() : VectorMath.scalarKernels();
+        if (impl == null) {
+            throw new IllegalStateException("The Vector API is unavailable or narrower than 4 float lanes here");
+        }
+
+        Random random = new Random(42);
+        query = unitScaled(random, dimension);
+        pool = new float[POOL_SIZE][];
+        float32 = ByteBuffer.allocateDirect(POOL_SIZE * dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+        float16 = ByteBuffer.allocateDirect(POOL_SIZE * dimension * 2).order(ByteOrder.LITTLE_ENDIAN);
+        int8 = new byte[POOL_SIZE * dimension];
+        for (int v = 0; v < POOL_SIZE; v++) {
+            pool[v] = unitScaled(random, dimension);
+            for (int i = 0; i < dimension; i++) {
+                float32.putFloat((v * dimension + i) * 4, pool[v][i]);
+                float16.putShort((v * dimension + i) * 2, Float16.fromFloat(pool[v][i]));
+                int8[v * dimension + i] = (byte) Math.max(-128, Math.min(127, Math.round(pool[v][i] * 40)));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float dot() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.dot(query, 0, pool[v], 0, dimension);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float cosine() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.cosine(query, pool[v]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float squaredDistance() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.squaredDistance(query, 0, pool[v], 0, dimension);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float dotFloat32() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.dotFloat32(query, float32, v * dimension * 4);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float dotFloat16() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.dotFloat16(query, float16, v * dimension * 2);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public float dotInt8() {
+        float sum = 0f;
+        for (int v = 0; v < POOL_SIZE; v++) {
+            sum += impl.dotInt8(query, int8, v * dimension, dimension);
+        }
+        return sum;
+    }
+
+    static float[] unitScaled(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() / (float) Math.sqrt(dimension);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,115 @@
+package com.docloader.vector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+/**
+ * Random clustered unit vectors and exact neighbours for the vector tests and benchmarks
+ */
+final class VectorTestData {
+
+    private static final int APPEND_BATCH = 1000;
+
+    private VectorTestData() {
+    }
+
+    static float[][] centroids(Random random, int clusters, int dimension) {
+        float[][] centroids = new float[clusters][];
+        for (int i = 0; i < clusters; i++) {
+            centroids[i] = gaussian(random, dimension, 1f, null);
+        }
+        return centroids;
+    }
+
+    /**
+     * @return unit vectors scattered around randomly chosen centroids
+     */
+    static float[][] clustered(Random random, float[][] centroids, int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            float[] centroid = centroids[random.nextInt(centroids.length)];
+            vectors[i] = VectorMath.normalize(gaussian(random, centroid.length, 0.5f, centroid));
+        }
+        return vectors;
+    }
+
+    static float[] gaussian(Random random, int dimension, float scale, float[] mean) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() * scale + (mean != null ? mean[i] : 0f);
+        }
+        return vector;
+    }
+
+    /**
+     * Append the vectors in order, so their ordinals equal their indexes
+     */
+    static void append(SegmentedVectorStore store, float[][] data) throws IOException {
+        for (int from = 0; from < data.length; from += APPEND_BATCH) {
+            List<VectorRecord> batch = new ArrayList<>(APPEND_BATCH);
+            for (int i = from; i < Math.min(from + APPEND_BATCH, data.length); i++) {
+                batch.add(new VectorRecord(null, i, null, data[i]));
+            }
+            store.append(UUID.randomUUID(), from + 1, Quantization.NONE, batch);
+        }
+    }
+
+    static HnswIndex graph(SegmentedVectorStore store, int m, int efConstruction, int efSearch) {
+        HnswIndex index = new HnswIndex(store, m, efConstruction, efSearch);
+        for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+            index.insert(ordinal);
+        }
+        return index;
+    }
+
+    /**
+     * @param allowed the indexes that may be returned, or null for all
+     * @return the indexes of the k vectors with the highest dot product with the query
+     */
+    static int[] bruteForce(float[][] data, float[] query, int k, IntPredicate allowed) {
+        PriorityQueue<float[]> top = new PriorityQueue<>((a, b) -> Float.compare(a[1], b[1]));
+        for (int i = 0; i < data.length; i++) {
+            if (allowed != null && !allowed.test(i)) {
+                continue;
+            }
+            float score = VectorMath.dot(query, data[i]);
+            if (top.size() < k) {
+                top.add(new float[]{i, score});
+            } else if (score > top.peek()[1]) {
+                top.poll();
+                top.add(new float[]{i, score});
+            }
+        }
+        return top.stream().mapToInt(entry -> (int) entry[0]).toArray();
+    }
+
+    /**
+     * @return how many of the hits are among the expected ordinals
+     */
+    static int overlap(List<HnswIndex.Hit> hits, int[] expected) {
+        int found = 0;
+        for (HnswIndex.Hit hit : hits) {
+            for (int ordinal : expected) {
+                if (hit.getOrdinal() == ordinal) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    static List<HnswIndex.Hit> rerank(List<HnswIndex.Hit> hits, float[] query, VectorStorage storage, int k) {
+        List<HnswIndex.Hit> reranked = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            reranked.add(new HnswIndex.Hit(hit.getOrdinal(), storage.dot(query, hit.getOrdinal())));
+        }
+        reranked.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return reranked.subList(0, Math.min(k, reranked.size()));
+    }
+}